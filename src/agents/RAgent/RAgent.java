@@ -2,8 +2,11 @@ package agents.RAgent;
 
 import framework.*;
 import utils.EpisodicMemory;
+import utils.SpillingEpisodicMemory;
 
 import javax.naming.Name;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -33,6 +36,19 @@ public class RAgent implements IAgent {
         this.numMovesToMake = numMoves;
     }
 
+    /**
+     * @param numMoves the number of moves to make
+     * @param spillHotCapacity the number of recent episodes to keep on the heap before spilling older ones to
+     *                         disk (0 never spills)
+     */
+    public RAgent(int numMoves, int spillHotCapacity){
+        this(numMoves);
+        if (spillHotCapacity < 0)
+            throw new IllegalArgumentException("spillHotCapacity cannot be less than 0");
+        if (spillHotCapacity > 0)
+            this.episodicMemory = new SpillingEpisodicMemory(spillHotCapacity);
+    }
+
     @Override
     public void initialize(Action[] alphabet, IIntrospector introspector){
         this.patternsSeen = new ArrayList<>();
@@ -99,5 +115,13 @@ public class RAgent implements IAgent {
             namedOutput.writeLine("patternFrequency", mp.toString()+" : " + mp.timesSeen);
         }
         System.out.println("iteration complete");
+        //release the spill file if episodes were being spilled to disk
+        if (episodicMemory instanceof SpillingEpisodicMemory) {
+            try {
+                ((SpillingEpisodicMemory) episodicMemory).close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
     }
 }
@@ -4,9 +4,25 @@ import framework.IAgent;
 import framework.IAgentProvider;
 
 public class RAgentProvider implements IAgentProvider {
+    private int spillHotCapacity;
+
+    public RAgentProvider() {
+        this(0);
+    }
+
+    /**
+     * @param spillHotCapacity the number of recent episodes each agent keeps on the heap before spilling older
+     *                         ones to disk (0 never spills)
+     */
+    public RAgentProvider(int spillHotCapacity) {
+        if (spillHotCapacity < 0)
+            throw new IllegalArgumentException("spillHotCapacity cannot be less than 0");
+        this.spillHotCapacity = spillHotCapacity;
+    }
+
     @Override
     public IAgent getAgent() {
-        return new RAgent(10000);
+        return new RAgent(10000, this.spillHotCapacity);
     }
 
     @Override
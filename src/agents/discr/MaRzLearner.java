@@ -10,6 +10,7 @@ import utils.Semsode;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -34,7 +35,8 @@ import java.util.Map;
 public class MaRzLearner extends MaRzAgent {
     //region Class Variables
     private Discriminator discriminator = new Discriminator();
-    private ArrayList<Integer> goalIndices = new ArrayList<>();
+    /** the index of the goal-reaching episode for each goal, grouped by the action that reached the goal */
+    private LinkedHashMap<Action, ArrayList<Integer>> goalIndices = new LinkedHashMap<>();
     private int learnerWindow = 2; // start at 2 because we want one extra sensorData
     private Sequence goalSequence = null;
     private HashMap<Semsode, Action> goalSemsodes = new HashMap<>();
@@ -51,8 +53,9 @@ public class MaRzLearner extends MaRzAgent {
             this.discriminator.add(episode.getSensorData(), this.episodicMemory.current().getAction());
             System.out.println(this.discriminator);
         }
-        this.goalIndices.add(this.episodicMemory.currentIndex());
-        if (!this.goalActions.contains(this.episodicMemory.current().getAction()))
+        Action goalAction = this.episodicMemory.current().getAction();
+        this.goalIndices.computeIfAbsent(goalAction, action -> new ArrayList<>()).add(this.episodicMemory.currentIndex());
+        if (!this.goalActions.contains(goalAction))
             this.generateGoalSemsodes();
         if (this.goalSequence != null)
             System.out.println("My sequence worked.");
@@ -102,14 +105,19 @@ public class MaRzLearner extends MaRzAgent {
     private void generateGoalSemsodes() {
         this.goalSemsodes.clear();
         this.goalActions.clear();
-        for (int goalIndex : this.goalIndices)
+        // only the earliest goal reached by each action (that has enough history before it) gets a semsode so
+        // there is no need to revisit every goal
+        for (Map.Entry<Action, ArrayList<Integer>> entry : this.goalIndices.entrySet())
         {
-            Action goalAction = this.episodicMemory.get(goalIndex).getAction();
-            if (!goalActions.contains(goalAction))
+            for (int goalIndex : entry.getValue())
             {
-                Semsode semsode = new Semsode(this.episodicMemory.subset(goalIndex - learnerWindow, goalIndex));
-                this.goalSemsodes.put(semsode, goalAction);
-                goalActions.add(goalAction);
+                if (goalIndex - learnerWindow >= this.episodicMemory.firstIndex())
+                {
+                    Semsode semsode = new Semsode(this.episodicMemory.subset(goalIndex - learnerWindow, goalIndex));
+                    this.goalSemsodes.put(semsode, entry.getKey());
+                    goalActions.add(entry.getKey());
+                    break;
+                }
             }
         }
     }
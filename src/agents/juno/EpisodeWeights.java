@@ -1,15 +1,30 @@
 package agents.juno;
 
 import framework.Episode;
+import utils.EpisodicMemory;
+
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
  * episode weights contains weights for each component of an episode
+ *
+ * sensor weights are kept densely, indexed by the order in which the sensors
+ * were first seen, and their total is cached whenever they are updated so
+ * that scoring a match never has to re-add every weight
  */
 public class EpisodeWeights {
     //region Class Variables
     protected double actionWeight;
-    protected HashMap<String, Double> sensorWeights;
+    private HashMap<String, Integer> sensorOrdinals;
+    private String[] sensorNames;
+    private double[] sensorWeights;
+    private int sensorCount;
+    private double sensorTotal;
+
+    //translates the sensor ordinals of a packed memory into ours (-1 if not yet seen)
+    private EpisodicMemory<?> packedMemory;
+    private int[] packedOrdinals;
     //endregion
 
     //region Constructors
@@ -18,7 +33,11 @@ public class EpisodeWeights {
      */
     public EpisodeWeights(){
         actionWeight= 0.0;
-        sensorWeights= new HashMap<>();
+        sensorOrdinals= new HashMap<>();
+        sensorNames= new String[8];
+        sensorWeights= new double[8];
+        sensorCount= 0;
+        sensorTotal= 0.0;
     }
     //endregion
 
@@ -36,17 +55,17 @@ public class EpisodeWeights {
             actionWeight= addAndCap(actionWeight, -adjustValue, 0, 1);
         }
 
-        for(String sensor : sensorWeights.keySet()) {
+        for(int i= 0; i < sensorCount; i++) {
+            String sensor= sensorNames[i];
             if (episodeSensorsMatch(ep1, ep2, sensor)) {
-                sensorWeights.put(sensor, addAndCap(getSensorWeight(sensor),adjustValue, 0, 1));
+                sensorWeights[i]= addAndCap(sensorWeights[i], adjustValue, 0, 1);
             }
-            else sensorWeights.put(sensor, addAndCap(getSensorWeight(sensor),-adjustValue, 0, 1));
+            else sensorWeights[i]= addAndCap(sensorWeights[i], -adjustValue, 0, 1);
         }
+        updateSensorTotal();
 
         for(String s : ep1.getSensorData().getSensorNames()){
-            if(!sensorWeights.containsKey(s)){
-                sensorWeights.put(s, 0.0);
-            }
+            ordinalOf(s);
         }
     }
 
@@ -72,25 +91,52 @@ public class EpisodeWeights {
         //find match of each sensor
         for(String sensorName : ep1.getSensorData().getSensorNames()){
             //if sensor values match
+            int ordinal= ordinalOf(sensorName);
             if(ep1.getSensorData().getSensor(sensorName).equals(ep2.getSensorData().getSensor(sensorName))){
-                score+= this.getSensorWeight(sensorName);
+                score+= sensorWeights[ordinal];
             }
         }
         double sum= this.sumEntries();
         return sum == 0 ? 0 : score/sum;
     }
 
+    /**
+     * compute a normalized match score between two episodes in memory.  When
+     * the memory is packed the sensors are compared a word at a time and only
+     * the weights of the matching sensors are visited.
+     *
+     * @param episodes the memory holding both episodes
+     * @param index1 the index of the first episode
+     * @param index2 the index of the second episode
+     * @return a normalized match in range [0,1]
+     */
+    public double matchScore(EpisodicMemory<? extends Episode> episodes, int index1, int index2){
+        if(!episodes.isPacked()){
+            return matchScore(episodes.get(index1), episodes.get(index2));
+        }
+
+        double score= 0;
+        if(episodes.getActionOrdinal(index1) == episodes.getActionOrdinal(index2)) {
+            score+= this.getActionWeight();
+        }
+        long mask1= episodes.getSensorMask(index1);
+        //sensors that both episodes have and that have the same value
+        long matching= mask1 & episodes.getSensorMask(index2)
+                & ~(episodes.getSensorWord(index1) ^ episodes.getSensorWord(index2));
+        int[] ordinals= packedOrdinalsFor(episodes, mask1);
+        for(long bits= matching; bits != 0; bits &= bits - 1){
+            score+= sensorWeights[ordinals[Long.numberOfTrailingZeros(bits)]];
+        }
+        double sum= this.sumEntries();
+        return sum == 0 ? 0 : score/sum;
+    }
+
     public double getActionWeight() {
         return actionWeight;
     }
 
     public double getSensorWeight(String sensorName) {
-        if(sensorWeights.containsKey(sensorName)){
-            return sensorWeights.get(sensorName);
-        }
-
-        addSensorWeight(sensorName);
-        return 0.0;
+        return sensorWeights[ordinalOf(sensorName)];
     }
 
     /**
@@ -103,18 +149,18 @@ public class EpisodeWeights {
     }
 
     public int size(){
-        return sensorWeights.size()+1;
+        return sensorCount+1;
     }
 
     public double sumEntries(){
-        double sum= 0;
-        for(Double weight : sensorWeights.values()){
-            sum+= weight;
-        }
-
-        sum+= actionWeight;
+        return sensorTotal + actionWeight;
+    }
+    //endregion
 
-        return sum;
+    //region Protected Methods
+    protected void setSensorWeight(String sensorName, double weight){
+        sensorWeights[ordinalOf(sensorName)]= weight;
+        updateSensorTotal();
     }
     //endregion
 
@@ -135,8 +181,54 @@ public class EpisodeWeights {
         return x;
     }
 
-    private void addSensorWeight(String sensorName){
-        sensorWeights.put(sensorName,0.0);
+    /**
+     * re-adds the sensor weights rather than applying each change to the
+     * total so that rounding error can't build up over a long run
+     */
+    private void updateSensorTotal(){
+        double sum= 0;
+        for(int i= 0; i < sensorCount; i++){
+            sum+= sensorWeights[i];
+        }
+        sensorTotal= sum;
+    }
+
+    /**
+     * gets the ordinal of a sensor, adding it with a weight of 0 if it is new
+     */
+    private int ordinalOf(String sensorName){
+        Integer ordinal= sensorOrdinals.get(sensorName);
+        if(ordinal != null){
+            return ordinal;
+        }
+
+        if(sensorCount == sensorWeights.length){
+            sensorNames= Arrays.copyOf(sensorNames, sensorCount*2);
+            sensorWeights= Arrays.copyOf(sensorWeights, sensorCount*2);
+        }
+        sensorNames[sensorCount]= sensorName;
+        sensorWeights[sensorCount]= 0.0;
+        sensorOrdinals.put(sensorName, sensorCount);
+        return sensorCount++;
+    }
+
+    /**
+     * gets the translation from the memory's sensor ordinals to ours, first
+     * making sure every sensor in the given mask has been added
+     */
+    private int[] packedOrdinalsFor(EpisodicMemory<?> episodes, long mask){
+        if(packedMemory != episodes){
+            packedMemory= episodes;
+            packedOrdinals= new int[EpisodicMemory.MAX_PACKED_SENSORS];
+            Arrays.fill(packedOrdinals, -1);
+        }
+        for(long bits= mask; bits != 0; bits &= bits - 1){
+            int packedOrdinal= Long.numberOfTrailingZeros(bits);
+            if(packedOrdinals[packedOrdinal] < 0){
+                packedOrdinals[packedOrdinal]= ordinalOf(episodes.getSensorName(packedOrdinal));
+            }
+        }
+        return packedOrdinals;
     }
     //endregion
 
@@ -144,8 +236,8 @@ public class EpisodeWeights {
     @Override
     public String toString(){
         String str= Double.toString(actionWeight);
-        for(Double w : sensorWeights.values()){
-            str+= (", "+w.toString());
+        for(int i= 0; i < sensorCount; i++){
+            str+= (", "+Double.toString(sensorWeights[i]));
         }
 
         return str;
@@ -4,7 +4,10 @@ import agents.marz.MaRzAgent;
 import framework.*;
 import agents.juno.WeightTable.ScoredIndex;
 import utils.EpisodeUtils;
+import utils.SpillingEpisodicMemory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -44,6 +47,9 @@ public class JunoAgent extends MaRzAgent {
         marzCount= 0;
         junoCount= 0;
         this.weightTable= new WeightTable(1);
+        if (config.getSpillHotCapacity() > 0) {
+            this.episodicMemory= new SpillingEpisodicMemory(config.getSpillHotCapacity());
+        }
     }
     //endregion
 
@@ -192,6 +198,14 @@ public class JunoAgent extends MaRzAgent {
     public void onTestRunComplete()
     {
         super.onTestRunComplete();
+        //release the spill file if episodes were being spilled to disk
+        if (episodicMemory instanceof SpillingEpisodicMemory) {
+            try {
+                ((SpillingEpisodicMemory) episodicMemory).close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
     }
     //endregion
 
@@ -272,14 +286,11 @@ public class JunoAgent extends MaRzAgent {
      *          null if no goal as since been hit
      */
     private Sequence sequenceToGoal(int startIndex){
-        int index= startIndex;
-        while(!episodicMemory.get(index).hitGoal()){
-            if(index == episodicMemory.currentIndex()){
-                return null;
-            }
-            index++;
+        int index= episodicMemory.nextGoalIndex(startIndex);
+        if(index < 0){
+            return null;
         }
-        Action[] actions = EpisodeUtils.selectMoves(episodicMemory.subset(startIndex + 1, index + 1));
+        Action[] actions = EpisodeUtils.selectMoves(episodicMemory.window(startIndex + 1, index + 1));
         return new Sequence(actions);
     }
 
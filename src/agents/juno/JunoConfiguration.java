@@ -10,13 +10,22 @@ public class JunoConfiguration {
     private boolean canBail;
     //maturity to start bailing
     private double maturity;
+    //keep this many recent episodes on the heap and spill older ones to disk (0 never spills)
+    private int spillHotCapacity;
     //endregion
 
     //region Constructors
     public JunoConfiguration(boolean canBail, double bailSlider, double maturity){
+        this(canBail, bailSlider, maturity, 0);
+    }
+
+    public JunoConfiguration(boolean canBail, double bailSlider, double maturity, int spillHotCapacity){
+        if (spillHotCapacity < 0)
+            throw new IllegalArgumentException("spillHotCapacity cannot be less than 0");
         this.bailSlider= bailSlider;
         this.canBail= canBail;
         this.maturity= maturity;
+        this.spillHotCapacity= spillHotCapacity;
     }
     //endregion
 
@@ -32,5 +41,9 @@ public class JunoConfiguration {
     public double getMaturity() {
         return maturity;
     }
+
+    public int getSpillHotCapacity() {
+        return spillHotCapacity;
+    }
     //endregion
 }
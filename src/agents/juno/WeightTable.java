@@ -6,13 +6,23 @@ import utils.EpisodeUtils;
 import utils.EpisodicMemory;
 
 import java.util.ArrayList;
-import java.util.PriorityQueue;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class WeightTable {
+    //region Static Variables
+    //windows are scored in parallel chunks of this many once there are more than this many
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+    //endregion
+
     //region Class Variables
     //table of episode weights
     //indexed where 0 is most recent episode
     protected ArrayList<EpisodeWeights> table;
+    //the windows bestIndices() is about to score; kept between calls so it is only reallocated when it must grow
+    private int[] windows= new int[0];
     //endregion
 
     //region Constructors
@@ -54,38 +64,35 @@ public class WeightTable {
             throw new IllegalArgumentException("There has to be a window size of episodes since current goal");
         }
 
-        PriorityQueue<ScoredIndex> bestIndexes= new PriorityQueue<>(numMatches);
-
-        //shift which sub-sequence we are looking at
-        //down the episodic memory,
-        //curr index is the index of the most recent episode in the sub-sequence
-        for(int currIndex= lastGoalIndex-1; currIndex >= table.size()-1; currIndex-- ){
-            try{
-                double sequenceScore= calculateMatchScore(episodes, episodes.currentIndex(), currIndex);
+        //the current window is the same for every comparison so check it for a goal just once;
+        //if it has one, every comparison would collide with it and there is nothing to score
+        int currentIndex= episodes.currentIndex();
+        if(episodes.lastGoalIndex(currentIndex) > currentIndex - table.size()){
+            return new ScoredIndex[0];
+        }
 
-                //add this score to priority queue
-                //noramlize score to be in range [0,1]
-                bestIndexes.add(new ScoredIndex(currIndex,sequenceScore));
-            }
-            catch(WindowContainsGoalException containsGoal){
+        //shift which sub-sequence we are looking at down the episodic memory,
+        //gathering the windows to score; windows containing a goal are skipped
+        //by jumping straight past the goal (found through the memory's goal index)
+        int maxWindows= Math.max(0, lastGoalIndex - table.size() + 1);
+        if(this.windows.length < maxWindows){
+            this.windows= new int[Math.max(maxWindows, this.windows.length * 2)];
+        }
+        int[] windows= this.windows;
+        int windowCount= 0;
+        for(int currIndex= lastGoalIndex-1; currIndex >= table.size()-1; currIndex--){
+            int goal= episodes.lastGoalIndex(currIndex);
+            if(goal > currIndex - table.size()){
                 //set curr index to be the location of the goal we collided with
                 //next step (bottom of loop) we currIndex--;
-                currIndex= containsGoal.getGoalIndex();
+                currIndex= goal;
+                continue;
             }
-            currIndex= currIndex;
-        }
-
-        //maybe there werent 'numMatches' sequeunces to check, so we have less match
-        numMatches= Math.min(bestIndexes.size(),numMatches);
-
-        ScoredIndex[] indexArray= new ScoredIndex[numMatches];
-        int i= 0; //i is index of current attempted add to the array
-        for(;i<indexArray.length;i++){
-            ScoredIndex scoredIndex= bestIndexes.poll();
-            indexArray[i]= scoredIndex;
+            windows[windowCount++]= currIndex;
         }
 
-        return indexArray;
+        BestScores best= this.scoreWindows(episodes, currentIndex, windows, windowCount, numMatches);
+        return best.toArray();
     }
 
     /**
@@ -109,28 +116,17 @@ public class WeightTable {
             throw new IllegalArgumentException("indexes must be at less than episodes size");
         }
 
-        double sequenceScore= 0;
-        //compare each episode in the subsequence
-        //to the most recent memories
-        for (int i = 0; i < table.size(); i++) {
-            //compare the memories we just had
-            //with corresponding episode relative to currIndex
-            Episode ep1 = episodes.get(index1 - i);
-            Episode ep2 = episodes.get(index2 - i);
-
-            //check if either of these episodes are goals
-            if(ep1.hitGoal()){
-                throw new WindowContainsGoalException(index1-i);
-            }
-            if(ep2.hitGoal()){
-                throw new WindowContainsGoalException(index2-i);
-            }
-
-            //add this episode's match score to the sequence's match score
-            sequenceScore += table.get(i).matchScore(ep1, ep2);
+        //check if either window contains a goal; report the one nearest the
+        //end of its window (favoring the first window on a tie)
+        int goal1= episodes.lastGoalIndex(index1);
+        int goal2= episodes.lastGoalIndex(index2);
+        int offset1= (goal1 > index1 - table.size()) ? index1 - goal1 : Integer.MAX_VALUE;
+        int offset2= (goal2 > index2 - table.size()) ? index2 - goal2 : Integer.MAX_VALUE;
+        if(offset1 != Integer.MAX_VALUE || offset2 != Integer.MAX_VALUE){
+            throw new WindowContainsGoalException(offset1 <= offset2 ? goal1 : goal2);
         }
 
-        return sequenceScore/table.size();
+        return this.scoreWindow(episodes, index1, index2);
     }
 
     /**
@@ -161,6 +157,8 @@ public class WeightTable {
     public void updateOnGoal(EpisodicMemory<Episode> episodes, int goalSequenceIndex){
         int preGoalSequenceIndex= goalSequenceIndex - 1;
 
+        //a goal on the very first episode has nothing before it to learn from
+        if(episodes.currentIndex() < 1) return;
         int previousGoalIndex = episodes.lastGoalIndex(episodes.currentIndex()-1);
 
         //do nothing if our pregoal sequence contains this goal
@@ -170,12 +168,14 @@ public class WeightTable {
         //also, if there is no previos goal, do nothing
         if(previousGoalIndex < 0) return;
 
-        Action[] actions = EpisodeUtils.selectMoves(episodes.subset(goalSequenceIndex));
+        Action[] actions = EpisodeUtils.selectMoves(episodes.window(goalSequenceIndex));
         Sequence goalSequence = new Sequence(actions);
 
         int nextGoalIndex= previousGoalIndex;
         //nextGoalIndex is the index of the goal after the current window
         int startIndex = nextGoalIndex-1;
+        //no room for a window before the previous goal
+        if(startIndex < table.size()-1) return;
 
         previousGoalIndex = episodes.lastGoalIndex(startIndex);
 
@@ -185,13 +185,13 @@ public class WeightTable {
             if(i-table.size() <= previousGoalIndex) {
                 i = previousGoalIndex -1;
                 nextGoalIndex = previousGoalIndex;
-                previousGoalIndex = episodes.lastGoalIndex(i);
 
                 if(i < table.size()-1){
                     return;
                 }
+                previousGoalIndex = episodes.lastGoalIndex(i);
             }
-            Action[] moves2 = EpisodeUtils.selectMoves(episodes.subset(i + 1,nextGoalIndex + 1));
+            Action[] moves2 = EpisodeUtils.selectMoves(episodes.window(i + 1,nextGoalIndex + 1));
             Sequence goalSequence2 = new Sequence(moves2);
             double attemptSimilarity = getAttemptSimlarity(goalSequence, goalSequence2);
             double actualSimilarity = getActualSimilarity(goalSequence, goalSequence2);
@@ -265,6 +265,59 @@ public class WeightTable {
     //endregion
 
     //region Private Methods
+    /**
+     * scores the window ending at index2 against the window ending at index1
+     * without checking either for a goal
+     */
+    private double scoreWindow(EpisodicMemory<Episode> episodes, int index1, int index2){
+        double sequenceScore= 0;
+        //compare each episode in the subsequence
+        //to the most recent memories
+        for (int i = 0; i < table.size(); i++) {
+            //compare the memories we just had
+            //with corresponding episode relative to currIndex
+            //add this episode's match score to the sequence's match score
+            sequenceScore += table.get(i).matchScore(episodes, index1 - i, index2 - i);
+        }
+
+        return sequenceScore/table.size();
+    }
+
+    /**
+     * scores each of the given windows against the current window, keeping only the best 'numMatches'.
+     * Large memories are split into chunks that are scored in parallel and then merged.
+     */
+    private BestScores scoreWindows(EpisodicMemory<Episode> episodes, int currentIndex, int[] windows, int windowCount, int numMatches){
+        if(windowCount < PARALLEL_THRESHOLD){
+            BestScores best= new BestScores(numMatches);
+            for(int w= 0; w < windowCount; w++){
+                best.offer(windows[w], this.scoreWindow(episodes, currentIndex, windows[w]));
+            }
+            return best;
+        }
+
+        //scoring registers any sensor the weights haven't seen yet; the current window supplies
+        //every sensor name that is looked up so score one window up front to keep the chunks read-only
+        BestScores first= new BestScores(numMatches);
+        first.offer(windows[0], this.scoreWindow(episodes, currentIndex, windows[0]));
+
+        int chunks= (windowCount + PARALLEL_THRESHOLD - 1) / PARALLEL_THRESHOLD;
+        List<BestScores> chunkBests= IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> {
+                    BestScores best= new BestScores(numMatches);
+                    int end= Math.min(windowCount, (chunk + 1) * PARALLEL_THRESHOLD);
+                    for(int w= Math.max(1, chunk * PARALLEL_THRESHOLD); w < end; w++){
+                        best.offer(windows[w], this.scoreWindow(episodes, currentIndex, windows[w]));
+                    }
+                    return best;
+                })
+                .collect(Collectors.toList());
+        for(BestScores chunkBest : chunkBests){
+            first.merge(chunkBest);
+        }
+        return first;
+    }
+
     /**
      * gets the similarity of the 'attempts' after the pre-goal sequence and the window
      * @param goalSequence1
@@ -306,6 +359,81 @@ public class WeightTable {
     //endregion
 
     //region Nested Classes
+    /**
+     * a bounded min-heap (on score) holding the best scored windows seen so far.
+     * Among equal scores the more recent window is preferred.
+     */
+    private class BestScores {
+        private final int[] indexes;
+        private final double[] scores;
+        private int size= 0;
+
+        BestScores(int capacity){
+            this.indexes= new int[capacity];
+            this.scores= new double[capacity];
+        }
+
+        void offer(int index, double score){
+            if(this.size < this.indexes.length){
+                int slot= this.size++;
+                //sift up
+                while(slot > 0){
+                    int parent= (slot - 1) / 2;
+                    if(!this.worse(index, score, this.indexes[parent], this.scores[parent])) break;
+                    this.indexes[slot]= this.indexes[parent];
+                    this.scores[slot]= this.scores[parent];
+                    slot= parent;
+                }
+                this.indexes[slot]= index;
+                this.scores[slot]= score;
+            }
+            else if(this.size > 0 && this.worse(this.indexes[0], this.scores[0], index, score)){
+                //replace the worst and sift down
+                int slot= 0;
+                while(true){
+                    int child= 2 * slot + 1;
+                    if(child >= this.size) break;
+                    if(child + 1 < this.size && this.worse(this.indexes[child + 1], this.scores[child + 1], this.indexes[child], this.scores[child]))
+                        child++;
+                    if(!this.worse(this.indexes[child], this.scores[child], index, score)) break;
+                    this.indexes[slot]= this.indexes[child];
+                    this.scores[slot]= this.scores[child];
+                    slot= child;
+                }
+                this.indexes[slot]= index;
+                this.scores[slot]= score;
+            }
+        }
+
+        BestScores merge(BestScores other){
+            for(int i= 0; i < other.size; i++){
+                this.offer(other.indexes[i], other.scores[i]);
+            }
+            return this;
+        }
+
+        /** @return the kept windows, best first */
+        ScoredIndex[] toArray(){
+            Integer[] order= new Integer[this.size];
+            for(int i= 0; i < this.size; i++) order[i]= i;
+            Arrays.sort(order, (x, y) -> {
+                if(this.worse(this.indexes[x], this.scores[x], this.indexes[y], this.scores[y])) return 1;
+                if(this.worse(this.indexes[y], this.scores[y], this.indexes[x], this.scores[x])) return -1;
+                return 0;
+            });
+            ScoredIndex[] result= new ScoredIndex[this.size];
+            for(int i= 0; i < this.size; i++){
+                result[i]= new ScoredIndex(this.indexes[order[i]], this.scores[order[i]]);
+            }
+            return result;
+        }
+
+        private boolean worse(int index1, double score1, int index2, double score2){
+            if(score1 != score2) return score1 < score2;
+            return index1 < index2;
+        }
+    }
+
     public class ScoredIndex implements Comparable<ScoredIndex> {
         //region Class Variables
         public int index;
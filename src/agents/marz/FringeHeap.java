@@ -0,0 +1,130 @@
+package agents.marz;
+
+import java.util.Arrays;
+
+/**
+ * FringeHeap
+ * Keeps the nodes on the fringe of a {@link SuffixTree} ordered by weight so that both the best (lightest) and the
+ * worst (heaviest) node can be found in O(1) and maintained in O(log n).
+ *
+ * It is a pair of indexed binary heaps over the same nodes: one ordered lightest first and one heaviest first.  Each
+ * node remembers its slot in both so a node whose weight changes can be re-positioned in place.  Nodes of equal
+ * weight are ordered by when they joined the fringe (oldest first) which keeps selection deterministic.
+ *
+ * @author Zachary Paul Faltersack
+ * @version 0.95
+ */
+class FringeHeap {
+    //region Class Variables
+    private SuffixNode[] lightest = new SuffixNode[16];
+    private SuffixNode[] heaviest = new SuffixNode[16];
+    private int size = 0;
+    private long arrivals = 0;
+    //endregion
+
+    //region Package Methods
+    int size() {
+        return this.size;
+    }
+
+    SuffixNode peekLightest() {
+        return (this.size == 0) ? null : this.lightest[0];
+    }
+
+    SuffixNode peekHeaviest() {
+        return (this.size == 0) ? null : this.heaviest[0];
+    }
+
+    void add(SuffixNode node) {
+        if (this.size == this.lightest.length) {
+            this.lightest = Arrays.copyOf(this.lightest, this.size * 2);
+            this.heaviest = Arrays.copyOf(this.heaviest, this.size * 2);
+        }
+        node.fringe = this;
+        node.fringeArrival = this.arrivals++;
+        this.lightest[this.size] = node;
+        node.lightestSlot = this.size;
+        this.heaviest[this.size] = node;
+        node.heaviestSlot = this.size;
+        this.size++;
+        this.siftUp(this.lightest, node.lightestSlot, true);
+        this.siftUp(this.heaviest, node.heaviestSlot, false);
+    }
+
+    void remove(SuffixNode node) {
+        if (node.fringe != this)
+            return;
+        int last = --this.size;
+        this.removeAt(this.lightest, node.lightestSlot, last, true);
+        this.removeAt(this.heaviest, node.heaviestSlot, last, false);
+        node.fringe = null;
+    }
+
+    /**
+     * Restores the heap order around a node whose weight has changed.
+     */
+    void update(SuffixNode node) {
+        if (node.fringe != this)
+            return;
+        this.siftDown(this.lightest, this.siftUp(this.lightest, node.lightestSlot, true), true);
+        this.siftDown(this.heaviest, this.siftUp(this.heaviest, node.heaviestSlot, false), false);
+    }
+    //endregion
+
+    //region Private Methods
+    private void removeAt(SuffixNode[] heap, int slot, int last, boolean lightestFirst) {
+        SuffixNode moved = heap[last];
+        heap[last] = null;
+        if (slot == last)
+            return;
+        this.place(heap, moved, slot, lightestFirst);
+        this.siftDown(heap, this.siftUp(heap, slot, lightestFirst), lightestFirst);
+    }
+
+    private int siftUp(SuffixNode[] heap, int slot, boolean lightestFirst) {
+        SuffixNode node = heap[slot];
+        double weight = node.getWeight();
+        while (slot > 0) {
+            int parent = (slot - 1) / 2;
+            if (!this.before(node, weight, heap[parent], lightestFirst))
+                break;
+            this.place(heap, heap[parent], slot, lightestFirst);
+            slot = parent;
+        }
+        this.place(heap, node, slot, lightestFirst);
+        return slot;
+    }
+
+    private void siftDown(SuffixNode[] heap, int slot, boolean lightestFirst) {
+        SuffixNode node = heap[slot];
+        int half = this.size / 2;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            int right = child + 1;
+            if (right < this.size && this.before(heap[right], heap[right].getWeight(), heap[child], lightestFirst))
+                child = right;
+            if (!this.before(heap[child], heap[child].getWeight(), node, lightestFirst))
+                break;
+            this.place(heap, heap[child], slot, lightestFirst);
+            slot = child;
+        }
+        this.place(heap, node, slot, lightestFirst);
+    }
+
+    /** @return true if node (with the given weight) belongs above other in the heap */
+    private boolean before(SuffixNode node, double weight, SuffixNode other, boolean lightestFirst) {
+        double otherWeight = other.getWeight();
+        if (weight != otherWeight)
+            return lightestFirst ? weight < otherWeight : weight > otherWeight;
+        return node.fringeArrival < other.fringeArrival;
+    }
+
+    private void place(SuffixNode[] heap, SuffixNode node, int slot, boolean lightestFirst) {
+        heap[slot] = node;
+        if (lightestFirst)
+            node.lightestSlot = slot;
+        else
+            node.heaviestSlot = slot;
+    }
+    //endregion
+}
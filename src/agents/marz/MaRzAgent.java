@@ -122,7 +122,7 @@ public class MaRzAgent implements IAgent {
 	protected void markSuccess() {
 		if (this.currentSequence.hasNext()) {
 			// Was partial match so find the best node to update
-			Action[] actions = EpisodeUtils.selectMoves(this.episodicMemory.subset(this.lastGoalIndex + 1));
+			Action[] actions = EpisodeUtils.selectMoves(this.episodicMemory.window(this.lastGoalIndex + 1));
 			Sequence goalSequence = new Sequence(actions);
 			SuffixNode node = this.suffixTree.findBestMatch(goalSequence);
 			// This will happen if we find the goal in fewer actions than a suffix that would exist in the fringe of our tree.
@@ -144,7 +144,7 @@ public class MaRzAgent implements IAgent {
 
 		this.setActiveNode(newBestNode);
 
-		this.lastPermutationIndex= this.lastPermutationIndex + (long)Math.pow(alphabet.length, this.activeNode.getSuffix().getLength());
+		this.lastPermutationIndex = Math.addExact(this.lastPermutationIndex, this.sequenceGenerator.getSuffixStride(this.activeNode.getSuffix().getLength()));
 
 		Sequence sequence = this.sequenceGenerator.nextPermutation(lastPermutationIndex);
 		if (!sequence.endsWith(this.activeNode.getSuffix()))
@@ -4,9 +4,8 @@ import framework.Sequence;
 import framework.Episode;
 import framework.Action;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.function.Function;
 
 /**
@@ -21,6 +20,8 @@ public class SuffixNode {
     // the likeliness to jump back to another node
     // (should be in the range (0.0 - 1.0)
     public static final double G_WEIGHT = 0.05;
+
+    private static final int[] NO_INDEXES = new int[0];
     //endregion
 
     //region Class Variables
@@ -29,9 +30,18 @@ public class SuffixNode {
     private Function<Integer, Episode> lookupEpisode;
     private double f; // the current overall potential of this suffix (f = g + h)
     private Sequence suffix;
-    private ArrayList<Integer> successIndexList = new ArrayList<>();
-    private ArrayList<Integer> failsIndexList = new ArrayList<>();
+    // episode indexes stored as growable primitive arrays (no boxing)
+    private int[] successIndexes = NO_INDEXES;
+    private int successCount = 0;
+    private int[] failIndexes = NO_INDEXES;
+    private int failCount = 0;
     private boolean foundGoal = false;
+
+    // bookkeeping for the FringeHeap of the tree this node is on (if any)
+    FringeHeap fringe;
+    int lightestSlot;
+    int heaviestSlot;
+    long fringeArrival;
     //endregion
 
     //region Constructors
@@ -68,7 +78,7 @@ public class SuffixNode {
         // Do not split of the children aren't viable
         SuffixNode[] childArray = children.values().toArray(new SuffixNode[0]);
         for (SuffixNode child : childArray) {
-            if (child.failsIndexList.size() == 0)
+            if (child.failCount == 0)
                 return null;
         }
 
@@ -77,12 +87,12 @@ public class SuffixNode {
 
     public boolean canSplit() {
         // We can split after we've found the goal but then failed (or failed and then found the goal ;p)
-        return this.foundGoal && this.failsIndexList.size() != 0;
+        return this.foundGoal && this.failCount != 0;
     }
 
     public double getNormalizedWeight(){
-        int successCount = this.successIndexList.size();
-        int failCount = this.failsIndexList.size();
+        int successCount = this.successCount;
+        int failCount = this.failCount;
 
         if (successCount + failCount == 0) {
             return 0;
@@ -113,15 +123,34 @@ public class SuffixNode {
     }
 
     public void addSuccessIndex(int index) {
-        this.successIndexList.add(index);
+        if (this.successCount == this.successIndexes.length)
+            this.successIndexes = Arrays.copyOf(this.successIndexes, Math.max(4, this.successCount * 2));
+        this.successIndexes[this.successCount++] = index;
+        this.weightChanged();
     }
 
     public void addFailIndex(int index) {
-        this.failsIndexList.add(index);
+        if (this.failCount == this.failIndexes.length)
+            this.failIndexes = Arrays.copyOf(this.failIndexes, Math.max(4, this.failCount * 2));
+        this.failIndexes[this.failCount++] = index;
+        this.weightChanged();
     }
     //endregion
 
     //region Private Methods
+    private void weightChanged() {
+        if (this.fringe != null)
+            this.fringe.update(this);
+    }
+
+    private int actionPosition(Action action) {
+        for (int i = 0; i < this.possibleActions.length; i++) {
+            if (this.possibleActions[i].equals(action))
+                return i;
+        }
+        throw new IllegalArgumentException("action " + action + " is not a possible action");
+    }
+
     private void updateHeuristic() {
         double gWeight = this.g * G_WEIGHT;
 
@@ -130,9 +159,15 @@ public class SuffixNode {
     }// updateHeuristic
 
     private void divyIndexes(HashMap<Action, SuffixNode> children, boolean success) {
-        List<Integer> parentList = (success ? this.successIndexList : this.failsIndexList);
-        for (int parentIndex : parentList) {
-            int index = parentIndex - 1;  //the -1 because child adds a letter
+        int[] parentIndexes = (success ? this.successIndexes : this.failIndexes);
+        int parentCount = (success ? this.successCount : this.failCount);
+
+        // first pass: find the child (by position in possibleActions) that each index belongs to
+        int[] targets = new int[parentCount];
+        int[] childCounts = new int[this.possibleActions.length];
+        for (int i = 0; i < parentCount; i++) {
+            targets[i] = -1;
+            int index = parentIndexes[i] - 1;  //the -1 because child adds a letter
             //If we fall off the back of the epmem then it can't be matched
             if (index < 0)
                 continue;
@@ -143,12 +178,32 @@ public class SuffixNode {
                 continue;
             }// if
 
-            Action action = episode.getAction();
+            int target = this.actionPosition(episode.getAction());
+            targets[i] = target;
+            childCounts[target]++;
+        }// for
+
+        // second pass: hand each child an exactly sized array of its indexes
+        SuffixNode[] targetChildren = new SuffixNode[this.possibleActions.length];
+        for (int a = 0; a < this.possibleActions.length; a++) {
+            SuffixNode child = children.get(this.possibleActions[a]);
+            targetChildren[a] = child;
+            if (childCounts[a] == 0)
+                continue;
             if (success)
-                children.get(action).addSuccessIndex(index);
+                child.successIndexes = new int[childCounts[a]];
             else
-                children.get(action).addFailIndex(index);
-        }// for
+                child.failIndexes = new int[childCounts[a]];
+        }
+        for (int i = 0; i < parentCount; i++) {
+            if (targets[i] < 0)
+                continue;
+            SuffixNode child = targetChildren[targets[i]];
+            if (success)
+                child.successIndexes[child.successCount++] = parentIndexes[i] - 1;
+            else
+                child.failIndexes[child.failCount++] = parentIndexes[i] - 1;
+        }
     }//divyIndexes
     //endregion
 
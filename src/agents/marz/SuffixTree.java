@@ -2,7 +2,7 @@ package agents.marz;
 
 import framework.NamedOutput;
 import framework.Sequence;
-import java.util.*;
+import java.util.HashMap;
 
 /**
  * SuffixTree
@@ -15,6 +15,8 @@ public class SuffixTree {
     //region Class Variables
     /** hash table of all nodes on the fringe of our search */
     private HashMap<Sequence, SuffixNode> hashFringe = new HashMap<>();
+    /** the same nodes as hashFringe ordered by weight */
+    private FringeHeap weightedFringe = new FringeHeap();
     private int maxSize;
     //endregion
 
@@ -56,26 +58,17 @@ public class SuffixTree {
             this.addNode(aChildren);
         }// for
 
-        this.hashFringe.remove(node.getSuffix());
+        this.removeNode(node);
         return true;
     }
 
     /**
      * findBestNodeToTry
      *
-     * finds node with lowest heuristic
+     * finds node with lowest heuristic (the oldest such node on a tie)
      */
     public SuffixNode findBestNodeToTry() {
-        double bestWeight = Double.MAX_VALUE;
-        SuffixNode bestNode = null;
-        for (SuffixNode node : this.hashFringe.values()) {
-            double nodeWeight = node.getWeight();
-            if (nodeWeight < bestWeight) {
-                bestWeight = nodeWeight;
-                bestNode = node;
-            }
-        }
-        return bestNode;
+        return this.weightedFringe.peekLightest();
     }// findBestNodeToTry
 
     /**
@@ -86,12 +79,13 @@ public class SuffixTree {
     public SuffixNode findBestMatch(Sequence sequence) {
         if (sequence == null)
             throw new IllegalArgumentException("sequence cannot be null");
-        List<Sequence> suffixKeys = Arrays.asList(this.hashFringe.keySet().toArray(new Sequence[0]));
-        Collections.sort(suffixKeys);  //Shortest to longest
-        for (Sequence suffixKey : suffixKeys)
+        // probe each suffix of the sequence, longest first; suffixes are views that share the sequence's actions
+        // and cached hashes so each probe is a single hash lookup
+        for (int start = 0; start <= sequence.getLength(); start++)
         {
-            if (sequence.endsWith(suffixKey))
-                return this.hashFringe.get(suffixKey);
+            SuffixNode node = this.hashFringe.get(sequence.getSubsequence(start));
+            if (node != null)
+                return node;
         }
         return null;
     }
@@ -122,24 +116,28 @@ public class SuffixTree {
     private void addNode(SuffixNode node) {
         // Erase worst node in the hashFringe once we hit our Constant limit
         while (hashFringe.size() > this.maxSize) {
-            Sequence worstSequence = this.findWorstNodeToTry();
-            hashFringe.remove(worstSequence);
+            SuffixNode worstNode = this.findWorstNodeToTry();
+            if (worstNode == null)
+                break;
+            this.removeNode(worstNode);
         }// if
-        this.hashFringe.put(node.getSuffix(), node);
+        SuffixNode replaced = this.hashFringe.put(node.getSuffix(), node);
+        if (replaced != null)
+            this.weightedFringe.remove(replaced);
+        this.weightedFringe.add(node);
     }
 
-    private Sequence findWorstNodeToTry() {
-        double worstWeight = Double.MIN_VALUE;
-        Sequence worstSequence = null;
-        for (Sequence sequence : this.hashFringe.keySet()) {
-            SuffixNode node = this.hashFringe.get(sequence);
-            double nodeWeight = node.getWeight();
-            if (nodeWeight > worstWeight) {
-                worstWeight = nodeWeight;
-                worstSequence = sequence;
-            }
-        }
-        return worstSequence;
+    private void removeNode(SuffixNode node) {
+        this.hashFringe.remove(node.getSuffix());
+        this.weightedFringe.remove(node);
+    }
+
+    private SuffixNode findWorstNodeToTry() {
+        // nodes without any weight are never evicted
+        SuffixNode worstNode = this.weightedFringe.peekHeaviest();
+        if (worstNode == null || worstNode.getWeight() <= Double.MIN_VALUE)
+            return null;
+        return worstNode;
     }// findWorstNodeToTry
     //endregion
 }
@@ -4,6 +4,7 @@ public class Heuristic {
     private final double alpha;
     private final double beta;
     private double p = 0.0;
+    private long version = 0;
 
     public Heuristic(double alpha, double beta) {
         this.alpha = alpha;
@@ -11,7 +12,18 @@ public class Heuristic {
     }
 
     public void setGoalProbability(double p){
-        this.p = p;
+        if (this.p != p) {
+            this.p = p;
+            version++;
+        }
+    }
+
+    /**
+     * @return a number that changes whenever the heuristic values change so that values calculated with it can be
+     * cached
+     */
+    public long getVersion() {
+        return version;
     }
 
     public double getHeuristic(int depth) {
@@ -10,8 +10,15 @@ import java.util.*;
 public class RuleNode {
     //private static RuleNodeRoot root;
 
+    //the result of getExpectation when a node's expected value is not defined
+    public static final double NO_EXPECTATION = -1.0;
+
     protected int sense;
-    protected HashMap<Action, ArrayList<RuleNode>> children;
+    // children[slot] holds the children for the action(s) using that slot (see childSlot), the first childCounts[slot]
+    // of which are in use.  childSenses mirrors the children's senses so a child can be found without visiting them.
+    protected RuleNode[][] children;
+    protected int[] childCounts;
+    protected int[][] childSenses;
     protected int frequency;
     protected final Action[] potentialActions;
 
@@ -28,10 +35,23 @@ public class RuleNode {
     private Action bestAction = null;
     protected boolean explore = false;
 
-    protected boolean visited = true;
+    protected RuleNode parent = null;
+    // The expected value is cached until a frequency in this node's subtree changes (which marks it and its ancestors
+    // dirty) or the heuristic it was calculated with changes.
+    private boolean dirty = true;
+    private double cachedValue = NO_EXPECTATION;
+    private Heuristic cachedHeuristic = null;
+    private long cachedHeuristicVersion;
 
     // constructor
     public RuleNode(Action[] potentialActions, int sense, int maxDepth, int currentDepth){
+        this(potentialActions, sense, maxDepth, currentDepth, (potentialActions == null) ? 0 : potentialActions.length);
+    }
+
+    /**
+     * @param slots the number of child slots this node needs (see childSlot).  Normally one per action.
+     */
+    protected RuleNode(Action[] potentialActions, int sense, int maxDepth, int currentDepth, int slots){
         if (currentDepth < 0) {
             throw new IllegalArgumentException("Current depth cannot be negative!");
         }
@@ -57,26 +77,51 @@ public class RuleNode {
         moveFrequencies = new int[alphabetSize];
         this.maxDepth = maxDepth;
 
-        if (maxDepth > 0) {//if maxDepth is positive, we are not yet at depth limit
-            children = new HashMap<>(alphabetSize);
-            for (Action action : potentialActions) {
-                //initialize the list for a given possible action and make the goal node--which is a special case--the first
-                // element. This means that the first element is *always* the goal child for every possible action, which is handy.
-                ArrayList<RuleNode> list = new ArrayList<>(Collections.singletonList(
-                        new RuleNodeGoal(potentialActions, currentDepth + 1))
-                );
-                children.put(action, list);
+        children = new RuleNode[slots][];
+        childCounts = new int[slots];
+        childSenses = new int[slots][];
+        for (int slot = 0; slot < slots; slot++) {
+            if (maxDepth > 0) {//if maxDepth is positive, we are not yet at depth limit
+                //make the goal node--which is a special case--the first child for each possible action. This means
+                // that the first element is *always* the goal child for every possible action, which is handy.
+                RuleNode goal = new RuleNodeGoal(potentialActions, currentDepth + 1);
+                goal.parent = this;
+                children[slot] = new RuleNode[] { goal, null };
+                childSenses[slot] = new int[] { -1, 0 };
+                childCounts[slot] = 1;
+            } else { //at the depth limit, don't build more nodes.
+                children[slot] = new RuleNode[0];
+                childSenses[slot] = new int[0];
+            }
+        }
+    }
+
+    /**
+     * @return the child slot for the action with the given index
+     */
+    protected int childSlot(int actionIndex) {
+        return actionIndex;
+    }
+
+    /**
+     * @return the index of the given action in potentialActions or -1 if it is not one of them
+     */
+    protected int actionIndex(Action action) {
+        for (int i = 0; i < potentialActions.length; i++) {
+            if (potentialActions[i] == action) {
+                return i;
             }
-        } else { //at the depth limit, don't build more nodes.
-            children = new HashMap<>(alphabetSize);
-            for (Action action: potentialActions){
-                children.put(action, new ArrayList<>());
+        }
+        for (int i = 0; i < potentialActions.length; i++) {
+            if (potentialActions[i].equals(action)) {
+                return i;
             }
         }
+        return -1;
     }
 
     protected int getMoveFrequency(Action action){
-        int index = Arrays.asList(potentialActions).indexOf(action);
+        int index = actionIndex(action);
         if (index == -1) {
             return -1;
         }
@@ -92,16 +137,17 @@ public class RuleNode {
      * @return the new frequency
      */
     public int incrementMoveFrequency(Action action){
-        int index = Arrays.asList(potentialActions).indexOf(action);
+        int index = actionIndex(action);
         if (index == -1) {
             throw new IllegalArgumentException("Action not valid");
         }
 
+        markDirty();
         return ++moveFrequencies[index];
     }
 
     public boolean inAlphabet(Action action){
-        return Arrays.asList(potentialActions).contains(action);
+        return actionIndex(action) != -1;
     }
 
     // The "goal probability" of a sequence of actions is the estimated likelihood that a goal will be reached by the end
@@ -136,6 +182,7 @@ public class RuleNode {
         // in this case we assume that this couldn't have reached the goal; at the very least we have no reason to think
         // this action *would* reach the goal.
         Action action = actions.get(moveIdx);
+        int index = actionIndex(action);
         int frequency = getMoveFrequency(action);
         if (frequency == -1) { //we didn't find the action
             throw new IllegalArgumentException("Action not in alphabet!");
@@ -153,14 +200,90 @@ public class RuleNode {
 
         // TL;DR: how likely has the goal been reached by the time we've made the particular moveIdx-th action in the actions sequence
         double probability = 0;
-        ArrayList<RuleNode> children = this.children.get(action);
-        for (RuleNode child : children) {
+        int slot = childSlot(index);
+        RuleNode[] children = this.children[slot];
+        for (int i = 0; i < childCounts[slot]; i++) {
+            RuleNode child = children[i];
             double childGoalProbability = child.getGoalProbability(actions, moveIdx+1);
             probability += child.frequency * childGoalProbability;
         }
         return probability / frequency;
     }
 
+    /**
+     * Gets the goal probability (see getGoalProbability) of each of a batch of sequences in a single walk of the tree.
+     * Sequences that share a prefix share the walk down that prefix, so evaluating many sequences costs about as much
+     * as walking the part of the tree they reach.
+     *
+     * @param sequences The sequences of actions to evaluate
+     * @return The goal probability of each sequence, in the same order
+     */
+    public double[] getGoalProbabilities(List<? extends List<Action>> sequences) {
+        if (sequences == null) {
+            throw new IllegalArgumentException("sequences cannot be null");
+        }
+        int[] members = new int[sequences.size()];
+        for (int i = 0; i < members.length; i++) {
+            if (sequences.get(i) == null) {
+                throw new IllegalArgumentException("Moves cannot be null");
+            }
+            members[i] = i;
+        }
+        double[] probabilities = new double[members.length];
+        addGoalProbabilities(sequences, members, 0, members.length, 0, 1.0, probabilities);
+        return probabilities;
+    }
+
+    /**
+     * Adds weight times this node's goal probability for each sequence in members[from, to) to its entry in
+     * probabilities.  The goal probability is a frequency weighted sum over the children, so the weight carries each
+     * child's share down the tree.  members[from, to) is reordered so that sequences making the same move are together.
+     */
+    protected void addGoalProbabilities(List<? extends List<Action>> sequences, int[] members, int from, int to,
+                                        int moveIdx, double weight, double[] probabilities) {
+        if (maxDepth == 0) {
+            return;
+        }
+
+        //sequences that have already ended add nothing
+        int start = from;
+        for (int i = from; i < to; i++) {
+            List<Action> actions = sequences.get(members[i]);
+            if (actions.size() <= moveIdx) {
+                swap(members, i, start++);
+            } else if (actionIndex(actions.get(moveIdx)) == -1) {
+                throw new IllegalArgumentException("Action not in alphabet!");
+            }
+        }
+
+        //each group of sequences that lead to the same children is walked down together
+        while (start < to) {
+            Action action = sequences.get(members[start]).get(moveIdx);
+            int slot = childSlot(actionIndex(action));
+            int end = start + 1;
+            for (int i = end; i < to; i++) {
+                if (childSlot(actionIndex(sequences.get(members[i]).get(moveIdx))) == slot) {
+                    swap(members, i, end++);
+                }
+            }
+            int frequency = getMoveFrequency(action);
+            if (frequency > 0) {
+                for (int i = 0; i < childCounts[slot]; i++) {
+                    RuleNode child = children[slot][i];
+                    double childWeight = weight * child.frequency / frequency;
+                    child.addGoalProbabilities(sequences, members, start, end, moveIdx + 1, childWeight, probabilities);
+                }
+            }
+            start = end;
+        }
+    }
+
+    private static void swap(int[] values, int i, int j) {
+        int value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
     /**
      * Gets the expected number of actions to goal from this node, assuming the best possible move is always made.
      * Fails if it cannot be calculated.
@@ -169,30 +292,23 @@ public class RuleNode {
      *      Node is in current (this prevents loops)
      *      A child in every possible move fails
      *
-     * This function is cached. When unvisit is called, it will begin returning cached results. When occurs is called,
-     * it will stop caching the results until it is unvisited. The idea is that it only recalculates if it or a child is
-     * in current, and caches if it has not been visited since the last goal.
-     * TODO: Is cache correct for a failed EV result (ex depth limit)?
+     * This function is cached. The cached value is reused until a frequency changes in this node's subtree (see
+     * markDirty) or it is asked for with a different heuristic (or one whose goal probability has since changed).
+     * Loops through current need no special handling: every node in current has its move frequency incremented on the
+     * next step, which dirties the nodes whose values depended on it.
      *
      * @param current The nodes in current. Needed so that EV calculation fails if it hits another current node.
      * @param top Whether this node is in current. Should be true unless called recursively. Causes code to ignore current check.
      * @param heuristic The heuristic to value unexplored actions
-     * @return The expected value (if it is defined)
+     * @return The expected value or NO_EXPECTATION if it is not defined
      *
      * Side effects:
-     *      If it returns an empty optional, explore may be changed to an arbitrary value
-     *      Otherwise, expectation stores the value contained in the optional (used for caching result)
+     *      If it returns NO_EXPECTATION, explore may be changed to an arbitrary value
+     *      Otherwise, expectation stores the returned value
      *                 bestAction stores the move that led to the minimum expected value
      *                 explore will be true if bestAction is an explore move (never been done before)
      */
-    public Optional<Double> getExpectation(ArrayList<RuleNode> current, boolean top, Heuristic heuristic){
-
-        //Cached value
-        //TODO: Fix so that it will uncache if h changes
-        if (!visited && expectation != -1.0){
-            return Optional.of(expectation);
-        }
-
+    public double getExpectation(ArrayList<RuleNode> current, boolean top, Heuristic heuristic){
         //Error check
         if (current == null){
             throw new IllegalArgumentException("current cannot be null");
@@ -204,48 +320,56 @@ public class RuleNode {
         if (!top && current.contains(this)){
             bestAction = null;
             expectation = -1;
-            return Optional.empty();
+            //the side effects above no longer describe the cached value
+            dirty = true;
+            return NO_EXPECTATION;
         }
 
         //BASE CASE: At depth limit
         if (maxDepth == 0){
             bestAction = null;
             expectation = -1;
-            return Optional.empty();
+            return NO_EXPECTATION;
         }
 
+        //Cached value
+        if (!dirty && cachedHeuristic == heuristic && cachedHeuristicVersion == heuristic.getVersion()){
+            return cachedValue;
+        }
 
         //BASE CASE: No children
 
         //RECURSIVE CASE: Add 1 to expectation of best child
-        return getEVRecursive(current, heuristic);
+        cachedValue = getEVRecursive(current, heuristic);
+        cachedHeuristic = heuristic;
+        cachedHeuristicVersion = heuristic.getVersion();
+        dirty = false;
+        return cachedValue;
     }
 
-    protected Optional<Double> getEVRecursive(ArrayList<RuleNode> current, Heuristic heuristic){
-        Optional<Double> best = Optional.empty();
+    protected double getEVRecursive(ArrayList<RuleNode> current, Heuristic heuristic){
+        double best = NO_EXPECTATION;
         int bestMoveFrequency = 0;
         double h = heuristic.getHeuristic(currentDepth);
         Action bestAction = null;
         boolean madeMove = false;
         for (int i = 0; i < potentialActions.length; i++){
             if(moveFrequencies[i] == 0){
-                if (!best.isPresent() || h < best.get()){
+                if (best == NO_EXPECTATION || h < best){
                     bestAction = potentialActions[i];
-                    best = Optional.of(h);
+                    best = h;
                     explore = true;
                     bestMoveFrequency = 0;
                 }
             } else {
                 madeMove = true;
-                ArrayList<RuleNode> childArray = children.get(potentialActions[i]);
                 final int frequency = moveFrequencies[i];
-                Optional<Double> moveEV = getMoveEV(childArray, frequency, current, heuristic);
-                if (moveEV.isPresent()){
-                    double ev = moveEV.get();
+                double ev = getMoveEV(childSlot(i), frequency, current, heuristic);
+                if (ev != NO_EXPECTATION){
                     //System.out.print("" + potentialActions[i].toString() + ev + ",");
-                    if (!best.isPresent() || ev < best.get() || (ev == best.get() && bestMoveFrequency > moveFrequencies[i])){
+                    if (best == NO_EXPECTATION || ev < best || (ev == best && bestMoveFrequency > moveFrequencies[i])){
                         bestAction = potentialActions[i];
-                        best = Optional.of(ev);
+                        best = ev;
                         explore = false;
                         bestMoveFrequency = moveFrequencies[i];
                     }
@@ -256,9 +380,9 @@ public class RuleNode {
         if(!madeMove){
             this.bestAction = null;
             expectation = -1;
-            return Optional.empty();
-        } else if (best.isPresent()){
-            expectation = best.get();
+            return NO_EXPECTATION;
+        } else if (best != NO_EXPECTATION) {
+            expectation = best;
             this.bestAction = bestAction;
         } /*else {
             expectation = -1;
@@ -267,26 +391,43 @@ public class RuleNode {
         return best;
     }
 
-    protected Optional<Double> getMoveEV(ArrayList<RuleNode> childArray, int moveFrequency, ArrayList<RuleNode> current, Heuristic heuristic){
-        return childArray.stream()
-                .map(node -> node.getExpectation(current, false, heuristic) //Gets expected value
-                        .map(val -> val*node.frequency)) //Multiply by node frequency
-                .reduce(Optional.of(0.0), (sum, ev) -> sum.flatMap(x -> ev.map(y -> x+y))) //Add EVs up
-                .map(val -> val / moveFrequency + 1);
+    protected double getMoveEV(int slot, int moveFrequency, ArrayList<RuleNode> current, Heuristic heuristic){
+        double sum = 0.0;
+        for (int i = 0; i < childCounts[slot]; i++) {
+            RuleNode node = children[slot][i];
+            double ev = node.getExpectation(current, false, heuristic); //Gets expected value
+            if (ev == NO_EXPECTATION) {
+                return NO_EXPECTATION;
+            }
+            sum += ev * node.frequency; //Multiply by node frequency and add EVs up
+        }
+        return sum / moveFrequency + 1;
+    }
+
+    /**
+     * marks this node and its ancestors as needing their expected values recalculated
+     */
+    protected void markDirty() {
+        for (RuleNode node = this; node != null; node = node.parent) {
+            node.dirty = true;
+        }
     }
 
     public double getAverageBits(){
         double maxBits = 0;
-        for(Action a: potentialActions){
-            if(getMoveFrequency(a) == 0)
+        for(int a = 0; a < potentialActions.length; a++){
+            int moveFrequency = getMoveFrequency(potentialActions[a]);
+            if(moveFrequency == 0)
                 continue;
             double bits = 0;
-            for(RuleNode child: children.get(a)){
+            int slot = childSlot(a);
+            for(int i = 0; i < childCounts[slot]; i++){
+                RuleNode child = children[slot][i];
                 double childBits = child.getAverageBits();
                 int f = child.getFrequency();
                 if(f == 0)
                     continue;
-                double p = f/(double)getMoveFrequency(a);
+                double p = f/(double)moveFrequency;
                 bits += p*(childBits + Math.log(1.0/p));
             }
             maxBits = Math.max(maxBits, bits);
@@ -298,15 +439,18 @@ public class RuleNode {
 
     public double getMaxBits(){
         double maxBits = 0;
-        for(Action a: potentialActions){
-            if(getMoveFrequency(a) == 0)
+        for(int a = 0; a < potentialActions.length; a++){
+            int moveFrequency = getMoveFrequency(potentialActions[a]);
+            if(moveFrequency == 0)
                 continue;
-            for(RuleNode child: children.get(a)){
+            int slot = childSlot(a);
+            for(int i = 0; i < childCounts[slot]; i++){
+                RuleNode child = children[slot][i];
                 double bits = child.getMaxBits();
                 int f = child.getFrequency();
                 if(f == 0)
                     continue;
-                double p = f/(double)getMoveFrequency(a);
+                double p = f/(double)moveFrequency;
                 bits += (Math.log(1.0/p));
                 if (bits > maxBits){
                     maxBits = bits;
@@ -318,22 +462,6 @@ public class RuleNode {
         return maxBits;
     }
 
-    protected void unvisit(){
-        if (visited) {
-            visited = false;
-
-            if (children == null || children.isEmpty()) {
-                return;
-            }
-
-            for (ArrayList<RuleNode> childArray : children.values()) {
-                for (RuleNode child : childArray) {
-                    child.unvisit();
-                }
-            }
-        }
-    }
-
     public Action getBestAction(){
         return bestAction;
     }
@@ -348,24 +476,27 @@ public class RuleNode {
 
     public void occurs(){
         frequency++;
-        visited = true;
+        markDirty();
     }
 
     /**
-     * Gets the child that corresponds to the given sense in the given list,
+     * Gets the child that corresponds to the given sense in the given slot,
      * or creates it if it does not exist.
      *
-     * @param children The list of children to look through
+     * @param slot The slot of the children to look through
      * @param nextSense The sense that the child should have
      * @return The corresponding child
      *
      * Side effect: Can create the child if a child with the given sense is not found
      *              Will increase child frequency
      */
-    protected RuleNode getChildBySense(ArrayList<RuleNode> children, int nextSense) {
-        for (RuleNode ruleNode : children){
-            if (ruleNode.sense == nextSense){
-                return ruleNode;
+    protected RuleNode getChildBySense(int slot, int nextSense) {
+        int count = childCounts[slot];
+        int[] senses = childSenses[slot];
+        //the goal child in the first position never matches a sense
+        for (int i = 1; i < count; i++){
+            if (senses[i] == nextSense){
+                return children[slot][i];
             }
         }
         if (maxDepth == 0){
@@ -373,10 +504,75 @@ public class RuleNode {
             //throw new IllegalStateException("At depth limit - cannot create children");
         }
         RuleNode child = new RuleNode(potentialActions, nextSense, maxDepth - 1, currentDepth + 1);
-        children.add(child);
+        child.parent = this;
+        //a child that has not occurred yet still has no expected value
+        markDirty();
+        if (count == senses.length) {
+            children[slot] = Arrays.copyOf(children[slot], count * 2);
+            childSenses[slot] = senses = Arrays.copyOf(senses, count * 2);
+        }
+        children[slot][count] = child;
+        senses[count] = nextSense;
+        childCounts[slot]++;
         return child;
     }
 
+    /**
+     * Removes a child (other than a goal child) along with its subtree.  The moves that led to the child are forgotten
+     * as well so its share of the move's outcomes is redistributed over its siblings.
+     *
+     * @param child The child to remove
+     * @return whether the child was found
+     */
+    protected boolean removeChild(RuleNode child) {
+        for (int slot = 0; slot < children.length; slot++) {
+            for (int i = 1; i < childCounts[slot]; i++) {
+                if (children[slot][i] == child) {
+                    int moved = childCounts[slot] - i - 1;
+                    System.arraycopy(children[slot], i + 1, children[slot], i, moved);
+                    System.arraycopy(childSenses[slot], i + 1, childSenses[slot], i, moved);
+                    children[slot][--childCounts[slot]] = null;
+                    moveFrequencies[slotAction(slot)] -= child.frequency;
+                    child.parent = null;
+                    markDirty();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the index of the one action whose children are in the given slot
+     */
+    protected int slotAction(int slot) {
+        int result = -1;
+        for (int a = 0; a < potentialActions.length; a++) {
+            if (childSlot(a) == slot) {
+                if (result != -1) {
+                    throw new IllegalStateException("slot " + slot + " is shared by more than one action");
+                }
+                result = a;
+            }
+        }
+        if (result == -1) {
+            throw new IllegalStateException("slot " + slot + " has no action");
+        }
+        return result;
+    }
+
+    /**
+     * @return whether this node has no children other than its goal children
+     */
+    public boolean isLeaf() {
+        for (int count : childCounts) {
+            if (count > 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Gets the child that corresponds to the given action and sense value
      * @param action The action of the child
@@ -395,13 +591,12 @@ public class RuleNode {
             throw new IllegalArgumentException("Action cannot be null");
         }
 
-        if (!inAlphabet(action)){
+        int index = actionIndex(action);
+        if (index == -1){
             throw new IllegalArgumentException("Action does not exist");
         }
 
-        ArrayList<RuleNode> moveChildren = children.get(action);
-
-        return getChildBySense(moveChildren, nextSense);
+        return getChildBySense(childSlot(index), nextSense);
     }
 
     /**
@@ -419,12 +614,12 @@ public class RuleNode {
             throw new IllegalArgumentException("Action cannot be null");
         }
 
-        ArrayList<RuleNode> moveChildren = children.get(action);
-        if (moveChildren == null){
+        int index = actionIndex(action);
+        if (index == -1){
             throw new IllegalArgumentException("Action not in alphabet");
         }
 
-        return (RuleNodeGoal) moveChildren.get(0);
+        return (RuleNodeGoal) children[childSlot(index)][0];
     }//getGoalChild
 
     public int getSense(){
@@ -457,13 +652,11 @@ public class RuleNode {
             }
         }
 
-        if (children == null || children.isEmpty()) {
-            return result;
-        }
-
-        for (Map.Entry<Action, ArrayList<RuleNode>> entry : children.entrySet()){
-            Action action = entry.getKey();
-            for (RuleNode ruleNode : entry.getValue()){
+        for (int a = 0; a < potentialActions.length; a++){
+            Action action = potentialActions[a];
+            int slot = childSlot(a);
+            for (int i = 0; i < childCounts[slot]; i++){
+                RuleNode ruleNode = children[slot][i];
                 for (String childItem : ruleNode.toStringArray())
                 {
                     result.add(String.valueOf(sense) + action + " -> " + childItem);
@@ -476,5 +669,30 @@ public class RuleNode {
     public int getCurrentDepth() {
         return currentDepth;
     }
-    public ArrayList<RuleNode> getChild(Action action) { return this.children.get(action); }
+    /**
+     * @return the number of children (including the goal child) for the action with the given index
+     */
+    public int getChildCount(int actionIndex) {
+        return childCounts[childSlot(actionIndex)];
+    }
+
+    /**
+     * @return the i-th child for the action with the given index.  The goal child is always first.
+     */
+    public RuleNode getChild(int actionIndex, int i) {
+        int slot = childSlot(actionIndex);
+        if (i < 0 || i >= childCounts[slot]) {
+            throw new IndexOutOfBoundsException("child " + i + " is out of range");
+        }
+        return children[slot][i];
+    }
+
+    public List<RuleNode> getChild(Action action) {
+        int index = actionIndex(action);
+        if (index == -1) {
+            return null;
+        }
+        int slot = childSlot(index);
+        return Arrays.asList(children[slot]).subList(0, childCounts[slot]);
+    }
 }
@@ -3,7 +3,7 @@ package agents.marzrules;
 import framework.Action;
 
 import java.util.ArrayList;
-import java.util.Optional;
+import java.util.List;
 
 /**
  * class RuleNodeGoal
@@ -26,8 +26,16 @@ public class RuleNodeGoal extends RuleNode {
     }
 
     @Override
-    public Optional<Double> getExpectation(ArrayList<RuleNode> current, boolean top, Heuristic heuristic) {
-        return Optional.of(0.0);
+    protected void addGoalProbabilities(List<? extends List<Action>> sequences, int[] members, int from, int to,
+                                        int moveIdx, double weight, double[] probabilities) {
+        for (int i = from; i < to; i++) {
+            probabilities[members[i]] += weight;
+        }
+    }
+
+    @Override
+    public double getExpectation(ArrayList<RuleNode> current, boolean top, Heuristic heuristic) {
+        return 0.0;
     }
 
     @Override
@@ -3,8 +3,6 @@ package agents.marzrules;
 import framework.Action;
 
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.Optional;
 
 /**
  * class RuleNodeRoot
@@ -14,19 +12,19 @@ import java.util.Optional;
  * @author Ryan Regier (created 2/7/2019)
  */
 public class RuleNodeRoot extends RuleNode {
-    private ArrayList<RuleNode> childArray;
+    //all actions are the same to root so they share a single slot of children
+    private static final int SHARED_SLOT = 0;
 
     public RuleNodeRoot(Action[] potentialActions, int maxDepth){
-        super(potentialActions, -1, maxDepth, 0);
+        super(potentialActions, -1, maxDepth, 0, 1);
         if (maxDepth  <= 0 ){
             throw new IllegalArgumentException("Must have max depth of at least 1");
         }
-        childArray = new ArrayList<>();
-        childArray.add(new RuleNodeGoal(potentialActions, 1));
-        for (Map.Entry<Action,ArrayList<RuleNode>> entry : children.entrySet()){
-            entry.setValue(childArray);
-        }
-        visited = true;
+    }
+
+    @Override
+    protected int childSlot(int actionIndex) {
+        return SHARED_SLOT;
     }
 
     @Override
@@ -40,10 +38,16 @@ public class RuleNodeRoot extends RuleNode {
         return frequency;
     }
 
+    @Override
+    protected boolean removeChild(RuleNode child) {
+        //root's move frequency is its own frequency so it can't forget the moves to a child
+        throw new IllegalStateException("children of the root cannot be removed");
+    }
+
     @Override
     public RuleNode getNextChild(Action action, int nextSense) {
         if (action == null){
-            return super.getChildBySense(childArray, nextSense);
+            return super.getChildBySense(SHARED_SLOT, nextSense);
         }
         return super.getNextChild(action, nextSense);
     }
@@ -53,8 +57,8 @@ public class RuleNodeRoot extends RuleNode {
     protected ArrayList<String> toStringArray(){
         ArrayList<String> result = new ArrayList<>();
         result.add("ROOT -> " + frequency);
-        for (RuleNode child : childArray) {
-            for (String childItem : child.toStringArray()) {
+        for (int i = 0; i < childCounts[SHARED_SLOT]; i++) {
+            for (String childItem : children[SHARED_SLOT][i].toStringArray()) {
                 result.add("ROOT -> " + childItem);
             }
         }
@@ -65,31 +69,22 @@ public class RuleNodeRoot extends RuleNode {
 
         //NOTE: To avoid div-by-zero, this code relies upon agent starting
         // with goal sensor on at the very first step
-        return  childArray.get(0).getFrequency()/(double)frequency;
+        return  children[SHARED_SLOT][0].getFrequency()/(double)frequency;
 
     }
 
-    //NOTE: Uncomment to enable caching
-    public void reachedGoal(){
-        visited = false;
-        for (RuleNode child : childArray){
-            child.unvisit();
-        }
-    }
-
     @Override
-    protected Optional<Double> getEVRecursive(ArrayList<RuleNode> current, Heuristic heuristic){
+    protected double getEVRecursive(ArrayList<RuleNode> current, Heuristic heuristic){
         if (frequency == 0){
             expectation = -1;
             explore = true;
-            return Optional.empty();
+            return NO_EXPECTATION;
         }
 
-        double h = heuristic.getHeuristic(currentDepth);
-        Optional<Double> best = getMoveEV(childArray, frequency, current, heuristic);
+        double best = getMoveEV(SHARED_SLOT, frequency, current, heuristic);
 
-        if (best.isPresent()){
-            expectation = best.get();
+        if (best != NO_EXPECTATION){
+            expectation = best;
         } /*else {
             expectation = -1;
             this.bestMove = null;
@@ -102,7 +97,8 @@ public class RuleNodeRoot extends RuleNode {
         if(frequency == 0)
             return 0;
         double bits = 0;
-        for(RuleNode child:childArray){
+        for(int i = 0; i < childCounts[SHARED_SLOT]; i++){
+            RuleNode child = children[SHARED_SLOT][i];
             double childBits = child.getAverageBits();
             double f = child.getFrequency();
             if(f == 0)
@@ -120,7 +116,8 @@ public class RuleNodeRoot extends RuleNode {
         if(frequency == 0)
             return 0;
         double maxBits = 0;
-        for(RuleNode child:childArray){
+        for(int i = 0; i < childCounts[SHARED_SLOT]; i++){
+            RuleNode child = children[SHARED_SLOT][i];
             double childBits = child.getMaxBits();
             double f = child.getFrequency();
             if(f == 0)
@@ -138,6 +135,6 @@ public class RuleNodeRoot extends RuleNode {
 
     @Override
     public RuleNodeGoal getGoalChild(Action action) {
-        return (RuleNodeGoal)childArray.get(0);
+        return (RuleNodeGoal)children[SHARED_SLOT][0];
     }
 }
@@ -37,8 +37,9 @@ public class RuleSetEvaluator {
         this.writeSuffixLine();
         for (RuleNode node : ruleSet.getCurrent()) {
            namedOutput.write("RuleSetEvaluator", node.toString() + ",");
-           for (ArrayList<Action> actions : this.suffixSequences) {
-               namedOutput.write("RuleSetEvaluator", node.getGoalProbability(actions, 0) + ",");
+           //all of the suffixes are evaluated in one walk of the node's subtree
+           for (double probability : node.getGoalProbabilities(this.suffixSequences)) {
+               namedOutput.write("RuleSetEvaluator", probability + ",");
            }
             namedOutput.writeLine("RuleSetEvaluator");
         }
@@ -1,6 +1,7 @@
 package agents.marzrules;
 
 import framework.*;
+import utils.SequenceEnumerator;
 import utils.SequenceGenerator;
 
 import java.util.ArrayList;
@@ -17,20 +18,26 @@ public class RulesAgent implements IAgent {
     private RuleSetEvaluator ruleSetEvaluator;
     private Heuristic heuristic;
     private int maxDepth;
+    private int nodeBudget;
 
     public RulesAgent(Heuristic heuristic, int maxDepth) {
+        this(heuristic, maxDepth, Ruleset.UNBOUNDED);
+    }
+
+    public RulesAgent(Heuristic heuristic, int maxDepth, int nodeBudget) {
         this.heuristic = heuristic;
         this.maxDepth = maxDepth;
+        this.nodeBudget = nodeBudget;
     }
 
     @Override
     public void initialize(Action[] actions, IIntrospector introspector) {
         this.introspector = introspector;
-        this.ruleset = new Ruleset(actions, maxDepth, heuristic);
-        SequenceGenerator generator = new SequenceGenerator(actions);
+        this.ruleset = new Ruleset(actions, maxDepth, heuristic, nodeBudget);
+        SequenceEnumerator permutations = new SequenceGenerator(actions).enumerate(1);
         ArrayList<Sequence> evaluationSuffixes = new ArrayList<>();
         for (int i = 1; i <= 15; i++) {
-            evaluationSuffixes.add(generator.nextPermutation(i));
+            evaluationSuffixes.add(permutations.next());
         }
         this.ruleSetEvaluator = new RuleSetEvaluator(evaluationSuffixes.toArray(new Sequence[0]));
 
@@ -9,6 +9,13 @@ import framework.IAgentProvider;
 public class RulesAgentProvider implements IAgentProvider {
     private Heuristic heuristic;
     private int depthLimit;
+    private int nodeBudget = Ruleset.UNBOUNDED;
+
+    public RulesAgentProvider(Heuristic heuristic, int depthLimit, int nodeBudget) {
+        this.heuristic = heuristic;
+        this.depthLimit = depthLimit;
+        this.nodeBudget = nodeBudget;
+    }
 
     public RulesAgentProvider(Heuristic heuristic, int depthLimit) {
         this.heuristic = heuristic;
@@ -22,7 +29,7 @@ public class RulesAgentProvider implements IAgentProvider {
 
     @Override
     public IAgent getAgent(){
-        return new RulesAgent(heuristic, depthLimit);
+        return new RulesAgent(heuristic, depthLimit, nodeBudget);
     }
 
     @Override
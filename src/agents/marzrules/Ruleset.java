@@ -3,10 +3,13 @@ package agents.marzrules;
 import framework.Action;
 import framework.SensorData;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Optional;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.PriorityQueue;
 
 /**
  * class Ruleset
@@ -23,6 +26,11 @@ import java.util.Optional;
  */
 public class Ruleset {
 
+    public static final int UNBOUNDED = 0;
+
+    //when the tree outgrows its budget it is pruned back to this fraction of it so that it isn't pruned every step
+    private static final double PRUNE_TO = 0.9;
+
     private final RuleNodeRoot root;  //root node of the tree
     private RuleNode driver;
 
@@ -33,18 +41,39 @@ public class Ruleset {
     protected Action[] alphabet;
     private int explores;
     private Heuristic heuristic;
+    private final int nodeBudget;
+    private int nodeCount = 0;
 
     public Ruleset(Action[] alphabet, int maxDepth, Heuristic heuristic){
+        this(alphabet, maxDepth, heuristic, UNBOUNDED);
+    }
+
+    /**
+     * @param nodeBudget the most rule nodes (not counting the root and goal nodes) to keep or UNBOUNDED.  Once the
+     *                   tree grows past it the least frequent rules are pruned.  It is exceeded only when the
+     *                   rules in current (and those they extend) alone need more.
+     */
+    public Ruleset(Action[] alphabet, int maxDepth, Heuristic heuristic, int nodeBudget){
         if (alphabet == null) throw new IllegalArgumentException();
         if (alphabet.length == 0) throw new IllegalArgumentException();
+        if (nodeBudget < 0) throw new IllegalArgumentException("nodeBudget cannot be negative");
 
         root = new RuleNodeRoot(alphabet, maxDepth);
         current = new ArrayList<>();
         current.add(root);
         this.alphabet = alphabet;
         this.heuristic = heuristic;
+        this.nodeBudget = nodeBudget;
     }
 
+    /**
+     * getBestMove
+     *
+     * CAVEAT:  the heuristic's goal probability is only refreshed when a goal
+     * is reached (see update) so that cached expected values can be reused
+     * between goals.  Every move chosen between two goals uses the goal
+     * probability as of the first of them.
+     */
     public Action getBestMove(){
 
         if(driver != null && driver.getBestAction() != null){
@@ -56,11 +85,10 @@ public class Ruleset {
         boolean explore = false;
         Action bestAction = alphabet[0];
         for (RuleNode node : current){
-            heuristic.setGoalProbability(root.getIncreasedGoalProbability());
-            Optional<Double> expectation = node.getExpectation(current, true, heuristic);
-            if (expectation.isPresent() && (bestEV == -1 || expectation.get() <= bestEV)){
+            double expectation = node.getExpectation(current, true, heuristic);
+            if (expectation != RuleNode.NO_EXPECTATION && (bestEV == -1 || expectation <= bestEV)){
                 if (node.getBestAction() != null) {
-                    bestEV = expectation.get();
+                    bestEV = expectation;
                     bestAction = node.getBestAction();
                     explore = node.getExplore();
                     driver = node;
@@ -129,9 +157,8 @@ public class Ruleset {
             }
             current.clear();
             current.add(root);
+            //the goal probability is only refreshed here so that expected values stay cached between goals
             heuristic.setGoalProbability(root.getIncreasedGoalProbability());
-            root.getExpectation(current, true, heuristic); //Update caches before saving
-            root.reachedGoal(); // Cache EVs
             driver = root;
         }
 
@@ -141,6 +168,8 @@ public class Ruleset {
             node.incrementMoveFrequency(action);
             RuleNode child = node.getNextChild(action, sense);
             if (child != null) {
+                //a child that has never occurred was just created
+                if (child.getFrequency() == 0) nodeCount++;
                 child.occurs();
             }
             current.set(i, child);
@@ -152,6 +181,74 @@ public class Ruleset {
         current.removeAll(Collections.singleton(null));
         current.add(root);
         root.occurs();
+
+        if (nodeBudget != UNBOUNDED && nodeCount > nodeBudget) {
+            prune();
+        }
+    }
+
+    /**
+     * prune
+     *
+     * removes the least frequent leaf rules until the tree is back within its budget.  Removing a rule forgets the
+     * moves that led to it, so its parent's statistics are renormalized over the rules that remain.  The rules in
+     * current (and those they extend) are always kept, as are the depth 1 rules (root's children).
+     *
+     * The tree is walked once to collect its leaves.  A parent whose last child is pruned becomes a leaf itself and
+     * joins them so that the least frequent rule left is always the next one pruned.
+     */
+    private void prune() {
+        HashSet<RuleNode> keep = new HashSet<>();
+        for (RuleNode node : current) {
+            for (RuleNode n = node; n != null; n = n.parent) keep.add(n);
+        }
+        for (RuleNode n = driver; n != null; n = n.parent) keep.add(n);
+
+        //least frequent first and the most specific of those first
+        PriorityQueue<RuleNode> leaves = new PriorityQueue<>(Comparator.comparingInt(RuleNode::getFrequency)
+                .thenComparing(Comparator.comparingInt(RuleNode::getCurrentDepth).reversed()));
+        findPrunableLeaves(keep, leaves);
+
+        int target = (int) (nodeBudget * PRUNE_TO);
+        while (nodeCount > target && !leaves.isEmpty()) {
+            RuleNode leaf = leaves.poll();
+            RuleNode parent = leaf.parent;
+            parent.removeChild(leaf);
+            nodeCount--;
+            if (isPrunable(parent, keep)) leaves.add(parent);
+        }
+    }
+
+    private void findPrunableLeaves(HashSet<RuleNode> keep, PriorityQueue<RuleNode> leaves) {
+        ArrayDeque<RuleNode> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            RuleNode node = stack.pop();
+            //the goal children in the first position of each slot are never pruned
+            for (int slot = 0; slot < node.children.length; slot++) {
+                for (int i = 1; i < node.childCounts[slot]; i++) {
+                    stack.push(node.children[slot][i]);
+                }
+            }
+            if (isPrunable(node, keep)) {
+                leaves.add(node);
+            }
+        }
+    }
+
+    /**
+     * @return whether the given rule is a leaf that may be pruned.  Root's children are never pruned since root
+     *         can't forget the moves that led to them.
+     */
+    private boolean isPrunable(RuleNode node, HashSet<RuleNode> keep) {
+        return node.getCurrentDepth() > 1 && node.isLeaf() && !keep.contains(node);
+    }
+
+    /**
+     * @return the number of rule nodes in the tree (not counting the root and goal nodes)
+     */
+    public int getNodeCount() {
+        return nodeCount;
     }
 
 
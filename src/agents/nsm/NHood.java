@@ -2,9 +2,6 @@ package agents.nsm;
 
 import framework.Action;
 
-import java.util.ArrayList;
-import java.util.Collections;
-
 /**
  * class NHood
  *
@@ -13,22 +10,38 @@ import java.util.Collections;
  * match to the current sequene ending with the current episode (which
  * represents the present moment) presuming that a specific action will be
  * taken next.
+ *
+ * The neighbors are kept in a fixed size min-heap (shortest on top) of
+ * parallel arrays so turning a candidate away costs one comparison and
+ * admitting one costs O(log k) with nothing allocated.  They are presented
+ * sorted by length, and neighbors of equal length in the order they were
+ * added.
  */
 public class NHood {
     //region Static Variables
-    public final int K_NEAREST = 8;  //max allowed size of neighborhood
+    public static final int K_NEAREST = 8;  //max allowed size of neighborhood
     //endregion
 
     //region Class Variables
     public Action command;           // action associated with this neighborhood
-    public ArrayList<NBor> nbors;  // neigbhors in the hood
     public int shortest = 0;       //length of shortest neighbor
+
+    // the heap of neighbors
+    private final int[] positions = new int[K_NEAREST];
+    private final int[] lengths = new int[K_NEAREST];
+    private final long[] arrivals = new long[K_NEAREST];
+    private final QEpisode[] episodes = new QEpisode[K_NEAREST];
+    private int size = 0;
+    private long nextArrival = 0;
+
+    //heap slots in presentation order (rebuilt after the heap changes)
+    private final int[] order = new int[K_NEAREST];
+    private boolean ordered = true;
     //endregion
 
     //region Constructors
     public NHood(Action initAction) {
         this.command = initAction;
-        nbors = new ArrayList<NBor>();
     }
     //endregion
 
@@ -38,35 +51,132 @@ public class NHood {
         return this.command;
     }
 
+    /** @return the number of neighbors in the neighborhood */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return whether a neighbor with the given match length would be let
+     * into the neighborhood
+     */
+    public boolean accepts(double matchLength) {
+        return (matchLength > 0) && ((this.shortest <= matchLength) || (this.size < K_NEAREST));
+    }
+
     /** adds a new neighbor to the neighborhood.
      * CAVEAT:  Caller is responsible for checking the neighbor is long
-     * enough to belong. */
-    public void addNBor(NBor newGuy) {
-        //if the nhood is full, drop the shorest neighbor to make room
-        while(nbors.size() >= K_NEAREST) {
-            this.nbors.remove(0);
+     * enough to belong (see {@link #accepts(double)}). */
+    public void addNBor(int position, int length, QEpisode episode) {
+        if (this.size < K_NEAREST) {
+            this.siftUp(this.size++, position, length, this.nextArrival++, episode);
+        }
+        else {
+            //the nhood is full so the shortest neighbor makes room
+            this.siftDown(0, position, length, this.nextArrival++, episode);
         }
+        this.shortest = this.lengths[0];
+        this.ordered = false;
+    }//addNBor
 
-        this.nbors.add(newGuy);
+    /** @return the match length of the i-th shortest neighbor */
+    public int getLength(int i) {
+        return this.lengths[this.slotOf(i)];
+    }
 
-        //update the shortest
-        Collections.sort(this.nbors);
-        this.shortest = nbors.get(0).len;
-    }//addNBor
+    /** @return the memory index of the i-th shortest neighbor */
+    public int getPosition(int i) {
+        return this.positions[this.slotOf(i)];
+    }
+
+    /** @return the episode of the i-th shortest neighbor */
+    public QEpisode getEpisode(int i) {
+        return this.episodes[this.slotOf(i)];
+    }
 
     public double getQValue() {
         //Don't calculate for empty neighborhoods
-        if (this.nbors.size() == 0)
+        if (this.size == 0)
             return 0.0;
 
         // sum the q-values of each neighbor
         double total = 0.0;
-        for (NBor nbor : this.nbors) {
-            total += nbor.calculateQValue();
+        for (int i = 0; i < this.size; i++) {
+            total += this.getEpisode(i).qValue;
         }
 
         // return the average
-        return (total / (double)this.nbors.size());
+        return (total / (double)this.size);
+    }
+    //endregion
+
+    //region Private Methods
+    private int slotOf(int i) {
+        if (i < 0 || i >= this.size)
+            throw new IndexOutOfBoundsException("neighbor " + i + " is out of range");
+        if (!this.ordered) {
+            //insertion sort is the fastest way to order a handful of slots
+            for (int slot = 0; slot < this.size; slot++) {
+                int j = slot;
+                while (j > 0 && this.before(slot, this.order[j - 1])) {
+                    this.order[j] = this.order[j - 1];
+                    j--;
+                }
+                this.order[j] = slot;
+            }
+            this.ordered = true;
+        }
+        return this.order[i];
+    }
+
+    /** @return true if the neighbor in slot a comes before the one in slot b */
+    private boolean before(int a, int b) {
+        if (this.lengths[a] != this.lengths[b])
+            return this.lengths[a] < this.lengths[b];
+        return this.arrivals[a] < this.arrivals[b];
+    }
+
+    private boolean before(int length, long arrival, int slot) {
+        if (length != this.lengths[slot])
+            return length < this.lengths[slot];
+        return arrival < this.arrivals[slot];
+    }
+
+    private void siftUp(int slot, int position, int length, long arrival, QEpisode episode) {
+        while (slot > 0) {
+            int parent = (slot - 1) / 2;
+            if (!this.before(length, arrival, parent))
+                break;
+            this.move(parent, slot);
+            slot = parent;
+        }
+        this.place(slot, position, length, arrival, episode);
+    }
+
+    private void siftDown(int slot, int position, int length, long arrival, QEpisode episode) {
+        int half = this.size / 2;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            int right = child + 1;
+            if (right < this.size && this.before(right, child))
+                child = right;
+            if (this.before(length, arrival, child))
+                break;
+            this.move(child, slot);
+            slot = child;
+        }
+        this.place(slot, position, length, arrival, episode);
+    }
+
+    private void move(int from, int to) {
+        this.place(to, this.positions[from], this.lengths[from], this.arrivals[from], this.episodes[from]);
+    }
+
+    private void place(int slot, int position, int length, long arrival, QEpisode episode) {
+        this.positions[slot] = position;
+        this.lengths[slot] = length;
+        this.arrivals[slot] = arrival;
+        this.episodes[slot] = episode;
     }
     //endregion
 }//class NHood
@@ -2,6 +2,9 @@ package agents.nsm;
 
 import framework.*;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 /**
@@ -42,7 +45,10 @@ public class NSMAgent implements IAgent {
     @Override
     public void initialize(Action[] actions, IIntrospector introspector) {
         this.actions = actions;
-        this.episodicMemory = new QEpisodicMemory();
+        if (this.qLearningConfiguration.SPILL_HOT_CAPACITY > 0)
+            this.episodicMemory = new SpillingQEpisodicMemory(this.qLearningConfiguration.SPILL_HOT_CAPACITY);
+        else
+            this.episodicMemory = new QEpisodicMemory();
     }
 
     @Override
@@ -62,6 +68,20 @@ public class NSMAgent implements IAgent {
         this.episodicMemory.add(new QEpisode(sensorData, action, this.qLearningConfiguration.REWARD_SUCCESS, this.qLearningConfiguration.REWARD_FAILURE));
         return action;
     }//exploreEnvironment
+
+    /**
+     * releases the spill file if episodes were being spilled to disk
+     */
+    @Override
+    public void onTestRunComplete() {
+        if (this.episodicMemory instanceof Closeable) {
+            try {
+                ((Closeable) this.episodicMemory).close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
     //endregion
 
     //region Private Methods
@@ -86,9 +106,10 @@ public class NSMAgent implements IAgent {
     private NHood getBestNeighborhood() {
         //Create a new neighborhood for each command
         NHood bestNHood = null;
-        for (Action action : this.actions)
+        NHood[] nhoods = this.episodicMemory.buildNeighborhoods(this.actions,
+                this.qLearningConfiguration.PARALLEL_NEIGHBORHOODS);
+        for (NHood nhood : nhoods)
         {
-            NHood nhood = this.episodicMemory.buildNeighborhoodForMove(action);
             if (bestNHood == null || nhood.getQValue() > bestNHood.getQValue())
                 bestNHood = nhood;
         }//for
@@ -115,14 +136,13 @@ public class NSMAgent implements IAgent {
 
         // Update the q values for each of the voting episodes for the most
         // recent action
-        for(int i = 0; i < this.selectedNHood.nbors.size(); ++i) {
+        for(int i = 0; i < this.selectedNHood.size(); ++i) {
             //Update the root episode
-            NBor nbor = this.selectedNHood.nbors.get(i);
-            nbor.qEpisode.updateQValue(utility); // <--- TODO Is this really necessary? I feel like this is a bug
+            this.selectedNHood.getEpisode(i).updateQValue(utility); // <--- TODO Is this really necessary? I feel like this is a bug
                                                  // that got ported over
             //Update all the root's predecessors that participated in the match
             double prevUtility = utility;
-            for(int j = 0; j < nbor.len; ++j)
+            for(int j = 0; j < this.selectedNHood.getLength(i); ++j)
             {
                 QEpisode prevEp = this.episodicMemory.getFromOffset(j);
                 prevEp.updateQValue(prevUtility);
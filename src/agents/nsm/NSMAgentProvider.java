@@ -9,10 +9,33 @@ import framework.IAgentProvider;
  * @version 0.95
  */
 public class NSMAgentProvider implements IAgentProvider {
+    //region Class Variables
+    private int spillHotCapacity;
+    //endregion
+
+    //region Constructors
+    public NSMAgentProvider() {
+        this(0);
+    }
+
+    /**
+     * @param spillHotCapacity the number of recent episodes each agent keeps
+     *                         on the heap before spilling older ones to disk
+     *                         (0 never spills)
+     */
+    public NSMAgentProvider(int spillHotCapacity) {
+        if (spillHotCapacity < 0)
+            throw new IllegalArgumentException("spillHotCapacity cannot be less than 0");
+        this.spillHotCapacity = spillHotCapacity;
+    }
+    //endregion
+
     //region IAgentProvider Members
     @Override
     public IAgent getAgent() {
-        return new NSMAgent(new QLearningConfiguration());
+        QLearningConfiguration configuration = new QLearningConfiguration();
+        configuration.SPILL_HOT_CAPACITY = this.spillHotCapacity;
+        return new NSMAgent(configuration);
     }
 
     @Override
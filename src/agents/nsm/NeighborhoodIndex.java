@@ -0,0 +1,400 @@
+package agents.nsm;
+
+import framework.Episode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * class NeighborhoodIndex
+ *
+ * An online suffix automaton over the episodes in a {@link QEpisodicMemory}
+ * (each distinct episode is one symbol).  It lets NSM find its neighborhoods
+ * without rescanning memory on every step.
+ *
+ * NSM scores a past episode i by how many episodes before it match the
+ * episodes leading up to the present moment.  That is the longest common
+ * suffix of memory ending at i-1 and memory ending at the current episode.
+ * In the automaton those end positions are exactly the states on the suffix
+ * link path from the current state.  Each state also remembers, per action,
+ * the K most recent end positions in its link subtree whose following episode
+ * used that action.  A neighborhood query therefore only walks that path and
+ * never looks at the bulk of memory.
+ *
+ * The query yields the same K neighbors as the original scan: the longest
+ * matches, with ties going to the most recent.
+ *
+ * Pushing a position into every state on its suffix link path would cost
+ * O(path length) per episode, and on a repetitive history the path grows
+ * with memory.  Instead a new position is pushed at most a fixed number of
+ * states up the path and the rest of the push is parked.  The states above a
+ * parked push are marked stale and a query that reaches one reports it so
+ * that {@link #settle()} can finish the parked pushes first.  Parked pushes
+ * are finished newest first, so one stops as soon as it meets a state that
+ * already holds K newer positions; that position is then too old to be a
+ * neighbor through any state above it either.  Each state also has a bit per
+ * action that is set once the action has followed any position in its link
+ * subtree, so a query for an action that never followed the current episode
+ * returns at once.
+ *
+ * Costs: while queries find their neighbors near the current state (as they
+ * do on a repetitive history) an append is amortized O(1) and a query is
+ * O(K).  A query for an action that only followed contexts that diverged
+ * from the current one long ago still walks most of the path, and if that
+ * walk reaches a stale state the settle and the stale marks that follow it
+ * cost O(path length) too.
+ *
+ * Queries only read the index so any number of them may run concurrently
+ * (but not alongside {@link #append} or {@link #settle()}).
+ */
+public class NeighborhoodIndex {
+    //region Static Variables
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    /** returned by {@link #query} when the index must be settled first */
+    public static final int UNSETTLED = -1;
+    //endregion
+
+    //region Class Variables
+    private final int k;              //neighbors kept per action per state
+    private final int pushDepth;      //states a new position is pushed into before the rest is parked
+
+    // per-state data (indexed by state id)
+    private int[] len = new int[64];
+    private int[] link = new int[64];
+    private int[][] next = new int[64][];     //transitions by symbol (target + 1; 0 is none)
+    private int[][] recent = new int[64][];   //per action: [count, newest, ..., oldest]
+    private boolean[] stale = new boolean[64];   //a push below this state is parked
+    private boolean[] parked = new boolean[64];  //a push is parked at this state
+    private long[] followed = new long[64];      //bit per action that follows a position in the link subtree
+    private int stateCount = 0;
+    private int last = ROOT;
+    private int lastSymbol = NONE;
+
+    // per-position data (indexed by episode index)
+    private int[] positionStates = new int[64];
+    private int positionCount = 0;
+
+    // parked pushes in the order they were parked (oldest first)
+    private int[] parkedPositions = new int[16];
+    private int[] parkedActions = new int[16];
+    private int[] parkedStates = new int[16];   //the last state each push reached
+    private int parkedCount = 0;
+
+    // the states that are stale or parked so they can be cleared by settle()
+    private int[] marked = new int[16];
+    private int markedCount = 0;
+
+    private final AtomicLong visits = new AtomicLong();
+
+    private final HashMap<Episode, Integer> symbols = new HashMap<>();
+    //endregion
+
+    //region Constructors
+    public NeighborhoodIndex(int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be greater than 0");
+        this.k = k;
+        this.pushDepth = 4 * k;
+        this.newState(0, NONE);
+    }
+    //endregion
+
+    //region Public Methods
+    /**
+     * append
+     *
+     * adds the next episode in memory to the index.
+     *
+     * @param episode the episode just added to memory
+     * @param actionOrdinal the ordinal of the episode's action
+     */
+    public void append(Episode episode, int actionOrdinal) {
+        //the previous position's following action is now known
+        if (this.positionCount > 0)
+            this.push(this.positionCount - 1, actionOrdinal);
+
+        this.lastSymbol = this.symbolOf(episode);
+        this.extend(this.lastSymbol);
+
+        if (this.positionCount == this.positionStates.length)
+            this.positionStates = Arrays.copyOf(this.positionStates, this.positionCount * 2);
+        this.positionStates[this.positionCount++] = this.last;
+    }
+
+    /**
+     * query
+     *
+     * finds the (at most) K past episodes with the given action whose
+     * preceding episodes best match the episodes leading up to the present.
+     *
+     * @param actionOrdinal the action the neighbors must have taken
+     * @param indexes receives the memory index of each neighbor
+     * @param lengths receives the match length of each neighbor
+     * @return the number of neighbors found or {@link #UNSETTLED} if
+     * {@link #settle()} must be called before the query can be answered
+     */
+    public int query(int actionOrdinal, int[] indexes, int[] lengths) {
+        //the shallowest state on the path holds every position that matches
+        //at all so if the action never followed one there is nothing to find
+        long bit = followedBit(actionOrdinal);
+        if (bit != 0 && this.lastSymbol != NONE
+                && (this.followed[this.transition(ROOT, this.lastSymbol)] & bit) == 0)
+            return 0;
+
+        int found = 0;
+        int visited = 0;
+        for (int v = this.last; v != ROOT && found < this.k; v = this.link[v]) {
+            visited++;
+            if (this.stale[v]) {
+                this.visits.addAndGet(visited);
+                return UNSETTLED;
+            }
+            int[] lists = this.recent[v];
+            int base = actionOrdinal * (this.k + 1);
+            if (lists == null || base >= lists.length)
+                continue;
+            for (int j = 0; j < lists[base] && found < this.k; j++) {
+                //positions nearer the present moment were already found
+                //at a deeper (longer matching) state
+                int index = lists[base + 1 + j] + 1;
+                if (!contains(indexes, found, index)) {
+                    indexes[found] = index;
+                    lengths[found] = this.len[v];
+                    found++;
+                }
+            }
+        }
+        this.visits.addAndGet(visited);
+        return found;
+    }
+
+    /**
+     * settle
+     *
+     * finishes every parked push so that any query can be answered.
+     */
+    public void settle() {
+        //newest first so an older position stops at the first state that
+        //already has K newer ones
+        long visited = 0;
+        for (int i = this.parkedCount - 1; i >= 0; i--) {
+            int position = this.parkedPositions[i];
+            int actionOrdinal = this.parkedActions[i];
+            for (int v = this.link[this.parkedStates[i]]; v != ROOT; v = this.link[v]) {
+                visited++;
+                if (!this.insertRecent(v, actionOrdinal, position))
+                    break;
+            }
+        }
+        this.parkedCount = 0;
+        for (int i = 0; i < this.markedCount; i++) {
+            this.stale[this.marked[i]] = false;
+            this.parked[this.marked[i]] = false;
+        }
+        this.markedCount = 0;
+        this.visits.addAndGet(visited);
+    }
+
+    /** @return the number of episodes indexed */
+    public int length() {
+        return this.positionCount;
+    }
+
+    /**
+     * @return the number of states visited so far by appends, settles and
+     * queries (a measure of the work the index has done)
+     */
+    public long visits() {
+        return this.visits.get();
+    }
+    //endregion
+
+    //region Private Methods
+    /** standard online suffix automaton extension */
+    private void extend(int symbol) {
+        int cur = this.newState(this.len[this.last] + 1, NONE);
+        int p = this.last;
+        while (p != NONE && this.transition(p, symbol) == NONE) {
+            this.setTransition(p, symbol, cur);
+            p = this.link[p];
+        }
+        if (p == NONE) {
+            this.link[cur] = ROOT;
+        }
+        else {
+            int q = this.transition(p, symbol);
+            if (this.len[p] + 1 == this.len[q]) {
+                this.link[cur] = q;
+            }
+            else {
+                //the clone's link subtree is q's plus the new state, so it
+                //starts out with a copy of q's recent positions
+                int clone = this.newState(this.len[p] + 1, this.link[q]);
+                this.next[clone] = (this.next[q] == null) ? null : this.next[q].clone();
+                this.recent[clone] = (this.recent[q] == null) ? null : this.recent[q].clone();
+                this.followed[clone] = this.followed[q];
+                //a push parked at or below q is below the clone as well
+                if (this.stale[q] || this.parked[q])
+                    this.markStale(clone);
+                while (p != NONE && this.transition(p, symbol) == q) {
+                    this.setTransition(p, symbol, clone);
+                    p = this.link[p];
+                }
+                this.link[q] = clone;
+                this.link[cur] = clone;
+            }
+        }
+        this.last = cur;
+    }
+
+    private int newState(int length, int suffixLink) {
+        if (this.stateCount == this.len.length) {
+            int size = this.stateCount * 2;
+            this.len = Arrays.copyOf(this.len, size);
+            this.link = Arrays.copyOf(this.link, size);
+            this.next = Arrays.copyOf(this.next, size);
+            this.recent = Arrays.copyOf(this.recent, size);
+            this.stale = Arrays.copyOf(this.stale, size);
+            this.parked = Arrays.copyOf(this.parked, size);
+            this.followed = Arrays.copyOf(this.followed, size);
+        }
+        int state = this.stateCount++;
+        this.len[state] = length;
+        this.link[state] = suffixLink;
+        return state;
+    }
+
+    private int transition(int state, int symbol) {
+        int[] edges = this.next[state];
+        if (edges == null || symbol >= edges.length)
+            return NONE;
+        return edges[symbol] - 1;
+    }
+
+    private void setTransition(int state, int symbol, int target) {
+        int[] edges = this.next[state];
+        if (edges == null || symbol >= edges.length) {
+            edges = (edges == null) ? new int[this.symbols.size()] : Arrays.copyOf(edges, this.symbols.size());
+            this.next[state] = edges;
+        }
+        edges[symbol] = target + 1;
+    }
+
+    /**
+     * pushes a position into the states on its suffix link path, parking
+     * the push once it has gone pushDepth states up
+     */
+    private void push(int position, int actionOrdinal) {
+        long bit = followedBit(actionOrdinal);
+        int visited = 0;
+        int previous = NONE;
+        int v = this.positionStates[position];
+        for (; v != ROOT && visited < this.pushDepth; v = this.link[v]) {
+            visited++;
+            this.insertRecent(v, actionOrdinal, position);
+            this.followed[v] |= bit;
+            previous = v;
+        }
+        if (v != ROOT) {
+            this.park(position, actionOrdinal, previous);
+            //the followed bits are set right away, but only until a state
+            //that has the bit (and so do all the states above it)
+            for (; v != ROOT && (this.followed[v] & bit) != bit; v = this.link[v]) {
+                visited++;
+                this.followed[v] |= bit;
+            }
+        }
+        this.visits.addAndGet(visited);
+    }
+
+    /** @return the action's bit in followed or 0 if it has none */
+    private static long followedBit(int actionOrdinal) {
+        return (actionOrdinal < Long.SIZE) ? 1L << actionOrdinal : 0;
+    }
+
+    /** parks a push that has reached the given state */
+    private void park(int position, int actionOrdinal, int state) {
+        if (this.parkedCount == this.parkedPositions.length) {
+            int size = this.parkedCount * 2;
+            this.parkedPositions = Arrays.copyOf(this.parkedPositions, size);
+            this.parkedActions = Arrays.copyOf(this.parkedActions, size);
+            this.parkedStates = Arrays.copyOf(this.parkedStates, size);
+        }
+        this.parkedPositions[this.parkedCount] = position;
+        this.parkedActions[this.parkedCount] = actionOrdinal;
+        this.parkedStates[this.parkedCount] = state;
+        this.parkedCount++;
+        if (!this.parked[state]) {
+            this.parked[state] = true;
+            this.mark(state);
+        }
+        //the states above a stale state are already stale
+        int visited = 0;
+        for (int v = this.link[state]; v != ROOT && !this.stale[v]; v = this.link[v]) {
+            visited++;
+            this.markStale(v);
+        }
+        this.visits.addAndGet(visited);
+    }
+
+    private void markStale(int state) {
+        this.stale[state] = true;
+        this.mark(state);
+    }
+
+    private void mark(int state) {
+        if (this.markedCount == this.marked.length)
+            this.marked = Arrays.copyOf(this.marked, this.markedCount * 2);
+        this.marked[this.markedCount++] = state;
+    }
+
+    /**
+     * adds position to the given state's recent positions for action,
+     * keeping them newest first
+     *
+     * @return false if the state already has K newer positions
+     */
+    private boolean insertRecent(int state, int actionOrdinal, int position) {
+        int base = actionOrdinal * (this.k + 1);
+        int[] lists = this.recent[state];
+        if (lists == null || base >= lists.length) {
+            int size = base + this.k + 1;
+            lists = (lists == null) ? new int[size] : Arrays.copyOf(lists, size);
+            this.recent[state] = lists;
+        }
+        int count = lists[base];
+        int at = 0;
+        while (at < count && lists[base + 1 + at] > position) {
+            at++;
+        }
+        if (at < count && lists[base + 1 + at] == position)
+            return true;
+        if (at == this.k)
+            return false;
+        System.arraycopy(lists, base + 1 + at, lists, base + 2 + at, Math.min(count, this.k - 1) - at);
+        lists[base + 1 + at] = position;
+        lists[base] = Math.min(count + 1, this.k);
+        return true;
+    }
+
+    private int symbolOf(Episode episode) {
+        Integer symbol = this.symbols.get(episode);
+        if (symbol == null) {
+            symbol = this.symbols.size();
+            this.symbols.put(episode, symbol);
+        }
+        return symbol;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value)
+                return true;
+        }
+        return false;
+    }
+    //endregion
+}//class NeighborhoodIndex
@@ -20,6 +20,9 @@ public class QEpisode extends Episode {
     private double reward = 0.0;
     private double successReward;
     private double failureReward;
+    //where the q-value is written back once the episode has been spilled to disk
+    private SpillingQEpisodicMemory spilledTo = null;
+    private int spilledIndex = -1;
     //endregion
 
     //region Constructors
@@ -32,11 +35,39 @@ public class QEpisode extends Episode {
         else
             this.reward = this.failureReward;
     }
+
+    /**
+     * rebuilds an episode that was spilled to disk by the given memory
+     */
+    QEpisode(SensorData sensorData, Action action, double reward, double qValue,
+             SpillingQEpisodicMemory spilledTo, int spilledIndex) {
+        super(sensorData, action);
+        this.reward = reward;
+        this.qValue = qValue;
+        this.spilledTo(spilledTo, spilledIndex);
+    }
     //endregion
 
     //region Public Methods
     public void updateQValue(double utility) {
         this.qValue = (1.0 - LEARNING_RATE) * (this.qValue) + LEARNING_RATE * (this.reward + DISCOUNT * utility);
+        if (this.spilledTo != null)
+            this.spilledTo.writeQValue(this.spilledIndex, this.qValue);
+    }
+
+    public double getReward() {
+        return this.reward;
+    }
+    //endregion
+
+    //region Package Methods
+    /**
+     * marks this episode as spilled so that later q-value updates (e.g., by
+     * a neighborhood still holding it) reach the copy on disk
+     */
+    void spilledTo(SpillingQEpisodicMemory memory, int index) {
+        this.spilledTo = memory;
+        this.spilledIndex = index;
     }
     //endregion
 }
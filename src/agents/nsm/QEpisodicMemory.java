@@ -3,6 +3,8 @@ package agents.nsm;
 import framework.Action;
 import utils.EpisodicMemory;
 
+import java.util.stream.IntStream;
+
 /**
  *
  * @author Zachary Paul Faltersack
@@ -10,22 +12,198 @@ import utils.EpisodicMemory;
  */
 public class QEpisodicMemory extends EpisodicMemory<QEpisode> {
 
+    //region Static Variables
+    //scans of memory are split into slices of this many episodes that are scored in parallel
+    public static final int PARALLEL_SCAN_THRESHOLD = 1 << 13;
+    //endregion
+
+    //region Class Variables
+    //built lazily on the first neighborhood query so subclasses that match
+    //episodes differently (e.g., NSMp) never pay for it
+    private NeighborhoodIndex neighborhoodIndex;
+    //endregion
+
+    //region Constructors
+    public QEpisodicMemory()
+    {
+        super();
+    }
+
+    /**
+     * @param capacity the number of episodes to keep on the heap or
+     *                 {@link EpisodicMemory#UNBOUNDED}
+     */
+    protected QEpisodicMemory(int capacity)
+    {
+        super(capacity);
+    }
+    //endregion
+
     //region Public Methods
     public NHood buildNeighborhoodForMove(Action action)
     {
-        NHood nHood = new NHood(action);
-        //find the kNN
-        for(int i = 0; i <= this.currentIndex(); ++i) {
-            int matchLen = this.matchedMemoryStringLength(action, i);
-            if ((matchLen > 0) && ((nHood.shortest <= matchLen) || (nHood.nbors.size() < nHood.K_NEAREST))) {
-                nHood.addNBor(new NBor(i, matchLen, this.episodicMemory.get(i)));
+        return this.buildNeighborhoodForMove(action, false);
+    }
+
+    /**
+     * buildNeighborhoods
+     *
+     * builds the neighborhood for each of the given actions.  In parallel
+     * the actions are built concurrently (and long scans are themselves split
+     * across threads) but the neighborhoods are identical to those built one
+     * at a time.
+     *
+     * @param actions the actions to build neighborhoods for
+     * @param parallel whether to use the common fork/join pool
+     * @return the neighborhood of each action in the same order as actions
+     */
+    public NHood[] buildNeighborhoods(Action[] actions, boolean parallel)
+    {
+        if (actions == null)
+            throw new IllegalArgumentException("actions cannot be null");
+
+        NHood[] nHoods = new NHood[actions.length];
+        IntStream builds = IntStream.range(0, actions.length);
+        if (parallel && this.size() >= PARALLEL_SCAN_THRESHOLD)
+            builds = builds.parallel();
+        if (!this.usesNeighborhoodIndex()) {
+            builds.forEach(a -> nHoods[a] = this.buildNeighborhoodForMove(actions[a], parallel));
+            return nHoods;
+        }
+
+        //bring the index up to date first so the queries below only read it
+        //and can run concurrently; any that need it settled are run again
+        this.updateNeighborhoodIndex();
+        builds.forEach(a -> nHoods[a] = this.queryNeighborhood(actions[a]));
+        for (int a = 0; a < actions.length; a++) {
+            if (nHoods[a] == null) {
+                this.neighborhoodIndex.settle();
+                nHoods[a] = this.queryNeighborhood(actions[a]);
             }
-        }//for
+        }
+        return nHoods;
+    }
+
+    @Override
+    public void trim(int count) {
+        super.trim(count);
+        //the index cannot forget episodes so start it over
+        this.neighborhoodIndex = null;
+    }
+    //endregion
+
+    //region Protected Methods
+    protected NHood buildNeighborhoodForMove(Action action, boolean parallel)
+    {
+        if (!this.usesNeighborhoodIndex())
+            return this.scanNeighborhoodForMove(new NHood(action), parallel);
+
+        this.updateNeighborhoodIndex();
+        NHood nHood = this.queryNeighborhood(action);
+        if (nHood == null) {
+            this.neighborhoodIndex.settle();
+            nHood = this.queryNeighborhood(action);
+        }
+        return nHood;
+    }
+
+    /**
+     * @return whether neighborhoods can be found with the index rather than
+     * by scanning memory
+     */
+    protected boolean usesNeighborhoodIndex()
+    {
+        //the index assumes memory is never forgotten
+        return this.firstIndex() == 0;
+    }
+
+    /**
+     * @return how well the episodes leading up to the given index match
+     * those leading up to the present moment (0 for no match)
+     */
+    protected double matchLength(Action action, int index)
+    {
+        return this.matchedMemoryStringLength(action, index);
+    }
+
+    /**
+     * scanNeighborhoodForMove
+     *
+     * fills the given neighborhood by scoring every episode in memory.  In
+     * parallel, slices of memory are scored concurrently and the neighbors
+     * are then admitted in order, so the result is the same as a sequential
+     * scan.
+     */
+    protected NHood scanNeighborhoodForMove(NHood nHood, boolean parallel)
+    {
+        Action action = nHood.getMove();
+        int first = this.firstIndex();
+        int count = this.currentIndex() - first + 1;
+        if (!parallel || count < PARALLEL_SCAN_THRESHOLD) {
+            //find the kNN
+            for(int i = first; i <= this.currentIndex(); ++i) {
+                this.considerNBor(nHood, i, this.matchLength(action, i));
+            }//for
+            return nHood;
+        }
+
+        double[] matchLengths = new double[count];
+        int slices = (count + PARALLEL_SCAN_THRESHOLD - 1) / PARALLEL_SCAN_THRESHOLD;
+        IntStream.range(0, slices).parallel().forEach(slice -> {
+            int end = Math.min(count, (slice + 1) * PARALLEL_SCAN_THRESHOLD);
+            for (int j = slice * PARALLEL_SCAN_THRESHOLD; j < end; j++) {
+                matchLengths[j] = this.matchLength(action, first + j);
+            }
+        });
+        for (int j = 0; j < count; j++) {
+            this.considerNBor(nHood, first + j, matchLengths[j]);
+        }
         return nHood;
     }
     //endregion
 
     //region Private Methods
+    private void updateNeighborhoodIndex()
+    {
+        if (this.neighborhoodIndex == null)
+            this.neighborhoodIndex = new NeighborhoodIndex(NHood.K_NEAREST);
+        for (int i = this.neighborhoodIndex.length(); i <= this.currentIndex(); i++) {
+            this.neighborhoodIndex.append(this.get(i), this.getActionOrdinal(i));
+        }
+    }
+
+    /**
+     * finds the neighborhood with the (up to date) index without changing
+     * it, so it is safe to call concurrently
+     *
+     * @return the neighborhood or null if the index must be settled first
+     */
+    private NHood queryNeighborhood(Action action)
+    {
+        NHood nHood = new NHood(action);
+        int actionOrdinal = this.findActionOrdinal(action);
+        if (actionOrdinal < 0)
+            return nHood;
+        int[] indexes = new int[NHood.K_NEAREST];
+        int[] lengths = new int[NHood.K_NEAREST];
+        int found = this.neighborhoodIndex.query(actionOrdinal, indexes, lengths);
+        if (found == NeighborhoodIndex.UNSETTLED)
+            return null;
+        //add the neighbors shortest (then oldest) first so the hood ends up
+        //in the same order a full scan would leave it in
+        for (int n = found - 1; n >= 0; n--) {
+            nHood.addNBor(indexes[n], lengths[n], this.get(indexes[n]));
+        }
+        return nHood;
+    }
+
+    private void considerNBor(NHood nHood, int index, double matchLen)
+    {
+        if (nHood.accepts(matchLen)) {
+            nHood.addNBor(index, (int) Math.round(matchLen), this.get(index));
+        }
+    }
+
     /**
      * matchedMemoryStringLength
      *
@@ -37,16 +215,16 @@ public class QEpisodicMemory extends EpisodicMemory<QEpisode> {
      * @return the number of consecutive matching characters
      */
     public int matchedMemoryStringLength(Action nHoodAction, int endOfStringIndex) {
-        if (!nHoodAction.equals(this.episodicMemory.get(endOfStringIndex).getAction()))
+        if (this.getActionOrdinal(endOfStringIndex) != this.findActionOrdinal(nHoodAction))
             return 0;
         int length = 0;
         endOfStringIndex--;
         int indexOfMatchingAction = this.currentIndex();
-        for (int i = endOfStringIndex; i >= 0; i--) {
+        for (int i = endOfStringIndex; i >= this.firstIndex(); i--) {
             //We want to compare the command from the prev episode and the
             //sensors from the "right now" episode to the sequence at the
             //index indicated by 'i'
-            if (this.episodicMemory.get(indexOfMatchingAction).equals(this.episodicMemory.get(i))) {
+            if (this.episodesEqual(indexOfMatchingAction, i)) {
                 length++;
                 indexOfMatchingAction--;
             }
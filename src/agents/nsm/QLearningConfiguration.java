@@ -12,5 +12,7 @@ public class QLearningConfiguration {
     public double INIT_RAND_CHANCE =  0.8;
     public double RAND_DECREASE    =  0.95;  //mult randChance by this value at each goal
     public double MIN_RAND_CHANCE  =  0.0;
+    public boolean PARALLEL_NEIGHBORHOODS = true;  //build each action's neighborhood concurrently
+    public int SPILL_HOT_CAPACITY   =  0;  //keep this many recent episodes on the heap and spill older ones to disk (0 never spills)
     //endregion
 }
@@ -0,0 +1,142 @@
+package agents.nsm;
+
+import framework.SensorData;
+import utils.SpillFile;
+import utils.SpillingEpisodicMemory;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A {@link QEpisodicMemory} that keeps only a hot tail of episodes on the
+ * heap and spills older ones to a memory-mapped {@link SpillFile}, as
+ * {@link SpillingEpisodicMemory} does.
+ *
+ * NSM updates q-values in place so a spilled record also holds the
+ * episode's reward and q-value.  Every {@link QEpisode} that has left the
+ * heap (whether it was evicted or rebuilt from disk) writes its q-value
+ * back to its record whenever {@link QEpisode#updateQValue(double)} is
+ * called, so an update made through any copy is seen by all later reads.
+ *
+ * Episodes must only have boolean sensors.  The memory holds a mapped file
+ * so it should be closed once the run is over.
+ *
+ * @author Zachary Paul Faltersack
+ * @version 0.95
+ */
+public class SpillingQEpisodicMemory extends QEpisodicMemory implements Closeable {
+
+    //region Static Variables
+    //each spilled episode is its action ordinal, mask and word then its reward and q-value
+    private static final int ACTION_OFFSET = 0;
+    private static final int MASK_OFFSET = ACTION_OFFSET + Integer.BYTES;
+    private static final int WORD_OFFSET = MASK_OFFSET + Long.BYTES;
+    private static final int REWARD_OFFSET = WORD_OFFSET + Long.BYTES;
+    private static final int QVALUE_OFFSET = REWARD_OFFSET + Double.BYTES;
+    private static final int RECORD_SIZE = QVALUE_OFFSET + Double.BYTES;
+    //endregion
+
+    //region Class Variables
+    private final SpillFile spillFile;
+    //endregion
+
+    //region Constructors
+    /**
+     * creates a memory backed by a temporary file that is deleted when it
+     * is closed
+     *
+     * @param hotCapacity the number of recent episodes to keep on the heap
+     */
+    public SpillingQEpisodicMemory(int hotCapacity)
+    {
+        super(hotCapacity);
+        if (hotCapacity < 1)
+            throw new IllegalArgumentException("hotCapacity must be greater than 0");
+        this.spillFile = new SpillFile(RECORD_SIZE);
+    }
+    //endregion
+
+    //region Public Methods
+    /**
+     * @return the number of episodes that currently live on disk
+     */
+    public int spilledCount()
+    {
+        return this.spillFile.count();
+    }
+    //endregion
+
+    //region Package Methods
+    void writeQValue(int index, double qValue)
+    {
+        this.spillFile.putDouble(index, QVALUE_OFFSET, qValue);
+    }
+    //endregion
+
+    //region EpisodicMemory Overrides
+    /**
+     * every episode ever added remains available so the first index never
+     * moves (which also keeps the neighborhood index in use)
+     */
+    @Override
+    public int firstIndex()
+    {
+        return 0;
+    }
+
+    @Override
+    protected void onEvict(int index, QEpisode episode, int actionOrdinal, long sensorMask, long sensorWord)
+    {
+        if (!this.isPacked())
+            throw new IllegalStateException("only episodes with boolean sensors can be spilled to disk");
+        if (index != this.spillFile.count())
+            throw new IllegalStateException("episodes must be spilled in order");
+        this.spillFile.append();
+        this.spillFile.putInt(index, ACTION_OFFSET, actionOrdinal);
+        this.spillFile.putLong(index, MASK_OFFSET, sensorMask);
+        this.spillFile.putLong(index, WORD_OFFSET, sensorWord);
+        this.spillFile.putDouble(index, REWARD_OFFSET, episode.getReward());
+        this.spillFile.putDouble(index, QVALUE_OFFSET, episode.qValue);
+        episode.spilledTo(this, index);
+    }
+
+    @Override
+    protected QEpisode getEvicted(int index)
+    {
+        SensorData sensorData = this.unpackSensors(this.getEvictedSensorMask(index), this.getEvictedSensorWord(index));
+        return new QEpisode(sensorData, this.getActionByOrdinal(this.getEvictedActionOrdinal(index)),
+                this.spillFile.getDouble(index, REWARD_OFFSET), this.spillFile.getDouble(index, QVALUE_OFFSET),
+                this, index);
+    }
+
+    @Override
+    protected int getEvictedActionOrdinal(int index)
+    {
+        return this.spillFile.getInt(index, ACTION_OFFSET);
+    }
+
+    @Override
+    protected long getEvictedSensorMask(int index)
+    {
+        return this.spillFile.getLong(index, MASK_OFFSET);
+    }
+
+    @Override
+    protected long getEvictedSensorWord(int index)
+    {
+        return this.spillFile.getLong(index, WORD_OFFSET);
+    }
+    //endregion
+
+    //region Closeable Members
+    /**
+     * unmaps and releases the spill file.  Spilled episodes can no longer
+     * be read or updated afterward.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        this.spillFile.close();
+    }
+    //endregion
+}
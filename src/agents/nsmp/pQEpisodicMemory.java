@@ -1,27 +1,25 @@
 package agents.nsmp;
 
-import agents.nsm.NBor;
-import agents.nsm.NHood;
 import agents.nsm.QEpisodicMemory;
 import framework.Action;
 import framework.Episode;
+import framework.SensorData;
 
 public class pQEpisodicMemory extends QEpisodicMemory {
 
     public static final boolean PARTIAL_MATCHING = true;
 
     @Override
-    public NHood buildNeighborhoodForMove(Action action)
+    protected boolean usesNeighborhoodIndex()
     {
-        NHood nHood = new NHood(action);
-        //find the kNN
-        for(int i = 0; i <= this.currentIndex(); ++i) {
-            double matchLen = this.pMatchedMemoryStringLength(action, i);
-            if ((matchLen > 0) && ((nHood.shortest <= matchLen) || (nHood.nbors.size() < nHood.K_NEAREST))) {
-                nHood.addNBor(new NBor(i, (int) Math.round(matchLen), this.episodicMemory.get(i)));
-            }
-        }//for
-        return nHood;
+        //partial matches can't be found by the exact-match index
+        return false;
+    }
+
+    @Override
+    protected double matchLength(Action action, int index)
+    {
+        return this.pMatchedMemoryStringLength(action, index);
     }
 
     /**
@@ -35,24 +33,25 @@ public class pQEpisodicMemory extends QEpisodicMemory {
      * @return the number of consecutive matching characters
      */
     public double pMatchedMemoryStringLength(Action nHoodAction, int endOfStringIndex) {
-        if (!nHoodAction.equals(this.episodicMemory.get(endOfStringIndex).getAction()))
+        if (this.getActionOrdinal(endOfStringIndex) != this.findActionOrdinal(nHoodAction))
             return 0;
         double length = 0;
         endOfStringIndex--;
         int indexOfMatchingAction = this.currentIndex();
-        for (int i = endOfStringIndex; i >= 0; i--) {
+        long goalMask = this.goalMask();
+        for (int i = endOfStringIndex; i >= this.firstIndex(); i--) {
             //We want to compare the command from the prev episode and the
             //sensors from the "right now" episode to the sequence at the
             //index indicated by 'i'
             if (!PARTIAL_MATCHING) {
-                if (this.episodicMemory.get(indexOfMatchingAction).equals(this.episodicMemory.get(i))) {
+                if (this.episodesEqual(indexOfMatchingAction, i)) {
                     length++;
                     indexOfMatchingAction--;
                 } else {
                     return length;
                 }
             } else {
-                double score = partialEquals(this.episodicMemory.get(indexOfMatchingAction), this.episodicMemory.get(i));
+                double score = this.partialEquals(indexOfMatchingAction, i, goalMask);
                 if (score > 0.0d) {
                     length += score;
                     indexOfMatchingAction--;
@@ -66,6 +65,19 @@ public class pQEpisodicMemory extends QEpisodicMemory {
         return length;
     }//matchedMemoryStringLength
 
+    /**
+     * partialEquals
+     * <p>
+     * Returns a value from 0 to 1.0 of how much the episode at index1 matches the episode at index2.  When memory is
+     * packed this is a popcount of the sensors the two episodes agree on rather than a comparison of each sensor.
+     * @param index1 the index of the episode whose sensors are matched
+     * @param index2 the index of the other episode being compared
+     * @return
+     */
+    public double partialEquals(int index1, int index2) {
+        return this.partialEquals(index1, index2, this.goalMask());
+    }
+
     /**
      * partialEquals
      * <p>
@@ -101,4 +113,24 @@ public class pQEpisodicMemory extends QEpisodicMemory {
 
         return ((double) numMatches  / ((double) q.getSensorData().size() - 1.0));
     }//partialEquals
+
+    private double partialEquals(int index1, int index2, long goalMask) {
+        if (!this.isPacked())
+            return this.partialEquals(this.get(index1), this.get(index2));
+
+        if (this.getActionOrdinal(index1) != this.getActionOrdinal(index2))
+            return 0.0d;
+
+        long mask1 = this.getSensorMask(index1);
+        //sensors (other than the goal) that both episodes have with the same value
+        long matches = mask1 & ~goalMask & this.getSensorMask(index2)
+                & ~(this.getSensorWord(index1) ^ this.getSensorWord(index2));
+
+        return ((double) Long.bitCount(matches) / ((double) Long.bitCount(mask1) - 1.0));
+    }
+
+    private long goalMask() {
+        int goalOrdinal = this.findSensorOrdinal(SensorData.goalSensor);
+        return (goalOrdinal < 0) ? 0 : (1L << goalOrdinal);
+    }
 }
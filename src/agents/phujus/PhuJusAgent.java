@@ -38,6 +38,7 @@ public class PhuJusAgent implements IAgent {
     //===== Hyper-Parameters ===== //   <-- we hate these :@
     //-----------------------------//
     public static final int MAXNUMRULES = 7000;
+    public static final double CULL_HEADROOM = 0.05;  //fraction of max rules left free for new rules by cullRules()
     public static final int MAX_SEARCH_DEPTH = 5; //TODO: get the search to self prune again
     public static final int MAX_TIME_DEPTH = 4;  //size of short term memory
 
@@ -202,6 +203,16 @@ public class PhuJusAgent implements IAgent {
      * sub-lists: one for each time depth. */
     private final Vector<Vector<TFRule>> tfRules = new Vector<>();
 
+    /** the same TFRules indexed by action, primary internal sensor and LHS
+     * external sensors.  Used to find the rules that can match a set of sensors. */
+    private final TFRuleIndex tfRuleIndex = new TFRuleIndex();
+
+    /** the most rules this agent may have */
+    private final int maxNumRules;
+
+    /** ranks the TFRules so the weakest can be evicted by cullRules() */
+    private final RuleRetention retention;
+
     /** this tracks rules that "fire together" and therefore may need
      *  to be merged (i.e., "wire together")
      */
@@ -249,18 +260,12 @@ public class PhuJusAgent implements IAgent {
 
 
 
-    //Stores the percentage that each sensor is on and relative info to calculate it.
-    //HashMap maps sensor name (String) to Tuple containing creation
-    // time step (Integer) and percentage (Double).  This is the 'df' for
-    // a TFRule's tf-idf calculation.
-    private final HashMap<String, Tuple<Integer, Double>> externalPercents = new HashMap<>();
-    private final HashMap<String, Tuple<Integer, Double>> internalPercents = new HashMap<>();
-    /**
-     * It turns out that getting the DF value for an internal sensor is
-     * where the agent was spending about 50% of total computing time.
-     * So we cache those values in this array for quick access.
-     */
-    public double[] intPctCache = new double[Rule.getNextRuleId()];
+    //Stores the percentage that each sensor is on and the time step it was
+    // created (needed to calculate it).  This is the 'df' for a TFRule's
+    // tf-idf calculation.  External sensors are indexed by their position
+    // in TFRule.IDNAMEMAP and internal sensors by rule id.
+    private final SensorStats externalStats = new SensorStats(TFRule.IDNAMEMAP.length);
+    private final SensorStats internalStats = new SensorStats(Rule.getNextRuleId());
 
 
     //These variables track the success rate of random actions
@@ -272,6 +277,20 @@ public class PhuJusAgent implements IAgent {
 
 //endregion Instance Variables
 
+    public PhuJusAgent() {
+        this(MAXNUMRULES, RuleRetention.ACTIVATION_AND_CONFIDENCE);
+    }
+
+    /**
+     * @param maxNumRules the most rules this agent may have
+     * @param retentionPolicy decides which rules are evicted when there are too many
+     */
+    public PhuJusAgent(int maxNumRules, RuleRetention.Policy retentionPolicy) {
+        if (maxNumRules < 1) throw new IllegalArgumentException("maxNumRules must be positive");
+        this.maxNumRules = maxNumRules;
+        this.retention = new RuleRetention(retentionPolicy);
+    }
+
     /**
      * This method is called each time a new FSM is created and a new agent is
      * created.  As such, it also performs the duties of a ctor.
@@ -734,32 +753,31 @@ public class PhuJusAgent implements IAgent {
         Vector<HashSet<TFRule>> result = new Vector<>();
         if (this.rules.size() == 0) return result; //no rules yet
 
-        //For rule matching, we need a flat version of the given prevInt
-        HashSet<Integer> flatPrevInt = flattenRuleSet(prevInt);
+        //For rule matching, we need the given sensors as vectors.  These are
+        //built once and shared by every rule.
+        SensorVector lhs = new SensorVector(this, flattenRuleSet(prevInt), prevExt);
+        SensorVector rhs = new SensorVector(this, null, currExt);
+
+        //Only rules with a matching LHS can match so sort those by depth
+        Vector<Vector<TFRule>> candidates = new Vector<>();
+        for (int depth = 0; depth < this.tfRules.size(); ++depth) {
+            candidates.add(new Vector<>());
+        }
+        for (TFRule r : this.tfRuleIndex.candidates(action, lhs)) {
+            candidates.get(r.getTimeDepth()).add(r);
+        }
 
         //Iterate over each rule depth
-        for(Vector<TFRule> ruleSubList : this.tfRules) {
+        for(Vector<TFRule> ruleSubList : candidates) {
 
             //setup a container for the matches
             HashSet<TFRule> currIntSubList = new HashSet<>();
             result.add(currIntSubList);
 
             // find the TFRules at this depth that best match the given sensors/actions
-            double bestScore = 0.0;
             // Cache all the scores in an array, so we don't have to calc them twice (see next loop)
             double[] allScores = new double[ruleSubList.size()];
-            for (int i = 0; i < ruleSubList.size(); ++i) {
-                TFRule r = ruleSubList.get(i);
-                double rhsScore = r.rhsMatchScore(currExt);
-                double lhsScore = r.lhsMatchScore(action, flatPrevInt, prevExt);
-                //both scores must be positive
-                if ((rhsScore <= 0.0) || (lhsScore <= 0.0)) continue;
-
-                allScores[i] = rhsScore * lhsScore;
-                if (allScores[i] > bestScore) {
-                    bestScore = allScores[i];
-                }
-            }//for
+            double bestScore = TFRule.matchScores(ruleSubList, action, lhs, rhs, allScores);
 
             //If best score is a mismatch then there will be no internal
             //sensors at this depth
@@ -834,23 +852,14 @@ public class PhuJusAgent implements IAgent {
         //handle the external sensors
         if (this.currExternal != null) { //we have external sensor data to track
 
-            //Go through each sensor name and check if the sensor is in the vector
-            //if it is, then we calculate the new sensor percent - update the tuple
-            //if it isn't then we want to calculate and add the tuple to the vector
-
-            String[] nameArr = this.currExternal.getSensorNames().toArray(new String[0]);
-
-            for (String s : nameArr) {
+            //Go through each sensor name and check if the sensor has data
+            //if it does, then we calculate the new sensor percent
+            //if it doesn't then we add it with the current time
+            for (String s : this.currExternal.getSensorNames()) {
+                int ord = TFRule.Cond.sensorNameToIndex(s);
+                if (ord < 0) continue;  //can't be on any rule
                 boolean sensorVal = (Boolean) this.currExternal.getSensor(s);
-                Tuple<Integer, Double> sensorTuple = this.externalPercents.get(s);
-
-                if (sensorTuple != null) { //We need to adjust the old percent value
-                    double newPercent = calculateSensorPercent(sensorTuple.first, sensorTuple.second, sensorVal);
-                    sensorTuple.setSecond(newPercent);
-                } else { //We just set the percent to either 1.0 or 0 and set the current time
-                    double percentage = sensorVal ? 1.0 : 0.0;
-                    externalPercents.put(s, new Tuple<>(this.now, percentage));
-                }
+                updateSensorPercent(this.externalStats, ord, sensorVal);
             }
         }
     }//updateExternalPercents
@@ -863,43 +872,43 @@ public class PhuJusAgent implements IAgent {
     private void updateInternalPercents() {
         if(this.currInternal.size() == 0) return;
 
-        //This cache is used to speedup lookup
-        //TODO:  If this works better to replace the entire HashSet with an array?
-        intPctCache = new double[Rule.getNextRuleId()];
-
+        this.internalStats.ensureCapacity(Rule.getNextRuleId());
         for(int depth = 0; depth < this.currInternal.size(); ++depth) {
             HashSet<TFRule> intSubset = getCurrInternal(depth);
             Vector<TFRule> ruleSubset = this.tfRules.get(depth);
 
             for (TFRule rule : ruleSubset) {
                 boolean wasActive = intSubset.contains(rule);
-
-                Tuple<Integer, Double> sensorTuple = this.internalPercents.get(Integer.toString(rule.ruleId));
-
-                if (sensorTuple != null) { //We need to adjust the old percent value
-                    double newPercent = calculateSensorPercent(sensorTuple.first, sensorTuple.second, wasActive);
-                    sensorTuple.setSecond(newPercent);
-                    intPctCache[rule.ruleId] = newPercent;
-                } else { //We just set the percent to either 1.0 or 0 and set the current time
-                    double percentage = wasActive ? 1.0 : 0.0;
-                    internalPercents.put(Integer.toString(rule.ruleId), new Tuple<>(this.now, percentage));
-                    intPctCache[rule.ruleId] = percentage;
-                }
+                updateSensorPercent(this.internalStats, rule.ruleId, wasActive);
             }
         }
 
     }//updateInternalPercents
 
+    /**
+     * updateSensorPercent
+     *
+     * updates the percentage data for one sensor given whether it is on now
+     */
+    private void updateSensorPercent(SensorStats stats, int id, boolean on) {
+        if (stats.has(id)) { //We need to adjust the old percent value
+            double newPercent = calculateSensorPercent(stats.getCreated(id), stats.getPercent(id), on);
+            stats.setPercent(id, newPercent);
+        } else { //We just set the percent to either 1.0 or 0 and set the current time
+            stats.set(id, this.now, on ? 1.0 : 0.0);
+        }
+    }//updateSensorPercent
+
     /**
      * removeInternalSensorPercent
      *
-     * Removes the given internal sensor from our hashmap of internal sensor Percentages
+     * Removes the given internal sensor from our internal sensor percentages
      *
      * @param ruleNumber the rule number to be removed
      */
     private void removeInternalSensorPercent(int ruleNumber){
 
-        this.internalPercents.remove(Integer.toString(ruleNumber));
+        this.internalStats.remove(ruleNumber);
         debugPrintln("removed Internal Sensor number: "+ ruleNumber);
     }//removeInternalSensorPercent
 
@@ -945,36 +954,43 @@ public class PhuJusAgent implements IAgent {
      *        Not sure how to self-tune.
      *
      * @param tfRule  the rule to calc the score for
+     * @param prev  the agent's previous sensors (see {@link #prevSensorVector()})
+     * @param curr  the agent's current external sensors
      *
      * @return a confidence score [-1.0..1.0] of how right/wrong this rule is.
      *         A 0.0 return value means that no adjustment is recommended.
      */
-    private double calcAdjustmentScore(TFRule tfRule) {
+    private double calcAdjustmentScore(TFRule tfRule, SensorVector prev, SensorVector curr) {
         //actions must match, of course
         if (tfRule.getAction() != this.prevAction) return 0.0;
 
         //Calculate the match score for each component of the match and
         //make sure they all agree
-        double lhsIntScore = tfRule.lhsIntMatchScore(this.flatPrevInternal);
+        double lhsIntScore = tfRule.lhsIntMatchScore(prev);
         if (lhsIntScore <= 0.0) return 0.0;
 
         //TODO:  for now I'm requiring an exact match for LHSext.  We should
         //       eventually use soft matches as per the commented out line
         //double lhsExtScore = tfRule.lhsExtMatchScore(this.prevExternal);
         double lhsExtScore = 1.0;
-        if (! tfRule.isLHSExtMatch(this.prevAction, this.prevExternal)) {
+        if (! tfRule.isLHSExtMatch(this.prevAction, prev)) {
             return 0.0;
         }
 
         //If we reach this point then the LHS matched so, if the rule is
         // correct, the RHS should match too
-        double rhsScore = tfRule.rhsMatchScore(this.currExternal);
+        double rhsScore = tfRule.rhsMatchScore(curr);
         //This will penalize rhs mismatch and reward rhs match proportionally
         //to the strength of the mis/match.
         return lhsIntScore * lhsExtScore * rhsScore;
 
     }//calcAdjustmentScore
 
+    /** @return the sensors of the agent's previous step as a vector for rule scoring */
+    private SensorVector prevSensorVector() {
+        return new SensorVector(this, this.flatPrevInternal, this.prevExternal);
+    }
+
     /**
      * updateTFRuleConfidences
      *
@@ -984,13 +1000,15 @@ public class PhuJusAgent implements IAgent {
      *
      */
     public void updateTFRuleConfidences() {
-        for(Vector<TFRule> ruleSubList : this.tfRules) {
-            for(TFRule tfRule : ruleSubList) {
-                double adjAmount = calcAdjustmentScore(tfRule);
-                if (adjAmount != 0.0) {
-                    tfRule.adjustConfidence(adjAmount);
-                }
-            }//for
+        SensorVector prev = prevSensorVector();
+        SensorVector curr = new SensorVector(this, null, this.currExternal);
+        //only rules whose LHS matches can be adjusted
+        for(TFRule tfRule : this.tfRuleIndex.candidates(this.prevAction, prev)) {
+            double adjAmount = calcAdjustmentScore(tfRule, prev, curr);
+            if (adjAmount != 0.0) {
+                tfRule.adjustConfidence(adjAmount);
+                this.retention.update(tfRule);
+            }
         }//for
     }//updateTFRuleConfidences
 
@@ -1001,16 +1019,28 @@ public class PhuJusAgent implements IAgent {
     /**
      * cullRules
      *
-     * if MAXNUMRULES has been reached, this method culls the set down
-     * by removing the worst rules.
+     * if the max number of rules is close, this method culls the set down
+     * by removing the worst rules.  This leaves room for the rules created
+     * in the next time step (see {@link #CULL_HEADROOM}).
      *
-     * a rules score is calculated by multiplying its activation with its accuracy
+     * a rules score is decided by the agent's {@link RuleRetention.Policy}.
+     * By default it is its activation multiplied by its accuracy.
      *
      */
     private void cullRules() {
         mergeRules();
 
-        //TODO:  code here to remove rules if there are still too many
+        //Evict the weakest TFRules (and the rules that depend on them).
+        //Only TFRules can be evicted so they are only cut back to their
+        //share of the target.  Otherwise PathRules filling the cap would
+        //drain every TFRule.
+        int total = this.rules.size();
+        int target = this.maxNumRules - Math.max(1, (int) (this.maxNumRules * CULL_HEADROOM));
+        if (total <= target) return;
+        long tfTarget = ((long) target * this.retention.size() + total - 1) / total;  //rounded up
+        while (this.retention.size() > tfTarget) {
+            removeRule(this.retention.peekWeakest(), null);
+        }
     }
 
     /**
@@ -1051,7 +1081,7 @@ public class PhuJusAgent implements IAgent {
             // Remember: The sets of potential merges are kept in pairs! e.g. [3,4] , [3,5], [3,17], etc...
             TFRule mergeParent = mergeThese[0];
             TFRule checkThis   = mergeThese[1];
-            if (mergeThese[0].getLhsInternal().size() > mergeThese[1].getLhsInternal().size()) {
+            if (mergeThese[0].getLhsInternalSize() > mergeThese[1].getLhsInternalSize()) {
                 mergeParent = mergeThese[1];
                 checkThis   = mergeThese[0];
             }
@@ -1166,12 +1196,13 @@ public class PhuJusAgent implements IAgent {
      */
     private void updateAllTFValues() {
         //Call updateTFVals on the rules that match the agent's latest episode.
-        for(Vector<TFRule> ruleSubList : this.tfRules) {
-            for(TFRule rule : ruleSubList) {
-                double adjScore = calcAdjustmentScore(rule);
-                if (adjScore != 0.0) {
-                    rule.updateTFVals(this.flatPrevInternal, this.prevExternal, this.currExternal);
-                }
+        SensorVector prev = prevSensorVector();
+        SensorVector curr = new SensorVector(this, null, this.currExternal);
+        //only rules whose LHS matches can be adjusted
+        for(TFRule rule : this.tfRuleIndex.candidates(this.prevAction, prev)) {
+            double adjScore = calcAdjustmentScore(rule, prev, curr);
+            if (adjScore != 0.0) {
+                rule.updateTFVals(this.flatPrevInternal, this.prevExternal, this.currExternal);
             }
         }
     }//updateAllTFValues
@@ -1179,8 +1210,8 @@ public class PhuJusAgent implements IAgent {
     /**
      * findRule
      *
-     * searches the agent's tfRules list to find all rules that match the
-     * given criteria.
+     * searches the agent's tfRules to find all rules that match the
+     * given criteria.  This is an index lookup (see {@link TFRuleIndex}).
      *
      * @param action must be set
      * @param lhsExt must be set
@@ -1190,54 +1221,34 @@ public class PhuJusAgent implements IAgent {
      */
     public Vector<TFRule> findRules(char action, SensorData lhsExt,
                                     TFRule primary) {
-        Vector<TFRule> result = new Vector<>();
-        //Get a list of rules at the proper time depth
-        int depth = (primary == null) ? 0 : primary.getTimeDepth() + 1;
-        if (this.tfRules.size() <= depth) return result; // no rules at this depth
-        Vector<TFRule> sublist = this.tfRules.get(depth);
-
-        //Search for a match
-        for (TFRule r : sublist) {
-            if (r.isLHSExtMatch(action, lhsExt)) {
-                //for base rules, this is all that is required
-                if (depth == 0) result.add(r);
-
-                //for non-base compare the primary internal sensors
-                if (r.getPrimaryInternal().sId == primary.ruleId) {
-                    result.add(r);
-                }
-            }
-        }
+        long extKey = new SensorVector(this, null, lhsExt).getExtKey();
+        if (extKey == SensorVector.NO_KEY) return new Vector<>();
+        int primaryId = (primary == null) ? TFRuleIndex.BASE : primary.ruleId;
 
-        return result;
+        return new Vector<>(this.tfRuleIndex.get(action, primaryId, extKey));
     }//findRules
 
 
     /**
      * findRule
      *
-     * searches the agent's tfRules list to find a rule that matches the
-     * given criteria.
+     * searches the agent's tfRules to find a rule that matches the
+     * given criteria.  Only rules with a matching LHS are checked (see
+     * {@link TFRuleIndex}).
      *
      * @return a reference to the duplicate if found (null otherwise)
      */
     public TFRule findRule(char action, SensorData lhsExt,
                             SensorData rhsExt, TFRule primary) {
-        //Get a list of rules at the proper time depth
-        int depth = (primary == null) ? 0 : primary.getTimeDepth() + 1;
-        if (this.tfRules.size() <= depth) return null; // no rules at this depth
-        Vector<TFRule> sublist = this.tfRules.get(depth);
-
-        //Search for a match
-        for (TFRule r : sublist) {
-            if (r.isExtMatch(action, lhsExt, rhsExt)) {
-                //for base rules, this is all that is required
-                if (depth == 0) return r;
-
-                //for non-base compare the primary internal sensors
-                if (r.getPrimaryInternal().sId == primary.ruleId) {
-                    return r;
-                }
+        SensorVector lhs = new SensorVector(this, null, lhsExt);
+        if (lhs.getExtKey() == SensorVector.NO_KEY) return null;
+        SensorVector rhs = new SensorVector(this, null, rhsExt);
+        int primaryId = (primary == null) ? TFRuleIndex.BASE : primary.ruleId;
+
+        //Search the rules with a matching LHS for a matching RHS
+        for (TFRule r : this.tfRuleIndex.get(action, primaryId, lhs.getExtKey())) {
+            if (r.isExtMatch(action, lhs, rhs)) {
+                return r;
             }
         }
 
@@ -1250,14 +1261,14 @@ public class PhuJusAgent implements IAgent {
      *
      * adds a given {@link Rule} to the agent's repertoire.  This method will
      * fail silently if the new rule can't be added:
-     *  - because you try to exceed {@link #MAXNUMRULES}
+     *  - because you try to exceed the max number of rules
      *  - because an existing rule is a duplicate of the given one
      *
      */
     public void addRule(Rule newRule) {
-        if (rules.size() >= MAXNUMRULES) {
+        if (rules.size() >= this.maxNumRules) {
             if (Math.random() < 0.05) {
-                System.err.println("Warning: Exceeded MAXNUMRULES! " + rules.size());
+                System.err.println("Warning: Exceeded max number of rules! " + rules.size());
             }
             return;
         }
@@ -1278,6 +1289,8 @@ public class PhuJusAgent implements IAgent {
             //Add the new rule
             Vector<TFRule> tfRuleSubList = this.tfRules.get(depth);
             tfRuleSubList.add(r);
+            this.tfRuleIndex.add(r);
+            this.retention.add(r);
         }
         else if (newRule instanceof PathRule) {
             this.pathRules.add((PathRule) newRule);
@@ -1297,8 +1310,9 @@ public class PhuJusAgent implements IAgent {
     /**
      * removeRule
      *
-     * removes a rule from the agent's repertoire.  If the rule has an internal
-     * sensor on its RHS then any rules that test it must also be removed.
+     * removes a rule from the agent's repertoire.  Rules that have it as
+     * their primary internal sensor are moved to the replacement if it can
+     * take its place (same time depth) and removed otherwise.
      *
      * TODO:  try merging rule with most similar instead?
      *
@@ -1309,23 +1323,42 @@ public class PhuJusAgent implements IAgent {
      */
     public void removeRule(TFRule removeMe, TFRule replacement) {
         //Most importantly...
-        this.tfRules.get(removeMe.getTimeDepth()).remove(removeMe);
+        //(a cascade can reach a rule that is already gone)
+        if (! this.tfRules.get(removeMe.getTimeDepth()).remove(removeMe)) return;
+        this.tfRuleIndex.remove(removeMe);
+        this.retention.remove(removeMe);
         this.rules.remove(removeMe.getId());
 
         //DEBUGGING
         if (replacement == null) debugPrint("removed: ");
         else debugPrint("replaced: ");
 
-        //Removes the data from the sensor percentage HashMap
+        //Removes the data from the sensor percentages
         removeInternalSensorPercent(removeMe.getId());
 
+        //Rules whose primary is 'removeMe' can never fire without it
+        boolean canReplace = (replacement != null)
+                && (replacement.getTimeDepth() == removeMe.getTimeDepth());
+        for (TFRule dependent : this.tfRuleIndex.getDependents(removeMe.getId())) {
+            if (canReplace) {
+                this.tfRuleIndex.remove(dependent);
+                dependent.replaceIntSensor(removeMe.getId(), replacement.getId());
+                this.tfRuleIndex.add(dependent);
+            } else {
+                removeRule(dependent, null);
+            }
+        }
+
         // If any rule has a condition that test for 'removeMe' then that
-        // condition must also be removed or replaced
-        for (Vector<TFRule> subList : this.tfRules) {
-            for (TFRule r : subList) {
-                if (r.testsIntSensor(removeMe.getId())) {
-                    int replId = (replacement == null) ? -1 : replacement.getId();
-                    r.replaceIntSensor(removeMe.getId(), replId);
+        // condition must also be replaced.  Without a replacement it can be
+        // left alone:  rule ids are never reused so the condition will never
+        // be on again and its df is now 0.0.
+        if (replacement != null) {
+            for (Vector<TFRule> subList : this.tfRules) {
+                for (TFRule r : subList) {
+                    if (r.testsIntSensor(removeMe.getId())) {
+                        r.replaceIntSensor(removeMe.getId(), replacement.getId());
+                    }
                 }
             }
         }
@@ -1356,6 +1389,7 @@ public class PhuJusAgent implements IAgent {
             TreeNode tn = this.pathTraversedSoFar.get(i);
             for(TFRule r : tn.getSupporters()) {
                 r.addActivation(this.now, actBoost);
+                this.retention.update(r);
             }
             actBoost *= Rule.DECAY_RATE;
         }
@@ -1570,7 +1604,8 @@ public class PhuJusAgent implements IAgent {
     public SensorData getPrevExternal() { return this.prevExternal; }
     public Action[] getActionList() { return actionList; }
     public char getPrevAction() { return prevAction; }
-    public HashMap<String, Tuple<Integer, Double>> getExternalPercents() {return this.externalPercents;}
+    public SensorStats getExternalStats() {return this.externalStats;}
+    public SensorStats getInternalStats() {return this.internalStats;}
     public double getRandSuccessRate() { return this.numRandSuccess / this.numRand; }
     public HashSet<Integer> getFlatCurrInternal() { return this.flatCurrInternal; }
     public HashSet<Integer> getFlatPrevInternal() { return this.flatPrevInternal; }
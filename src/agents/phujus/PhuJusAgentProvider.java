@@ -4,9 +4,18 @@ import framework.IAgent;
 import framework.IAgentProvider;
 
 public class PhuJusAgentProvider implements IAgentProvider {
+    private int maxNumRules = PhuJusAgent.MAXNUMRULES;
+
+    public PhuJusAgentProvider() {
+    }
+
+    public PhuJusAgentProvider(int maxNumRules) {
+        this.maxNumRules = maxNumRules;
+    }
+
     @Override
     public IAgent getAgent() {
-        return new PhuJusAgent();
+        return new PhuJusAgent(maxNumRules, RuleRetention.ACTIVATION_AND_CONFIDENCE);
     }
 
     @Override
@@ -132,6 +132,41 @@ public abstract class Rule {
         return this.activationLevel;
     }//calcActivation
 
+    /**
+     * calcActivationKey
+     *
+     * calculates the log of this rule's activation as it would be at time
+     * step 0.  Every rule's activation decays at the same rate so comparing
+     * these keys orders rules the same way as comparing
+     * {@link #calcActivation()} at any time step.  Unlike the activation, a
+     * key only changes when {@link #addActivation} is called.
+     *
+     * @return the key (negative infinity if the activation isn't positive)
+     */
+    public double calcActivationKey() {
+        int latest = getLastActivationTime();
+
+        //sum relative to the latest activation so the terms can't overflow
+        double sum = 0.0;
+        for(int j=0; j < lastActTimes.length; ++j) {
+            if(lastActTimes[j] != 0) {
+                sum += lastActAmount[j]*Math.pow(DECAY_RATE, latest-lastActTimes[j]);
+            }
+        }
+        if (sum <= 0.0) return Double.NEGATIVE_INFINITY;
+
+        return Math.log(sum) - latest * Math.log(DECAY_RATE);
+    }//calcActivationKey
+
+    /** @return the last time step this rule was activated (0 if never) */
+    public int getLastActivationTime() {
+        int latest = 0;
+        for (int t : lastActTimes) {
+            latest = Math.max(latest, t);
+        }
+        return latest;
+    }
+
     //endregion
 
     //region Getters and Setters
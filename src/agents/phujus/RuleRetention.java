@@ -0,0 +1,174 @@
+package agents.phujus;
+
+import java.util.Arrays;
+
+/**
+ * class RuleRetention
+ *
+ * ranks a {@link PhuJusAgent}'s TFRules by how much it should keep them so
+ * that the weakest can be found in O(1) and evicted in O(log n) when the
+ * agent has too many rules.
+ *
+ * It is an indexed binary min-heap:  each rule remembers its slot so a rule
+ * whose score changes can be re-positioned in place.  A rule's score comes
+ * from a {@link Policy} and is only recalculated when {@link #update} is
+ * called so a policy's scores must not change with time alone.  Rules with
+ * equal scores are ordered by when they were last activated and then by id
+ * (oldest is weakest) which keeps eviction deterministic.
+ */
+public class RuleRetention {
+
+    /**
+     * interface Policy
+     *
+     * scores a rule for retention.  Higher scores are kept longer.
+     */
+    public interface Policy {
+        double score(TFRule rule);
+    }
+
+    //the least confidence ACTIVATION_AND_CONFIDENCE uses so its log is finite
+    public static final double MIN_CONFIDENCE = 1e-6;
+
+    /**
+     * the default policy:  a rule's activation (which also reflects how
+     * recently it was activated) times its confidence.  The log of this is
+     * used so that it can be compared at a fixed time step
+     * (see {@link Rule#calcActivationKey()}).  A confidence below
+     * MIN_CONFIDENCE (e.g., one set by a loader) is treated as MIN_CONFIDENCE.
+     */
+    public static final Policy ACTIVATION_AND_CONFIDENCE =
+            rule -> rule.calcActivationKey() + Math.log(Math.max(rule.getConfidence(), MIN_CONFIDENCE));
+
+    //region Instance Variables
+
+    private final Policy policy;
+
+    //the heap (weakest first) and the score and last activation of the rule in each slot
+    private TFRule[] heap = new TFRule[16];
+    private double[] scores = new double[16];
+    private int[] lastActs = new int[16];
+    private int size = 0;
+
+    //endregion
+
+    public RuleRetention(Policy policy) {
+        if (policy == null) throw new IllegalArgumentException("policy cannot be null");
+        this.policy = policy;
+    }
+
+    //region Public Methods
+
+    public int size() { return this.size; }
+
+    public boolean contains(TFRule rule) {
+        int slot = rule.retentionSlot;
+        return (slot >= 0) && (slot < this.size) && (this.heap[slot] == rule);
+    }
+
+    /** @return the rule that should be evicted first (or null if empty) */
+    public TFRule peekWeakest() {
+        return (this.size == 0) ? null : this.heap[0];
+    }
+
+    /** adds a rule to the heap.  Does nothing if it is already there. */
+    public void add(TFRule rule) {
+        if (rule == null) throw new IllegalArgumentException("rule cannot be null");
+        if (contains(rule)) return;
+
+        if (this.size == this.heap.length) {
+            this.heap = Arrays.copyOf(this.heap, this.size * 2);
+            this.scores = Arrays.copyOf(this.scores, this.size * 2);
+            this.lastActs = Arrays.copyOf(this.lastActs, this.size * 2);
+        }
+        double score = score(rule);
+        int slot = this.size++;
+        place(slot, rule, score, rule.getLastActivationTime());
+        siftUp(slot);
+    }//add
+
+    /** removes a rule from the heap.  Does nothing if it isn't there. */
+    public void remove(TFRule rule) {
+        if (! contains(rule)) return;
+
+        int slot = rule.retentionSlot;
+        int last = --this.size;
+        rule.retentionSlot = -1;
+        if (slot != last) {
+            place(slot, this.heap[last], this.scores[last], this.lastActs[last]);
+            siftDown(siftUp(slot));
+        }
+        this.heap[last] = null;
+    }//remove
+
+    /** re-scores a rule after its activation or confidence has changed.
+     * Does nothing if it isn't in the heap. */
+    public void update(TFRule rule) {
+        if (! contains(rule)) return;
+
+        int slot = rule.retentionSlot;
+        this.scores[slot] = score(rule);
+        this.lastActs[slot] = rule.getLastActivationTime();
+        siftDown(siftUp(slot));
+    }//update
+
+    //endregion
+
+    //region Private Methods
+
+    /** @return the policy's score for a rule.  NaN can't be ordered so it is rejected. */
+    private double score(TFRule rule) {
+        double score = this.policy.score(rule);
+        if (Double.isNaN(score)) {
+            throw new IllegalStateException("retention policy gave rule #" + rule.getId() + " a NaN score");
+        }
+        return score;
+    }
+
+    /** @return true if the rule in slot a is weaker than the one in slot b */
+    private boolean weaker(int a, int b) {
+        if (this.scores[a] != this.scores[b]) return this.scores[a] < this.scores[b];
+        if (this.lastActs[a] != this.lastActs[b]) return this.lastActs[a] < this.lastActs[b];
+        return this.heap[a].getId() < this.heap[b].getId();
+    }
+
+    private int siftUp(int slot) {
+        while (slot > 0) {
+            int parent = (slot - 1) / 2;
+            if (! weaker(slot, parent)) break;
+            swap(slot, parent);
+            slot = parent;
+        }
+        return slot;
+    }
+
+    private void siftDown(int slot) {
+        int half = this.size / 2;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            int right = child + 1;
+            if ((right < this.size) && weaker(right, child)) child = right;
+            if (! weaker(child, slot)) break;
+            swap(slot, child);
+            slot = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        TFRule rule = this.heap[a];
+        double score = this.scores[a];
+        int lastAct = this.lastActs[a];
+        place(a, this.heap[b], this.scores[b], this.lastActs[b]);
+        place(b, rule, score, lastAct);
+    }
+
+    private void place(int slot, TFRule rule, double score, int lastAct) {
+        this.heap[slot] = rule;
+        this.scores[slot] = score;
+        this.lastActs[slot] = lastAct;
+        rule.retentionSlot = slot;
+    }
+
+    //endregion
+
+}//class RuleRetention
@@ -0,0 +1,83 @@
+package agents.phujus;
+
+import java.util.Arrays;
+
+/**
+ * class SensorStats
+ *
+ * tracks how often each of a set of sensors is on (the 'df' for a TFRule's
+ * tf-idf calculation) along with the time step each sensor was first seen.
+ * The data are kept in parallel arrays indexed by a non-negative sensor
+ * number:  a rule id for internal sensors or a position in
+ * {@link TFRule#IDNAMEMAP} for external sensors.
+ *
+ * The arrays grow by doubling so updating a sensor never allocates once
+ * they are big enough.  A removed sensor's entry is cleared and reads as a
+ * sensor that has never been seen.
+ */
+public class SensorStats {
+
+    //marks an entry with no data in 'created'
+    private static final int NONE = -1;
+
+    //the time step each sensor was first seen
+    private int[] created;
+    //the percentage of time steps each sensor has been on
+    private double[] percents;
+
+    public SensorStats(int initCapacity) {
+        this.created = new int[Math.max(initCapacity, 1)];
+        this.percents = new double[this.created.length];
+        Arrays.fill(this.created, NONE);
+    }
+
+    /** @return whether there is any data for the given sensor */
+    public boolean has(int id) {
+        return (id >= 0) && (id < this.created.length) && (this.created[id] != NONE);
+    }
+
+    /** @return the percentage of time the given sensor has been on (0.0 if it has no data) */
+    public double getPercent(int id) {
+        return (id >= 0) && (id < this.percents.length) ? this.percents[id] : 0.0;
+    }
+
+    /** @return the time step the given sensor was first seen */
+    public int getCreated(int id) {
+        if (! has(id)) throw new IllegalArgumentException("sensor " + id + " has no data");
+        return this.created[id];
+    }
+
+    /** sets the data for a sensor, replacing any that was there */
+    public void set(int id, int createdAt, double percent) {
+        if (id < 0) throw new IllegalArgumentException("id cannot be negative");
+        if (createdAt < 0) throw new IllegalArgumentException("createdAt cannot be negative");
+        ensureCapacity(id + 1);
+        this.created[id] = createdAt;
+        this.percents[id] = percent;
+    }
+
+    /** updates the percentage of a sensor that already has data */
+    public void setPercent(int id, double percent) {
+        if (! has(id)) throw new IllegalArgumentException("sensor " + id + " has no data");
+        this.percents[id] = percent;
+    }
+
+    /** clears the data for a sensor */
+    public void remove(int id) {
+        if (! has(id)) return;
+        this.created[id] = NONE;
+        this.percents[id] = 0.0;
+    }
+
+    /** makes sure sensors 0..(capacity-1) can be stored without growing */
+    public void ensureCapacity(int capacity) {
+        int oldLen = this.created.length;
+        if (capacity <= oldLen) return;
+
+        int newLen = Math.max(capacity, oldLen * 2);
+        this.created = Arrays.copyOf(this.created, newLen);
+        this.percents = Arrays.copyOf(this.percents, newLen);
+        Arrays.fill(this.created, oldLen, newLen, NONE);
+    }
+
+}//class SensorStats
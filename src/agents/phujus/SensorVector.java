@@ -0,0 +1,105 @@
+package agents.phujus;
+
+import framework.SensorData;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * class SensorVector
+ *
+ * is a dense copy of the sensors a {@link TFRule} is scored against:  the
+ * external sensors indexed by their position in {@link TFRule#IDNAMEMAP} and
+ * the internal sensors indexed by rule id.  The external DF values are copied
+ * in as well.
+ *
+ * The agent builds one of these per set of sensors (rather than per rule) so
+ * that scoring every rule is a loop over arrays with no name lookups.
+ *
+ * CAVEAT:  the external DF values are those at the time the vector was built.
+ * Build a new vector after the agent updates its sensor percentages.
+ *
+ * A vector's size depends only on the number of sensors that are on, not
+ * on how many rules the agent has ever made.
+ */
+public class SensorVector {
+
+    //values of an external sensor in extValues
+    public static final byte ABSENT = -1;
+    public static final byte OFF = 0;
+    public static final byte ON = 1;
+
+    //returned by getExtKey() when the external sensors can't match any rule
+    public static final long NO_KEY = -1L;
+
+    private static final int[] NO_INTERNAL = new int[0];
+
+    //external sensor values and DF values indexed by position in IDNAMEMAP
+    final byte[] extValues = new byte[TFRule.IDNAMEMAP.length];
+    final double[] extDF = new double[TFRule.IDNAMEMAP.length];
+    //number of external sensors (including any not in IDNAMEMAP)
+    final int extCount;
+    //the external sensors packed as per TFRule.extKey
+    private final long extKey;
+
+    //the ids of the internal sensors that are on in ascending order.  Rule
+    //ids are never reused so they are searched rather than used as indexes.
+    final int[] intIds;
+
+    /**
+     * @param agent  supplies the DF of each external sensor
+     * @param internal  the internal sensors that are on (may be null)
+     * @param external  the external sensors (may be null)
+     */
+    public SensorVector(PhuJusAgent agent, HashSet<Integer> internal, SensorData external) {
+        Arrays.fill(this.extValues, ABSENT);
+        if (external == null) {
+            this.extCount = 0;
+        } else {
+            SensorStats dfs = agent.getExternalStats();
+            for (String sName : external.getSensorNames()) {
+                int ord = TFRule.Cond.sensorNameToIndex(sName);
+                if (ord < 0) continue;  //can't be on any rule
+                this.extValues[ord] = ((Boolean) external.getSensor(sName)) ? ON : OFF;
+                this.extDF[ord] = dfs.getPercent(ord);
+            }
+            this.extCount = external.size();
+        }
+        this.extKey = calcExtKey();
+
+        if ((internal == null) || internal.isEmpty()) {
+            this.intIds = NO_INTERNAL;
+        } else {
+            this.intIds = new int[internal.size()];
+            int i = 0;
+            for (int id : internal) {
+                this.intIds[i++] = id;
+            }
+            Arrays.sort(this.intIds);
+        }
+    }//ctor
+
+    /** @return whether the given internal sensor is on */
+    public boolean isIntOn(int id) {
+        return Arrays.binarySearch(this.intIds, id) >= 0;
+    }
+
+    /** @return the external sensors packed the same way as {@link TFRule#getLHSExtKey()}
+     *          (or NO_KEY if they include a sensor that no rule can have) */
+    public long getExtKey() { return this.extKey; }
+
+    private long calcExtKey() {
+        long key = 0L;
+        int known = 0;
+        for (int ord = 0; ord < this.extValues.length; ++ord) {
+            if (this.extValues[ord] == ABSENT) continue;
+            key = TFRule.extKey(key, ord, this.extValues[ord] == ON);
+            known++;
+        }
+        return (known == this.extCount) ? key : NO_KEY;
+    }
+
+    /** @return the number of internal sensors that are on */
+    public int intSize() { return this.intIds.length; }
+
+}//class SensorVector
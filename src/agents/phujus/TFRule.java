@@ -2,7 +2,6 @@ package agents.phujus;
 
 import framework.SensorData;
 
-import java.net.IDN;
 import java.util.*;
 
 /**
@@ -20,7 +19,8 @@ public class TFRule extends Rule {
     //region Inner Classes
 
     //This is a mapping of external sensor names to ids.  Add more sensor names as needed.
-    //The actual id used is the negative index in this array.
+    //The actual id used is the negative index in this array.  (No more than 32
+    //names or they won't fit in an extKey.)
     public static final String[] IDNAMEMAP = {"GOAL", "IS_ODD", "NOISE1", "NOISE2", "NOISE3", "NOISE4", "CACTUS1", "CACTUS2", "CACTUS3", "CACTUS4"};
 
     /**
@@ -38,10 +38,17 @@ public class TFRule extends Rule {
         /** maps ane external sensor name to a unique integer.
          * Negative numbers are used to avoid conflict with rule ids. */
         public static int sensorNameToId(String name) {
+            int index = sensorNameToIndex(name);
+            if (index < 0) throw new IllegalArgumentException();
+            return -index;
+        }
+
+        /** @return the index of an external sensor name in IDNAMEMAP (or -1 if it isn't there) */
+        public static int sensorNameToIndex(String name) {
             for(int i = 0; i < IDNAMEMAP.length; ++i) {
-                if (IDNAMEMAP[i].equals(name)) return -i;
+                if (IDNAMEMAP[i].equals(name)) return i;
             }
-            throw new IllegalArgumentException();
+            return -1;
         }
 
         /** extracts a sensor name given an external sensor id */
@@ -60,6 +67,13 @@ public class TFRule extends Rule {
             this.numOn = initVal ? 1.0f : 0.0f;
         }
 
+        /** ctor for a copy of a condition's current data */
+        Cond(int initId, float initOn, float initMatches) {
+            this.sId = initId;
+            this.numMatches = initMatches;
+            this.numOn = initOn;
+        }
+
         /** convenience ctor for external sensors */
         public Cond(String sensorName, boolean initVal) {
             this(sensorNameToId(sensorName), initVal);
@@ -87,6 +101,83 @@ public class TFRule extends Rule {
 
     }//class Cond
 
+    /**
+     * class CondList
+     *
+     * holds the conditions of one side of a rule as parallel arrays sorted by
+     * sensor id.  This lets a rule be scored against a {@link SensorVector}
+     * with a plain loop and find a condition by id with a binary search.
+     */
+    private static class CondList {
+        int[] ids = new int[4];
+        float[] numMatches = new float[4];
+        float[] numOn = new float[4];
+        int size = 0;
+
+        /** adds a new condition for the given sensor */
+        void add(int id, boolean initVal) {
+            if (this.size == this.ids.length) {
+                this.ids = Arrays.copyOf(this.ids, this.size * 2);
+                this.numMatches = Arrays.copyOf(this.numMatches, this.size * 2);
+                this.numOn = Arrays.copyOf(this.numOn, this.size * 2);
+            }
+
+            //shift larger ids up to keep the arrays sorted
+            int pos = this.size;
+            while ((pos > 0) && (this.ids[pos - 1] > id)) {
+                this.ids[pos] = this.ids[pos - 1];
+                this.numMatches[pos] = this.numMatches[pos - 1];
+                this.numOn[pos] = this.numOn[pos - 1];
+                pos--;
+            }
+            this.ids[pos] = id;
+            this.numMatches[pos] = 1.0f;
+            this.numOn[pos] = initVal ? 1.0f : 0.0f;
+            this.size++;
+        }//add
+
+        /** removes every condition for the given sensor */
+        void removeAll(int id) {
+            int kept = 0;
+            for (int i = 0; i < this.size; ++i) {
+                if (this.ids[i] == id) continue;
+                this.ids[kept] = this.ids[i];
+                this.numMatches[kept] = this.numMatches[i];
+                this.numOn[kept] = this.numOn[i];
+                kept++;
+            }
+            this.size = kept;
+        }//removeAll
+
+        /** @return the index of a condition for the given sensor (or a negative number) */
+        int indexOf(int id) {
+            return Arrays.binarySearch(this.ids, 0, this.size, id);
+        }
+
+        double getTF(int i) {
+            return this.numOn[i] / this.numMatches[i];
+        }
+
+        /** @return whether condition i is considered to be "on" */
+        boolean isOn(int i) {
+            return getTF(i) > 0.0;
+        }
+
+        /** @return a copy of condition i */
+        Cond get(int i) {
+            return new Cond(this.ids[i], this.numOn[i], this.numMatches[i]);
+        }
+
+        /** @return copies of the conditions in sorted order */
+        Vector<Cond> toVector() {
+            Vector<Cond> result = new Vector<>(this.size);
+            for (int i = 0; i < this.size; ++i) {
+                result.add(get(i));
+            }
+            return result;
+        }
+    }//class CondList
+
     //endregion
 
     //region Instance Variables
@@ -96,19 +187,29 @@ public class TFRule extends Rule {
     private final char action;
 
     //the conditions of the LHS and RHS
-    private final HashSet<Cond> lhsInternal;
-    private final HashSet<Cond> lhsExternal;
-    private final HashSet<Cond> rhsExternal;
+    private final CondList lhsInternal;
+    private final CondList lhsExternal;
+    private final CondList rhsExternal;
 
-    // This is the entry in lhsInternal which MUST match in order for this rule
-    // to fire.  If this is set to 'null' then this is a "base rule" or
-    // "depth 0" rule.  Base rules have an empty lhsInternal.
-    private Cond primaryInternal = null;
+    // This is the id of the entry in lhsInternal which MUST match in order for
+    // this rule to fire.  If this is set to NO_PRIMARY then this is a "base
+    // rule" or "depth 0" rule.  Base rules have an empty lhsInternal.
+    private int primaryInternal = NO_PRIMARY;
+    private static final int NO_PRIMARY = 0;  //rule ids start at 1
 
     // The time depth of the primaryInternal sensor (max number of steps to
     // get to base rules working backward via primary internal sensors)
     private final int timeDepth;
 
+    //the id of the GOAL sensor which gets special treatment on the RHS
+    private static final int GOAL_ID = Cond.sensorNameToId(SensorData.goalSensor);
+
+    //the LHS external conditions packed by extKey() (see getLHSExtKey())
+    private final long lhsExtKey;
+
+    //this rule's slot in the agent's RuleRetention heap
+    int retentionSlot = -1;
+
     //endregion
 
     /** ctor initializes this rule from the agents current state
@@ -121,9 +222,10 @@ public class TFRule extends Rule {
         this.action = agent.getPrevAction();
         this.lhsExternal = initExternal(agent.getPrevExternal());
         this.rhsExternal = initExternal(agent.getCurrExternal());
+        this.lhsExtKey = calcExtKey(this.lhsExternal);
         if (primary == null) {  //base rule
-            this.lhsInternal = new HashSet<>(); //set to empty
-            this.primaryInternal = null;
+            this.lhsInternal = new CondList(); //set to empty
+            this.primaryInternal = NO_PRIMARY;
             this.timeDepth = 0;
         } else {                //non-base rule
             this.lhsInternal = initInternal(primary);
@@ -146,8 +248,8 @@ public class TFRule extends Rule {
         this.lhsInternal = initInternal(lhsInt);
         this.lhsExternal = initExternal(lhsExt);
         this.rhsExternal = initExternal(rhsExt);
+        this.lhsExtKey = calcExtKey(this.lhsExternal);
 
-        this.primaryInternal = null;  //base rule
         this.timeDepth = 0;
 
         this.confidence.setConfidence(conf);
@@ -156,33 +258,31 @@ public class TFRule extends Rule {
     /**
      * initInternal
      *
-     * Creates an instance of Cond for each sensor in the input HashSet and returns
-     * them as a HashSet.
+     * Creates a condition for each of the agent's internal sensors.
      *
      * @param primary is the rule that will be the primary condition.  If a base
      *      *         rule is desired, specify null for this parameter.
      *
-     * @return HashSet of IntConds for each sensor
+     * @return a CondList with a condition for each sensor
      */
-    private HashSet<Cond> initInternal(TFRule primary){
+    private CondList initInternal(TFRule primary){
         // Gets the previous internal sensors that were on
         HashSet<Integer> prevInternal = agent.getFlatPrevInternal();
 
         //Add a condition to this rule for each sensor
-        HashSet<Cond> conds = new HashSet<>();
+        CondList conds = new CondList();
         for(int depth = 0; depth < agent.getTfRules().size(); ++depth) {
             Vector<TFRule> subList = agent.getTfRules().get(depth);
             for (TFRule r : subList) {
                 //to avoid a chicken-egg problem, don't add conditions for
                 // rules that were just created this time step
-                if (agent.intPctCache.length <= r.ruleId) continue;
+                if (! agent.getInternalStats().has(r.ruleId)) continue;
 
                 boolean on = prevInternal.contains(r.ruleId);
-                Cond cond = new Cond(r.ruleId, on);
-                conds.add(cond);
+                conds.add(r.ruleId, on);
 
                 if (r.equals(primary)) {
-                    this.primaryInternal = cond;
+                    this.primaryInternal = r.ruleId;
                 }
             }
         }
@@ -192,62 +292,80 @@ public class TFRule extends Rule {
 
     /** This version takes an array of rule Ids.  The first entry in 'in' is
      * made primary */
-    private HashSet<Cond> initInternal(int[] in) {
-        HashSet<Cond> set = new HashSet<>();
+    private CondList initInternal(int[] in) {
+        CondList conds = new CondList();
         if(in == null)
-            return set;
+            return conds;
 
         for(int id : in){
-            Cond cond = new Cond(id, true);
-            set.add(cond);
-            if (this.primaryInternal == null) {
-                this.primaryInternal = cond;
+            conds.add(id, true);
+            if (this.primaryInternal == NO_PRIMARY) {
+                this.primaryInternal = id;
             }
         }
 
-        return set;
+        return conds;
     }//initInternal
 
-    /** converts from SensorData (used by the FSM environment) to HashSet<ExtCond> */
-    private HashSet<Cond> initExternal(SensorData sData) {
+    /** converts from SensorData (used by the FSM environment) to a CondList */
+    private CondList initExternal(SensorData sData) {
 
-        HashSet<Cond> result = new HashSet<>();
+        CondList result = new CondList();
         for(String sName : sData.getSensorNames()) {
-            result.add(new Cond(sName, (Boolean)sData.getSensor(sName)));
+            result.add(Cond.sensorNameToId(sName), (Boolean)sData.getSensor(sName));
         }
 
         return result;
     }//initExternal
 
+    /**
+     * extKey
+     *
+     * adds one external sensor to a key that packs a set of external
+     * sensors into a long:  bit i is set if the sensor at IDNAMEMAP[i] is
+     * present and bit (32 + i) is set if it is on.  Two sets of external
+     * sensors have the same key exactly when {@link #isLHSExtMatch} would
+     * consider them a match.
+     *
+     * @param key the key so far
+     * @param index the sensor's index in IDNAMEMAP
+     * @param on whether the sensor is on
+     * @return the new key
+     */
+    public static long extKey(long key, int index, boolean on) {
+        key |= 1L << index;
+        if (on) key |= 1L << (32 + index);
+        return key;
+    }//extKey
+
+    /** @return the key (see {@link #extKey}) of a set of external conditions */
+    private static long calcExtKey(CondList conds) {
+        long key = 0L;
+        for(int i = 0; i < conds.size; ++i) {
+            key = extKey(key, -conds.ids[i], conds.isOn(i));
+        }
+        return key;
+    }//calcExtKey
+
     /**
      * helperMatch
      *
-     * Helper function for comparing two sets of Cond objects.
+     * Helper function for comparing two sets of conditions.
      * This is a helper for {@link #isExtMatch}.
      *
      * @return whether the sets are equal
      */
-    private boolean helperMatch(HashSet<Cond> condSet1, HashSet<Cond> condSet2) {
+    private static boolean helperMatch(CondList conds1, CondList conds2) {
 
         // First checks that the size of the two sets are equal.
         // If so, returns false if the converted sensors don't contain the external conditions.
-        if (condSet1.size() != condSet2.size()) return false;
-
-        for(Cond cond1 : condSet1) {
-            boolean found = false;
-            for(Cond cond2 : condSet2) {
-                if (cond1.sId == cond2.sId) {
-                    // Use TF values to see if they have the same value
-                    // (It's not perfect but it's the best we have)
-                    boolean on1 = (cond1.getTF() > 0.0);
-                    boolean on2 = (cond2.getTF() > 0.0);
-                    if (on1 == on2) {
-                        found = true;
-                        break;
-                    }
-                }
-            }
-            if (!found) return false;
+        if (conds1.size != conds2.size) return false;
+
+        for(int i = 0; i < conds1.size; ++i) {
+            // Use TF values to see if they have the same value
+            // (It's not perfect but it's the best we have)
+            int j = conds2.indexOf(conds1.ids[i]);
+            if ((j < 0) || (conds1.isOn(i) != conds2.isOn(j))) return false;
         }
 
         return true;
@@ -257,19 +375,24 @@ public class TFRule extends Rule {
      * helperMatch
      *
      * Helper function for checking whether the conditions of the TFRule match the
-     * current or previous SensorData of the agent.
+     * current or previous external sensors of the agent.
      * This is a helper for {@link #isExtMatch}.
      *
-     * @param conditions the external conditions of the TFRule
-     * @param sensors the current or previous SensorData
+     * @param conds the external conditions of the TFRule
+     * @param sensors the current or previous sensors
      * @return whether the conditions and sensors match
      */
-    private boolean helperMatch(HashSet<Cond> conditions, SensorData sensors) {
-        // Converts SensorData to HashSet<Cond> for comparison
-        HashSet<Cond> condSet2 = initExternal(sensors);
+    private static boolean helperMatch(CondList conds, SensorVector sensors) {
+        if (conds.size != sensors.extCount) return false;
 
-        return helperMatch(conditions, condSet2);
-    }
+        for(int i = 0; i < conds.size; ++i) {
+            byte val = sensors.extValues[-conds.ids[i]];
+            if (val == SensorVector.ABSENT) return false;
+            if ((val == SensorVector.ON) != conds.isOn(i)) return false;
+        }
+
+        return true;
+    }//helperMatch
 
 
     /**
@@ -283,10 +406,20 @@ public class TFRule extends Rule {
     public boolean isExtMatch(char compAction,
                               SensorData prevExt,
                               SensorData currExt) {
+        if (this.action != compAction) return false;
+        return isExtMatch(compAction, new SensorVector(agent, null, prevExt),
+                            new SensorVector(agent, null, currExt));
+    }//isExtMatch
+
+    /** a version of {@link #isExtMatch(char, SensorData, SensorData)} for
+     * sensors that have already been converted */
+    public boolean isExtMatch(char compAction,
+                              SensorVector prev,
+                              SensorVector curr) {
 
         if (this.action != compAction) return false;
-        if (!helperMatch(this.lhsExternal, prevExt)) return false;
-        return helperMatch(this.rhsExternal, currExt);
+        if (!helperMatch(this.lhsExternal, prev)) return false;
+        return helperMatch(this.rhsExternal, curr);
 
     }//isExtMatch
 
@@ -310,7 +443,14 @@ public class TFRule extends Rule {
      */
     public boolean isLHSExtMatch(char action, SensorData lhsExt) {
         if (this.action != action) return false;
-        return helperMatch(this.lhsExternal, lhsExt);
+        return isLHSExtMatch(action, new SensorVector(agent, null, lhsExt));
+    }
+
+    /** a version of {@link #isLHSExtMatch(char, SensorData)} for sensors
+     * that have already been converted */
+    public boolean isLHSExtMatch(char action, SensorVector lhs) {
+        if (this.action != action) return false;
+        return helperMatch(this.lhsExternal, lhs);
     }
 
     /**
@@ -339,10 +479,11 @@ public class TFRule extends Rule {
                              SensorData externalLHS,
                              SensorData externalRHS){
 
-        for(Cond cond: this.lhsInternal){
-            cond.numMatches++;
-            if(internalLHSIds.contains(cond.sId)) {
-                cond.numOn++;
+        CondList conds = this.lhsInternal;
+        for(int i = 0; i < conds.size; ++i){
+            conds.numMatches[i]++;
+            if(internalLHSIds.contains(conds.ids[i])) {
+                conds.numOn[i]++;
             }
         }
 
@@ -382,33 +523,40 @@ public class TFRule extends Rule {
      * @return  a match score from -1.0 to 1.0
      */
     public double rhsMatchScore(SensorData rhsExt) {
+        return rhsMatchScore(new SensorVector(agent, null, rhsExt));
+    }//rhsMatchScore
+
+    /** a version of {@link #rhsMatchScore(SensorData)} for sensors that have
+     * already been converted */
+    public double rhsMatchScore(SensorVector rhs) {
         double score = 0.0;
 
         // Loops through all external sensors of the rule and checks if the incoming
-        // sensor data contains the external sensor
+        // sensors contain the external sensor
         double overallRelevance = 0.0;
-        for (Cond eCond : this.rhsExternal) {
+        CondList conds = this.rhsExternal;
+        for (int i = 0; i < conds.size; ++i) {
+            int ord = -conds.ids[i];
+            byte val = rhs.extValues[ord];
             // If so, then we calculate the TF/DF value to be added to the score
-            if (rhsExt.hasSensor(eCond.getName())) {
-
-                // Calculates the TF and DF values, and if the sensor values are the same
-                double tfValue = eCond.getTF();
-                double dfValue = agent.getExternalPercents().get(eCond.getName()).getSecond();
-                Boolean sVal = (Boolean) rhsExt.getSensor(eCond.getName());
-
-                //Special case:  GOAL=true for both sensors and rule is always a full match
-                //               and the other sensors are ignored
-                if ( (eCond.getName().equals(SensorData.goalSensor))
-                        && (sVal) && (tfValue > 0.5)) {
-                    score = tfValue;
-                    overallRelevance = tfValue;
-                    break;
-                }
-
-                double[] result = calculateTFIDF(tfValue, dfValue, sVal);
-                score += result[0] * result[1];
-                overallRelevance += result[1];      //score relevance
+            if (val == SensorVector.ABSENT) continue;
+
+            // Calculates the TF and DF values, and if the sensor values are the same
+            double tfValue = conds.getTF(i);
+            double dfValue = rhs.extDF[ord];
+            boolean sVal = (val == SensorVector.ON);
+
+            //Special case:  GOAL=true for both sensors and rule is always a full match
+            //               and the other sensors are ignored
+            if ((conds.ids[i] == GOAL_ID) && (sVal) && (tfValue > 0.5)) {
+                score = tfValue;
+                overallRelevance = tfValue;
+                break;
             }
+
+            double relevance = tfidfRelevance(tfValue, dfValue);
+            score += tfidfScore(tfValue, sVal) * relevance;
+            overallRelevance += relevance;      //score relevance
         }
 
         return score/overallRelevance;
@@ -428,31 +576,27 @@ public class TFRule extends Rule {
         double score = 0.0;
         double overallRelevance = 0.0;
         if (! PhuJusAgent.TFIDF) overallRelevance = lhsExt.size();
+        SensorVector lhs = new SensorVector(agent, null, lhsExt);
         // Loops through all external sensors of the rule and checks if the incoming
         // sensor data contains the external sensor
-        for (Cond eCond : this.lhsExternal) {
+        CondList conds = this.lhsExternal;
+        for (int i = 0; i < conds.size; ++i) {
+            int ord = -conds.ids[i];
             // If so, then we calculate the TF/DF value to be added to the score
-            if (lhsExt.hasSensor(eCond.getName())) {
-
-                // Calculates the TF and DF values, and if the sensor values are the same
-                double tfValue = eCond.getTF();
-                double dfValue = 0.0;
-
-                // Sometimes, when loading rules from a file, this can be null. This check helps
-                // prevent that
-                if (agent.getExternalPercents().containsKey(eCond.getName())) {
-                    dfValue = agent.getExternalPercents().get(eCond.getName()).getSecond();
-                }
-                Boolean wasOn = (Boolean) lhsExt.getSensor(eCond.getName());
-
-                if (PhuJusAgent.TFIDF) {
-                    // Adds the TF/DF to the current score
-                    double[] result = calculateTFIDF(tfValue, dfValue, wasOn);
-                    score += result[0] * result[1];  //tfidf score
-                    overallRelevance += result[1];  //relevance of score
-                } else {
-                    score += 1.0;
-                }
+            if (lhs.extValues[ord] == SensorVector.ABSENT) continue;
+
+            if (PhuJusAgent.TFIDF) {
+                // Calculates the TF and DF values, and if the sensor values are the same.
+                // (A sensor with no DF yet, e.g., from a rule loaded from a file, uses 0.0)
+                double tfValue = conds.getTF(i);
+                double relevance = tfidfRelevance(tfValue, lhs.extDF[ord]);
+                boolean wasOn = (lhs.extValues[ord] == SensorVector.ON);
+
+                // Adds the TF/DF to the current score
+                score += tfidfScore(tfValue, wasOn) * relevance;  //tfidf score
+                overallRelevance += relevance;  //relevance of score
+            } else {
+                score += 1.0;
             }
         }
         // no sensors so can't match
@@ -471,36 +615,46 @@ public class TFRule extends Rule {
      * @return  a match score from -1.0 to 1.0
      */
     public double lhsIntMatchScore(HashSet<Integer> lhsInt){
+        //If this is a base rule then it always matches
+        if (this.timeDepth == 0) return 1.0;
+
+        return lhsIntMatchScore(new SensorVector(agent, lhsInt, null));
+    }//lhsIntMatchScore
+
+    /** a version of {@link #lhsIntMatchScore(HashSet)} for sensors that have
+     * already been converted */
+    public double lhsIntMatchScore(SensorVector lhs){
 
         //If this is a base rule then it always matches
         if (this.timeDepth == 0) return 1.0;
 
         //If the primary internal sensor is off this rule may not match
-        if (! lhsInt.contains(this.primaryInternal.sId)) return -1.0;
+        if (! lhs.isIntOn(this.primaryInternal)) return -1.0;
 
         double score = 0.0;
         double overallRelevance = 0.0;
 
         //Increase the score for each condition it has that matches the given LHS
-        for(int depth = 0; depth < lhsInt.size(); depth++) {
-
-            for (Cond cond : this.lhsInternal) {
-                // Calculates the TF and DF values, and if the sensor values are the same
-                double tf = cond.getTF();
-                double df = agent.intPctCache[cond.sId];
-                boolean wasOn = lhsInt.contains(cond.sId);
-                double[] result = calculateTFIDF(tf, df, wasOn);
-                double tfidf = result[0];
-
-                score += tfidf * result[1];
-                overallRelevance += result[1];
-            }
+        SensorStats dfs = agent.getInternalStats();
+        CondList conds = this.lhsInternal;
+        for (int i = 0; i < conds.size; ++i) {
+            // Calculates the TF and DF values, and if the sensor values are the same
+            double tf = conds.getTF(i);
+            double relevance = tfidfRelevance(tf, dfs.getPercent(conds.ids[i]));
+            boolean wasOn = lhs.isIntOn(conds.ids[i]);
+
+            score += tfidfScore(tf, wasOn) * relevance;
+            overallRelevance += relevance;
         }
 
+        //Each condition is counted once per given LHS entry
+        score *= lhs.intSize();
+        overallRelevance *= lhs.intSize();
+
         //Penalize the score for each given LHS entry that it does not expect
-        for(int sId : lhsInt) {
-            if (! testsIntSensor(sId)) {
-                overallRelevance += agent.intPctCache[sId];
+        for(int sId : lhs.intIds) {
+            if (conds.indexOf(sId) < 0) {
+                overallRelevance += dfs.getPercent(sId);
             }
         }
 
@@ -508,9 +662,8 @@ public class TFRule extends Rule {
         //To do this, we detect possible reasons for the situation
         if (overallRelevance == 0.0) {
             //Possible cause #1:  tf == df for all matches
-            if (lhsInt.contains(this.primaryInternal.sId)) return 1.0;
-            //We shouldn't ever reach this point...
-            return -1.0;
+            //(the primary is known to be on at this point)
+            return 1.0;
         }
 
         return score/overallRelevance;  //AND operator
@@ -522,9 +675,8 @@ public class TFRule extends Rule {
      *
      * calculates how closely this rule matches a given action and lhs sensors
      *
-     * TODO:  I've noticed this method gets called A LOT.  Should we cache
-     *        results for a speedup?  It's not clear how to do this efficiently
-     *        or even if it would help.  Investigation and consideration needed.
+     * Callers that score many rules against the same sensors should convert
+     * them once and use {@link #lhsMatchScore(char, SensorVector)} instead.
      *
      * @param action the action made by the rule to compare against
      * @param lhsInt a HashSet of integers containing the internal sensors that were on
@@ -535,13 +687,22 @@ public class TFRule extends Rule {
         // Immediately return 0.0 if the actions don't match
         if (action != this.action) return -1.0;
 
+        return lhsMatchScore(action, new SensorVector(agent, lhsInt, lhsExt));
+    }//lhsMatchScore
+
+    /** a version of {@link #lhsMatchScore(char, HashSet, SensorData)} for
+     * sensors that have already been converted */
+    public double lhsMatchScore(char action, SensorVector lhs){
+        // Immediately return 0.0 if the actions don't match
+        if (action != this.action) return -1.0;
+
         //For now I'm requiring a perfect match for LHS ext
-        if (! isLHSExtMatch(action, lhsExt)) return -1.0;
+        if (! helperMatch(this.lhsExternal, lhs)) return -1.0;
         double extScore = 1.0;
 
         //TODO: someday use soft matches again
         //double extScore = lhsExtMatchScore(lhsExt);
-        double intScore = lhsIntMatchScore(lhsInt);
+        double intScore = lhsIntMatchScore(lhs);
         double score = extScore * intScore;
         //double negative should stay negative
         if ( (extScore < 0.0) && (intScore < 0.0) ) {
@@ -551,15 +712,46 @@ public class TFRule extends Rule {
         return score;
     }//lhsMatchScore
 
-    //pre-allocating this array speeds up calculateTFIDF() but at the cost
-    //of being thread-unsafe.  Ok for now.
-    private static final double[] ctfidfResult = new double[2];
+    /**
+     * matchScores
+     *
+     * scores a list of rules against the same sensors in one pass.  Each
+     * rule's score is the product of its LHS and RHS match scores, or 0.0
+     * if either of those is not positive.
+     *
+     * @param rules the rules to score
+     * @param action the action to match the LHS
+     * @param lhs the sensors to match the LHS
+     * @param rhs the sensors to match the RHS
+     * @param scores receives the score of each rule (same indexes as rules)
+     * @return the best score
+     */
+    public static double matchScores(List<TFRule> rules, char action,
+                                     SensorVector lhs, SensorVector rhs,
+                                     double[] scores) {
+        double bestScore = 0.0;
+        for (int i = 0; i < rules.size(); ++i) {
+            scores[i] = 0.0;
+            TFRule r = rules.get(i);
+            double rhsScore = r.rhsMatchScore(rhs);
+            if (rhsScore <= 0.0) continue;
+            double lhsScore = r.lhsMatchScore(action, lhs);
+            //both scores must be positive
+            if (lhsScore <= 0.0) continue;
+
+            scores[i] = rhsScore * lhsScore;
+            if (scores[i] > bestScore) {
+                bestScore = scores[i];
+            }
+        }
+        return bestScore;
+    }//matchScores
 
     /**
-     * calculateTFIDF
+     * tfidfScore
      *
-     * helper method that calculates the TF-IDF given the tf, df and whether
-     * the sensor was on.  This is used to score partial matches.
+     * helper method that calculates a TF-IDF style match degree given the tf
+     * and whether the sensor was on.  This is used to score partial matches.
      *
      * For our purposes:
      *   Term-Frequency (TF) is how often the sensor is on when the rule matches
@@ -569,67 +761,69 @@ public class TFRule extends Rule {
      *       formula:  tf * -log(df).  Nonetheless, the name has stuck.
      *
      * @param tf the term frequency of the sensor
-     * @param df the document frequency of the sensor
      * @param wasOn whether the sensor was on
-     * @return two values in an array:
-     *         0 - the tfidf match score [-1.0..1.0]
-     *         1 - the relevance of this score [0.0..1.0]
+     * @return the tfidf match score [-1.0..1.0]
      */
-    private double[] calculateTFIDF(double tf, double df, boolean wasOn) {
+    private static double tfidfScore(double tf, boolean wasOn) {
         //Calculate a base match degree on the scale [-1.0..1.0]
         double tfidf = wasOn ? tf : (1.0 - tf);
         tfidf -= 0.5;
         tfidf *= 2.0;
-        ctfidfResult[0] = tfidf;
-
-        //Calculate its relevance.
-        ctfidfResult[1] = Math.abs(tf - df);
+        return tfidf;
+    }//tfidfScore
 
-        return ctfidfResult;
-    }//calculateTFIDF
+    /**
+     * tfidfRelevance
+     *
+     * @return the relevance [0.0..1.0] of a {@link #tfidfScore} given the
+     *         tf and df of the sensor
+     */
+    private static double tfidfRelevance(double tf, double df) {
+        return Math.abs(tf - df);
+    }//tfidfRelevance
 
     /** @return true if this rule has a given internal sensor on its LHS */
     public boolean testsIntSensor(int id){
-        for(Cond cond: this.lhsInternal){
-            if(cond.sId==id){
-                return true;
-            }
-        }
-        return false;
+        return this.lhsInternal.indexOf(id) >= 0;
     }
 
-    /** replaces one internal sensor with another in this rule (for merging) */
-    //TODO:  may not replace primary?
+    /** replaces one internal sensor with another in this rule (for merging).
+     *  If the old sensor is the primary then the new one becomes primary.
+     *  CAVEAT:  that changes how a {@link TFRuleIndex} finds this rule so
+     *  remove it from any index first. */
     public void replaceIntSensor(int oldId, int newId){
-        Vector<Cond> toRemove = new Vector<>();
-        for(Cond cond: this.lhsInternal) {
-            if (cond.sId == oldId) {
-                toRemove.add(cond);
-            }
+        if (this.primaryInternal == oldId) {
+            this.primaryInternal = newId;
         }
-        for(Cond cond : toRemove) {
-            this.lhsInternal.remove(cond);
 
-            //The tfdata of the old condition is relevant but has no
-            // guarantee of being precise.  So we start over with a new
-            // condition whose initial value is set based upon the old data.
-            // Is this the best approach?  I can't think of better atm.
-            boolean initVal = (cond.getTF() >= 0.5);
-            this.lhsInternal.add(new Cond(newId, initVal));
+        CondList conds = this.lhsInternal;
+        //The tfdata of the old condition is relevant but has no
+        // guarantee of being precise.  So we start over with a new
+        // condition whose initial value is set based upon the old data.
+        // Is this the best approach?  I can't think of better atm.
+        boolean[] initVals = new boolean[conds.size];
+        int numReplaced = 0;
+        for(int i = 0; i < conds.size; ++i) {
+            if (conds.ids[i] == oldId) {
+                initVals[numReplaced++] = (conds.getTF(i) >= 0.5);
+            }
+        }
+        conds.removeAll(oldId);
+        for(int i = 0; i < numReplaced; ++i) {
+            conds.add(newId, initVals[i]);
         }
     }//replaceIntSensor
 
     /**
      * sortedConds
      *
-     * creates a Vector from a HashSet of ExtCond where the conditions are in sorted order
+     * creates a Vector from a CondList where the conditions are in sorted order
      * but with the GOAL at the end.  This is used by the toString methods to present
      * a consistent ordering for frazzled human eyes.
      */
-    protected Vector<Cond> sortedConds(HashSet<Cond> conds) {
-        //Sort the vector
-        Vector<Cond> result = new Vector<>(conds);
-        Collections.sort(result);
+    protected Vector<Cond> sortedConds(CondList conds) {
+        //The conditions are already sorted
+        Vector<Cond> result = conds.toVector();
 
         //Move the GOAL to the end
         int goalIndex = 0;
@@ -651,32 +845,30 @@ public class TFRule extends Rule {
      * is a helper method for {@link #toString()} to convert the LHS internals to
      * a string.
      */
-    protected String toStringShortIntLHS(HashSet<Cond> lhs) {
+    protected String toStringShortIntLHS(CondList lhs) {
         StringBuilder result = new StringBuilder("(");
-        Vector<Cond> sortedInternal = new Vector<>(lhs);
-        Collections.sort(sortedInternal);
 
         boolean first = true;
-        for (Cond cond : sortedInternal) {
+        for (int i = 0; i < lhs.size; ++i) {
             //skip the primary internal to print at the end
-            if (cond.equals(this.primaryInternal)) continue;
+            if (lhs.ids[i] == this.primaryInternal) continue;
             //skip invalid id for internal sensor
-            if (cond.sId < 1) { continue; }
+            if (lhs.ids[i] < 1) { continue; }
 
             //only print positive conditions
-            if (cond.getTF() > 0.5) {
+            if (lhs.getTF(i) > 0.5) {
                 if (first) {
                     first = false;
                 } else {
                     result.append(";");
                 }
-                result.append(cond.getName());
+                result.append(Cond.sensorIdToName(lhs.ids[i]));
             }
         }//for
 
         result.append(") ");
-        if (this.primaryInternal != null) {
-            result.append(primaryInternal.getName());
+        if (this.primaryInternal != NO_PRIMARY) {
+            result.append(Cond.sensorIdToName(this.primaryInternal));
         }
 
         return result.toString();
@@ -708,7 +900,7 @@ public class TFRule extends Rule {
      * is a helper method for {@link #toString()} to
      * convert the RHS to a bit string
      */
-    protected String toStringShortRHS(HashSet<Cond> rhs) {
+    protected String toStringShortRHS(CondList rhs) {
         StringBuilder result = new StringBuilder();
         for (Cond eCond : sortedConds(rhs)) {
             result.append(eCond.toStringShort());
@@ -724,11 +916,9 @@ public class TFRule extends Rule {
      *
      * Note: doesn't print conditions with a zero TF
      */
-    protected String toStringLongLHS(HashSet<Cond> lhs) {
+    protected String toStringLongLHS(CondList lhs) {
         StringBuilder result = new StringBuilder();
-        Vector<Cond> sortedInternal = new Vector<>(lhs);
-        Collections.sort(sortedInternal);
-        for (Cond cond : sortedInternal) {
+        for (Cond cond : lhs.toVector()) {
             if(cond.getTF() > 0.001) {
                 result.append(cond);
                 result.append(", ");
@@ -773,29 +963,47 @@ public class TFRule extends Rule {
     //region getters
 
     public char getAction() { return this.action; }
-    public HashSet<Cond> getRHSExternalRaw() { return this.rhsExternal; }
+
+    /** @return copies of the RHS conditions */
+    public HashSet<Cond> getRHSExternalRaw() { return new HashSet<>(this.rhsExternal.toVector()); }
 
     public SensorData getRHSExternal() {
         SensorData result = SensorData.createEmpty();
-        for(Cond cond : this.rhsExternal) {
+        for(int i = 0; i < this.rhsExternal.size; ++i) {
             //pick true/false by rounding
-            result.setSensor(cond.getName(), cond.getTF() >= 0.5);
+            result.setSensor(Cond.sensorIdToName(this.rhsExternal.ids[i]), this.rhsExternal.getTF(i) >= 0.5);
         }
         return result;
     }
 
     public SensorData getLHSExternal() {
         SensorData result = SensorData.createEmpty();
-        for(Cond cond : this.lhsExternal) {
+        for(int i = 0; i < this.lhsExternal.size; ++i) {
             //pick true/false by rounding
-            result.setSensor(cond.getName(), cond.getTF() >= 0.5);
+            result.setSensor(Cond.sensorIdToName(this.lhsExternal.ids[i]), this.lhsExternal.getTF(i) >= 0.5);
         }
         return result;
     }
 
-    public HashSet<Cond> getLhsInternal() { return this.lhsInternal; }
+    /** @return copies of the LHS internal conditions */
+    public HashSet<Cond> getLhsInternal() { return new HashSet<>(this.lhsInternal.toVector()); }
+    public int getLhsInternalSize() { return this.lhsInternal.size; }
     public int getTimeDepth() { return timeDepth; }
-    public Cond getPrimaryInternal() { return primaryInternal; }
+
+    /** @return this rule's LHS external conditions packed as per {@link #extKey} */
+    public long getLHSExtKey() { return this.lhsExtKey; }
+
+    /** @return a copy of the primary internal condition (null for base rules) */
+    public Cond getPrimaryInternal() {
+        if (this.primaryInternal == NO_PRIMARY) return null;
+        int index = this.lhsInternal.indexOf(this.primaryInternal);
+        //the condition may have been replaced during a merge
+        if (index < 0) return new Cond(this.primaryInternal, true);
+        return this.lhsInternal.get(index);
+    }
+
+    /** @return the rule id of the primary internal sensor (0 for base rules) */
+    public int getPrimaryInternalId() { return this.primaryInternal; }
 
     //endregion
 
@@ -0,0 +1,135 @@
+package agents.phujus;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * class TFRuleIndex
+ *
+ * indexes a {@link PhuJusAgent}'s TFRules by the parts of their LHS that must
+ * match exactly for a rule to fire:  its action, then its primary internal
+ * sensor, then its external sensors (see {@link TFRule#getLHSExtKey()}).
+ * Finding the rules that could match a set of sensors is then a few hash
+ * lookups rather than a scan of every rule.
+ *
+ * None of these keys change once a rule is created so the index only needs
+ * to be updated when a rule is added or removed.  Rules with the same keys
+ * are kept in the order they were added.
+ */
+public class TFRuleIndex {
+
+    //the primary id used for base rules
+    public static final int BASE = 0;
+
+    private static final List<TFRule> NONE = Collections.emptyList();
+
+    //action -> primary internal sensor id -> LHS external key -> rules
+    private final HashMap<Character, HashMap<Integer, HashMap<Long, Vector<TFRule>>>> index = new HashMap<>();
+    private int size = 0;
+
+    /** adds a rule to the index */
+    public void add(TFRule rule) {
+        if (rule == null) throw new IllegalArgumentException("rule cannot be null");
+        this.index.computeIfAbsent(rule.getAction(), k -> new HashMap<>())
+                .computeIfAbsent(primaryOf(rule), k -> new HashMap<>())
+                .computeIfAbsent(rule.getLHSExtKey(), k -> new Vector<>())
+                .add(rule);
+        this.size++;
+    }//add
+
+    /**
+     * removes a rule from the index
+     *
+     * @return true if the rule was in the index
+     */
+    public boolean remove(TFRule rule) {
+        HashMap<Integer, HashMap<Long, Vector<TFRule>>> byPrimary = this.index.get(rule.getAction());
+        if (byPrimary == null) return false;
+        int primary = primaryOf(rule);
+        HashMap<Long, Vector<TFRule>> byExt = byPrimary.get(primary);
+        if (byExt == null) return false;
+        long extKey = rule.getLHSExtKey();
+        Vector<TFRule> bucket = byExt.get(extKey);
+        if ((bucket == null) || (! bucket.remove(rule))) return false;
+
+        //don't leave empty entries behind
+        if (bucket.isEmpty()) {
+            byExt.remove(extKey);
+            if (byExt.isEmpty()) {
+                byPrimary.remove(primary);
+                if (byPrimary.isEmpty()) this.index.remove(rule.getAction());
+            }
+        }
+        this.size--;
+        return true;
+    }//remove
+
+    public int size() { return this.size; }
+
+    /**
+     * get
+     *
+     * @param action the action on the rules' LHS
+     * @param primaryId the rule id of their primary internal sensor (or BASE)
+     * @param extKey the key of their LHS external sensors
+     * @return the matching rules in the order they were added.
+     *         CAVEAT:  do not modify this list.
+     */
+    public List<TFRule> get(char action, int primaryId, long extKey) {
+        HashMap<Integer, HashMap<Long, Vector<TFRule>>> byPrimary = this.index.get(action);
+        if (byPrimary == null) return NONE;
+        HashMap<Long, Vector<TFRule>> byExt = byPrimary.get(primaryId);
+        if (byExt == null) return NONE;
+        Vector<TFRule> bucket = byExt.get(extKey);
+        return (bucket == null) ? NONE : bucket;
+    }//get
+
+    /**
+     * candidates
+     *
+     * @return every rule whose action and LHS external sensors match the
+     *         given ones and which is either a base rule or has a primary
+     *         internal sensor that is on in the given sensors.  These are the
+     *         only rules that can have a positive LHS match score.
+     */
+    public Vector<TFRule> candidates(char action, SensorVector lhs) {
+        Vector<TFRule> result = new Vector<>();
+        long extKey = lhs.getExtKey();
+        if (extKey == SensorVector.NO_KEY) return result;
+
+        result.addAll(get(action, BASE, extKey));
+        for (int id : lhs.intIds) {
+            result.addAll(get(action, id, extKey));
+        }
+        return result;
+    }//candidates
+
+    /**
+     * getDependents
+     *
+     * @return a new list of every non-base rule whose primary internal
+     *         sensor is the given rule
+     */
+    public Vector<TFRule> getDependents(int primaryId) {
+        Vector<TFRule> result = new Vector<>();
+        if (primaryId == BASE) return result;
+        for (HashMap<Integer, HashMap<Long, Vector<TFRule>>> byPrimary : this.index.values()) {
+            HashMap<Long, Vector<TFRule>> byExt = byPrimary.get(primaryId);
+            if (byExt == null) continue;
+            for (Vector<TFRule> bucket : byExt.values()) {
+                result.addAll(bucket);
+            }
+        }
+        return result;
+    }//getDependents
+
+    /** @return the primary id a rule is indexed under */
+    private static int primaryOf(TFRule rule) {
+        //base rules may still have a primary (e.g., loaded from a file) but
+        //it is not used for matching
+        return (rule.getTimeDepth() == 0) ? BASE : rule.getPrimaryInternalId();
+    }
+
+}//class TFRuleIndex
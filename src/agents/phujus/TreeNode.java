@@ -287,7 +287,6 @@ public class TreeNode {
             votingData.put(sName, new BlocData(sName));
         }
 
-        Vector<Vector<TFRule>> tfRules = this.agent.getTfRules();
         //The flat version is needed for matching
         HashSet<Integer> flatCurrInt = PhuJusAgent.flattenRuleSet(this.currInternal);
 
@@ -298,13 +297,14 @@ public class TreeNode {
                 voters.addAll(agent.findRules(action, this.currExternal, r));
             }
         } else {  //depth 0
-            voters = tfRules.get(depth);
+            voters = agent.findRules(action, this.currExternal, null);
         }
 
         //Record the votes
+        SensorVector lhs = new SensorVector(this.agent, flatCurrInt, this.currExternal);
         for (TFRule rule : voters) {
             if (rule.getAction() != action) continue;
-            double score = rule.lhsMatchScore(action, flatCurrInt, this.currExternal);
+            double score = rule.lhsMatchScore(action, lhs);
             score *= rule.getConfidence();
             if (score <= 0.0) continue;  //skip rules with unsupportive match scores
 
@@ -3,6 +3,7 @@ package agents.popr;
 import agents.marzrules.Heuristic;
 import framework.*;
 import agents.marzrules.Ruleset;
+import utils.SequenceEnumerator;
 import utils.SequenceGenerator;
 
 import java.util.ArrayList;
@@ -25,10 +26,10 @@ public class PoprRulesAgent implements IAgent {
     public void initialize(Action[] actions, IIntrospector introspector) {
         this.introspector = introspector;
         this.ruleset = new PoprRuleset(actions, 1000, new Heuristic(0.0, 0.0));
-        SequenceGenerator generator = new SequenceGenerator(actions);
+        SequenceEnumerator permutations = new SequenceGenerator(actions).enumerate(1);
         ArrayList<Sequence> evaluationSuffixes = new ArrayList<>();
         for (int i = 1; i <= 15; i++) {
-            evaluationSuffixes.add(generator.nextPermutation(i));
+            evaluationSuffixes.add(permutations.next());
         }
         this.ruleSetEvaluator = new PoprRuleSetEvaluator(evaluationSuffixes.toArray(new Sequence[0]));
     }
@@ -6,18 +6,34 @@ import agents.marzrules.RuleNodeRoot;
 import agents.marzrules.Ruleset;
 import framework.Action;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 public class PoprRuleset extends Ruleset {
 
+    // the index of each action in the alphabet
+    private final HashMap<Action, Integer> actionIndexes = new HashMap<>();
+    // the rules in current, so the searches can check membership without scanning the list
+    private final Set<RuleNode> inCurrent = Collections.newSetFromMap(new IdentityHashMap<>());
+    // breadth first search queue shared by the searches. Each entry is tagged with the action it was reached by
+    private RuleNode[] queue = new RuleNode[64];
+    private int[] queueActions = new int[64];
+
     public PoprRuleset(Action[] alphabet, int maxDepth, Heuristic heuristic) {
         super(alphabet, maxDepth, heuristic);
+        for (int i = 0; i < alphabet.length; i++) {
+            actionIndexes.putIfAbsent(alphabet[i], i);
+        }
     }
 
     public Action falsify() {
         Action toTake = null;//TODO: make random?
         int bestDepth = 500; //arbitrary; right now just max depth limit
+        RuleNode[] superstitions = new RuleNode[alphabet.length];
+        syncCurrent();
         for (int i = 0; i < current.size(); i++) {
             if ( current.get(i) instanceof RuleNodeRoot) {
                 // I don't think we need to look at 0-deep rules, might be wrong
@@ -28,41 +44,95 @@ public class PoprRuleset extends Ruleset {
                 break;
             }
 
-            for (Action action : alphabet) {
-                RuleNode superstition = getNextTestable(current.get(i), action);
+            //one search finds the nearest testable child for every action
+            findNextTestables(current.get(i), 0, alphabet.length, superstitions);
+            for (int a = 0; a < alphabet.length; a++) {
+                RuleNode superstition = superstitions[a];
                 //TODO: this assumes depth means something more intuitive than what I think is reflected in our implementation
 
+                if (superstition == null) {
+                    //nothing testable follows this action
+                    continue;
+                }
                 if (superstition.getCurrentDepth() < bestDepth){ //TODO: superstition.depth + 1 to enforce choice of simplest rules?
-                    toTake = action;
+                    toTake = alphabet[a];
                 }
             }
         }
+        if (toTake == null) {
+            //no superstition can be tested from here (the agent can't be handed a null action)
+            toTake = alphabet[0];
+        }
         return toTake;
     }
-    //breadth first search for nearest testable child
-    //this function is called twice (in a 2-alphabet) per node in current, which I'd like do more elegantly but alas alack
 
+    //breadth first search for nearest testable child
     public RuleNode getNextTestable(RuleNode parent, Action action) {
-        ArrayDeque<RuleNode> queue = new ArrayDeque<>();
-        RuleNode p = parent;
-        ArrayList<RuleNode> moveChildren = p.getChild(action);
-        queue.addAll(moveChildren); //initial queue is just the specific branch of children that the caller of this function was looking at
-        while(queue.size() > 0) {
-            p = queue.remove();
+        if (parent == null) {
+            throw new IllegalArgumentException("parent cannot be null");
+        }
+        Integer index = actionIndexes.get(action);
+        if (index == null) {
+            throw new IllegalArgumentException("Action not in alphabet");
+        }
+        RuleNode[] testables = new RuleNode[alphabet.length];
+        syncCurrent();
+        findNextTestables(parent, index, index + 1, testables);
+        return testables[index];
+    }
 
-            if (current.contains(p)){ //if p is in current, continue b/c this is redundant
+    /**
+     * Searches breadth first below parent for the nearest testable rule (one with an action it has never been expanded
+     * on) reached by each action in [from, to).  The searches for every action share a single queue; an action's entries
+     * are still visited in the order its own search would have visited them, so each finds the same rule it would alone.
+     *
+     * @param testables receives the rule found for each action, or null if there is none
+     */
+    private void findNextTestables(RuleNode parent, int from, int to, RuleNode[] testables) {
+        int tail = 0;
+        for (int a = from; a < to; a++) {
+            testables[a] = null;
+            //initial queue is just the specific branch of children for the action
+            for (int i = 0; i < parent.getChildCount(a); i++) {
+                tail = enqueue(tail, parent.getChild(a, i), a);
+            }
+        }
+
+        int remaining = to - from;
+        for (int head = 0; head < tail && remaining > 0; head++) {
+            RuleNode p = queue[head];
+            int a = queueActions[head];
+            if (testables[a] != null || inCurrent.contains(p)) { //if p is in current, continue b/c this is redundant
                 continue;
             }
 
-            for (Action m : alphabet){ //to get each set of child nodes
-                moveChildren = p.getChild(m);
-                if (moveChildren.size() == 1){ //i.e. this node has never been expanded, only instantiated with goal child
-                    return p;
-                } else {
-                    queue.addAll(moveChildren);
+            for (int m = 0; m < alphabet.length; m++) { //to get each set of child nodes
+                int count = p.getChildCount(m);
+                if (count == 1) { //i.e. this node has never been expanded, only instantiated with goal child
+                    testables[a] = p;
+                    remaining--;
+                    break;
+                }
+                for (int i = 0; i < count; i++) {
+                    tail = enqueue(tail, p.getChild(m, i), a);
                 }
             }
         }
-        return null;
+        Arrays.fill(queue, 0, tail, null);
+    }
+
+    private int enqueue(int tail, RuleNode node, int action) {
+        if (tail == queue.length) {
+            queue = Arrays.copyOf(queue, tail * 2);
+            queueActions = Arrays.copyOf(queueActions, tail * 2);
+        }
+        queue[tail] = node;
+        queueActions[tail] = action;
+        return tail + 1;
+    }
+
+    private void syncCurrent() {
+        inCurrent.clear();
+        inCurrent.addAll(current);
     }
 }
@@ -2,6 +2,7 @@ package agents.predr;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import framework.*;
 import utils.*;
 
@@ -39,7 +40,7 @@ public class PredrAgent implements framework.IAgent {
     /** the agent has an episodic memory of course */
     private EpisodicMemory<Episode> epmem = new EpisodicMemory<Episode>();
     /** all the rules that this agent has created so far */
-    private ArrayList<Rule> rules = new ArrayList<Rule>();
+    private RuleIndex rules = new RuleIndex();
     /** we need to keep track of the longest rule we've seen so far */
     private int longestRule = 1;
     /** keeps track of whether the current nst is generated from rules or from
@@ -88,7 +89,7 @@ public class PredrAgent implements framework.IAgent {
      *
      *  @return the rules
      */
-    public ArrayList<Rule> getRules() { return this.rules; }
+    public ArrayList<Rule> getRules() { return this.rules.toList(); }
     
     
     /**
@@ -112,13 +113,7 @@ public class PredrAgent implements framework.IAgent {
     private boolean mergeRule(Rule newRule) {
 
         //Find the existing rule (if any) that matches the new one
-        Rule match = null;
-        for(Rule rule : this.rules) {
-            if (rule.canMerge(newRule)) {
-                match = rule;
-                break;
-            }
-        }
+        Rule match = this.rules.findMergeable(newRule);
 
         //Merge or add as needed
         if (match != null) {
@@ -146,8 +141,9 @@ public class PredrAgent implements framework.IAgent {
     /**
      * buildRuleFromIndex
      *
-     * creates a new Rule that contains a subsequence of episodes from
-     * this.epmem.  These will be copies (clones) so they can be modified. 
+     * creates a new Rule from a subsequence of episodes in this.epmem.  The
+     * rule only refers to the episodes when this.epmem is packed; otherwise
+     * they are copied (cloned) so they can be modified.
      *
      * @param epIndex - index of the first episode in the subsequence
      * @param length  - number of episodes to retrieve
@@ -157,15 +153,7 @@ public class PredrAgent implements framework.IAgent {
      * @return the newly created Rule object
      */
     private Rule buildRuleFromIndex(int epIndex, int length, SensorData sensorData, String sName) {
-        Episode[] newLHSArr = this.epmem.subset(epIndex, epIndex + length);
-        ArrayList<Episode> newLHS = new ArrayList<Episode>();
-        for(Episode ep : newLHSArr) {
-            newLHS.add(new Episode(ep));
-        }
-        Rule newRule = new Rule(newLHS, sensorData, sName, epIndex);
-
-        return newRule;
-        
+        return Rule.fromMemory(this.epmem, epIndex, length, sensorData, sName);
     }//buildRuleFromIndex
 
     /**
@@ -199,12 +187,12 @@ public class PredrAgent implements framework.IAgent {
 
             //Create an extended version of the rule and add to the list
             Rule consRule = buildRuleFromIndex(epIndex - 1,
-                                               mergedRule.getLHS().size() + 1,
+                                               mergedRule.getLHSLength() + 1,
                                                sensorData,
                                                sName);
 
             //Extract the new extended action to use as a hashmap key
-            Action key = consRule.getLHS().get(0).getAction();
+            Action key = consRule.getAction(0);
 
             //Add the new rule to the hashmap
             ArrayList<Rule> al = null;
@@ -256,20 +244,12 @@ public class PredrAgent implements framework.IAgent {
         
             //Find the one matching rule whose LHS is from our current episodes and
             //RHS is the given sensorData
-            Rule matchingRule = null;
-            for (Rule rule : this.rules) {
-                if (rule.canMerge(this.epmem, sensorData, sName)) {
-                    matchingRule = rule;
-                    break;
-                }
-            }
+            Rule matchingRule = this.rules.findMergeable(this.epmem, sensorData, sName);
 
             //If no match was found this is a new rule and no merge is needed
             if (matchingRule == null) {
-                Rule newRule = new Rule(new Episode(this.epmem.current()),
-                                        new SensorData(sensorData),
-                                        sName,
-                                        this.epmem.currentIndex());
+                Rule newRule = buildRuleFromIndex(this.epmem.currentIndex(), 1,
+                                                  sensorData, sName);
                 this.rules.add(newRule);
                 continue;
             }
@@ -280,9 +260,9 @@ public class PredrAgent implements framework.IAgent {
             
             //We need to merge, so create a new rule of the same length from the
             //current position in this.epmem and the given SensorData
-            int newIndex = this.epmem.length() - matchingRule.getLHS().size();
+            int newIndex = this.epmem.length() - matchingRule.getLHSLength();
             Rule newRule = buildRuleFromIndex(newIndex,
-                                              matchingRule.getLHS().size(),
+                                              matchingRule.getLHSLength(),
                                               sensorData,
                                               sName); 
 
@@ -308,100 +288,90 @@ public class PredrAgent implements framework.IAgent {
 
 
     /**
-     * findRuleBasedSequence       ***RECURSIVE (w/ 3 base cases)***
+     * findRuleBasedSequence
      *
      * finds a sequence of actions that can reach the goal in N steps or less
      *
+     * The search is breadth first over the sensor data the rules predict.
+     * Each predicted sensing is only expanded the first time it is reached
+     * since reaching it again (no sooner) can't lead anywhere new.  Actions
+     * are expanded in order so of the shortest paths the one found is the
+     * same one a depth first search would keep.
+     *
      * @param steps      - max length of the sequence
      * @param sensorData - the sensor data that should match the LHS of the rules used
      *
-     * TODO:  The candNextSteps variable should be a HashTable<ArrayList<Rule>>
-     *        where each arraylist contains all the rules whose LHS action
-     *        sequences match.  This allows us to dodge the dodginess with
-     *        lastRuleUsed and shortestRule below.
      * TODO:  This should eventually support rules with multiple episodes on the LHS
      *
      * @return the shortest valid seuqence to goal (according to the rules) or
      *         an empty sequence if one is not found.
      */
-    private Sequence findRuleBasedSequence(int steps, SensorData sensorData, String debug) {
-        if (steps == 0) return Sequence.EMPTY;  // base case
-
-        //Search all the rules to find the ones where the LHS matches the given
-        //sensor data
-        ArrayList<Rule> candNextSteps = new ArrayList<Rule>();
-        for (Rule rule : rules) {
-            Episode ep = rule.getLHS().get(0);  //punt: this assumes only one ep in LHS
-            if (! sensorData.contains(ep.getSensorData())) continue;
-
-            //if this rule leads to a goal then we're done
-            if ( (rule.getRHS().hasSensor(SensorData.goalSensor))
-                  && (rule.getRHS().isGoal()) ) {
-                
-                return Sequence.EMPTY.buildChildSequence(ep.getAction());
-            } else {
-                candNextSteps.add(rule);
-            }
-        }//for
-
-        //If no matching rules were found we are finished
-        if (candNextSteps.isEmpty()) {
-            return Sequence.EMPTY;  //base case #2
-        }
-
-        //If we reach this point, no single step paths to goal were found but
-        //any matching rules are in candNextSteps.  So, we make a recursive call
-        //with each and keep the the shortest sequence that we get back
-        Sequence shortestSeq = null;
-        Rule shortestRule = null;  // rule whose LHS goes with shortestSeq result
-        for(Action act : this.actions) {
-            
-            SensorData sd = new SensorData(true);
-            sd.removeSensor(SensorData.goalSensor);
-            Rule lastRuleUsed = null;
-            for(Rule nextStep : candNextSteps) {
-                //we can't combined RHS of rules unless they all have the same
-                //action on the LHS (punt:  in the future there will be a
-                //sequence of actions on the LHS that all need to match)
-                if (nextStep.getLHS().get(0).getAction().equals(act)) {
-                    SensorData rhs = nextStep.getRHS();
-                    for(String name : rhs.getSensorNames()) {
-                        sd.setSensor(name, rhs.getSensor(name));
+    private Sequence findRuleBasedSequence(int steps, SensorData sensorData) {
+        //each entry in the frontier is a predicted sensing and the sequence
+        //of actions that leads to it
+        ArrayList<SensorData> frontier = new ArrayList<SensorData>();
+        ArrayList<Sequence> paths = new ArrayList<Sequence>();
+        HashSet<SensorData> reached = new HashSet<SensorData>();
+        frontier.add(sensorData);
+        paths.add(Sequence.EMPTY);
+        reached.add(sensorData);
+
+        for(int depth = 0; (depth < steps) && (! frontier.isEmpty()); ++depth) {
+            ArrayList<SensorData> nextFrontier = new ArrayList<SensorData>();
+            ArrayList<Sequence> nextPaths = new ArrayList<Sequence>();
+            for(int f = 0; f < frontier.size(); ++f) {
+                SensorData sd = frontier.get(f);
+
+                //Find the rules where the LHS matches the given sensor data
+                //(punt: this assumes only one ep in LHS)
+                ArrayList<Rule> candNextSteps = new ArrayList<Rule>();
+                for (Rule rule : this.rules.findFiring(sd)) {
+                    //if this rule leads to a goal then we're done
+                    if ( (rule.getRHS().hasSensor(SensorData.goalSensor))
+                         && (rule.getRHS().isGoal()) ) {
+                        Sequence last = Sequence.EMPTY.buildChildSequence(rule.getAction(0));
+                        return paths.get(f).concat(last);
                     }
-
-                    //We need to save a ref to one of the rules that was used
-                    //here so we can can use the rule to build a sequence after
-                    //the loop is done.
-                    lastRuleUsed = nextStep;
+                    candNextSteps.add(rule);
                 }
-            }
 
-            //make a recursive call if any rules were applied for this action
-            if (lastRuleUsed != null) {
-                Sequence result = findRuleBasedSequence(steps - 1, sd, debug + act.getName());
-
-                //is this the shortest one we've seen so far?
-                if (! result.equals(Sequence.EMPTY)) {
-                    if ((shortestSeq == null)
-                        || (shortestSeq.getLength() > result.getLength()) ) {
-                        shortestSeq = result;
-                        //save this to build a sequence with
-                        shortestRule = lastRuleUsed;  
+                //the next sensings would have no steps left to reach the goal
+                if (depth + 1 == steps) continue;
+
+                for(Action act : this.actions) {
+                    SensorData next = new SensorData(true);
+                    next.removeSensor(SensorData.goalSensor);
+                    Rule lastRuleUsed = null;
+                    for(Rule nextStep : candNextSteps) {
+                        //we can't combined RHS of rules unless they all have the same
+                        //action on the LHS (punt:  in the future there will be a
+                        //sequence of actions on the LHS that all need to match)
+                        if (nextStep.getAction(0).equals(act)) {
+                            SensorData rhs = nextStep.getRHS();
+                            for(String name : rhs.getSensorNames()) {
+                                next.setSensor(name, rhs.getSensor(name));
+                            }
+
+                            //We need to save a ref to one of the rules that was used
+                            //here so we can can use the rule to build a sequence
+                            lastRuleUsed = nextStep;
+                        }
                     }
-                }
-            }
-                
+
+                    //expand this action if any rules were applied for it
+                    if ((lastRuleUsed != null) && reached.add(next)) {
+                        Sequence front = new Sequence(lastRuleUsed.getActions());
+                        nextFrontier.add(next);
+                        nextPaths.add(paths.get(f).concat(front));
+                    }
+                }//for
+            }//for
+
+            frontier = nextFrontier;
+            paths = nextPaths;
         }//for
-        
-        //At this point we have the shortest sequence and the rule that led to
-        //it so we can prepend the rule's action to complete the sequence
-        if (shortestSeq != null) {
-            Sequence front = new Sequence(EpisodeUtils.selectMoves(shortestRule.getLHS()));
-            Sequence result = front.concat(shortestSeq);
-            return result;
-        }
 
-        return Sequence.EMPTY;  //no paths found (also a base case)
+        return Sequence.EMPTY;  //no paths found
     }//findRuleBasedSequence
 
     /**
@@ -432,7 +402,7 @@ public class PredrAgent implements framework.IAgent {
         //rules suggest a good one
         if ( (! this.inRuleSeq) || (! nst.hasNext()) ) {
 
-            Sequence rulesSeq = findRuleBasedSequence(nst.stepsRemaining(), sensorData, ">");
+            Sequence rulesSeq = findRuleBasedSequence(nst.stepsRemaining(), sensorData);
 
             if (! rulesSeq.equals(Sequence.EMPTY)) {
                 //DEBUG
@@ -1,6 +1,7 @@
 package agents.predr;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import framework.*;
 import utils.*;
 
@@ -14,6 +15,12 @@ import utils.*;
  * particular rule always has only one non-wildcard bit.  The LHS consists
  * of one or more episodes which may contain wildcards as well.
  *
+ * A rule built from an episodic memory whose sensors are packed (see
+ * {@link #fromMemory}) doesn't copy its episodes.  Each LHS step is just the
+ * action's ordinal and the memory's packed sensor words with the wildcarded
+ * sensors masked off, so merging two such rules is a few bitwise ANDs.  The
+ * LHS episodes are only built when they're asked for.
+ *
  * @see PredrAgent to see how this is used
  *
  * @author Faltersack and Nuxoll
@@ -21,9 +28,18 @@ import utils.*;
 public class Rule {
     /** a set of episodes on the left-hand-side of the rule.  Sensors that have
         been "wildcarded" are simply removed from the SensorData in the
-        Episode. */
+        Episode.  Null if the rule is packed. */
     private ArrayList<Episode> LHS;
 
+    /** the memory a packed rule was built from (its ordinals refer to it) or
+        null if the rule holds copies of its episodes */
+    private EpisodicMemory<Episode> epmem = null;
+    /** for each LHS step of a packed rule:  the action ordinal, which boolean
+        sensors are present (not wildcarded) and the values of those sensors */
+    private int[] actionOrdinals;
+    private long[] sensorMasks;
+    private long[] sensorWords;
+
     /** the right-hand-side of the rule.  This will only contain one
         sensor-value pair (at least for now).*/
     private SensorData RHS;
@@ -57,17 +73,7 @@ public class Rule {
      */
     public Rule(ArrayList<Episode> initLHS, SensorData initRHS, String sensorToTarget, int initEpmemIndex) {
         this.LHS = initLHS;
-        this.RHS = new SensorData(initRHS.isGoal());
-        if (! sensorToTarget.equals(SensorData.goalSensor))
-        {
-            //in this weird case, we don't want a goal sensor at all as we are
-            //effectively wildcarding it
-            this.RHS.removeSensor(SensorData.goalSensor);
-
-            //add the sensor we do want here
-            this.RHS.setSensor(sensorToTarget, initRHS.getSensor(sensorToTarget));
-        }
-        
+        this.RHS = buildRHS(initRHS, sensorToTarget);
         this.epmemIndexes.add(initEpmemIndex);
     }//ctor
     
@@ -87,8 +93,142 @@ public class Rule {
         this.epmemIndexes = initIndexes;
     }//ctor
 
+    /**
+     * Rule ctor
+     *
+     * this is only used internally to create packed rules
+     */
+    private Rule(EpisodicMemory<Episode> epmem, int[] actionOrdinals, long[] sensorMasks,
+                 long[] sensorWords, SensorData initRHS, ArrayList<Integer> initIndexes) {
+        this.epmem = epmem;
+        this.actionOrdinals = actionOrdinals;
+        this.sensorMasks = sensorMasks;
+        this.sensorWords = sensorWords;
+        this.RHS = initRHS;
+        this.epmemIndexes = initIndexes;
+    }//ctor
+
+    /**
+     * fromMemory
+     *
+     * creates a rule whose LHS is a subsequence of episodes in a given
+     * episodic memory.  If the memory's sensors are packed the rule is packed
+     * too, otherwise the episodes are copied (so they can be modified).
+     *
+     * @param epmem          the memory the episodes are in
+     * @param epIndex        index of the first episode in the subsequence
+     * @param length         number of episodes in the subsequence
+     * @param initRHS        the sensors that resulted (one of these will be used for the rule)
+     * @param sensorToTarget the name of the sensor that won't be wildcarded on the RHS
+     */
+    public static Rule fromMemory(EpisodicMemory<Episode> epmem, int epIndex, int length,
+                                  SensorData initRHS, String sensorToTarget) {
+        if (! epmem.isPacked()) {
+            ArrayList<Episode> newLHS = new ArrayList<Episode>();
+            for(Episode ep : epmem.subset(epIndex, epIndex + length)) {
+                newLHS.add(new Episode(ep));
+            }
+            return new Rule(newLHS, initRHS, sensorToTarget, epIndex);
+        }
+
+        int[] ordinals = new int[length];
+        long[] masks = new long[length];
+        long[] words = new long[length];
+        for(int i = 0; i < length; ++i) {
+            ordinals[i] = epmem.getActionOrdinal(epIndex + i);
+            masks[i] = epmem.getSensorMask(epIndex + i);
+            words[i] = epmem.getSensorWord(epIndex + i);
+        }
+        ArrayList<Integer> indexes = new ArrayList<Integer>();
+        indexes.add(epIndex);
+        return new Rule(epmem, ordinals, masks, words, buildRHS(initRHS, sensorToTarget), indexes);
+    }//fromMemory
+
+    /** @return a RHS with just the one sensor the rule targets */
+    private static SensorData buildRHS(SensorData initRHS, String sensorToTarget) {
+        SensorData rhs = new SensorData(initRHS.isGoal());
+        if (! sensorToTarget.equals(SensorData.goalSensor))
+        {
+            //in this weird case, we don't want a goal sensor at all as we are
+            //effectively wildcarding it
+            rhs.removeSensor(SensorData.goalSensor);
+
+            //add the sensor we do want here
+            rhs.setSensor(sensorToTarget, initRHS.getSensor(sensorToTarget));
+        }
+        return rhs;
+    }//buildRHS
+
+    /**
+     * @return the episodes on the LHS.  These are built on demand for a
+     * packed rule so prefer the other accessors where they will do.
+     */
     public ArrayList<Episode> getLHS() {
-        return this.LHS;
+        if (this.epmem == null) {
+            return this.LHS;
+        }
+        ArrayList<Episode> episodes = new ArrayList<Episode>();
+        for(int i = 0; i < this.actionOrdinals.length; ++i) {
+            episodes.add(new Episode(getSensorData(i), getAction(i)));
+        }
+        return episodes;
+    }
+
+    /** @return the number of episodes on the LHS */
+    public int getLHSLength() {
+        return (this.epmem == null) ? this.LHS.size() : this.actionOrdinals.length;
+    }
+
+    /** @return the action of the given LHS episode */
+    public Action getAction(int step) {
+        if (this.epmem == null) {
+            return this.LHS.get(step).getAction();
+        }
+        return this.epmem.getActionByOrdinal(this.actionOrdinals[step]);
+    }
+
+    /** @return the actions on the LHS */
+    public Action[] getActions() {
+        Action[] actions = new Action[getLHSLength()];
+        for(int i = 0; i < actions.length; ++i) {
+            actions[i] = getAction(i);
+        }
+        return actions;
+    }
+
+    /** @return the (non-wildcarded) sensors of the given LHS episode */
+    public SensorData getSensorData(int step) {
+        if (this.epmem == null) {
+            return this.LHS.get(step).getSensorData();
+        }
+        SensorData sd = SensorData.createEmpty();
+        long mask = this.sensorMasks[step];
+        while (mask != 0) {
+            int ordinal = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            sd.setSensor(this.epmem.getSensorName(ordinal), (this.sensorWords[step] & (1L << ordinal)) != 0);
+        }
+        return sd;
+    }
+
+    /**
+     * @return true if the given sensor data has every (non-wildcarded) sensor
+     * of the given LHS episode (i.e., sd.contains(getSensorData(step)))
+     */
+    public boolean sensorsMatch(int step, SensorData sd) {
+        if (this.epmem == null) {
+            return sd.contains(this.LHS.get(step).getSensorData());
+        }
+        long mask = this.sensorMasks[step];
+        while (mask != 0) {
+            int ordinal = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            String name = this.epmem.getSensorName(ordinal);
+            if (! sd.hasSensor(name)) return false;
+            boolean value = (this.sensorWords[step] & (1L << ordinal)) != 0;
+            if (! Boolean.valueOf(value).equals(sd.getSensor(name))) return false;
+        }
+        return true;
     }
     
     public SensorData getRHS() {
@@ -104,18 +244,17 @@ public class Rule {
      * this rule
      */
     public boolean matches(EpisodicMemory<Episode> epmem) {
-        if (epmem.length() < this.LHS.size())
+        int size = getLHSLength();
+        if (epmem.length() < size)
             return false;
 
-        for (int i = 0; i < this.LHS.size(); ++i) {
-            Episode ruleEp = this.LHS.get(i);
+        for (int i = 0; i < size; ++i) {
             // getFromOffset expects 0-based offsets so we need to drop size by 1
-            Episode epmemEp = epmem.getFromOffset(this.LHS.size() - 1 - i);
-            SensorData ruleEpSd = ruleEp.getSensorData();
+            Episode epmemEp = epmem.getFromOffset(size - 1 - i);
             SensorData epmemEpSd = epmemEp.getSensorData();
             
-            if (! (epmemEpSd.contains(ruleEpSd)) &&
-                   epmemEp.getAction().equals(ruleEp.getAction())) {
+            if (! (sensorsMatch(i, epmemEpSd)) &&
+                   epmemEp.getAction().equals(getAction(i))) {
                 return false;
             }
         }
@@ -138,7 +277,8 @@ public class Rule {
     public boolean canMerge(EpisodicMemory<Episode> epmem,
                             SensorData sd, String sName) {
 
-        if (epmem.length() < this.LHS.size())
+        int size = getLHSLength();
+        if (epmem.length() < size)
             return false;
 
         //check a RHS sensor name match
@@ -154,10 +294,9 @@ public class Rule {
         }
 
         //Make sure the actions match
-        for (int i = 0; i < this.LHS.size(); ++i) {
-            Episode ruleEp = this.LHS.get(i);
-            Episode epmemEp = epmem.getFromOffset(this.LHS.size() - 1 - i);
-            if (! epmemEp.getAction().equals(ruleEp.getAction())) {
+        for (int i = 0; i < size; ++i) {
+            Episode epmemEp = epmem.getFromOffset(size - 1 - i);
+            if (! epmemEp.getAction().equals(getAction(i))) {
                 return false;
             }
         }
@@ -175,11 +314,13 @@ public class Rule {
      *          same sensor set
      */
     public boolean canMerge(Rule other) {
-        if (other.LHS.size() != this.LHS.size()) return false;
-        for(int i = 0; i < this.LHS.size(); ++i) {
-            Action thisAct = this.LHS.get(i).getAction();
-            Action otherAct = other.LHS.get(i).getAction();
-            if (! thisAct.equals(otherAct)) return false;
+        if (other.getLHSLength() != this.getLHSLength()) return false;
+        if ((this.epmem != null) && (this.epmem == other.epmem)) {
+            if (! Arrays.equals(this.actionOrdinals, other.actionOrdinals)) return false;
+        } else {
+            for(int i = 0; i < this.getLHSLength(); ++i) {
+                if (! this.getAction(i).equals(other.getAction(i))) return false;
+            }
         }
         return this.RHS.equals(other.RHS);
     }
@@ -197,22 +338,36 @@ public class Rule {
      * @return null if the merge fails
      */
     public Rule mergeWith(Rule other) {
+        //make an epmem indexes list for the new rule
+        ArrayList<Integer> newEI = new ArrayList<Integer>();
+        newEI.addAll(this.epmemIndexes);
+        newEI.addAll(other.epmemIndexes);
+
+        //Two packed rules intersect by keeping only the sensors both have
+        //with the same value.  The actions match so they can be shared.
+        if ((this.epmem != null) && (this.epmem == other.epmem)) {
+            int size = other.getLHSLength();
+            long[] newMasks = new long[size];
+            long[] newWords = new long[size];
+            for(int i = 0; i < size; ++i) {
+                newMasks[i] = this.sensorMasks[i] & other.sensorMasks[i]
+                              & ~(this.sensorWords[i] ^ other.sensorWords[i]);
+                newWords[i] = this.sensorWords[i] & newMasks[i];
+            }
+            return new Rule(this.epmem, this.actionOrdinals, newMasks, newWords, this.RHS, newEI);
+        }
+
         ArrayList<Episode> newLHS = new ArrayList<Episode>();
         //For each position in the 'this' and 'other' LHS, create a new episode
         //that is the intersection of the two (actions should match).  
-        for(int i = 0; i < other.LHS.size(); ++i) {
-            SensorData thisSD = this.LHS.get(i).getSensorData();
-            SensorData otherSD = other.LHS.get(i).getSensorData();
+        for(int i = 0; i < other.getLHSLength(); ++i) {
+            SensorData thisSD = this.getSensorData(i);
+            SensorData otherSD = other.getSensorData(i);
             SensorData newSD = thisSD.intersection(otherSD);
-            Episode newEp = new Episode(newSD, this.LHS.get(i).getAction());
+            Episode newEp = new Episode(newSD, this.getAction(i));
             newLHS.add(newEp);
         }
 
-        //make an epmem indexes list for the new rule
-        ArrayList<Integer> newEI = new ArrayList<Integer>();
-        newEI.addAll(this.epmemIndexes);
-        newEI.addAll(other.epmemIndexes);
-
         Rule result = new Rule(newLHS, this.RHS, newEI);
 
         return result;
@@ -220,6 +375,15 @@ public class Rule {
 
     /** @return true if all SensorData objects in this rule's LHS are empty */
     public boolean isAllWildcards() {
+        if (this.epmem != null) {
+            for(long mask : this.sensorMasks) {
+                if (mask != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         for(Episode ep : this.LHS) {
             if (! ep.getSensorData().isEmpty()) {
                 return false;
@@ -233,7 +397,7 @@ public class Rule {
     @Override
     public String toString() {
         String result = "{ ";
-        for(Episode ep : this.LHS) {
+        for(Episode ep : getLHS()) {
             result += ep.toString() + ", ";
         }
         result = result.substring(0, result.length() - 2);
@@ -0,0 +1,255 @@
+package agents.predr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import framework.*;
+import utils.*;
+
+/**
+ * RuleIndex
+ *
+ * holds a {@link PredrAgent}'s rules and indexes them by signature: the
+ * sensor on the RHS, its value, and the actions on the LHS.  Two rules can
+ * only be merged if their signatures match (see {@link Rule#canMerge}) so
+ * finding the rule to merge with is a hash lookup per LHS length rather than
+ * a scan of every rule.
+ *
+ * The rules are also indexed by the (non-wildcarded) sensors of their first
+ * LHS episode so that the rules that can fire from a given sensing can be
+ * found without checking every rule (see {@link #findFiring}).
+ *
+ * The rules are kept in the order they were added and a rule can be removed
+ * in O(1).  Where more than one rule could be merged with, the one that was
+ * added first is found (as a scan of the rules in order would).
+ *
+ * @author Faltersack and Nuxoll
+ */
+public class RuleIndex implements Iterable<Rule> {
+
+    /** every rule, in the order it was added */
+    private final LinkedHashSet<Rule> rules = new LinkedHashSet<Rule>();
+    /** the rules with each signature, in the order they were added */
+    private final HashMap<Signature, LinkedHashSet<Rule>> bySignature = new HashMap<>();
+    /** when each rule was added.  Used to pick the earliest of several matches. */
+    private final HashMap<Rule, Long> arrivals = new HashMap<>();
+    private long nextArrival = 0;
+    /** the rules whose first LHS episode has each set of sensors, in the order they were added */
+    private final HashMap<SensorData, LinkedHashSet<Rule>> byFirstSensors = new HashMap<>();
+    /** the key each rule was added to byFirstSensors with */
+    private final HashMap<Rule, SensorData> firstSensors = new HashMap<>();
+    /** how many rules there are with each LHS length */
+    private int[] lengthCounts = new int[4];
+
+    /** adds a rule to the end of the index */
+    public void add(Rule rule) {
+        if (rule == null) {
+            throw new IllegalArgumentException("rule cannot be null");
+        }
+        if (! this.rules.add(rule)) return;
+
+        this.arrivals.put(rule, this.nextArrival++);
+        this.bySignature.computeIfAbsent(new Signature(rule), k -> new LinkedHashSet<Rule>()).add(rule);
+        //a copy so that the key can't change under the map
+        SensorData first = (rule.getLHSLength() == 0) ? SensorData.createEmpty() : new SensorData(rule.getSensorData(0));
+        this.firstSensors.put(rule, first);
+        this.byFirstSensors.computeIfAbsent(first, k -> new LinkedHashSet<Rule>()).add(rule);
+        int length = rule.getLHSLength();
+        if (length >= this.lengthCounts.length) {
+            this.lengthCounts = Arrays.copyOf(this.lengthCounts, Math.max(length + 1, this.lengthCounts.length * 2));
+        }
+        this.lengthCounts[length]++;
+    }//add
+
+    /**
+     * removes a rule from the index
+     *
+     * @return true if the rule was in the index
+     */
+    public boolean remove(Rule rule) {
+        if (! this.rules.remove(rule)) return false;
+
+        this.arrivals.remove(rule);
+        Signature signature = new Signature(rule);
+        LinkedHashSet<Rule> bucket = this.bySignature.get(signature);
+        bucket.remove(rule);
+        if (bucket.isEmpty()) {
+            this.bySignature.remove(signature);
+        }
+        SensorData first = this.firstSensors.remove(rule);
+        bucket = this.byFirstSensors.get(first);
+        bucket.remove(rule);
+        if (bucket.isEmpty()) {
+            this.byFirstSensors.remove(first);
+        }
+        this.lengthCounts[rule.getLHSLength()]--;
+        return true;
+    }//remove
+
+    public boolean contains(Rule rule) {
+        return this.rules.contains(rule);
+    }
+
+    public int size() {
+        return this.rules.size();
+    }
+
+    public void clear() {
+        this.rules.clear();
+        this.bySignature.clear();
+        this.arrivals.clear();
+        this.byFirstSensors.clear();
+        this.firstSensors.clear();
+        Arrays.fill(this.lengthCounts, 0);
+    }
+
+    /** @return the rules in the order they were added */
+    public ArrayList<Rule> toList() {
+        return new ArrayList<Rule>(this.rules);
+    }
+
+    @Override
+    public Iterator<Rule> iterator() {
+        return this.rules.iterator();
+    }
+
+    /**
+     * findMergeable
+     *
+     * finds the first rule for which {@link Rule#canMerge(EpisodicMemory, SensorData, String)}
+     * is true.
+     *
+     * @return the matching rule or null if there is none
+     */
+    public Rule findMergeable(EpisodicMemory<Episode> epmem, SensorData sd, String sName) {
+        Object value = sd.getSensor(sName);
+        Rule match = null;
+        long matchArrival = Long.MAX_VALUE;
+        int longest = Math.min(this.lengthCounts.length - 1, epmem.length());
+        for (int length = 0; length <= longest; ++length) {
+            if (this.lengthCounts[length] == 0) continue;
+
+            Action[] actions = new Action[length];
+            for (int i = 0; i < length; ++i) {
+                actions[i] = epmem.getFromOffset(length - 1 - i).getAction();
+            }
+            Rule candidate = first(new Signature(sName, value, actions));
+            if ((candidate != null) && (this.arrivals.get(candidate) < matchArrival)) {
+                match = candidate;
+                matchArrival = this.arrivals.get(candidate);
+            }
+        }
+        return match;
+    }//findMergeable
+
+    /**
+     * findMergeable
+     *
+     * finds the first rule for which {@link Rule#canMerge(Rule)} is true.
+     *
+     * @return the matching rule or null if there is none
+     */
+    public Rule findMergeable(Rule other) {
+        return first(new Signature(other));
+    }
+
+    /**
+     * findFiring
+     *
+     * finds every rule whose first LHS episode's sensors match a given
+     * sensing (i.e., {@link Rule#sensorsMatch}(0, sd) is true).  A rule's
+     * sensors match if they are a subset of the sensing so each subset is
+     * looked up in turn.  When there are fewer distinct first episodes than
+     * subsets each of those is checked instead.
+     *
+     * @return the matching rules in the order they were added
+     */
+    public ArrayList<Rule> findFiring(SensorData sd) {
+        ArrayList<Rule> result = new ArrayList<Rule>();
+        ArrayList<String> names = new ArrayList<String>(sd.getSensorNames());
+        if ((names.size() >= Long.SIZE - 1) || ((1L << names.size()) > this.byFirstSensors.size())) {
+            for (Map.Entry<SensorData, LinkedHashSet<Rule>> entry : this.byFirstSensors.entrySet()) {
+                if (sd.contains(entry.getKey())) {
+                    result.addAll(entry.getValue());
+                }
+            }
+        } else {
+            for (long bits = 0; bits < (1L << names.size()); ++bits) {
+                SensorData subset = SensorData.createEmpty();
+                for (long rest = bits; rest != 0; rest &= rest - 1) {
+                    String name = names.get(Long.numberOfTrailingZeros(rest));
+                    subset.setSensor(name, sd.getSensor(name));
+                }
+                LinkedHashSet<Rule> bucket = this.byFirstSensors.get(subset);
+                if (bucket != null) {
+                    result.addAll(bucket);
+                }
+            }
+        }
+        result.sort(Comparator.comparingLong(this.arrivals::get));
+        return result;
+    }//findFiring
+
+    /** @return the earliest rule with the given signature (or null) */
+    private Rule first(Signature signature) {
+        LinkedHashSet<Rule> bucket = this.bySignature.get(signature);
+        return (bucket == null) ? null : bucket.iterator().next();
+    }
+
+    /**
+     * class Signature
+     *
+     * is the part of a rule that must match for a merge:  the one sensor on
+     * its RHS, that sensor's value and the actions on its LHS.
+     */
+    private static class Signature {
+        private final String sName;
+        private final Object value;
+        private final Action[] actions;
+        private final int hash;
+
+        public Signature(String sName, Object value, Action[] actions) {
+            this.sName = sName;
+            this.value = value;
+            this.actions = actions;
+            this.hash = 31 * Objects.hash(sName, value) + Arrays.hashCode(actions);
+        }
+
+        public Signature(Rule rule) {
+            this(rhsName(rule.getRHS()), rhsValue(rule.getRHS()), rule.getActions());
+        }
+
+        private static String rhsName(SensorData rhs) {
+            //the RHS of a rule only ever has one sensor
+            Iterator<String> names = rhs.getSensorNames().iterator();
+            return names.hasNext() ? names.next() : null;
+        }
+
+        private static Object rhsValue(SensorData rhs) {
+            String name = rhsName(rhs);
+            return (name == null) ? null : rhs.getSensor(name);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (! (o instanceof Signature)) return false;
+            Signature other = (Signature) o;
+            return this.hash == other.hash
+                    && Objects.equals(this.sName, other.sName)
+                    && Objects.equals(this.value, other.value)
+                    && Arrays.equals(this.actions, other.actions);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }//class Signature
+
+}//class RuleIndex
@@ -6,6 +6,14 @@ import java.util.*;
  * Sequence
  * Represents a sequence of {@link Action}s.
  *
+ * The actions of a sequence never change once it is built.  Sequences that grow by prepending (as suffixes do in
+ * the tree-growing agents) share their tails: the actions are stored last-to-first in a backing buffer and a child
+ * that prepends into an unclaimed slot of its parent's buffer is built in O(1) without copying.  The buffer also
+ * holds the polynomial hash of every suffix so {@link #endsWith(Sequence)}, {@link #startsWith(Sequence)} and
+ * {@link #hashCode()} only compare actions when the hashes already agree.
+ *
+ * The iteration cursor ({@link #next()} et al.) belongs to each Sequence instance and is not part of its value.
+ *
  * @author Zachary Paul Faltersack
  * @version 0.95
  */
@@ -18,9 +26,26 @@ public class Sequence implements Comparable<Sequence> {
 
     //endregion
 
+    //region Static Variables
+
+    /** the hash multiplier; matches {@link Arrays#hashCode(Object[])} so hash codes are unchanged */
+    private static final int HASH_BASE = 31;
+
+    /** the multiplicative inverse of HASH_BASE modulo 2^32 */
+    private static final int HASH_BASE_INVERSE = inverse(HASH_BASE);
+
+    private static volatile int[] powers = new int[] { 1 };
+
+    //endregion
+
     //region Class Variables
 
-    private Action[] actions = new Action[0];
+    private final Backing backing;
+
+    private final int length;
+
+    /** the actions first-to-last; built lazily for sequences that were not constructed from an array */
+    private Action[] actions;
 
     private int currentIndex = -1;
 
@@ -31,7 +56,9 @@ public class Sequence implements Comparable<Sequence> {
     /**
      * Create an instance of a Sequence with no actions
      */
-    public Sequence() { /* do nothing more */ }
+    public Sequence() {
+        this(new Action[0]);
+    }
     
     /**
      * Create an instance of a Sequence.
@@ -39,7 +66,17 @@ public class Sequence implements Comparable<Sequence> {
      * @param actions The actions in the sequence.
      */
     public Sequence(Action[] actions) {
-        if (actions != null) this.actions = actions;
+        this.actions = (actions == null) ? new Action[0] : actions;
+        this.length = this.actions.length;
+        this.backing = new Backing(Math.max(this.length, 1));
+        for (int i = this.length - 1; i >= 0; i--) {
+            this.backing.append(this.actions[i]);
+        }
+    }
+
+    private Sequence(Backing backing, int length) {
+        this.backing = backing;
+        this.length = length;
     }
 
     //endregion
@@ -55,19 +92,37 @@ public class Sequence implements Comparable<Sequence> {
     public boolean endsWith(Sequence sequence) {
         if (sequence == null)
             throw new IllegalArgumentException("sequence cannot be null.");
-        if (sequence.actions.length > this.actions.length)
+        int suffixLength = sequence.length;
+        if (suffixLength > this.length)
             return false;
-        if (sequence.actions.length == 0)
+        // a sequence that shares our buffer holds the very same last actions
+        if (suffixLength == 0 || sequence.backing == this.backing)
             return true;
-        List<Action> myActions = new ArrayList<>(Arrays.asList(this.actions));
-        List<Action> otherActions = new ArrayList<>(Arrays.asList(sequence.actions));
-        Collections.reverse(myActions);
-        Collections.reverse(otherActions);
-        for (int i = 0; i < otherActions.size(); i++) {
-            if (!myActions.get(i).equals(otherActions.get(i)))
-                return false;
-        }
-        return true;
+        if (this.backing.suffixHashes[suffixLength] != sequence.backing.suffixHashes[suffixLength])
+            return false;
+        return this.regionMatches(0, sequence, suffixLength);
+    }
+
+    /**
+     * Determines whether or not this sequence starts with the provided sequence.
+     *
+     * @param sequence the sequence to check as a prefix.
+     * @return true if this sequence starts with the given sequence; otherwise false.
+     */
+    public boolean startsWith(Sequence sequence) {
+        if (sequence == null)
+            throw new IllegalArgumentException("sequence cannot be null.");
+        int prefixLength = sequence.length;
+        if (prefixLength > this.length)
+            return false;
+        if (prefixLength == 0)
+            return true;
+        // hash(prefix) * BASE^rest + hash(rest) == hash(this)
+        int rest = this.length - prefixLength;
+        int prefixHash = (this.coreHash() - this.backing.suffixHashes[rest]) * power(HASH_BASE_INVERSE, rest);
+        if (prefixHash != sequence.coreHash())
+            return false;
+        return this.regionMatches(rest, sequence, prefixLength);
     }
 
     /**
@@ -76,6 +131,13 @@ public class Sequence implements Comparable<Sequence> {
      * @return the Action[].
      */
     public Action[] getActions() {
+        if (this.actions == null) {
+            Action[] forward = new Action[this.length];
+            for (int i = 0; i < this.length; i++) {
+                forward[i] = this.backing.reversed[this.length - 1 - i];
+            }
+            this.actions = forward;
+        }
         return this.actions;
     }
 
@@ -88,10 +150,10 @@ public class Sequence implements Comparable<Sequence> {
     public Sequence getSubsequence(int startIndex) {
         if (startIndex < 0)
             throw new IllegalArgumentException("startIndex cannot be less than 0");
-        if (startIndex >= this.actions.length)
+        if (startIndex >= this.length)
             return Sequence.EMPTY;
-        Action[] subsequence = Arrays.copyOfRange(this.actions, startIndex, this.actions.length);
-        return new Sequence(subsequence);
+        // a suffix is just a shorter view of the same buffer
+        return new Sequence(this.backing, this.length - startIndex);
     }
 
     /**
@@ -103,11 +165,11 @@ public class Sequence implements Comparable<Sequence> {
     public Sequence take(int length) {
         if (length < 0)
             throw new IllegalArgumentException("length cannot be less than zero.");
-        if (length > this.actions.length)
+        if (length > this.length)
             throw new IllegalArgumentException("length is too large.");
         if (length == 0)
             return Sequence.EMPTY;
-        Action[] subsequence = Arrays.copyOfRange(this.actions, 0, length);
+        Action[] subsequence = Arrays.copyOfRange(this.getActions(), 0, length);
         return new Sequence(subsequence);
     }
 
@@ -117,7 +179,7 @@ public class Sequence implements Comparable<Sequence> {
      * @return the length of the sequence.
      */
     public int getLength() {
-        return this.actions.length;
+        return this.length;
     }
 
     /**
@@ -129,9 +191,7 @@ public class Sequence implements Comparable<Sequence> {
     public Sequence buildChildSequence(Action newAction) {
         if (newAction == null)
             throw new IllegalArgumentException("newAction cannot be null");
-        List<Action> childActions = new LinkedList<>(Arrays.asList(this.actions));
-        childActions.add(0, newAction);
-        return new Sequence(childActions.toArray(new Action[0]));
+        return new Sequence(this.backing.prepend(this.length, newAction), this.length + 1);
     }
 
     /**
@@ -143,9 +203,11 @@ public class Sequence implements Comparable<Sequence> {
     public Sequence concat(Sequence sequence) {
         if (sequence == null)
             throw new IllegalArgumentException("sequence cannot be null.");
-        List<Action> concatenated = new LinkedList<>(Arrays.asList(this.actions));
-        concatenated.addAll(Arrays.asList(sequence.getActions()));
-        return new Sequence(concatenated.toArray(new Action[0]));
+        Sequence concatenated = sequence;
+        for (int i = 0; i < this.length; i++) {
+            concatenated = concatenated.buildChildSequence(this.backing.reversed[i]);
+        }
+        return concatenated;
     }
 
     /**
@@ -154,7 +216,7 @@ public class Sequence implements Comparable<Sequence> {
      * @return true if a next move exists; otherwise false.
      */
     public boolean hasNext() {
-        return this.currentIndex < (this.actions.length - 1);
+        return this.currentIndex < (this.length - 1);
     }
 
     /**
@@ -167,7 +229,7 @@ public class Sequence implements Comparable<Sequence> {
             // For simplicity just use a generic unchecked exception
             throw new RuntimeException("Sequence has no next Action.");
         this.currentIndex++;
-        return this.actions[this.currentIndex];
+        return this.backing.reversed[this.length - 1 - this.currentIndex];
     }
 
     /**
@@ -208,9 +270,9 @@ public class Sequence implements Comparable<Sequence> {
     @Override
     public int compareTo(Sequence o) {
         // Sort from longest to shortest
-        if (this.actions.length > o.actions.length)
+        if (this.length > o.length)
             return -1;
-        if (this.actions.length < o.actions.length)
+        if (this.length < o.length)
             return 1;
         return 0;
     }
@@ -226,29 +288,134 @@ public class Sequence implements Comparable<Sequence> {
             return false;
         }
         Sequence sequence = (Sequence) o;
-        if (this.actions.length != sequence.actions.length)
+        if (this.length != sequence.length)
             return false;
-        for (int i = 0; i < this.actions.length; i++) {
-            if (!this.actions[i].equals(sequence.actions[i]))
-                return false;
-        }
-        return true;
+        if (this.backing == sequence.backing)
+            return true;
+        if (this.coreHash() != sequence.coreHash())
+            return false;
+        return this.regionMatches(0, sequence, this.length);
     }
 
+    /**
+     * @return the same value as {@link Arrays#hashCode(Object[])} over the actions, without recomputing it.
+     */
     @Override
     public int hashCode() {
-        return Arrays.hashCode(this.actions);
+        return power(HASH_BASE, this.length) + this.coreHash();
     }
 
     @Override
     public String toString() {
         StringBuilder representation = new StringBuilder();
-        for (Action action : this.actions) {
-            representation.append(action.toString());
+        for (int i = this.length - 1; i >= 0; i--) {
+            representation.append(this.backing.reversed[i].toString());
         }
         return representation.toString();
     }
     //endregion
 
-    
+    //region Private Methods
+
+    /** @return the polynomial hash of every action (first action has the highest power) */
+    private int coreHash() {
+        return this.backing.suffixHashes[this.length];
+    }
+
+    /**
+     * compares count actions of the given sequence, from its last action back, with this sequence's actions
+     * starting offset actions from its end.
+     */
+    private boolean regionMatches(int offset, Sequence sequence, int count) {
+        Action[] mine = this.backing.reversed;
+        Action[] theirs = sequence.backing.reversed;
+        for (int i = 0; i < count; i++) {
+            if (!Objects.equals(mine[offset + i], theirs[i]))
+                return false;
+        }
+        return true;
+    }
+
+    private static int power(int base, int exponent) {
+        if (base == HASH_BASE) {
+            int[] table = powers;
+            if (exponent < table.length)
+                return table[exponent];
+            return growPowers(exponent);
+        }
+        int result = 1;
+        for (int b = base, e = exponent; e > 0; e >>= 1, b *= b) {
+            if ((e & 1) != 0)
+                result *= b;
+        }
+        return result;
+    }
+
+    private static synchronized int growPowers(int exponent) {
+        int[] table = powers;
+        if (exponent >= table.length) {
+            int size = Math.max(exponent + 1, table.length * 2);
+            int[] grown = Arrays.copyOf(table, size);
+            for (int i = table.length; i < size; i++) {
+                grown[i] = grown[i - 1] * HASH_BASE;
+            }
+            powers = table = grown;
+        }
+        return table[exponent];
+    }
+
+    /** Newton's iteration for the inverse of an odd number modulo 2^32 */
+    private static int inverse(int value) {
+        int inverse = value;
+        for (int i = 0; i < 5; i++) {
+            inverse *= 2 - value * inverse;
+        }
+        return inverse;
+    }
+
+    //endregion
+
+    //region Nested Classes
+
+    /**
+     * The actions of one or more sequences stored last-to-first along with the hash of every suffix.  A sequence
+     * of length n uses the first n slots; the first child to prepend onto the sequence that ends at the claimed
+     * length gets to claim the next slot while any other child copies.
+     */
+    private static class Backing {
+        private Action[] reversed;
+        private int[] suffixHashes;
+        private int claimed = 0;
+
+        private Backing(int capacity) {
+            this.reversed = new Action[capacity];
+            this.suffixHashes = new int[capacity + 1];
+        }
+
+        private synchronized Backing prepend(int length, Action action) {
+            if (length == this.claimed) {
+                this.append(action);
+                return this;
+            }
+            Backing copy = new Backing(Math.max(length * 2, 1));
+            System.arraycopy(this.reversed, 0, copy.reversed, 0, length);
+            System.arraycopy(this.suffixHashes, 0, copy.suffixHashes, 0, length + 1);
+            copy.claimed = length;
+            copy.append(action);
+            return copy;
+        }
+
+        private void append(Action action) {
+            if (this.claimed == this.reversed.length) {
+                this.reversed = Arrays.copyOf(this.reversed, this.claimed * 2);
+                this.suffixHashes = Arrays.copyOf(this.suffixHashes, this.claimed * 2 + 1);
+            }
+            this.reversed[this.claimed] = action;
+            this.suffixHashes[this.claimed + 1] = Objects.hashCode(action) * power(HASH_BASE, this.claimed)
+                    + this.suffixHashes[this.claimed];
+            this.claimed++;
+        }
+    }
+
+    //endregion
 }
@@ -2,13 +2,18 @@ package tests.agents.juno;
 
 import agents.juno.JunoAgent;
 import agents.juno.JunoAgentProvider;
+import agents.juno.JunoConfiguration;
 import agents.marz.MaRzAgent;
+import framework.Action;
 import framework.IAgent;
+import framework.SensorData;
 
 import tests.EpSemTest;
 import tests.EpSemTestClass;
 import static tests.Assertions.*;
 
+import java.util.ArrayList;
+
 @EpSemTestClass
 public class JunoAgentProviderTest {
 
@@ -21,4 +26,51 @@ public class JunoAgentProviderTest {
         assertTrue(agent instanceof JunoAgent);
         assertTrue(agent instanceof MaRzAgent);
     }
+
+    @EpSemTest
+    public void getAgentWithSpillingMovesLikeAgentWithout() throws Exception {
+        JunoAgentProvider provider = new JunoAgentProvider(new JunoConfiguration(true, .7, Double.MAX_VALUE));
+        JunoAgentProvider spillingProvider = new JunoAgentProvider(new JunoConfiguration(true, .7, Double.MAX_VALUE, 8));
+
+        // nearly every episode is spilled but the agent makes the same moves
+        ArrayList<Action> expected = this.runInLock(provider.getAgent(), 12);
+        ArrayList<Action> actual = this.runInLock(spillingProvider.getAgent(), 12);
+        assertTrue(expected.size() > 8);
+        assertEquals(expected, actual);
+    }
+
+    @EpSemTest
+    public void spillHotCapacityLessThan0ThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> new JunoConfiguration(false, 0, -1, -1));
+    }
+
+    /**
+     * runs the agent in a lock that opens after the moves "b a c" (a wrong move
+     * starts it over) until it has opened the given number of times
+     *
+     * @return every move the agent made
+     */
+    private ArrayList<Action> runInLock(IAgent agent, int goals) throws Exception {
+        Action[] actions = new Action[] { new Action("a"), new Action("b"), new Action("c") };
+        Action[] combination = new Action[] { actions[1], actions[0], actions[2] };
+        agent.initialize(actions, null);
+
+        ArrayList<Action> moves = new ArrayList<>();
+        SensorData sensorData = new SensorData(true);
+        int state = 0;
+        while (goals > 0) {
+            Action action = agent.getNextAction(sensorData);
+            moves.add(action);
+            state = action.equals(combination[state]) ? state + 1 : 0;
+            sensorData = new SensorData(state == combination.length);
+            if (sensorData.isGoal()) {
+                state = 0;
+                goals--;
+                agent.onGoalFound();
+            }
+            sensorData.setSensor("odd", state % 2 == 1);
+        }
+        agent.onTestRunComplete();
+        return moves;
+    }
 }
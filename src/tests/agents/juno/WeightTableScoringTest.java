@@ -0,0 +1,159 @@
+package tests.agents.juno;
+
+import agents.juno.WeightTable;
+import agents.juno.WindowContainsGoalException;
+import framework.Action;
+import framework.Episode;
+import framework.SensorData;
+import tests.EpSemTest;
+import tests.EpSemTestClass;
+import utils.EpisodicMemory;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static tests.Assertions.*;
+
+/**
+ * tests how a {@link WeightTable} finds and scores the windows that best
+ * match the current one.  (WeightTableTest holds the older tests, which are
+ * disabled.)
+ */
+@EpSemTestClass
+public class WeightTableScoringTest {
+
+    @EpSemTest
+    public void testBestIndicesMatchesFullScan() {
+        EpisodicMemory<Episode> episodes = randomMemory(300, 17, new Random(4));
+        WeightTable table = trainedTable(episodes, 3);
+        int lastGoal = lastGoalBeforeWindow(episodes, 3);
+
+        assertScoresMatch(fullScan(table, episodes, lastGoal, 6), table.bestIndices(episodes, 6, lastGoal));
+        assertScoresMatch(fullScan(table, episodes, lastGoal, 1000), table.bestIndices(episodes, 1000, lastGoal));
+        assertEquals(0, table.bestIndices(episodes, 0, lastGoal).length);
+    }
+
+    @EpSemTest
+    public void testParallelMatchesSequential() {
+        //enough windows that they are scored in parallel chunks
+        EpisodicMemory<Episode> episodes = randomMemory(40000, 1500, new Random(9));
+        WeightTable table = trainedTable(episodes, 3);
+        int lastGoal = lastGoalBeforeWindow(episodes, 3);
+
+        WeightTable.ScoredIndex[] parallel = table.bestIndices(episodes, 8, lastGoal);
+        assertScoresMatch(fullScan(table, episodes, lastGoal, 8), parallel);
+
+        //a second call reuses the table's buffers and gets the same answer
+        assertScoresMatch(parallel, table.bestIndices(episodes, 8, lastGoal));
+    }
+
+    @EpSemTest
+    public void testTiesPreferRecentWindows() {
+        Action a = new Action("a");
+        EpisodicMemory<Episode> episodes = new EpisodicMemory<>();
+        for (int i = 0; i < 20; i++) {
+            episodes.add(new Episode(new SensorData(false), a));
+        }
+        WeightTable table = new WeightTable(2);
+
+        //every window is the same so the most recent ones are kept, newest first
+        WeightTable.ScoredIndex[] best = table.bestIndices(episodes, 3, 15);
+        assertEquals(3, best.length);
+        assertEquals(14, best[0].index);
+        assertEquals(13, best[1].index);
+        assertEquals(12, best[2].index);
+    }
+
+    @EpSemTest
+    public void testGoalsAreSkippedWithoutThrowing() {
+        EpisodicMemory<Episode> episodes = randomMemory(200, 5, new Random(2));
+        WeightTable table = new WeightTable(4);
+        int lastGoal = lastGoalBeforeWindow(episodes, 4);
+
+        //no window that is returned has a goal in it
+        WeightTable.ScoredIndex[] best = table.bestIndices(episodes, 1000, lastGoal);
+        assertTrue(best.length > 0);
+        for (WeightTable.ScoredIndex si : best) {
+            assertTrue(episodes.lastGoalIndex(si.index) <= si.index - table.size());
+        }
+
+        //when the current window has a goal nothing can be scored
+        episodes.add(new Episode(new SensorData(true), new Action("a")));
+        episodes.add(new Episode(new SensorData(false), new Action("b")));
+        assertEquals(0, table.bestIndices(episodes, 5, lastGoal).length);
+    }
+
+    @EpSemTest
+    public void testUpdateOnGoalWithoutRoomIsIgnored() {
+        Action a = new Action("a");
+        WeightTable table = new WeightTable(2);
+
+        //a goal on the very first episode
+        EpisodicMemory<Episode> episodes = new EpisodicMemory<>();
+        episodes.add(new Episode(new SensorData(true), a));
+        table.updateOnGoal(episodes, 0);
+
+        //no room for a window before the previous goal
+        episodes.add(new Episode(new SensorData(false), a));
+        episodes.add(new Episode(new SensorData(false), a));
+        episodes.add(new Episode(new SensorData(false), a));
+        episodes.add(new Episode(new SensorData(true), a));
+        table.updateOnGoal(episodes, 3);
+
+        assertEquals(0.0, table.averageEntry());
+    }
+
+    /** a memory of random episodes with a goal about every 'goalEvery' steps */
+    private EpisodicMemory<Episode> randomMemory(int length, int goalEvery, Random random) {
+        Action[] actions = {new Action("a"), new Action("b"), new Action("c")};
+        EpisodicMemory<Episode> episodes = new EpisodicMemory<>();
+        for (int i = 0; i < length; i++) {
+            SensorData sd = new SensorData(i > 0 && random.nextInt(goalEvery) == 0);
+            sd.setSensor("sensor1", random.nextBoolean());
+            sd.setSensor("sensor2", random.nextBoolean());
+            episodes.add(new Episode(sd, actions[random.nextInt(actions.length)]));
+        }
+        //the current window has no goal
+        for (int i = 0; i < 4; i++) {
+            episodes.add(new Episode(new SensorData(false), actions[i % actions.length]));
+        }
+        return episodes;
+    }
+
+    /** a table whose weights aren't all the same so the scores differ */
+    private WeightTable trainedTable(EpisodicMemory<Episode> episodes, int size) {
+        WeightTable table = new WeightTable(size);
+        for (int i = size; i < 40; i += 3) {
+            table.updateOnFailure(episodes, episodes.currentIndex(), i);
+        }
+        return table;
+    }
+
+    private int lastGoalBeforeWindow(EpisodicMemory<Episode> episodes, int size) {
+        return episodes.lastGoalIndex(episodes.currentIndex() - size);
+    }
+
+    /** scores every window one at a time and keeps the best, most recent first among ties */
+    private WeightTable.ScoredIndex[] fullScan(WeightTable table, EpisodicMemory<Episode> episodes,
+                                               int lastGoal, int numMatches) {
+        ArrayList<WeightTable.ScoredIndex> all = new ArrayList<>();
+        for (int index = lastGoal - 1; index >= table.size() - 1; index--) {
+            try {
+                double score = table.calculateMatchScore(episodes, episodes.currentIndex(), index);
+                all.add(table.new ScoredIndex(index, score));
+            } catch (WindowContainsGoalException e) {
+                //not a candidate
+            }
+        }
+        all.sort((x, y) -> (x.score != y.score) ? Double.compare(y.score, x.score) : Integer.compare(y.index, x.index));
+        return all.subList(0, Math.min(numMatches, all.size())).toArray(new WeightTable.ScoredIndex[0]);
+    }
+
+    private void assertScoresMatch(WeightTable.ScoredIndex[] expected, WeightTable.ScoredIndex[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].index, actual[i].index);
+            assertEquals(expected[i].score, actual[i].score);
+        }
+    }
+}
@@ -144,10 +144,12 @@ public class WeightTableTest {
         }
     }
 
-    public class TestEpisodeWeights extends EpisodeWeights {
+    public final class TestEpisodeWeights extends EpisodeWeights {
         public TestEpisodeWeights(double actionWeight, HashMap<String, Double> sensorWeights){
             this.actionWeight= actionWeight;
-            this.sensorWeights= sensorWeights;
+            for(String sensorName : sensorWeights.keySet()){
+                this.setSensorWeight(sensorName, sensorWeights.get(sensorName));
+            }
         }
 
         public double getActionWeight(){
@@ -155,7 +157,7 @@ public class WeightTableTest {
         }
 
         public double getGoalWeight(){
-            return sensorWeights.get("GOAL");
+            return this.getSensorWeight("GOAL");
         }
     }
 }
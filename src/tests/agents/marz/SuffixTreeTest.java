@@ -3,6 +3,8 @@ package tests.agents.marz;
 import agents.marz.SuffixNode;
 import agents.marz.SuffixTree;
 import framework.Action;
+import framework.Episode;
+import framework.SensorData;
 import framework.Sequence;
 
 import tests.EpSemTest;
@@ -63,6 +65,31 @@ public class SuffixTreeTest {
         assertEquals(new Sequence(new Action[] { new Action("a")}), bestNode.getSuffix());
     }
 
+    @EpSemTest
+    public void findBestNodeToTryFollowsWeightChanges() {
+        Action a = new Action("a");
+        Action b = new Action("b");
+        Episode[] episodes = new Episode[6];
+        for (int i = 0; i < episodes.length; i++)
+            episodes[i] = new Episode(new SensorData(false), (i % 2 == 0) ? a : b);
+        SuffixNode root = new SuffixNode(Sequence.EMPTY, new Action[] { a, b }, index -> episodes[index]);
+        SuffixTree suffixTree = new SuffixTree(20, root);
+        root.addFailIndex(1);
+        root.addFailIndex(2);
+        root.addSuccessIndex(3);
+        assertTrue(suffixTree.splitSuffix(Sequence.EMPTY));
+
+        // "a" has one success and one failure while "b" has only a failure
+        SuffixNode nodeA = suffixTree.findBestMatch(new Sequence(new Action[] { a }));
+        SuffixNode nodeB = suffixTree.findBestMatch(new Sequence(new Action[] { b }));
+        assertSame(nodeA, suffixTree.findBestNodeToTry());
+        nodeA.addFailIndex(3);
+        nodeA.addFailIndex(5);
+        assertSame(nodeA, suffixTree.findBestNodeToTry());
+        nodeB.addSuccessIndex(4);
+        assertSame(nodeB, suffixTree.findBestNodeToTry());
+    }
+
     // findBestMatch Tests
     @EpSemTest
     public void findBestMatchNullSequenceThrowsException() {
@@ -98,6 +125,21 @@ public class SuffixTreeTest {
         assertNull(foundNode);
     }
 
+    @EpSemTest
+    public void findBestMatchPrefersLongestSuffix() {
+        Action a = new Action("a");
+        Action b = new Action("b");
+        Episode[] episodes = new Episode[] { new Episode(new SensorData(false), a), new Episode(new SensorData(false), b), new Episode(new SensorData(false), a) };
+        SuffixNode root = new SuffixNode(new Sequence(new Action[] { b }), new Action[] { a, b }, index -> episodes[index]);
+        SuffixTree suffixTree = new SuffixTree(20, root);
+        root.addFailIndex(1);
+        root.addFailIndex(2);
+        assertTrue(suffixTree.splitSuffix(new Sequence(new Action[] { b })));
+        assertEquals(new Sequence(new Action[] { a, b }), suffixTree.findBestMatch(new Sequence(new Action[] { b, a, b })).getSuffix());
+        assertEquals(new Sequence(new Action[] { b, b }), suffixTree.findBestMatch(new Sequence(new Action[] { b, b })).getSuffix());
+        assertNull(suffixTree.findBestMatch(new Sequence(new Action[] { b })));
+    }
+
     // containsSuffix Tests
     @EpSemTest
     public void containsSuffixNullSequenceThrowsException() {
@@ -90,6 +90,24 @@ public class RuleNodeTest {
         assertNotEquals(child1, child2);
     }
 
+    @EpSemTest
+    public void testManySenses(){
+        Action[] actions = new Action[] {new Action("a"), new Action("b")};
+        RuleNode node = new RuleNode(actions, 0, 2, 0);
+        RuleNode[] children = new RuleNode[10];
+        for (int sense = 0; sense < children.length; sense++) {
+            children[sense] = node.getNextChild(actions[1], sense);
+            assertEquals(sense, children[sense].getSense());
+        }
+        for (int sense = children.length - 1; sense >= 0; sense--) {
+            assertSame(children[sense], node.getNextChild(actions[1], sense));
+        }
+        // the goal child comes first
+        assertEquals(children.length + 1, node.getChild(actions[1]).size());
+        assertSame(node.getGoalChild(actions[1]), node.getChild(actions[1]).get(0));
+        assertEquals(1, node.getChild(actions[0]).size());
+    }
+
     @EpSemTest
     public void testIllegalMove(){
         Action[] actions = new Action[] {new Action("a"), new Action("b")};
@@ -224,6 +242,42 @@ public class RuleNodeTest {
         assertEquals(0.1 + 0.9*0.2, node.getGoalProbability(twoSequence, 0), 0.0001);
     }
 
+    @EpSemTest
+    public void testBatchMatchesSingle(){
+        Action[] actions = new Action[] {new Action("a"), new Action("b")};
+        RuleNode node = new RuleNode(actions, 0, 3, 0);
+        RuleNode aChild = node.getNextChild(actions[0], 0);
+        node.getGoalChild(actions[0]).occurs();
+        node.incrementMoveFrequency(actions[0]);
+        for (int i = 0; i < 3; i++){
+            aChild.occurs();
+            node.incrementMoveFrequency(actions[0]);
+        }
+        aChild.getGoalChild(actions[1]).occurs();
+        aChild.incrementMoveFrequency(actions[1]);
+        aChild.getNextChild(actions[1], 1).occurs();
+        aChild.incrementMoveFrequency(actions[1]);
+
+        ArrayList<ArrayList<Action>> sequences = new ArrayList<>();
+        sequences.add(new ArrayList<>(Arrays.asList(actions[0], actions[1], actions[0])));
+        sequences.add(new ArrayList<>(Collections.singletonList(actions[1])));
+        sequences.add(new ArrayList<>());
+        sequences.add(new ArrayList<>(Arrays.asList(actions[0], actions[1])));
+        sequences.add(new ArrayList<>(Arrays.asList(actions[0], actions[0])));
+        sequences.add(new ArrayList<>(Collections.singletonList(actions[0])));
+
+        double[] probabilities = node.getGoalProbabilities(sequences);
+        assertEquals(sequences.size(), probabilities.length);
+        for (int i = 0; i < sequences.size(); i++){
+            assertEquals(node.getGoalProbability(sequences.get(i), 0), probabilities[i], 0.0001);
+        }
+        assertEquals(0.25 + 0.75*0.5, probabilities[3], 0.0001);
+
+        sequences.add(new ArrayList<>(Collections.singletonList(new Action("c"))));
+        assertThrows(IllegalArgumentException.class, () -> node.getGoalProbabilities(sequences));
+        assertThrows(IllegalArgumentException.class, () -> node.getGoalProbabilities(null));
+    }
+
     //TODO: Test root only increases by frequency 1
 
     //endregion
@@ -250,16 +304,16 @@ public class RuleNodeTest {
         assertThrows(IllegalArgumentException.class, () -> node.getExpectation(null, false, h));
 
         //Not in current and not top
-        assertEquals(Optional.empty(), node.getExpectation(current, false, h));
+        assertEquals(RuleNode.NO_EXPECTATION, node.getExpectation(current, false, h));
 
         //At max depth
-        assertEquals(Optional.empty(), depthLimitNode.getExpectation(current, true, h));
+        assertEquals(RuleNode.NO_EXPECTATION, depthLimitNode.getExpectation(current, true, h));
 
         //Is goal
-        assertEquals(Optional.of(0.0), goalNode.getExpectation(current, true, h));
+        assertEquals(0.0, goalNode.getExpectation(current, true, h));
 
         //Not a base case
-        assertNotEquals(Optional.empty(), node.getExpectation(current, true, h));
+        assertNotEquals(RuleNode.NO_EXPECTATION, node.getExpectation(current, true, h));
     }
 
     /**
@@ -296,10 +350,10 @@ public class RuleNodeTest {
         current.add(node);
 
         //Returns 1.5, since it beats the heuristic
-        assertEquals(Optional.of(1.5), node.getExpectation(current, true, new TestHeuristic(2)));
+        assertEquals(1.5, node.getExpectation(current, true, new TestHeuristic(2)));
 
         //Since the heuristic is better, returns that instead
-        assertEquals(Optional.of(1.0), node.getExpectation(current, true, new TestHeuristic(1)));
+        assertEquals(1.0, node.getExpectation(current, true, new TestHeuristic(1)));
     }
 
     @EpSemTest
@@ -321,13 +375,13 @@ public class RuleNodeTest {
         current.add(node);
 
         //When heuristic is greater than best move, explore is false, exploit move and EV is cached
-        assertEquals(Optional.of(1.5), node.getExpectation(current, true, new TestHeuristic(2)));
+        assertEquals(1.5, node.getExpectation(current, true, new TestHeuristic(2)));
         assertEquals(false, node.getExplore());
         assertEquals(actions[0], node.getBestAction());
         assertEquals(1.5, node.getCachedExpectation());
 
         //When heuristic is less, explore is true, explore move and EV cached
-        assertEquals(Optional.of(1.0), node.getExpectation(current, true, new TestHeuristic(1)));
+        assertEquals(1.0, node.getExpectation(current, true, new TestHeuristic(1)));
         assertEquals(true, node.getExplore());
         assertEquals(actions[1], node.getBestAction());
         assertEquals(1.0, node.getCachedExpectation());
@@ -353,17 +407,17 @@ public class RuleNodeTest {
         //Current not null throws, so no other tested side effects
 
         //Not in current and not top
-        assertEquals(Optional.empty(), node.getExpectation(current, false, new TestHeuristic(1)));
+        assertEquals(RuleNode.NO_EXPECTATION, node.getExpectation(current, false, new TestHeuristic(1)));
         assertNull(node.getBestAction());
         assertEquals(-1.0, node.getCachedExpectation());
 
         //At max depth
-        assertEquals(Optional.empty(), depthLimitNode.getExpectation(current, true, new TestHeuristic(1)));
+        assertEquals(RuleNode.NO_EXPECTATION, depthLimitNode.getExpectation(current, true, new TestHeuristic(1)));
         assertNull(depthLimitNode.getBestAction());
         assertEquals(-1.0, depthLimitNode.getCachedExpectation());
 
         //Is goal. best move null, explore false, expectation 0
-        assertEquals(Optional.of(0.0), goalNode.getExpectation(current, true, new TestHeuristic(1)));
+        assertEquals(0.0, goalNode.getExpectation(current, true, new TestHeuristic(1)));
         assertNull(goalNode.getBestAction());
         assertEquals(0.0, goalNode.getCachedExpectation());
         assertEquals(false, goalNode.getExplore());
@@ -383,7 +437,7 @@ public class RuleNodeTest {
         aGoalChild.occurs();
 
         //a  is the best move
-        assertEquals(1.0, node.getExpectation(current, true, heuristic).get());
+        assertEquals(1.0, node.getExpectation(current, true, heuristic));
 
         node.occurs();
         node.incrementMoveFrequency(actions[0]);
@@ -391,7 +445,7 @@ public class RuleNodeTest {
         aChild.occurs();
 
         //a now has infinite cost - heuristic is the best move
-        assertEquals(2.0, node.getExpectation(current, true, heuristic).get());
+        assertEquals(2.0, node.getExpectation(current, true, heuristic));
 
         node.occurs();
         node.incrementMoveFrequency(actions[1]);
@@ -399,7 +453,67 @@ public class RuleNodeTest {
         bChild.occurs();
 
         //b now has infinite cost - return infinity
-        assertEquals(Optional.empty(), node.getExpectation(current, true, heuristic));
+        assertEquals(RuleNode.NO_EXPECTATION, node.getExpectation(current, true, heuristic));
+    }
+
+    @EpSemTest
+    public void testExpectedUpdatesWhenDescendantChanges() {
+        Action[] actions = new Action[] {new Action("a"), new Action("b")};
+        Heuristic heuristic = new TestHeuristic(10.0);
+        RuleNode node = new RuleNode(actions, 0, 3, 0);
+        ArrayList<RuleNode> current = new ArrayList<>();
+        current.add(node);
+
+        //node -a-> child -a-> goal
+        node.occurs();
+        node.incrementMoveFrequency(actions[0]);
+        RuleNode child = node.getNextChild(actions[0], 0);
+        child.occurs();
+        child.incrementMoveFrequency(actions[0]);
+        child.getGoalChild(actions[0]).occurs();
+        assertEquals(2.0, node.getExpectation(current, true, heuristic));
+        assertEquals(2.0, node.getExpectation(current, true, heuristic));
+
+        //half the time child -a-> goal is quicker
+        node.occurs();
+        node.incrementMoveFrequency(actions[0]);
+        node.getGoalChild(actions[0]).occurs();
+        assertEquals(1.5, node.getExpectation(current, true, heuristic));
+
+        //a change two levels down reaches node too: child -b-> grandchild is now a dead end
+        child.occurs();
+        child.incrementMoveFrequency(actions[1]);
+        child.getNextChild(actions[1], 0).occurs();
+        //child now weighs twice as much as the goal
+        assertEquals(2.0, node.getExpectation(current, true, heuristic));
+        assertEquals(actions[0], child.getBestAction());
+    }
+
+    @EpSemTest
+    public void testExpectedUpdatesWhenGoalProbabilityChanges() {
+        Action[] actions = new Action[] {new Action("a"), new Action("b")};
+        Heuristic heuristic = new Heuristic(1.0, 0.0);
+        heuristic.setGoalProbability(0.25);
+        RuleNode node = new RuleNode(actions, 0, 3, 0);
+        ArrayList<RuleNode> current = new ArrayList<>();
+        current.add(node);
+
+        //node -a-> child -a-> goal
+        node.occurs();
+        node.incrementMoveFrequency(actions[0]);
+        RuleNode child = node.getNextChild(actions[0], 0);
+        child.occurs();
+        child.incrementMoveFrequency(actions[0]);
+        child.getGoalChild(actions[0]).occurs();
+
+        //exploring b is worth 1/p = 4
+        assertEquals(2.0, node.getExpectation(current, true, heuristic));
+        assertEquals(actions[0], node.getBestAction());
+
+        //nothing in the tree changed but exploring b is now worth 1
+        heuristic.setGoalProbability(1.0);
+        assertEquals(1.0, node.getExpectation(current, true, heuristic));
+        assertEquals(actions[1], node.getBestAction());
     }
 
     //endregion
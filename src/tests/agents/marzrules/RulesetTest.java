@@ -8,8 +8,11 @@ import tests.EpSemTestClass;
 import agents.marzrules.RuleNode;
 import agents.marzrules.RuleNodeRoot;
 import agents.marzrules.Ruleset;
+import agents.marzrules.TestHeuristic;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import static tests.Assertions.*;
 
@@ -48,4 +51,172 @@ public class RulesetTest {
         assertTrue(!current.isEmpty());
         assertTrue(ruleset.getCurrent().contains(root));
     }
+
+    @EpSemTest
+    public void testGoalProbabilityRefreshedOnlyAtGoals() {
+        Action[] actions = new Action[] {new Action("a"), new Action("b")};
+        Heuristic heuristic = new Heuristic(1, 0);
+        Ruleset ruleset = new Ruleset(actions, 4, heuristic);
+        Random random = new Random(5);
+        ruleset.update(null, new SensorData(true));
+
+        for (int goal = 0; goal < 5; goal++) {
+            // the heuristic uses root's goal probability as of the last goal
+            double goalProbability = ruleset.getRoot().getIncreasedGoalProbability();
+            double value = heuristic.getHeuristic(0);
+            long version = heuristic.getVersion();
+
+            // choosing moves between goals leaves it alone even though root's goal probability keeps falling
+            for (int step = 0; step < 4; step++) {
+                SensorData sensorData = new SensorData(false);
+                sensorData.setSensor("sensor1", random.nextBoolean());
+                ruleset.update(ruleset.getBestMove(), sensorData);
+            }
+            ruleset.getBestMove();
+            assertTrue(ruleset.getRoot().getIncreasedGoalProbability() < goalProbability);
+            assertEquals(version, heuristic.getVersion());
+            assertEquals(value, heuristic.getHeuristic(0));
+
+            // reaching a goal refreshes it
+            SensorData sensorData = new SensorData(true);
+            sensorData.setSensor("sensor1", random.nextBoolean());
+            ruleset.update(ruleset.getBestMove(), sensorData);
+            assertTrue(heuristic.getVersion() != version);
+        }
+    }
+
+    @EpSemTest
+    public void negativeNodeBudgetTest() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new Ruleset(new Action[] {new Action("a")}, 2, new Heuristic(1, 0), -1));
+    }
+
+    @EpSemTest
+    public void testNodeBudgetIsKept() {
+        Action[] actions = new Action[] {new Action("a"), new Action("b")};
+        Ruleset ruleset = new Ruleset(actions, 6, new Heuristic(1, 0), 50);
+        Random random = new Random(3);
+        ruleset.update(null, new SensorData(true));
+        for (int step = 0; step < 2000; step++) {
+            SensorData sensorData = new SensorData(random.nextInt(20) == 0);
+            sensorData.setSensor("sensor1", random.nextBoolean());
+            sensorData.setSensor("sensor2", random.nextBoolean());
+            ruleset.update(actions[random.nextInt(2)], sensorData);
+            assertTrue(ruleset.getNodeCount() <= 50);
+        }
+        assertEquals(ruleset.getNodeCount(), this.countNodes(ruleset.getRoot()));
+        // root's children (the goal and one per sense) are never pruned
+        assertEquals(5, ruleset.getRoot().getChild(actions[0]).size());
+        // every rule in current survived
+        for (RuleNode node : ruleset.getCurrent()) {
+            RuleNode child = node;
+            while (child.getCurrentDepth() > 0) {
+                child = this.findParent(ruleset.getRoot(), child);
+                assertNotNull(child);
+            }
+        }
+    }
+
+    @EpSemTest
+    public void testRemoveChildForgetsMoves() {
+        Action[] actions = new Action[] {new Action("a"), new Action("b")};
+        PrunableNode node = new PrunableNode(actions);
+        node.occurs();
+        node.occurs();
+        node.incrementMoveFrequency(actions[0]);
+        node.incrementMoveFrequency(actions[0]);
+        node.getGoalChild(actions[0]).occurs();
+        RuleNode deadEnd = node.getNextChild(actions[0], 1);
+        deadEnd.occurs();
+        ArrayList<RuleNode> current = new ArrayList<>();
+        current.add(node);
+        Heuristic heuristic = new TestHeuristic(5);
+
+        //a might lead to a dead end so exploring b is best
+        assertEquals(5.0, node.getExpectation(current, true, heuristic));
+        assertTrue(node.remove(deadEnd));
+        assertTrue(node.isLeaf());
+
+        //what remains of a always reaches the goal
+        assertEquals(1.0, node.getExpectation(current, true, heuristic));
+        assertEquals(actions[0], node.getBestAction());
+        assertFalse(node.remove(deadEnd));
+    }
+
+    @EpSemTest
+    public void testRemoveChildForgetsItsOwnMove() {
+        Action[] actions = new Action[] {new Action("a"), new Action("b")};
+        PrunableNode node = new PrunableNode(actions);
+        node.occurs();
+        node.incrementMoveFrequency(actions[0]);
+        node.incrementMoveFrequency(actions[1]);
+        node.incrementMoveFrequency(actions[1]);
+        RuleNode child = node.getNextChild(actions[1], 1);
+        child.occurs();
+
+        //only the moves that led to the child (b) are forgotten
+        assertTrue(node.remove(child));
+        assertEquals(1, node.moves(actions[0]));
+        assertEquals(1, node.moves(actions[1]));
+    }
+
+    @EpSemTest
+    public void testRootChildrenCannotBeRemoved() {
+        Action[] actions = new Action[] {new Action("a"), new Action("b")};
+        PrunableRoot root = new PrunableRoot(actions);
+        root.occurs();
+        RuleNode child = root.getNextChild(actions[0], 1);
+        assertThrows(IllegalStateException.class, () -> root.remove(child));
+    }
+
+    private static class PrunableNode extends RuleNode {
+        PrunableNode(Action[] actions) {
+            super(actions, 0, 3, 1);
+        }
+
+        boolean remove(RuleNode child) {
+            return this.removeChild(child);
+        }
+
+        int moves(Action action) {
+            return this.getMoveFrequency(action);
+        }
+    }
+
+    private static class PrunableRoot extends RuleNodeRoot {
+        PrunableRoot(Action[] actions) {
+            super(actions, 3);
+        }
+
+        boolean remove(RuleNode child) {
+            return this.removeChild(child);
+        }
+    }
+
+    private int countNodes(RuleNode node) {
+        int count = 0;
+        for (Action action : new Action[] {new Action("a"), new Action("b")}) {
+            List<RuleNode> children = node.getChild(action);
+            for (int i = 1; i < children.size(); i++) {
+                count += 1 + this.countNodes(children.get(i));
+            }
+            if (node.getCurrentDepth() == 0)
+                break; //all actions share root's children
+        }
+        return count;
+    }
+
+    private RuleNode findParent(RuleNode node, RuleNode child) {
+        for (Action action : new Action[] {new Action("a"), new Action("b")}) {
+            List<RuleNode> children = node.getChild(action);
+            for (int i = 1; i < children.size(); i++) {
+                if (children.get(i) == child)
+                    return node;
+                RuleNode parent = this.findParent(children.get(i), child);
+                if (parent != null)
+                    return parent;
+            }
+        }
+        return null;
+    }
 }
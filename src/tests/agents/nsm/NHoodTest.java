@@ -0,0 +1,102 @@
+package tests.agents.nsm;
+
+import agents.nsm.NHood;
+import agents.nsm.QEpisode;
+import framework.Action;
+import framework.SensorData;
+
+import tests.EpSemTest;
+import tests.EpSemTestClass;
+import static tests.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+@EpSemTestClass
+public class NHoodTest {
+
+    // accepts Tests
+    @EpSemTest
+    public void acceptsRejectsNonPositiveLengths() {
+        NHood nHood = new NHood(new Action("a"));
+        assertFalse(nHood.accepts(0));
+        assertFalse(nHood.accepts(-1));
+        assertTrue(nHood.accepts(0.5));
+    }
+
+    @EpSemTest
+    public void acceptsRejectsShorterThanShortestWhenFull() {
+        NHood nHood = new NHood(new Action("a"));
+        for (int i = 0; i < NHood.K_NEAREST; i++) {
+            nHood.addNBor(i, 3, this.episode());
+        }
+        assertFalse(nHood.accepts(2.9));
+        assertTrue(nHood.accepts(3));
+    }
+
+    // addNBor Tests
+    @EpSemTest
+    public void addNBorKeepsLongestSortedByLength() {
+        NHood nHood = new NHood(new Action("a"));
+        int[] lengths = new int[] { 4, 1, 7, 2, 9, 3, 5, 8, 6, 2 };
+        for (int i = 0; i < lengths.length; i++) {
+            if (nHood.accepts(lengths[i]))
+                nHood.addNBor(i, lengths[i], this.episode());
+        }
+        assertEquals(NHood.K_NEAREST, nHood.size());
+        assertEquals(2, nHood.shortest);
+        int[] expected = new int[] { 2, 3, 4, 5, 6, 7, 8, 9 };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], nHood.getLength(i));
+        }
+        // the newer of the two neighbors of length 2 is kept
+        assertEquals(9, nHood.getPosition(0));
+    }
+
+    @EpSemTest
+    public void addNBorMatchesSortedList() {
+        Random random = new Random(3);
+        for (int trial = 0; trial < 50; trial++) {
+            NHood nHood = new NHood(new Action("a"));
+            ArrayList<int[]> expected = new ArrayList<>();
+            int shortest = 0;
+            for (int i = 0; i < 100; i++) {
+                int length = random.nextInt(6);
+                if ((length > 0) && ((shortest <= length) || (expected.size() < NHood.K_NEAREST))) {
+                    // the neighborhood's original list: drop the shortest, add, stable sort
+                    while (expected.size() >= NHood.K_NEAREST) {
+                        expected.remove(0);
+                    }
+                    expected.add(new int[] { i, length });
+                    expected.sort((a, b) -> a[1] - b[1]);
+                    shortest = expected.get(0)[1];
+                }
+                if (nHood.accepts(length))
+                    nHood.addNBor(i, length, this.episode());
+            }
+            assertEquals(expected.size(), nHood.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i)[0], nHood.getPosition(i));
+                assertEquals(expected.get(i)[1], nHood.getLength(i));
+            }
+        }
+    }
+
+    // getQValue Tests
+    @EpSemTest
+    public void getQValueAveragesNeighbors() {
+        NHood nHood = new NHood(new Action("a"));
+        assertEquals(0.0, nHood.getQValue(), 0.0);
+        QEpisode first = this.episode();
+        first.qValue = 1.0;
+        QEpisode second = this.episode();
+        second.qValue = 0.5;
+        nHood.addNBor(0, 1, first);
+        nHood.addNBor(1, 2, second);
+        assertEquals(0.75, nHood.getQValue(), 0.0001);
+    }
+
+    private QEpisode episode() {
+        return new QEpisode(new SensorData(false), new Action("a"), 1.0, -0.1);
+    }
+}
@@ -0,0 +1,85 @@
+package tests.agents.nsm;
+
+import agents.nsm.NHood;
+import agents.nsm.NeighborhoodIndex;
+import framework.Action;
+import framework.Episode;
+import framework.SensorData;
+
+import tests.EpSemTest;
+import tests.EpSemTestClass;
+import static tests.Assertions.*;
+
+@EpSemTestClass
+public class NeighborhoodIndexTest {
+
+    private static final Action[] ACTIONS = new Action[] { new Action("a"), new Action("b"), new Action("c") };
+
+    // constructor Tests
+    @EpSemTest
+    public void constructorZeroKThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> new NeighborhoodIndex(0));
+    }
+
+    // cost Tests
+    @EpSemTest
+    public void costPerStepStaysFlatOnPeriodicHistory() {
+        NeighborhoodIndex index = new NeighborhoodIndex(NHood.K_NEAREST);
+
+        // a repeating history makes the suffix link paths grow with memory
+        // so the work per step must not follow them
+        this.runPeriodic(index, 0, 2000);
+        long before = index.visits();
+        this.runPeriodic(index, 2000, 4000);
+        long early = index.visits() - before;
+
+        this.runPeriodic(index, 4000, 38000);
+        before = index.visits();
+        this.runPeriodic(index, 38000, 40000);
+        long late = index.visits() - before;
+
+        assertTrue(late <= early * 3 / 2, "late steps took " + late + " visits, early steps " + early);
+    }
+
+    // query Tests
+    @EpSemTest
+    public void queryFindsMostRecentLongestMatches() {
+        NeighborhoodIndex index = new NeighborhoodIndex(2);
+        // a b a b a b
+        for (int i = 0; i < 6; i++) {
+            index.append(this.episode(i % 2), i % 2);
+        }
+        int[] indexes = new int[2];
+        int[] lengths = new int[2];
+        index.settle();
+
+        // the newest "a" follows the longest match of what came before
+        assertEquals(2, index.query(0, indexes, lengths));
+        assertEquals(4, indexes[0]);
+        assertEquals(4, lengths[0]);
+        assertEquals(2, indexes[1]);
+        assertEquals(2, lengths[1]);
+        assertEquals(0, index.query(2, indexes, lengths));
+    }
+
+    /** appends the steps of a history that repeats a b c and queries every action at each step */
+    private void runPeriodic(NeighborhoodIndex index, int from, int to) {
+        int[] indexes = new int[NHood.K_NEAREST];
+        int[] lengths = new int[NHood.K_NEAREST];
+        for (int step = from; step < to; step++) {
+            index.append(this.episode(step % 3), step % 3);
+            for (int a = 0; a < ACTIONS.length; a++) {
+                if (index.query(a, indexes, lengths) == NeighborhoodIndex.UNSETTLED) {
+                    index.settle();
+                    assertTrue(index.query(a, indexes, lengths) >= 0);
+                }
+            }
+        }
+    }
+
+    private Episode episode(int action) {
+        SensorData sensorData = new SensorData(false);
+        sensorData.setSensor("sensor", action == 0);
+        return new Episode(sensorData, ACTIONS[action]);
+    }
+}
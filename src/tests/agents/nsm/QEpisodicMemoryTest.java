@@ -0,0 +1,174 @@
+package tests.agents.nsm;
+
+import agents.nsm.NHood;
+import agents.nsm.QEpisode;
+import agents.nsm.QEpisodicMemory;
+import framework.Action;
+import framework.SensorData;
+
+import tests.EpSemTest;
+import tests.EpSemTestClass;
+import static tests.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+@EpSemTestClass
+public class QEpisodicMemoryTest {
+
+    private static final Action[] ACTIONS = new Action[] { new Action("a"), new Action("b"), new Action("c") };
+
+    // buildNeighborhoodForMove Tests
+    @EpSemTest
+    public void buildNeighborhoodForMoveEmptyMemoryIsEmpty() {
+        QEpisodicMemory memory = new QEpisodicMemory();
+        assertEquals(0, memory.buildNeighborhoodForMove(ACTIONS[0]).size());
+    }
+
+    @EpSemTest
+    public void buildNeighborhoodForMoveUnknownActionIsEmpty() {
+        QEpisodicMemory memory = new QEpisodicMemory();
+        memory.add(this.episode(ACTIONS[0], false));
+        memory.add(this.episode(ACTIONS[0], false));
+        assertEquals(0, memory.buildNeighborhoodForMove(ACTIONS[1]).size());
+    }
+
+    @EpSemTest
+    public void buildNeighborhoodForMoveFindsLongestMatch() {
+        QEpisodicMemory memory = new QEpisodicMemory();
+        // a b c a b c a b
+        for (int i = 0; i < 8; i++) {
+            memory.add(this.episode(ACTIONS[i % 3], false));
+        }
+        NHood nHood = memory.buildNeighborhoodForMove(ACTIONS[2]);
+        assertEquals(2, nHood.size());
+        // index 2 follows "a b" and index 5 follows "a b c a b"
+        assertEquals(2, nHood.getLength(0));
+        assertSame(memory.get(2), nHood.getEpisode(0));
+        assertEquals(5, nHood.getLength(1));
+        assertSame(memory.get(5), nHood.getEpisode(1));
+    }
+
+    @EpSemTest
+    public void buildNeighborhoodForMoveMatchesFullScan() {
+        Random random = new Random(7);
+        QEpisodicMemory memory = new QEpisodicMemory();
+        for (int step = 0; step < 400; step++) {
+            memory.add(this.episode(ACTIONS[random.nextInt(2)], random.nextInt(3) == 0));
+            for (Action action : ACTIONS) {
+                NHood expected = this.scan(memory, action);
+                NHood actual = memory.buildNeighborhoodForMove(action);
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.getLength(i), actual.getLength(i));
+                    assertSame(expected.getEpisode(i), actual.getEpisode(i));
+                }
+            }
+        }
+    }
+
+    @EpSemTest
+    public void buildNeighborhoodForMoveOnPeriodicHistoryMatchesFullScan() {
+        // long repeats make deep suffix link paths which the index only
+        // brings up to date when a query needs it (every step at first and
+        // then only now and then)
+        Random random = new Random(19);
+        QEpisodicMemory memory = new QEpisodicMemory();
+        for (int step = 0; step < 2400; step++) {
+            if (random.nextInt(150) == 0)
+                memory.add(this.episode(ACTIONS[random.nextInt(3)], random.nextBoolean()));
+            else
+                memory.add(this.episode(ACTIONS[step % 3], step % 2 == 0));
+            if (step >= 1200 && step % 80 != 0)
+                continue;
+            NHood[] actual = memory.buildNeighborhoods(ACTIONS, false);
+            if (step % 80 != 0)
+                continue;
+            for (int a = 0; a < ACTIONS.length; a++) {
+                NHood expected = this.scan(memory, ACTIONS[a]);
+                assertEquals(expected.size(), actual[a].size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.getLength(i), actual[a].getLength(i));
+                    assertSame(expected.getEpisode(i), actual[a].getEpisode(i));
+                }
+            }
+        }
+    }
+
+    @EpSemTest
+    public void buildNeighborhoodForMoveAfterTrimMatchesFullScan() {
+        Random random = new Random(11);
+        QEpisodicMemory memory = new QEpisodicMemory();
+        for (int step = 0; step < 100; step++) {
+            memory.add(this.episode(ACTIONS[random.nextInt(3)], random.nextBoolean()));
+        }
+        memory.buildNeighborhoodForMove(ACTIONS[0]);
+        memory.trim(10);
+        memory.add(this.episode(ACTIONS[1], false));
+        NHood expected = this.scan(memory, ACTIONS[2]);
+        NHood actual = memory.buildNeighborhoodForMove(ACTIONS[2]);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.getEpisode(i), actual.getEpisode(i));
+        }
+    }
+
+    // buildNeighborhoods Tests
+    @EpSemTest
+    public void buildNeighborhoodsMatchesSingleBuilds() {
+        Random random = new Random(5);
+        QEpisodicMemory memory = new QEpisodicMemory();
+        for (int step = 0; step < 200; step++) {
+            memory.add(this.episode(ACTIONS[random.nextInt(3)], random.nextBoolean()));
+        }
+        NHood[] actual = memory.buildNeighborhoods(ACTIONS, true);
+        assertEquals(ACTIONS.length, actual.length);
+        for (int a = 0; a < ACTIONS.length; a++) {
+            NHood expected = this.scan(memory, ACTIONS[a]);
+            assertSame(ACTIONS[a], actual[a].getMove());
+            assertEquals(expected.size(), actual[a].size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertSame(expected.getEpisode(i), actual[a].getEpisode(i));
+            }
+        }
+    }
+
+    @EpSemTest
+    public void buildNeighborhoodsInParallelMatchesSequential() {
+        // enough episodes that the index is queried for each action concurrently
+        Random random = new Random(23);
+        QEpisodicMemory memory = new QEpisodicMemory();
+        for (int step = 0; step < QEpisodicMemory.PARALLEL_SCAN_THRESHOLD + 500; step++) {
+            if (random.nextInt(40) == 0)
+                memory.add(this.episode(ACTIONS[random.nextInt(3)], random.nextBoolean()));
+            else
+                memory.add(this.episode(ACTIONS[step % 3], step % 2 == 0));
+        }
+        NHood[] parallel = memory.buildNeighborhoods(ACTIONS, true);
+        NHood[] sequential = memory.buildNeighborhoods(ACTIONS, false);
+        for (int a = 0; a < ACTIONS.length; a++) {
+            assertEquals(sequential[a].size(), parallel[a].size());
+            for (int i = 0; i < sequential[a].size(); i++) {
+                assertEquals(sequential[a].getLength(i), parallel[a].getLength(i));
+                assertSame(sequential[a].getEpisode(i), parallel[a].getEpisode(i));
+            }
+        }
+    }
+
+    private QEpisode episode(Action action, boolean sensor) {
+        SensorData sensorData = new SensorData(false);
+        sensorData.setSensor("sensor", sensor);
+        return new QEpisode(sensorData, action, 1.0, -0.1);
+    }
+
+    private NHood scan(QEpisodicMemory memory, Action action) {
+        NHood nHood = new NHood(action);
+        for (int i = memory.firstIndex(); i <= memory.currentIndex(); i++) {
+            int matchLen = memory.matchedMemoryStringLength(action, i);
+            if (nHood.accepts(matchLen)) {
+                nHood.addNBor(i, matchLen, memory.get(i));
+            }
+        }
+        return nHood;
+    }
+}
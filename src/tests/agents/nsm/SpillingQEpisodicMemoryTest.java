@@ -0,0 +1,168 @@
+package tests.agents.nsm;
+
+import agents.nsm.NHood;
+import agents.nsm.NSMAgent;
+import agents.nsm.NSMAgentProvider;
+import agents.nsm.QEpisode;
+import agents.nsm.QEpisodicMemory;
+import agents.nsm.QLearningConfiguration;
+import agents.nsm.SpillingQEpisodicMemory;
+import framework.Action;
+import framework.IAgent;
+import framework.SensorData;
+
+import tests.EpSemTest;
+import tests.EpSemTestClass;
+import static tests.Assertions.*;
+
+import java.util.Random;
+
+@EpSemTestClass
+public class SpillingQEpisodicMemoryTest {
+
+    private static final Action[] ACTIONS = new Action[] { new Action("a"), new Action("b"), new Action("c") };
+
+    // constructor Tests
+    @EpSemTest
+    public void constructorZeroCapacityThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> new SpillingQEpisodicMemory(0));
+    }
+
+    // spill Tests
+    @EpSemTest
+    public void spilledEpisodesKeepTheirQValues() throws Exception {
+        try (SpillingQEpisodicMemory memory = new SpillingQEpisodicMemory(2)) {
+            QEpisode first = this.episode(ACTIONS[0], true);
+            first.updateQValue(1.0);
+            memory.add(first);
+            for (int i = 1; i < 5; i++) {
+                memory.add(this.episode(ACTIONS[i % 3], false));
+            }
+            assertEquals(3, memory.spilledCount());
+            assertEquals(first, memory.get(0));
+            assertEquals(first.qValue, memory.get(0).qValue);
+            assertEquals(first.getReward(), memory.get(0).getReward());
+        }
+    }
+
+    @EpSemTest
+    public void updatesToSpilledEpisodesAreWrittenBack() throws Exception {
+        try (SpillingQEpisodicMemory memory = new SpillingQEpisodicMemory(1)) {
+            QEpisode evicted = this.episode(ACTIONS[0], false);
+            memory.add(evicted);
+            memory.add(this.episode(ACTIONS[1], false));
+            memory.add(this.episode(ACTIONS[2], true));
+
+            // through the object that was evicted (e.g., one still held by a neighborhood)
+            evicted.updateQValue(2.0);
+            assertEquals(evicted.qValue, memory.get(0).qValue);
+
+            // through a copy rebuilt from disk
+            QEpisode rebuilt = memory.get(1);
+            rebuilt.updateQValue(3.0);
+            rebuilt.updateQValue(1.0);
+            assertEquals(rebuilt.qValue, memory.get(1).qValue);
+            assertEquals(rebuilt.qValue, memory.getFromOffset(1).qValue);
+        }
+    }
+
+    @EpSemTest
+    public void neighborhoodsMatchUnspilledMemory() throws Exception {
+        Random random = new Random(3);
+        QEpisodicMemory expected = new QEpisodicMemory();
+        try (SpillingQEpisodicMemory actual = new SpillingQEpisodicMemory(16)) {
+            for (int step = 0; step < 200; step++) {
+                Action action = ACTIONS[random.nextInt(ACTIONS.length)];
+                boolean goal = random.nextInt(5) == 0;
+                expected.add(this.episode(action, goal));
+                actual.add(this.episode(action, goal));
+                for (Action move : ACTIONS) {
+                    NHood expectedHood = expected.buildNeighborhoodForMove(move);
+                    NHood actualHood = actual.buildNeighborhoodForMove(move);
+                    assertEquals(expectedHood.size(), actualHood.size());
+                    for (int i = 0; i < expectedHood.size(); i++) {
+                        assertEquals(expectedHood.getPosition(i), actualHood.getPosition(i));
+                        assertEquals(expectedHood.getLength(i), actualHood.getLength(i));
+                        assertEquals(expectedHood.getEpisode(i), actualHood.getEpisode(i));
+                    }
+                }
+            }
+            assertTrue(actual.spilledCount() > 0);
+        }
+    }
+
+    @EpSemTest
+    public void closedMemoryCannotReadSpilledEpisodes() throws Exception {
+        SpillingQEpisodicMemory memory = new SpillingQEpisodicMemory(1);
+        memory.add(this.episode(ACTIONS[0], false));
+        memory.add(this.episode(ACTIONS[1], false));
+        memory.close();
+        assertThrows(IllegalStateException.class, () -> memory.get(0));
+        assertEquals(ACTIONS[1], memory.get(1).getAction());
+        // closing again is harmless
+        memory.close();
+    }
+
+    // NSMAgent Tests
+    @EpSemTest
+    public void agentWithSpillingFindsGoals() throws Exception {
+        TestNSMAgent agent = new TestNSMAgent(4);
+        this.runInLock(agent, 15);
+
+        // nearly all of the run was spilled and the file is released at the end
+        SpillingQEpisodicMemory memory = (SpillingQEpisodicMemory) agent.getEpisodicMemory();
+        assertTrue(memory.spilledCount() > 15);
+        assertThrows(IllegalStateException.class, () -> memory.get(0));
+    }
+
+    @EpSemTest
+    public void providerWithSpillingBuildsWorkingAgents() throws Exception {
+        this.runInLock(new NSMAgentProvider(4).getAgent(), 15);
+        assertThrows(IllegalArgumentException.class, () -> new NSMAgentProvider(-1));
+    }
+
+    // Helpers
+    private QEpisode episode(Action action, boolean goal) {
+        SensorData sensorData = new SensorData(goal);
+        sensorData.setSensor("even", action == ACTIONS[0]);
+        return new QEpisode(sensorData, action, 1.0, -0.1);
+    }
+
+    /**
+     * runs the agent in a lock that opens after the moves "b a" (a wrong
+     * move starts it over) until it has opened the given number of times
+     */
+    private void runInLock(IAgent agent, int goals) throws Exception {
+        agent.initialize(ACTIONS, null);
+        SensorData sensorData = new SensorData(true);
+        int state = 0;
+        while (goals > 0) {
+            Action action = agent.getNextAction(sensorData);
+            state = action.equals((state == 0) ? ACTIONS[1] : ACTIONS[0]) ? state + 1 : 0;
+            sensorData = new SensorData(state == 2);
+            if (sensorData.isGoal()) {
+                state = 0;
+                goals--;
+                agent.onGoalFound();
+            }
+            sensorData.setSensor("odd", state % 2 == 1);
+        }
+        agent.onTestRunComplete();
+    }
+
+    private static class TestNSMAgent extends NSMAgent {
+        TestNSMAgent(int spillHotCapacity) {
+            super(configuration(spillHotCapacity));
+        }
+
+        QEpisodicMemory getEpisodicMemory() {
+            return this.episodicMemory;
+        }
+
+        private static QLearningConfiguration configuration(int spillHotCapacity) {
+            QLearningConfiguration configuration = new QLearningConfiguration();
+            configuration.SPILL_HOT_CAPACITY = spillHotCapacity;
+            return configuration;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package tests.agents.nsmp;
+
+import agents.nsm.NHood;
+import agents.nsm.QEpisode;
+import agents.nsm.QEpisodicMemory;
+import agents.nsmp.pQEpisodicMemory;
+import framework.Action;
+import framework.SensorData;
+
+import tests.EpSemTest;
+import tests.EpSemTestClass;
+import static tests.Assertions.*;
+
+import java.util.Random;
+
+@EpSemTestClass
+public class pQEpisodicMemoryTest {
+
+    private static final Action[] ACTIONS = new Action[] { new Action("a"), new Action("b"), new Action("c") };
+
+    // buildNeighborhoods Tests
+    @EpSemTest
+    public void buildNeighborhoodsThrowsIfActionsIsNull() {
+        pQEpisodicMemory memory = new pQEpisodicMemory();
+        assertThrows(IllegalArgumentException.class, () -> memory.buildNeighborhoods(null, false));
+    }
+
+    @EpSemTest
+    public void buildNeighborhoodsInParallelMatchesSequential() {
+        Random random = new Random(13);
+        pQEpisodicMemory memory = new pQEpisodicMemory();
+        // enough episodes that each scan is split into slices
+        for (int step = 0; step < 2 * QEpisodicMemory.PARALLEL_SCAN_THRESHOLD + 100; step++) {
+            memory.add(this.episode(ACTIONS[random.nextInt(3)], random.nextBoolean(), random.nextBoolean()));
+        }
+        NHood[] expected = memory.buildNeighborhoods(ACTIONS, false);
+        NHood[] actual = memory.buildNeighborhoods(ACTIONS, true);
+        assertEquals(expected.length, actual.length);
+        for (int a = 0; a < expected.length; a++) {
+            assertSame(ACTIONS[a], actual[a].getMove());
+            assertEquals(expected[a].size(), actual[a].size());
+            for (int i = 0; i < expected[a].size(); i++) {
+                assertEquals(expected[a].getLength(i), actual[a].getLength(i));
+                assertSame(expected[a].getEpisode(i), actual[a].getEpisode(i));
+            }
+        }
+    }
+
+    // partialEquals Tests
+    @EpSemTest
+    public void partialEqualsCountsMatchingSensorsOtherThanGoal() {
+        pQEpisodicMemory memory = new pQEpisodicMemory();
+        memory.add(this.episode(ACTIONS[0], true, false));
+        memory.add(this.episode(ACTIONS[0], true, true));
+        memory.add(this.episode(ACTIONS[1], true, false));
+        assertEquals(0.5, memory.partialEquals(0, 1), 0.0);
+        assertEquals(1.0, memory.partialEquals(0, 0), 0.0);
+        assertEquals(0.0, memory.partialEquals(0, 2), 0.0);
+    }
+
+    @EpSemTest
+    public void partialEqualsMatchesEpisodeComparison() {
+        Random random = new Random(17);
+        pQEpisodicMemory memory = new pQEpisodicMemory();
+        for (int step = 0; step < 200; step++) {
+            SensorData sensorData = new SensorData(random.nextInt(10) == 0);
+            for (int sensor = 0; sensor < 5; sensor++) {
+                // leave some sensors out so episodes don't all have the same ones
+                if (random.nextInt(4) > 0)
+                    sensorData.setSensor("sensor" + sensor, random.nextBoolean());
+            }
+            memory.add(new QEpisode(sensorData, ACTIONS[random.nextInt(2)], 1.0, -0.1));
+        }
+        assertTrue(memory.isPacked());
+        for (int i = 0; i < 200; i++) {
+            int j = random.nextInt(200);
+            assertEquals(memory.partialEquals(memory.get(i), memory.get(j)), memory.partialEquals(i, j), 0.0);
+        }
+    }
+
+    @EpSemTest
+    public void partialEqualsWorksForUnpackedMemory() {
+        pQEpisodicMemory memory = new pQEpisodicMemory();
+        SensorData sensorData = new SensorData(false);
+        sensorData.setSensor("sensor1", 3);
+        sensorData.setSensor("sensor2", true);
+        memory.add(new QEpisode(sensorData, ACTIONS[0], 1.0, -0.1));
+        memory.add(this.episode(ACTIONS[0], true, true));
+        assertFalse(memory.isPacked());
+        assertEquals(memory.partialEquals(memory.get(0), memory.get(1)), memory.partialEquals(0, 1), 0.0);
+        assertEquals(0.5, memory.partialEquals(0, 1), 0.0);
+    }
+
+    private QEpisode episode(Action action, boolean sensor1, boolean sensor2) {
+        SensorData sensorData = new SensorData(false);
+        sensorData.setSensor("sensor1", sensor1);
+        sensorData.setSensor("sensor2", sensor2);
+        return new QEpisode(sensorData, action, 1.0, -0.1);
+    }
+}
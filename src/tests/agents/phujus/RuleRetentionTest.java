@@ -0,0 +1,194 @@
+package tests.agents.phujus;
+
+import agents.phujus.PathRule;
+import agents.phujus.PhuJusAgent;
+import agents.phujus.RuleRetention;
+import agents.phujus.TFRule;
+import framework.Action;
+import framework.SensorData;
+import tests.Assertions;
+import tests.EpSemTest;
+import tests.EpSemTestClass;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Vector;
+
+@EpSemTestClass
+public class RuleRetentionTest {
+
+    private static SensorData quickSensors(boolean isOdd, boolean goal) {
+        SensorData sd = new SensorData(goal);
+        sd.setSensor("IS_ODD", isOdd);
+        return sd;
+    }
+
+    @EpSemTest
+    public void testWeakestFirst() {
+        PhuJusAgent agent = PhuJusAgentTest.quickAgentGen("ab", "0100");
+        SensorData sd = quickSensors(true, false);
+
+        //score the rules with a lookup table so they can be changed at will
+        HashMap<TFRule, Double> table = new HashMap<>();
+        RuleRetention retention = new RuleRetention(table::get);
+        TFRule[] rules = new TFRule[5];
+        double[] scores = {3.0, 1.0, 4.0, 1.5, 9.0};
+        for (int i = 0; i < rules.length; ++i) {
+            rules[i] = new TFRule(agent, 'a', null, sd, sd, 1.0);
+            table.put(rules[i], scores[i]);
+            retention.add(rules[i]);
+        }
+        Assertions.assertEquals(5, retention.size());
+        Assertions.assertTrue(retention.peekWeakest() == rules[1]);
+
+        //a changed score only counts once the rule is updated
+        table.put(rules[2], 0.5);
+        Assertions.assertTrue(retention.peekWeakest() == rules[1]);
+        retention.update(rules[2]);
+        Assertions.assertTrue(retention.peekWeakest() == rules[2]);
+
+        //removing rules in order of strength empties the heap weakest first
+        TFRule[] expected = {rules[2], rules[1], rules[3], rules[0], rules[4]};
+        for (TFRule r : expected) {
+            Assertions.assertTrue(retention.peekWeakest() == r);
+            retention.remove(r);
+            Assertions.assertFalse(retention.contains(r));
+        }
+        Assertions.assertEquals(0, retention.size());
+        Assertions.assertTrue(retention.peekWeakest() == null);
+
+        //removing or updating a rule that isn't there does nothing
+        retention.remove(rules[0]);
+        retention.update(rules[0]);
+        Assertions.assertEquals(0, retention.size());
+    }
+
+    @EpSemTest
+    public void testTiesEvictOldestFirst() {
+        PhuJusAgent agent = PhuJusAgentTest.quickAgentGen("ab", "0100");
+        SensorData sd = quickSensors(true, false);
+
+        RuleRetention retention = new RuleRetention(rule -> 1.0);
+        TFRule older = new TFRule(agent, 'a', null, sd, sd, 1.0);
+        TFRule newer = new TFRule(agent, 'a', null, sd, sd, 1.0);
+        retention.add(newer);
+        retention.add(older);
+        Assertions.assertTrue(retention.peekWeakest() == older);
+    }
+
+    @EpSemTest
+    public void testActivationKeyOrdersLikeActivation() {
+        PhuJusAgent agent = PhuJusAgentTest.quickAgentGen("ab", "0100");
+        SensorData sd = quickSensors(true, false);
+
+        TFRule early = new TFRule(agent, 'a', null, sd, sd, 1.0);
+        TFRule late = new TFRule(agent, 'a', null, sd, sd, 1.0);
+        early.addActivation(1, 1.0);
+        early.addActivation(2, 1.0);
+        late.addActivation(30, 1.0);
+
+        //at step 0 both keys are the log of the (scaled) activation
+        double ratio = Math.exp(early.calcActivationKey() - late.calcActivationKey());
+        double expected = (Math.pow(0.95, -1) + Math.pow(0.95, -2)) / Math.pow(0.95, -30);
+        Assertions.assertEquals(expected, ratio, 1e-9);
+
+        //a rule that was never activated is weakest of all
+        TFRule never = new TFRule(agent, 'a', null, sd, sd, 1.0);
+        Assertions.assertTrue(never.calcActivationKey() == Double.NEGATIVE_INFINITY);
+    }
+
+    @EpSemTest
+    public void testCullKeepsAgentBounded() throws Exception {
+        int maxRules = 40;
+        PhuJusAgent agent = new PhuJusAgent(maxRules, RuleRetention.ACTIVATION_AND_CONFIDENCE);
+        agent.initialize(new Action[]{new Action("a"), new Action("b")}, null);
+
+        //wander through a few different sensor combinations and goals
+        Random rand = new Random(7);
+        SensorData sd = quickSensors(false, false);
+        agent.setCurrExternal(sd);
+        for (int step = 0; step < 400; ++step) {
+            agent.getNextAction(sd);
+            sd = quickSensors(rand.nextBoolean(), (step % 9) == 8);
+            if (sd.isGoal()) agent.onGoalFound();
+
+            //never more rules than allowed and no rule is left without its primary
+            int count = 0;
+            HashSet<Integer> ids = new HashSet<>();
+            for (Vector<TFRule> subList : agent.getTfRules()) {
+                count += subList.size();
+                for (TFRule r : subList) ids.add(r.getId());
+            }
+            Assertions.assertTrue(count <= maxRules);
+            for (Vector<TFRule> subList : agent.getTfRules()) {
+                for (TFRule r : subList) {
+                    if (r.getTimeDepth() > 0) {
+                        Assertions.assertTrue(ids.contains(r.getPrimaryInternalId()));
+                    }
+                }
+            }
+        }
+    }
+
+    @EpSemTest
+    public void testNonPositiveConfidenceScoresFinite() {
+        PhuJusAgent agent = PhuJusAgentTest.quickAgentGen("ab", "0100");
+        SensorData sd = quickSensors(true, false);
+
+        //a loaded rule may have any confidence
+        TFRule zero = new TFRule(agent, 'a', null, sd, sd, 0.0);
+        TFRule negative = new TFRule(agent, 'a', null, sd, sd, -0.5);
+        TFRule sure = new TFRule(agent, 'a', null, sd, sd, 1.0);
+        for (TFRule r : new TFRule[]{zero, negative, sure}) r.addActivation(3, 1.0);
+        double zeroScore = RuleRetention.ACTIVATION_AND_CONFIDENCE.score(zero);
+        Assertions.assertFalse(Double.isNaN(zeroScore) || Double.isInfinite(zeroScore));
+        Assertions.assertEquals(zeroScore, RuleRetention.ACTIVATION_AND_CONFIDENCE.score(negative));
+
+        RuleRetention retention = new RuleRetention(RuleRetention.ACTIVATION_AND_CONFIDENCE);
+        retention.add(sure);
+        retention.add(negative);
+        retention.add(zero);
+        Assertions.assertTrue(retention.peekWeakest() != sure);
+
+        //a policy that can't be ordered is rejected
+        RuleRetention broken = new RuleRetention(rule -> Double.NaN);
+        Assertions.assertThrows(IllegalStateException.class, () -> broken.add(sure));
+    }
+
+    @EpSemTest
+    public void testPathRulesFillingCapKeepTFRules() throws Exception {
+        int maxRules = 40;
+        PhuJusAgent agent = new PhuJusAgent(maxRules, RuleRetention.ACTIVATION_AND_CONFIDENCE);
+        agent.initialize(new Action[]{new Action("a"), new Action("b")}, null);
+        Random rand = new Random(11);
+        SensorData sd = quickSensors(false, false);
+        agent.setCurrExternal(sd);
+        while (countTFRules(agent) < 3) {
+            agent.getNextAction(sd);
+            sd = quickSensors(rand.nextBoolean(), false);
+        }
+
+        //PathRules can't be evicted.  Let them take up the rest of the cap.
+        int tfCount = countTFRules(agent);
+        while (agent.getRules().size() < maxRules) {
+            agent.addRule(new PathRule(agent, null, new Vector<>()));
+        }
+
+        //the TFRules aren't all evicted to make room
+        for (int step = 0; step < 20; ++step) {
+            agent.getNextAction(sd);
+            sd = quickSensors(rand.nextBoolean(), false);
+            Assertions.assertTrue(agent.getRules().size() <= maxRules);
+            Assertions.assertTrue(countTFRules(agent) >= tfCount);
+        }
+    }
+
+    private static int countTFRules(PhuJusAgent agent) {
+        int count = 0;
+        for (Vector<TFRule> subList : agent.getTfRules()) {
+            count += subList.size();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,55 @@
+package tests.agents.phujus;
+
+import agents.phujus.SensorStats;
+import tests.Assertions;
+import tests.EpSemTest;
+import tests.EpSemTestClass;
+
+@EpSemTestClass
+public class SensorStatsTest {
+
+    @EpSemTest
+    public void testSetAndRemove() {
+        SensorStats stats = new SensorStats(2);
+        Assertions.assertFalse(stats.has(1));
+        Assertions.assertEquals(0.0, stats.getPercent(1), 0.0);
+
+        stats.set(1, 4, 1.0);
+        Assertions.assertTrue(stats.has(1));
+        Assertions.assertEquals(4, stats.getCreated(1));
+        Assertions.assertEquals(1.0, stats.getPercent(1), 0.0);
+
+        stats.setPercent(1, 0.5);
+        Assertions.assertEquals(0.5, stats.getPercent(1), 0.0);
+
+        //a removed sensor reads as one that was never seen
+        stats.remove(1);
+        Assertions.assertFalse(stats.has(1));
+        Assertions.assertEquals(0.0, stats.getPercent(1), 0.0);
+    }
+
+    @EpSemTest
+    public void testGrowth() {
+        SensorStats stats = new SensorStats(2);
+        stats.set(0, 1, 0.25);
+        stats.set(100, 2, 0.75);
+
+        //growing must keep the old data and leave the new entries empty
+        Assertions.assertEquals(0.25, stats.getPercent(0), 0.0);
+        Assertions.assertEquals(0.75, stats.getPercent(100), 0.0);
+        for (int id = 1; id < 100; ++id) {
+            Assertions.assertFalse(stats.has(id));
+        }
+        Assertions.assertFalse(stats.has(-1));
+        Assertions.assertFalse(stats.has(1000));
+        Assertions.assertEquals(0.0, stats.getPercent(-1), 0.0);
+    }
+
+    @EpSemTest
+    public void testBadArguments() {
+        SensorStats stats = new SensorStats(2);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> stats.set(-1, 0, 0.0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> stats.setPercent(0, 0.0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> stats.getCreated(0));
+    }
+}
@@ -0,0 +1,100 @@
+package tests.agents.phujus;
+
+import agents.phujus.PhuJusAgent;
+import agents.phujus.SensorVector;
+import agents.phujus.TFRule;
+import agents.phujus.TFRuleIndex;
+import framework.SensorData;
+import tests.Assertions;
+import tests.EpSemTest;
+import tests.EpSemTestClass;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Vector;
+
+@EpSemTestClass
+public class TFRuleIndexTest {
+
+    private static SensorData quickSensors(boolean isOdd, boolean goal) {
+        SensorData sd = new SensorData(goal);
+        sd.setSensor("IS_ODD", isOdd);
+        return sd;
+    }
+
+    @EpSemTest
+    public void testExtKey() {
+        PhuJusAgent agent = PhuJusAgentTest.quickAgentGen("ab", "0100");
+        SensorData sd10 = quickSensors(true, false);
+        SensorData sd01 = quickSensors(false, true);
+
+        //a rule's key is the key of the sensors that match its LHS
+        TFRule rule = new TFRule(agent, 'a', null, sd10, sd01, 1.0);
+        Assertions.assertEquals(rule.getLHSExtKey(), new SensorVector(agent, null, sd10).getExtKey());
+        Assertions.assertTrue(rule.getLHSExtKey() != new SensorVector(agent, null, sd01).getExtKey());
+
+        //sensors that no rule can have can't match anything
+        SensorData unknown = quickSensors(true, false);
+        unknown.setSensor("NOT_A_SENSOR", true);
+        Assertions.assertEquals(SensorVector.NO_KEY, new SensorVector(agent, null, unknown).getExtKey());
+    }
+
+    @EpSemTest
+    public void testAddGetRemove() {
+        PhuJusAgent agent = PhuJusAgentTest.quickAgentGen("ab", "0100");
+        SensorData sd10 = quickSensors(true, false);
+        SensorData sd00 = quickSensors(false, false);
+        long key10 = new SensorVector(agent, null, sd10).getExtKey();
+
+        TFRuleIndex index = new TFRuleIndex();
+        TFRule r1 = new TFRule(agent, 'a', null, sd10, sd00, 1.0);
+        TFRule r2 = new TFRule(agent, 'a', null, sd10, sd10, 1.0);
+        TFRule r3 = new TFRule(agent, 'b', null, sd10, sd00, 1.0);
+        TFRule r4 = new TFRule(agent, 'a', null, sd00, sd00, 1.0);
+        index.add(r1);
+        index.add(r2);
+        index.add(r3);
+        index.add(r4);
+        Assertions.assertEquals(4, index.size());
+
+        //rules with the same keys come back in the order they were added
+        List<TFRule> found = index.get('a', TFRuleIndex.BASE, key10);
+        Assertions.assertEquals(2, found.size());
+        Assertions.assertTrue(found.get(0) == r1);
+        Assertions.assertTrue(found.get(1) == r2);
+        Assertions.assertEquals(0, index.get('a', 7, key10).size());
+
+        Vector<TFRule> candidates = index.candidates('b', new SensorVector(agent, new HashSet<>(), sd10));
+        Assertions.assertEquals(1, candidates.size());
+        Assertions.assertTrue(candidates.get(0) == r3);
+
+        Assertions.assertTrue(index.remove(r1));
+        Assertions.assertFalse(index.remove(r1));
+        Assertions.assertEquals(3, index.size());
+        found = index.get('a', TFRuleIndex.BASE, key10);
+        Assertions.assertEquals(1, found.size());
+        Assertions.assertTrue(found.get(0) == r2);
+    }
+
+    @EpSemTest
+    public void testFindRuleUsesIndex() throws Exception {
+        PhuJusAgent agent = PhuJusAgentTest.quickAgentGen("ab", "0100");
+        SensorData sd10 = quickSensors(true, false);
+        SensorData sd00 = quickSensors(false, false);
+        SensorData sd01 = quickSensors(false, true);
+
+        TFRule r1 = new TFRule(agent, 'a', null, sd10, sd00, 1.0);
+        TFRule r2 = new TFRule(agent, 'a', null, sd10, sd01, 1.0);
+        agent.addRule(r1);
+        agent.addRule(r2);
+
+        Assertions.assertTrue(agent.findRule('a', sd10, sd01, null) == r2);
+        Assertions.assertTrue(agent.findRule('b', sd10, sd01, null) == null);
+        Assertions.assertEquals(2, agent.findRules('a', sd10, null).size());
+
+        //removed rules are no longer found
+        agent.removeRule(r2, r1);
+        Assertions.assertTrue(agent.findRule('a', sd10, sd01, null) == null);
+        Assertions.assertEquals(1, agent.findRules('a', sd10, null).size());
+    }
+}
@@ -1,6 +1,7 @@
 package tests.agents.phujus;
 
 import agents.phujus.PhuJusAgent;
+import agents.phujus.SensorVector;
 import agents.phujus.TFRule;
 import framework.Action;
 import framework.SensorData;
@@ -9,6 +10,7 @@ import tests.EpSemTest;
 import tests.EpSemTestClass;
 
 import java.util.HashSet;
+import java.util.Vector;
 
 /**
  * This Class tests the TFRule Class
@@ -170,6 +172,97 @@ public class TFRuleTest {
 
     }
 
+    @EpSemTest
+    public void testSensorVectorInternalIds() {
+        PhuJusAgent agent = PhuJusAgentTest.quickAgentGen("ab", "0100");
+
+        //ids may be far apart and in any order
+        HashSet<Integer> internal = new HashSet<>();
+        internal.add(1_000_000);
+        internal.add(7);
+        internal.add(42);
+        SensorVector vec = new SensorVector(agent, internal, null);
+        Assertions.assertEquals(3, vec.intSize());
+        for (int id : internal) {
+            Assertions.assertTrue(vec.isIntOn(id));
+        }
+        Assertions.assertFalse(vec.isIntOn(8));
+        Assertions.assertFalse(vec.isIntOn(999_999));
+        Assertions.assertFalse(vec.isIntOn(-1));
+
+        SensorVector empty = new SensorVector(agent, null, null);
+        Assertions.assertEquals(0, empty.intSize());
+        Assertions.assertFalse(empty.isIntOn(7));
+    }
+
+    @EpSemTest
+    public void testSensorVectorMatchesSensorData() throws Exception {
+        SensorData sd00 = new SensorData(false);
+        sd00.setSensor("IS_ODD", false);
+        SensorData sd10 = new SensorData(false);
+        sd10.setSensor("IS_ODD", true);
+        SensorData sd01 = new SensorData(true);
+        sd01.setSensor("IS_ODD", false);
+
+        PhuJusAgent agent = PhuJusAgentTest.quickAgentGen("ab", "0100");
+        agent.setCurrExternal(sd00);
+        agent.getNextAction(sd00);
+
+        Vector<TFRule> rules = new Vector<>();
+        rules.add(new TFRule(agent, 'a', null, sd10, sd00, 1.0));
+        rules.add(new TFRule(agent, 'a', null, sd10, sd01, 1.0));
+        rules.add(new TFRule(agent, 'b', null, sd10, sd01, 1.0));
+        rules.add(new TFRule(agent, 'a', null, sd00, sd01, 1.0));
+
+        //scoring against a vector must give the same answers as SensorData
+        SensorVector lhs = new SensorVector(agent, new HashSet<>(), sd10);
+        SensorVector rhs = new SensorVector(agent, null, sd01);
+        double[] scores = new double[rules.size()];
+        TFRule.matchScores(rules, 'a', lhs, rhs, scores);
+        for (int i = 0; i < rules.size(); ++i) {
+            TFRule r = rules.get(i);
+            Assertions.assertTrue(r.isExtMatch('a', sd10, sd01) == r.isExtMatch('a', lhs, rhs));
+            Assertions.assertTrue(r.isLHSExtMatch('a', sd10) == r.isLHSExtMatch('a', lhs));
+
+            double lhsScore = r.lhsMatchScore('a', new HashSet<>(), sd10);
+            Assertions.assertEquals(lhsScore, r.lhsMatchScore('a', lhs), 0.0);
+            double rhsScore = r.rhsMatchScore(sd01);
+            Assertions.assertEquals(rhsScore, r.rhsMatchScore(rhs), 0.0);
+
+            double expected = ((lhsScore > 0.0) && (rhsScore > 0.0)) ? lhsScore * rhsScore : 0.0;
+            Assertions.assertEquals(expected, scores[i], 0.0);
+        }
+
+        //only the rule with the right action, LHS and RHS is a match
+        Assertions.assertTrue(scores[1] > 0.0);
+        Assertions.assertEquals(0.0, scores[0], 0.0);
+        Assertions.assertEquals(0.0, scores[2], 0.0);
+        Assertions.assertEquals(0.0, scores[3], 0.0);
+    }
+
+    @EpSemTest
+    public void testReplaceIntSensor() throws Exception {
+        SensorData sd = new SensorData(false);
+        sd.setSensor("IS_ODD", true);
+        PhuJusAgent agent = PhuJusAgentTest.quickAgentGen("ab", "0100");
+
+        TFRule rule = new TFRule(agent, 'a', new int[]{7, 3, 5}, sd, sd, 1.0);
+        Assertions.assertEquals(3, rule.getLhsInternalSize());
+        Assertions.assertEquals(7, rule.getPrimaryInternalId());
+        Assertions.assertTrue(rule.testsIntSensor(3));
+        Assertions.assertFalse(rule.testsIntSensor(4));
+
+        rule.replaceIntSensor(3, 9);
+        Assertions.assertFalse(rule.testsIntSensor(3));
+        Assertions.assertTrue(rule.testsIntSensor(9));
+        Assertions.assertEquals(3, rule.getLhsInternalSize());
+
+        //replacing a sensor with itself keeps it
+        rule.replaceIntSensor(5, 5);
+        Assertions.assertTrue(rule.testsIntSensor(5));
+        Assertions.assertEquals(3, rule.getLhsInternalSize());
+    }
+
     //TODO:  Theis test needs to be fixed
 //    @EpSemTest
 //    public void testUpdateTFVals() throws Exception {
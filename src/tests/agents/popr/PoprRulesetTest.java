@@ -0,0 +1,108 @@
+package tests.agents.popr;
+
+import agents.marzrules.Heuristic;
+import agents.marzrules.RuleNode;
+import agents.marzrules.RuleNodeRoot;
+import agents.popr.PoprRuleset;
+import framework.Action;
+import framework.SensorData;
+import tests.EpSemTest;
+import tests.EpSemTestClass;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Random;
+
+import static tests.Assertions.*;
+
+@EpSemTestClass
+public class PoprRulesetTest {
+
+    @EpSemTest
+    public void testSharedSearchMatchesPerActionSearch() {
+        Action[] actions = new Action[] {new Action("a"), new Action("b"), new Action("c")};
+        PoprRuleset ruleset = new PoprRuleset(actions, 5, new Heuristic(0.0, 0.0));
+        Random random = new Random(12);
+        ruleset.update(null, new SensorData(true));
+
+        int found = 0;
+        int missing = 0;
+        for (int step = 0; step < 300; step++) {
+            for (RuleNode node : ruleset.getCurrent()) {
+                for (Action action : actions) {
+                    RuleNode expected = perActionSearch(ruleset, actions, node, action);
+                    assertTrue(expected == ruleset.getNextTestable(node, action));
+                    if (expected == null) missing++;
+                    else found++;
+                }
+            }
+            assertEquals(perActionFalsify(ruleset, actions), ruleset.falsify());
+
+            SensorData sensorData = new SensorData(random.nextInt(12) == 0);
+            sensorData.setSensor("sensor1", random.nextBoolean());
+            ruleset.update(actions[random.nextInt(actions.length)], sensorData);
+        }
+        // both outcomes of the search were compared
+        assertTrue(found > 0);
+        assertTrue(missing > 0);
+    }
+
+    @EpSemTest
+    public void testFalsifyFallsBackToFirstAction() {
+        Action[] actions = new Action[] {new Action("a"), new Action("b")};
+        PoprRuleset ruleset = new PoprRuleset(actions, 3, new Heuristic(0.0, 0.0));
+
+        // only root is in current so there is nothing to test
+        assertEquals(1, ruleset.getCurrent().size());
+        assertEquals(actions[0], ruleset.falsify());
+    }
+
+    @EpSemTest
+    public void testGetNextTestableActions() {
+        Action[] actions = new Action[] {new Action("a"), new Action("b")};
+        PoprRuleset ruleset = new PoprRuleset(actions, 3, new Heuristic(0.0, 0.0));
+        ruleset.update(null, new SensorData(true));
+        ruleset.update(actions[1], new SensorData(false));
+        RuleNode root = ruleset.getRoot();
+
+        // an equal action works as well as the one in the alphabet
+        assertTrue(ruleset.getNextTestable(root, actions[1]) == ruleset.getNextTestable(root, new Action("b")));
+        assertThrows(IllegalArgumentException.class, () -> ruleset.getNextTestable(root, new Action("z")));
+        assertThrows(IllegalArgumentException.class, () -> ruleset.getNextTestable(null, actions[0]));
+    }
+
+    /** the breadth first search for one action that the shared search replaced */
+    private RuleNode perActionSearch(PoprRuleset ruleset, Action[] actions, RuleNode parent, Action action) {
+        ArrayDeque<RuleNode> queue = new ArrayDeque<>(parent.getChild(action));
+        while (!queue.isEmpty()) {
+            RuleNode p = queue.remove();
+            if (ruleset.getCurrent().contains(p)) {
+                continue;
+            }
+            for (Action m : actions) {
+                List<RuleNode> moveChildren = p.getChild(m);
+                if (moveChildren.size() == 1) {
+                    return p;
+                }
+                queue.addAll(moveChildren);
+            }
+        }
+        return null;
+    }
+
+    /** falsify as it was with one search per action, skipping actions with nothing to test */
+    private Action perActionFalsify(PoprRuleset ruleset, Action[] actions) {
+        Action toTake = null;
+        for (RuleNode node : ruleset.getCurrent()) {
+            if (node instanceof RuleNodeRoot) {
+                continue;
+            }
+            for (Action action : actions) {
+                if (perActionSearch(ruleset, actions, node, action) != null) {
+                    toTake = action;
+                }
+            }
+        }
+        return (toTake == null) ? actions[0] : toTake;
+    }
+}
@@ -0,0 +1,151 @@
+package tests.agents.predr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import framework.*;
+import utils.*;
+import tests.*;
+import agents.predr.Rule;
+import agents.predr.RuleIndex;
+
+@EpSemTestClass
+public class RuleIndexTest {
+
+    /** the index finds the same rule a scan of the rules in order would */
+    @EpSemTest
+    public void testFindMergeableMatchesScan() {
+        EpisodicMemory<Episode> epmem = new EpisodicMemory<>();
+        epmem.add(quickEpMaker(1, "a"));
+        epmem.add(quickEpMaker(0, "b"));
+        epmem.add(quickEpMaker(1, "a"));
+
+        SensorData sd = new SensorData(false);
+        sd.setSensor("alpha", 0);
+
+        RuleIndex index = new RuleIndex();
+        ArrayList<Rule> scan = new ArrayList<>();
+        Rule[] rules = {
+                quickRuleMaker(0, "alpha", "b"),           //wrong action
+                quickRuleMaker(1, "alpha", "b", "a"),      //wrong RHS value
+                quickRuleMaker(0, "alpha", "b", "a"),      //matches first
+                quickRuleMaker(0, "alpha", "a"),           //matches later
+                quickRuleMaker(0, SensorData.goalSensor, "a"),
+        };
+        for (Rule rule : rules) {
+            index.add(rule);
+            scan.add(rule);
+        }
+
+        for (String sName : Arrays.asList("alpha", SensorData.goalSensor)) {
+            Rule expected = null;
+            for (Rule rule : scan) {
+                if (rule.canMerge(epmem, sd, sName)) {
+                    expected = rule;
+                    break;
+                }
+            }
+            Assertions.assertTrue(expected == index.findMergeable(epmem, sd, sName));
+        }
+        Assertions.assertTrue(rules[2] == index.findMergeable(epmem, sd, "alpha"));
+        Assertions.assertTrue(rules[3] == index.findMergeable(quickRuleMaker(0, "alpha", "a")));
+
+        //once removed the next rule in line is found
+        Assertions.assertTrue(index.remove(rules[2]));
+        Assertions.assertFalse(index.remove(rules[2]));
+        Assertions.assertTrue(rules[3] == index.findMergeable(epmem, sd, "alpha"));
+        Assertions.assertTrue(index.remove(rules[3]));
+        Assertions.assertTrue(index.findMergeable(epmem, sd, "alpha") == null);
+    }
+
+    /** rules are kept in the order they were added */
+    @EpSemTest
+    public void testOrder() {
+        RuleIndex index = new RuleIndex();
+        Rule first = quickRuleMaker(0, "alpha", "a");
+        Rule second = quickRuleMaker(1, "alpha", "b");
+        Rule third = quickRuleMaker(1, "alpha", "a", "b");
+        index.add(first);
+        index.add(second);
+        index.add(third);
+        index.remove(first);
+        index.add(first);
+
+        Assertions.assertEquals(3, index.size());
+        Assertions.assertEquals(Arrays.asList(second, third, first), index.toList());
+        Assertions.assertTrue(index.contains(first));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> index.add(null));
+    }
+
+    /** the rules that can fire from a sensing are those a scan would find */
+    @EpSemTest
+    public void testFindFiringMatchesScan() {
+        //every combination of the sensors
+        EpisodicMemory<Episode> epmem = new EpisodicMemory<>();
+        for (int bits = 0; bits < 16; ++bits) {
+            epmem.add(boolEpMaker((bits & 1) != 0, (bits & 2) != 0, (bits & 4) != 0, (bits & 8) != 0,
+                                  ((bits % 3) == 0) ? "a" : "b"));
+        }
+        Assertions.assertTrue(epmem.isPacked());
+        SensorData rhs = new SensorData(false);
+        rhs.setSensor("alpha", true);
+
+        //with a few rules the distinct first episodes are checked
+        RuleIndex index = new RuleIndex();
+        index.add(Rule.fromMemory(epmem, 3, 1, rhs, "alpha"));
+        index.add(Rule.fromMemory(epmem, 3, 1, rhs, SensorData.goalSensor));
+        index.add(Rule.fromMemory(epmem, 1, 1, rhs, "alpha").mergeWith(Rule.fromMemory(epmem, 5, 1, rhs, "alpha")));
+        assertFindFiringMatchesScan(epmem, index);
+
+        //with many the subsets of the sensing are looked up
+        for (int i = 0; i < epmem.length() - 1; ++i) {
+            index.add(Rule.fromMemory(epmem, i, 1, rhs, "alpha"));
+            index.add(Rule.fromMemory(epmem, i, 2, rhs, SensorData.goalSensor));
+            index.add(Rule.fromMemory(epmem, i, 1, rhs, "alpha").mergeWith(Rule.fromMemory(epmem, i + 1, 1, rhs, "alpha")));
+        }
+        assertFindFiringMatchesScan(epmem, index);
+
+        //removed rules are not found
+        for (Rule rule : index.toList()) {
+            if (rule.getLHSLength() == 2) index.remove(rule);
+        }
+        assertFindFiringMatchesScan(epmem, index);
+    }
+
+    private void assertFindFiringMatchesScan(EpisodicMemory<Episode> epmem, RuleIndex index) {
+        for (int i = 0; i < epmem.length(); ++i) {
+            SensorData sd = epmem.get(i).getSensorData();
+            ArrayList<Rule> expected = new ArrayList<>();
+            for (Rule rule : index) {
+                if (rule.sensorsMatch(0, sd)) expected.add(rule);
+            }
+            Assertions.assertEquals(expected, index.findFiring(sd));
+        }
+    }
+
+    /** helper method to create an episode with 3 boolean sensors and a goal sensor */
+    private Episode boolEpMaker(boolean alpha, boolean beta, boolean charlie, boolean goal, String action) {
+        SensorData sd = new SensorData(goal);
+        sd.setSensor("alpha", alpha);
+        sd.setSensor("beta", beta);
+        sd.setSensor("charlie", charlie);
+        return new Episode(sd, new Action(action));
+    }
+
+    /** helper method to create an episode with 1 sensor */
+    private Episode quickEpMaker(int alpha, String action) {
+        SensorData sd = new SensorData(false);
+        sd.setSensor("alpha", alpha);
+        return new Episode(sd, new Action(action));
+    }
+
+    /** helper method to create a rule predicting the given value of a sensor */
+    private Rule quickRuleMaker(int value, String sName, String... actions) {
+        ArrayList<Episode> lhs = new ArrayList<>();
+        for (String action : actions) {
+            lhs.add(quickEpMaker(1, action));
+        }
+        SensorData rhs = new SensorData(value == 1);
+        rhs.setSensor("alpha", value);
+        return new Rule(lhs, rhs, sName, 0);
+    }
+}
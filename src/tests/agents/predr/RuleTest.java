@@ -158,6 +158,78 @@ public class RuleTest {
         Assertions.assertFalse(rule.matches(epmem));
     }
 
+    /** a rule that refers to a packed memory behaves the same as one that
+     *  holds copies of the episodes */
+    @EpSemTest
+    public void testPackedRulesMatchCopiedRules() {
+        EpisodicMemory<Episode> epmem = new EpisodicMemory<>();
+        epmem.add(boolEpMaker(true, false, true, false, "a"));
+        epmem.add(boolEpMaker(true, true, false, false, "b"));
+        epmem.add(boolEpMaker(true, false, false, false, "a"));
+        epmem.add(boolEpMaker(false, true, true, false, "a"));
+        Assertions.assertTrue(epmem.isPacked());
+        SensorData rhs = new SensorData(false);
+        rhs.setSensor("alpha", true);
+
+        //each case is the starts of two rules and their length
+        for (int[] c : new int[][] { {0, 2, 1}, {0, 3, 1}, {1, 2, 1}, {0, 2, 2}, {0, 1, 2} }) {
+            Rule packed1 = Rule.fromMemory(epmem, c[0], c[2], rhs, "alpha");
+            Rule packed2 = Rule.fromMemory(epmem, c[1], c[2], rhs, "alpha");
+            Rule copied1 = copiedRule(epmem, c[0], c[2], rhs);
+            Rule copied2 = copiedRule(epmem, c[1], c[2], rhs);
+            Assertions.assertEquals(copied1.getLHS(), packed1.getLHS());
+            Assertions.assertEquals(copied1.canMerge(copied2), packed1.canMerge(packed2));
+
+            Rule packedMerge = packed1.mergeWith(packed2);
+            Rule copiedMerge = copied1.mergeWith(copied2);
+            Assertions.assertEquals(copiedMerge.getLHS(), packedMerge.getLHS());
+            Assertions.assertEquals(copiedMerge.toString(), packedMerge.toString());
+            Assertions.assertEquals(copiedMerge.isAllWildcards(), packedMerge.isAllWildcards());
+            Assertions.assertEquals(copiedMerge.getEpmemIndexes(), packedMerge.getEpmemIndexes());
+            for (int i = 0; i < epmem.length(); ++i) {
+                SensorData sd = epmem.get(i).getSensorData();
+                Assertions.assertEquals(copiedMerge.sensorsMatch(0, sd), packedMerge.sensorsMatch(0, sd));
+            }
+
+            //a packed rule merges with a copied one too
+            Assertions.assertEquals(copiedMerge.getLHS(), packed1.mergeWith(copied2).getLHS());
+        }
+
+        //the first and third episodes differ only in charlie
+        Rule merged = Rule.fromMemory(epmem, 0, 1, rhs, "alpha")
+                          .mergeWith(Rule.fromMemory(epmem, 2, 1, rhs, "alpha"));
+        SensorData correct = SensorData.createEmpty();
+        correct.setSensor("alpha", true);
+        correct.setSensor("beta", false);
+        correct.setSensor(SensorData.goalSensor, false);
+        Assertions.assertEquals(correct, merged.getSensorData(0));
+        Assertions.assertEquals(new Action("a"), merged.getAction(0));
+        Assertions.assertFalse(merged.isAllWildcards());
+
+        //the first and fourth only agree on charlie and the goal
+        Rule other = Rule.fromMemory(epmem, 0, 1, rhs, "alpha")
+                         .mergeWith(Rule.fromMemory(epmem, 3, 1, rhs, "alpha"));
+        Assertions.assertEquals(2, other.getSensorData(0).size());
+        Assertions.assertTrue(other.getSensorData(0).hasSensor("charlie"));
+    }
+
+    private Rule copiedRule(EpisodicMemory<Episode> epmem, int epIndex, int length, SensorData rhs) {
+        ArrayList<Episode> lhs = new ArrayList<>();
+        for (Episode ep : epmem.subset(epIndex, epIndex + length)) {
+            lhs.add(new Episode(ep));
+        }
+        return new Rule(lhs, rhs, "alpha", epIndex);
+    }
+
+    /** helper method for tests to create an episode with boolean sensors */
+    private Episode boolEpMaker(boolean alpha, boolean beta, boolean charlie, boolean goal, String action) {
+        SensorData sd = new SensorData(goal);
+        sd.setSensor("alpha", alpha);
+        sd.setSensor("beta", beta);
+        sd.setSensor("charlie", charlie);
+        return new Episode(sd, new Action(action));
+    }//boolEpMaker
+
     /** helper method for tests to create a canned episode sequence */
     private Episode quickEpMaker(int alpha, int beta, int charlie, int delta, boolean goal, String action) {
         SensorData sd = new SensorData(goal);
@@ -51,6 +51,64 @@ public class SequenceTest {
         Sequence master = new Sequence(new Action[] { new Action("a"), new Action("b"), new Action("c")});
         assertTrue(master.endsWith(toTest));
     }
+
+    @EpSemTest
+    public void endsWithFalseIfLastActionsDiffer() {
+        Sequence toTest = new Sequence(new Action[] { new Action("b"), new Action("b") });
+        Sequence master = new Sequence(new Action[] { new Action("a"), new Action("b"), new Action("c")});
+        assertFalse(master.endsWith(toTest));
+    }
+
+    @EpSemTest
+    public void endsWithTrueForParentOfChildSequence() {
+        Sequence parent = new Sequence(new Action[] { new Action("b"), new Action("c") });
+        Sequence child = parent.buildChildSequence(new Action("a")).buildChildSequence(new Action("d"));
+        assertTrue(child.endsWith(parent));
+        assertFalse(parent.endsWith(child));
+    }
+    //endregion
+
+    //region startsWith Tests
+    @EpSemTest
+    public void startsWithNullSequenceThrowsException() {
+        Sequence sequence = new Sequence(new Action[0]);
+        assertThrows(IllegalArgumentException.class, () -> sequence.startsWith(null));
+    }
+
+    @EpSemTest
+    public void startsWithTrueIfGivenEmptySequence() {
+        Sequence master = new Sequence(new Action[] { new Action("a"), new Action("b") });
+        assertTrue(master.startsWith(Sequence.EMPTY));
+    }
+
+    @EpSemTest
+    public void startsWithFalseIfGivenSequenceIsLongerThanSelf() {
+        Sequence toTest = new Sequence(new Action[] { new Action("a"), new Action("b"), new Action("c") });
+        Sequence master = new Sequence(new Action[] { new Action("a"), new Action("b")});
+        assertFalse(master.startsWith(toTest));
+    }
+
+    @EpSemTest
+    public void startsWithTrueIfGivenSequenceThatMatchesStartOfSelf() {
+        Sequence toTest = new Sequence(new Action[] { new Action("a"), new Action("b") });
+        Sequence master = new Sequence(new Action[] { new Action("a"), new Action("b"), new Action("c")});
+        assertTrue(master.startsWith(toTest));
+        assertTrue(master.startsWith(master));
+    }
+
+    @EpSemTest
+    public void startsWithFalseIfFirstActionsDiffer() {
+        Sequence toTest = new Sequence(new Action[] { new Action("b"), new Action("c") });
+        Sequence master = new Sequence(new Action[] { new Action("a"), new Action("b"), new Action("c")});
+        assertFalse(master.startsWith(toTest));
+    }
+
+    @EpSemTest
+    public void startsWithChildSequence() {
+        Sequence child = new Sequence(new Action[] { new Action("c") }).buildChildSequence(new Action("b")).buildChildSequence(new Action("a"));
+        assertTrue(child.startsWith(new Sequence(new Action[] { new Action("a"), new Action("b") })));
+        assertFalse(child.startsWith(new Sequence(new Action[] { new Action("b") })));
+    }
     //endregion
 
     //region getActions Tests
@@ -138,6 +196,19 @@ public class SequenceTest {
         Sequence expected = new Sequence(new Action[] { new Action("c"), new Action("b"), new Action("a")});
         assertEquals(expected, childSequence);
     }
+
+    @EpSemTest
+    public void buildChildSequenceSiblingsDoNotInterfere() {
+        Sequence parent = new Sequence(new Action[] { new Action("b") });
+        Sequence first = parent.buildChildSequence(new Action("a"));
+        Sequence second = parent.buildChildSequence(new Action("c"));
+        Sequence grandchild = first.buildChildSequence(new Action("d"));
+        assertEquals(new Sequence(new Action[] { new Action("b") }), parent);
+        assertEquals(new Sequence(new Action[] { new Action("a"), new Action("b") }), first);
+        assertEquals(new Sequence(new Action[] { new Action("c"), new Action("b") }), second);
+        assertEquals(new Sequence(new Action[] { new Action("d"), new Action("a"), new Action("b") }), grandchild);
+        assertArrayEquals(new Action[] { new Action("c"), new Action("b") }, second.getActions());
+    }
     //endregion
 
     //region hasNext Tests
@@ -255,6 +326,15 @@ public class SequenceTest {
         Sequence sequence2 = new Sequence(new Action[] { new Action("a"), new Action("b"), new Action("c") });
         assertEquals(sequence1.hashCode(), sequence2.hashCode());
     }
+
+    @EpSemTest
+    public void hashCodeMatchesArraysHashCode() {
+        Action[] actions = new Action[] { new Action("a"), new Action("b"), new Action("c") };
+        Sequence built = Sequence.EMPTY.buildChildSequence(actions[2]).buildChildSequence(actions[1]).buildChildSequence(actions[0]);
+        assertEquals(java.util.Arrays.hashCode(actions), new Sequence(actions).hashCode());
+        assertEquals(java.util.Arrays.hashCode(actions), built.hashCode());
+        assertEquals(java.util.Arrays.hashCode(new Action[0]), Sequence.EMPTY.hashCode());
+    }
     //endregion
 
     //region take Tests
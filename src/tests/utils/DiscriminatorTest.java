@@ -0,0 +1,61 @@
+package tests.utils;
+
+import framework.Action;
+import framework.SensorData;
+import utils.Discriminator;
+
+import tests.EpSemTest;
+import tests.EpSemTestClass;
+import static tests.Assertions.*;
+
+/**
+ *
+ * @author Zachary Paul Faltersack
+ * @version 0.95
+ */
+@EpSemTestClass
+public class DiscriminatorTest {
+
+    //region match Tests
+    @EpSemTest
+    public void matchNoDataIsTrue() {
+        Discriminator discriminator = new Discriminator();
+        assertTrue(discriminator.match(this.sensorData(true, true), this.sensorData(false, false)));
+    }
+
+    @EpSemTest
+    public void matchIgnoresSensorsUntilTheyAreConsistent() {
+        Discriminator discriminator = new Discriminator();
+        Action action = new Action("a");
+        // 4 hits with one distinct value is a variance of 0.25 which is not below the tolerance
+        for (int i = 0; i < 4; i++)
+            discriminator.add(this.sensorData(true, i % 2 == 0), action);
+        assertTrue(discriminator.match(this.sensorData(true, true), this.sensorData(false, false)));
+        discriminator.add(this.sensorData(true, true), action);
+        assertFalse(discriminator.match(this.sensorData(true, true), this.sensorData(false, true)));
+        assertTrue(discriminator.match(this.sensorData(true, true), this.sensorData(true, false)));
+    }
+
+    @EpSemTest
+    public void matchSensorMustBeConsistentForEveryAction() {
+        Discriminator discriminator = new Discriminator();
+        Action a = new Action("a");
+        Action b = new Action("b");
+        for (int i = 0; i < 5; i++)
+            discriminator.add(this.sensorData(true, false), a);
+        assertFalse(discriminator.match(this.sensorData(true, false), this.sensorData(false, false)));
+        discriminator.add(this.sensorData(true, false), b);
+        assertTrue(discriminator.match(this.sensorData(true, false), this.sensorData(false, true)));
+        for (int i = 0; i < 4; i++)
+            discriminator.add(this.sensorData(true, false), b);
+        assertFalse(discriminator.match(this.sensorData(true, false), this.sensorData(false, false)));
+    }
+    //endregion
+
+    private SensorData sensorData(boolean steady, boolean noisy) {
+        SensorData sensorData = new SensorData(false);
+        sensorData.setSensor("steady", steady);
+        sensorData.setSensor("noisy", noisy);
+        return sensorData;
+    }
+}
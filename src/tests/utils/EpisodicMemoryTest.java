@@ -3,7 +3,9 @@ package tests.utils;
 import framework.Action;
 import framework.Episode;
 import framework.SensorData;
+import utils.EpisodeWindow;
 import utils.EpisodicMemory;
+import utils.PositionIndex;
 
 import tests.EpSemTest;
 import tests.EpSemTestClass;
@@ -190,6 +192,17 @@ public class EpisodicMemoryTest {
         EpisodicMemory<Episode> episodicMemory = new EpisodicMemory<>();
         assertThrows(IllegalArgumentException.class, () -> episodicMemory.trim(-1));
     }
+
+    @EpSemTest
+    public void trimMoreThanSizeThrowsException() {
+        EpisodicMemory<Episode> episodicMemory = new EpisodicMemory<>();
+        episodicMemory.add(new Episode(new SensorData(false), new Action("move1")));
+        episodicMemory.add(new Episode(new SensorData(false), new Action("move2")));
+        assertThrows(IllegalArgumentException.class, () -> episodicMemory.trim(3));
+        assertEquals(2, episodicMemory.size());
+        episodicMemory.trim(2);
+        assertEquals(0, episodicMemory.size());
+    }
     //endregion
 
     //region subset Tests
@@ -258,6 +271,56 @@ public class EpisodicMemoryTest {
         EpisodicMemory<Episode> episodicMemory = new EpisodicMemory<>();
         assertThrows(IllegalArgumentException.class, () -> episodicMemory.lastGoalIndex(-1));
     }
+
+    @EpSemTest
+    public void nextGoalIndex() {
+        // 2 and 5 will be goal
+        EpisodicMemory<Episode> episodicMemory = new EpisodicMemory<>();
+        for (int i = 0; i < 6; i++) {
+            episodicMemory.add(new Episode(new SensorData(i % 3 == 2), new Action(Integer.toString(i))));
+        }
+        assertEquals(2, episodicMemory.nextGoalIndex(0));
+        assertEquals(5, episodicMemory.nextGoalIndex(3));
+        assertEquals(2, episodicMemory.goalCount());
+        assertEquals(5, episodicMemory.getGoalIndex(1));
+    }
+
+    @EpSemTest
+    public void containsGoal() {
+        // 2 and 5 will be goal
+        EpisodicMemory<Episode> episodicMemory = new EpisodicMemory<>();
+        for (int i = 0; i < 6; i++) {
+            episodicMemory.add(new Episode(new SensorData(i % 3 == 2), new Action(Integer.toString(i))));
+        }
+        assertTrue(episodicMemory.containsGoal(0, 3));
+        assertFalse(episodicMemory.containsGoal(3, 5));
+    }
+
+    @EpSemTest
+    public void trimRemovesGoalIndices() {
+        EpisodicMemory<Episode> episodicMemory = new EpisodicMemory<>();
+        episodicMemory.add(new Episode(new SensorData(true), new Action("move1")));
+        episodicMemory.add(new Episode(new SensorData(true), new Action("move2")));
+        episodicMemory.trim(1);
+        assertEquals(0, episodicMemory.lastGoalIndex(1));
+        assertEquals(-1, episodicMemory.nextGoalIndex(1));
+    }
+
+    @EpSemTest
+    public void trackSensorIndexesExistingEpisodes() {
+        EpisodicMemory<Episode> episodicMemory = new EpisodicMemory<>();
+        for (int i = 0; i < 4; i++) {
+            SensorData sensorData = new SensorData(false);
+            sensorData.setSensor("even", i % 2 == 0);
+            episodicMemory.add(new Episode(sensorData, new Action("move")));
+        }
+        PositionIndex evens = episodicMemory.trackSensor("even");
+        assertEquals(2, evens.size());
+        SensorData sensorData = new SensorData(false);
+        sensorData.setSensor("even", true);
+        episodicMemory.add(new Episode(sensorData, new Action("move")));
+        assertEquals(4, evens.last());
+    }
     //endregion
 
     //region last Tests
@@ -326,4 +389,72 @@ public class EpisodicMemoryTest {
         assertArrayEquals(expected, subset);
     }
     //endregion
+
+    //region window Tests
+    @EpSemTest
+    public void windowReadsThroughToMemory() {
+        EpisodicMemory<Episode> episodicMemory = new EpisodicMemory<>();
+        episodicMemory.add(new Episode(new SensorData(false), new Action("move1")));
+        episodicMemory.add(new Episode(new SensorData(false), new Action("move2")));
+        episodicMemory.add(new Episode(new SensorData(false), new Action("move3")));
+        EpisodeWindow<Episode> window = episodicMemory.window(1);
+        assertEquals(2, window.length());
+        assertSame(episodicMemory.get(1), window.get(0));
+        assertEquals(new Action("move3"), window.getAction(1));
+    }
+
+    @EpSemTest
+    public void lastWindowLargerThanMemoryReturnsAllEpisodes() {
+        EpisodicMemory<Episode> episodicMemory = new EpisodicMemory<>();
+        episodicMemory.add(new Episode(new SensorData(false), new Action("move1")));
+        episodicMemory.add(new Episode(new SensorData(false), new Action("move2")));
+        EpisodeWindow<Episode> window = episodicMemory.lastWindow(10);
+        assertEquals(2, window.length());
+        assertEquals(0, window.getStartIndex());
+    }
+    //endregion
+
+    //region capacity Tests
+    @EpSemTest
+    public void boundedMemoryEvictsOldestEpisode() {
+        EpisodicMemory<Episode> episodicMemory = new EpisodicMemory<>(2);
+        episodicMemory.add(new Episode(new SensorData(false), new Action("move1")));
+        episodicMemory.add(new Episode(new SensorData(false), new Action("move2")));
+        episodicMemory.add(new Episode(new SensorData(false), new Action("move3")));
+        assertEquals(3, episodicMemory.length());
+        assertEquals(2, episodicMemory.size());
+        assertEquals(1, episodicMemory.firstIndex());
+        assertEquals(new Action("move3"), episodicMemory.get(2).getAction());
+        assertThrows(IllegalArgumentException.class, () -> episodicMemory.get(0));
+    }
+
+    @EpSemTest
+    public void constructorNegativeCapacityThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> new EpisodicMemory<Episode>(-1));
+    }
+    //endregion
+
+    //region episodesEqual Tests
+    @EpSemTest
+    public void episodesEqualComparesPackedColumns() {
+        EpisodicMemory<Episode> episodicMemory = new EpisodicMemory<>();
+        episodicMemory.add(new Episode(new SensorData(false), new Action("move1")));
+        episodicMemory.add(new Episode(new SensorData(true), new Action("move1")));
+        episodicMemory.add(new Episode(new SensorData(false), new Action("move1")));
+        assertTrue(episodicMemory.isPacked());
+        assertTrue(episodicMemory.episodesEqual(0, 2));
+        assertFalse(episodicMemory.episodesEqual(0, 1));
+    }
+
+    @EpSemTest
+    public void episodesEqualFallsBackWhenNotPacked() {
+        EpisodicMemory<Episode> episodicMemory = new EpisodicMemory<>();
+        SensorData sensorData = new SensorData(false);
+        sensorData.setSensor("a", 5);
+        episodicMemory.add(new Episode(sensorData, new Action("move1")));
+        episodicMemory.add(new Episode(new SensorData(sensorData), new Action("move1")));
+        assertFalse(episodicMemory.isPacked());
+        assertTrue(episodicMemory.episodesEqual(0, 1));
+    }
+    //endregion
 }
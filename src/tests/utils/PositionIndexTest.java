@@ -0,0 +1,99 @@
+package tests.utils;
+
+import utils.PositionIndex;
+
+import tests.EpSemTest;
+import tests.EpSemTestClass;
+import static tests.Assertions.*;
+
+/**
+ *
+ * @author Zachary Paul Faltersack
+ * @version 0.95
+ */
+@EpSemTestClass
+public class PositionIndexTest {
+    //region add Tests
+    @EpSemTest
+    public void addOutOfOrderThrowsException() {
+        PositionIndex index = new PositionIndex();
+        index.add(5);
+        assertThrows(IllegalArgumentException.class, () -> index.add(5));
+        assertThrows(IllegalArgumentException.class, () -> index.add(3));
+    }
+
+    @EpSemTest
+    public void addGrowsPastInitialCapacity() {
+        PositionIndex index = new PositionIndex();
+        for (int i = 0; i < 100; i++) {
+            index.add(i * 2);
+        }
+        assertEquals(100, index.size());
+        assertEquals(198, index.last());
+    }
+    //endregion
+
+    //region search Tests
+    @EpSemTest
+    public void previous() {
+        PositionIndex index = this.buildIndex(2, 5, 9);
+        assertEquals(-1, index.previous(1));
+        assertEquals(2, index.previous(2));
+        assertEquals(5, index.previous(8));
+        assertEquals(9, index.previous(100));
+    }
+
+    @EpSemTest
+    public void next() {
+        PositionIndex index = this.buildIndex(2, 5, 9);
+        assertEquals(2, index.next(0));
+        assertEquals(5, index.next(3));
+        assertEquals(9, index.next(9));
+        assertEquals(-1, index.next(10));
+    }
+
+    @EpSemTest
+    public void get() {
+        PositionIndex index = this.buildIndex(2, 5, 9);
+        assertEquals(5, index.get(1));
+        assertThrows(IllegalArgumentException.class, () -> index.get(3));
+    }
+
+    @EpSemTest
+    public void containsAny() {
+        PositionIndex index = this.buildIndex(2, 5, 9);
+        assertTrue(index.containsAny(3, 6));
+        assertFalse(index.containsAny(6, 9));
+        assertFalse(index.containsAny(5, 5));
+    }
+    //endregion
+
+    //region removal Tests
+    @EpSemTest
+    public void truncate() {
+        PositionIndex index = this.buildIndex(2, 5, 9);
+        index.truncate(5);
+        assertEquals(1, index.size());
+        assertEquals(2, index.last());
+    }
+
+    @EpSemTest
+    public void dropBefore() {
+        PositionIndex index = this.buildIndex(2, 5, 9);
+        index.dropBefore(3);
+        assertEquals(2, index.size());
+        assertEquals(5, index.get(0));
+        assertEquals(-1, index.previous(4));
+    }
+    //endregion
+
+    //region Private Methods
+    private PositionIndex buildIndex(int... positions) {
+        PositionIndex index = new PositionIndex();
+        for (int position : positions) {
+            index.add(position);
+        }
+        return index;
+    }
+    //endregion
+}
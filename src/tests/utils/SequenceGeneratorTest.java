@@ -2,6 +2,7 @@ package tests.utils;
 
 import framework.Action;
 import framework.Sequence;
+import utils.SequenceEnumerator;
 import utils.SequenceGenerator;
 
 import tests.EpSemTest;
@@ -119,4 +120,82 @@ public class SequenceGeneratorTest {
         assertEquals(13L, sequenceGenerator.getCanonicalIndex(new Sequence(new Action[] { a, a, a })));
         assertEquals(14L, sequenceGenerator.getCanonicalIndex(new Sequence(new Action[] { a, a, b })));
     }
+
+    @EpSemTest
+    public void getCanonicalOrderingIsExactForLargeIndices() {
+        Action[] actions = new Action[100];
+        for (int i = 0; i < actions.length; i++)
+            actions[i] = new Action(Integer.toString(i));
+        SequenceGenerator sequenceGenerator = new SequenceGenerator(actions);
+        // 9 actions is past where doubles lose precision (100^8 > 2^53)
+        Sequence sequence = new Sequence(new Action[] { actions[1], actions[2], actions[3], actions[4], actions[5], actions[6], actions[7], actions[8], actions[9] });
+        long index = sequenceGenerator.getCanonicalIndex(sequence);
+        assertEquals(20304050607080910L, index);
+        assertEquals(sequence, sequenceGenerator.nextPermutation(index));
+    }
+
+    @EpSemTest
+    public void getCanonicalOrderingOverflowThrowsException() {
+        Action a = new Action("a");
+        Action b = new Action("b");
+        SequenceGenerator sequenceGenerator = new SequenceGenerator(new Action[] { a, b });
+        Action[] actions = new Action[64];
+        java.util.Arrays.fill(actions, b);
+        assertThrows(ArithmeticException.class, () -> sequenceGenerator.getCanonicalIndex(new Sequence(actions)));
+    }
+
+    // getSuffixStride Tests
+    @EpSemTest
+    public void getSuffixStrideKeepsSuffix() {
+        Action a = new Action("a");
+        Action b = new Action("b");
+        Action c = new Action("c");
+        SequenceGenerator sequenceGenerator = new SequenceGenerator(new Action[] { a, b, c });
+        Sequence suffix = new Sequence(new Action[] { b, c });
+        long index = sequenceGenerator.getCanonicalIndex(suffix);
+        for (int i = 0; i < 20; i++) {
+            index += sequenceGenerator.getSuffixStride(suffix.getLength());
+            assertTrue(sequenceGenerator.nextPermutation(index).endsWith(suffix));
+        }
+    }
+
+    @EpSemTest
+    public void getSuffixStrideOverflowThrowsException() {
+        SequenceGenerator sequenceGenerator = new SequenceGenerator(new Action[] { new Action("a"), new Action("b") });
+        assertEquals(1L << 62, sequenceGenerator.getSuffixStride(62));
+        assertThrows(ArithmeticException.class, () -> sequenceGenerator.getSuffixStride(63));
+    }
+
+    // enumerate Tests
+    @EpSemTest
+    public void enumerateIndexLessThanOneThrowsException() {
+        SequenceGenerator sequenceGenerator = new SequenceGenerator(new Action[] { new Action("a") });
+        assertThrows(IndexOutOfBoundsException.class, () -> sequenceGenerator.enumerate(0));
+    }
+
+    @EpSemTest
+    public void enumerateMatchesNextPermutation() {
+        Action a = new Action("a");
+        Action b = new Action("b");
+        Action c = new Action("c");
+        SequenceGenerator sequenceGenerator = new SequenceGenerator(new Action[] { a, b, c });
+        SequenceEnumerator enumerator = sequenceGenerator.enumerate(5);
+        for (long index = 5; index < 500; index++) {
+            assertEquals(index, enumerator.getNextIndex());
+            assertTrue(enumerator.hasNext());
+            assertEquals(sequenceGenerator.nextPermutation(index), enumerator.next());
+        }
+    }
+
+    @EpSemTest
+    public void enumerateStopsAtLongOverflow() {
+        Action a = new Action("a");
+        Action b = new Action("b");
+        SequenceGenerator sequenceGenerator = new SequenceGenerator(new Action[] { a, b });
+        SequenceEnumerator enumerator = sequenceGenerator.enumerate(Long.MAX_VALUE);
+        assertTrue(enumerator.hasNext());
+        assertEquals(sequenceGenerator.nextPermutation(Long.MAX_VALUE), enumerator.next());
+        assertFalse(enumerator.hasNext());
+        assertThrows(java.util.NoSuchElementException.class, () -> enumerator.next());
+    }
 }
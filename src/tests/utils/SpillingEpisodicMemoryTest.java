@@ -0,0 +1,114 @@
+package tests.utils;
+
+import framework.Action;
+import framework.Episode;
+import framework.SensorData;
+import utils.SpillingEpisodicMemory;
+
+import java.io.File;
+
+import tests.EpSemTest;
+import tests.EpSemTestClass;
+import static tests.Assertions.*;
+
+/**
+ *
+ * @author Zachary Paul Faltersack
+ * @version 0.95
+ */
+@EpSemTestClass
+public class SpillingEpisodicMemoryTest {
+    //region constructor Tests
+    @EpSemTest
+    public void constructorZeroCapacityThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> new SpillingEpisodicMemory(0));
+    }
+    //endregion
+
+    //region spill Tests
+    @EpSemTest
+    public void spilledEpisodesRemainAvailable() throws Exception {
+        try (SpillingEpisodicMemory episodicMemory = new SpillingEpisodicMemory(2)) {
+            for (int i = 0; i < 5; i++) {
+                episodicMemory.add(this.makeEpisode(i));
+            }
+            assertEquals(3, episodicMemory.spilledCount());
+            assertEquals(0, episodicMemory.firstIndex());
+            assertEquals(5, episodicMemory.size());
+            for (int i = 0; i < 5; i++) {
+                assertEquals(this.makeEpisode(i), episodicMemory.get(i));
+            }
+        }
+    }
+
+    @EpSemTest
+    public void spilledColumnsMatchHeapColumns() throws Exception {
+        try (SpillingEpisodicMemory episodicMemory = new SpillingEpisodicMemory(2)) {
+            for (int i = 0; i < 6; i++) {
+                episodicMemory.add(this.makeEpisode(i % 3));
+            }
+            assertTrue(episodicMemory.episodesEqual(0, 3));
+            assertTrue(episodicMemory.episodesEqual(1, 4));
+            assertFalse(episodicMemory.episodesEqual(0, 4));
+            assertEquals(episodicMemory.getActionOrdinal(2), episodicMemory.getActionOrdinal(5));
+        }
+    }
+
+    @EpSemTest
+    public void goalIndicesSurviveSpilling() throws Exception {
+        try (SpillingEpisodicMemory episodicMemory = new SpillingEpisodicMemory(2)) {
+            for (int i = 0; i < 6; i++) {
+                episodicMemory.add(new Episode(new SensorData(i == 1), new Action("move")));
+            }
+            assertEquals(1, episodicMemory.lastGoalIndex(5));
+            assertTrue(episodicMemory.get(1).hitGoal());
+        }
+    }
+
+    @EpSemTest
+    public void nonBooleanSensorsCannotBeSpilled() throws Exception {
+        try (SpillingEpisodicMemory episodicMemory = new SpillingEpisodicMemory(1)) {
+            SensorData sensorData = new SensorData(false);
+            sensorData.setSensor("count", 3);
+            episodicMemory.add(new Episode(sensorData, new Action("move")));
+            assertThrows(IllegalStateException.class, () -> episodicMemory.add(new Episode(sensorData, new Action("move"))));
+        }
+    }
+
+    @EpSemTest
+    public void trimSpilledEpisodesThrowsException() throws Exception {
+        try (SpillingEpisodicMemory episodicMemory = new SpillingEpisodicMemory(1)) {
+            episodicMemory.add(this.makeEpisode(0));
+            episodicMemory.add(this.makeEpisode(1));
+            assertThrows(IllegalArgumentException.class, () -> episodicMemory.trim(2));
+        }
+    }
+
+    @EpSemTest
+    public void closeReleasesSpilledEpisodes() throws Exception {
+        File spillFile = File.createTempFile("epmem", ".spill");
+        try {
+            SpillingEpisodicMemory episodicMemory = new SpillingEpisodicMemory(1, spillFile);
+            episodicMemory.add(this.makeEpisode(0));
+            episodicMemory.add(this.makeEpisode(1));
+            episodicMemory.close();
+            assertThrows(IllegalStateException.class, () -> episodicMemory.get(0));
+            assertThrows(IllegalStateException.class, () -> episodicMemory.getSensorWord(0));
+            assertEquals(this.makeEpisode(1), episodicMemory.get(1));
+            // a file that was handed in is left in place and closing again is harmless
+            assertTrue(spillFile.exists());
+            episodicMemory.close();
+        } finally {
+            spillFile.delete();
+        }
+    }
+    //endregion
+
+    //region Private Methods
+    private Episode makeEpisode(int i) {
+        SensorData sensorData = new SensorData(false);
+        sensorData.setSensor("even", i % 2 == 0);
+        return new Episode(sensorData, new Action("move" + i));
+    }
+    //endregion
+}
@@ -3,6 +3,7 @@ package utils;
 import framework.Action;
 import framework.SensorData;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -32,6 +33,14 @@ public class Discriminator {
 
     private String[] sensors;
 
+    private HashMap<String, Integer> sensorOrdinals;
+
+    /** the number of {@link Match} that currently find each sensor inconsistent */
+    private int[] inconsistentCounts;
+
+    /** one bit per sensor, set while the sensor matters (i.e., no {@link Match} finds it inconsistent) */
+    private long[] matters;
+
     private HashMap<Action, Match> matchingMaps = new HashMap<>();
 
     //endregion
@@ -45,8 +54,16 @@ public class Discriminator {
      * @param action the {@link Action} that was just executed.
      */
     public void add(SensorData sensor, Action action) {
-        if (this.sensors == null)
+        if (this.sensors == null) {
             this.sensors = sensor.getSensorNames().toArray(new String[0]);
+            this.sensorOrdinals = new HashMap<>();
+            for (int i = 0; i < this.sensors.length; i++)
+                this.sensorOrdinals.put(this.sensors[i], i);
+            this.inconsistentCounts = new int[this.sensors.length];
+            this.matters = new long[(this.sensors.length + Long.SIZE - 1) / Long.SIZE];
+            for (int i = 0; i < this.sensors.length; i++)
+                this.matters[i / Long.SIZE] |= 1L << i;
+        }
         if (this.matchingMaps.containsKey(action))
             this.matchingMaps.get(action).update(sensor);
         else
@@ -61,10 +78,16 @@ public class Discriminator {
      * @return true if the sensors seem equivalent based on sensor variance; otherwise false.
      */
     public boolean match(SensorData sensor1, SensorData sensor2) {
-        for (String sensorName : this.sensors)
+        if (this.sensors == null)
+            return true;
+        for (int w = 0; w < this.matters.length; w++)
         {
-            if (this.matters(sensorName) && !sensor1.getSensor(sensorName).equals(sensor2.getSensor(sensorName)))
-                return false;
+            for (long bits = this.matters[w]; bits != 0; bits &= bits - 1)
+            {
+                String sensorName = this.sensors[w * Long.SIZE + Long.numberOfTrailingZeros(bits)];
+                if (!sensor1.getSensor(sensorName).equals(sensor2.getSensor(sensorName)))
+                    return false;
+            }
         }
         return true;
     }
@@ -74,19 +97,18 @@ public class Discriminator {
     //region Private Methods
 
     /**
-     * Determine if any {@link Match} has identified the given sensor as being highly variant, and therefore
-     * unreliable when comparing {@link SensorData}.
+     * Records that a {@link Match} has changed its mind about whether the given sensor is consistent.  A sensor
+     * matters only while every {@link Match} indicates low variance.
      *
-     * @param sensorName the name of the sensor to judge.
-     * @return true if all {@link Match} indicate low variance.
+     * @param ordinal the ordinal of the sensor.
+     * @param consistent whether the sensor is now consistent for the match.
      */
-    private boolean matters(String sensorName) {
-        for (Match match : this.matchingMaps.values())
-        {
-            if (match.isConsistent(sensorName) == false)
-                return false;
-        }
-        return true;
+    private void consistencyChanged(int ordinal, boolean consistent) {
+        this.inconsistentCounts[ordinal] += consistent ? -1 : 1;
+        if (this.inconsistentCounts[ordinal] == 0)
+            this.matters[ordinal / Long.SIZE] |= 1L << ordinal;
+        else
+            this.matters[ordinal / Long.SIZE] &= ~(1L << ordinal);
     }
 
     //endregion
@@ -116,9 +138,10 @@ public class Discriminator {
 
         private double tolerance = 0.25;
 
-        private HashMap<String, Consistency> consistencyMapping;
+        /** indexed by sensor ordinal; null for sensors this match has never seen */
+        private Consistency[] consistencies;
 
-        private SensorData sensorData;
+        private boolean[] consistent;
 
         //endregion
 
@@ -130,13 +153,19 @@ public class Discriminator {
          * @param sensorData the template {@link SensorData}.
          */
         public Match(SensorData sensorData) {
-            this.sensorData = sensorData;
-            this.consistencyMapping = new HashMap<>();
-            for (String sensor : this.sensorData.getSensorNames())
+            this.consistencies = new Consistency[sensors.length];
+            // an unseen sensor cannot disqualify anything
+            this.consistent = new boolean[sensors.length];
+            Arrays.fill(this.consistent, true);
+            for (String sensor : sensorData.getSensorNames())
             {
+                Integer ordinal = sensorOrdinals.get(sensor);
+                if (ordinal == null)
+                    continue;
                 Consistency consistency = new Consistency();
-                consistency.distinctValues.add(this.sensorData.getSensor(sensor));
-                this.consistencyMapping.put(sensor, consistency);
+                consistency.distinctValues.add(sensorData.getSensor(sensor));
+                this.consistencies[ordinal] = consistency;
+                this.refresh(ordinal);
             }
         }
 
@@ -152,17 +181,22 @@ public class Discriminator {
         public void update(SensorData toMatch) {
             for (String sensor : toMatch.getSensorNames())
             {
-                if (this.consistencyMapping.containsKey(sensor))
+                // sensors that were not present in the first data are never compared
+                Integer ordinal = sensorOrdinals.get(sensor);
+                if (ordinal == null)
+                    continue;
+                Consistency consistency = this.consistencies[ordinal];
+                if (consistency != null)
                 {
-                    Consistency consistency = this.consistencyMapping.get(sensor);
                     consistency.total++;
                     consistency.distinctValues.add(toMatch.getSensor(sensor));
                 }
                 else {
-                    Consistency consistency = new Consistency();
+                    consistency = new Consistency();
                     consistency.distinctValues.add(toMatch.getSensor(sensor));
-                    this.consistencyMapping.put(sensor, consistency);
+                    this.consistencies[ordinal] = consistency;
                 }
+                this.refresh(ordinal);
             }
         }
 
@@ -172,11 +206,28 @@ public class Discriminator {
          * The hardcoded tolerance here is a weakness. Longer-term we would want to try and find a way to determine
          * what could be considered a "good" tolerance organically.
          *
-         * @param sensorName the name of the sensor to evaluate.
+         * @param ordinal the ordinal of the sensor to evaluate.
          * @return true if the sensor is consistent; otherwise false.
          */
-        public boolean isConsistent(String sensorName) {
-            return this.consistencyMapping.get(sensorName).calculate() < this.tolerance;
+        public boolean isConsistent(int ordinal) {
+            return this.consistencies[ordinal].calculate() < this.tolerance;
+        }
+
+        //endregion
+
+        //region Private Methods
+
+        /**
+         * Re-evaluates the consistency of a sensor and reports any change to the {@link Discriminator}.
+         *
+         * @param ordinal the ordinal of the sensor that was updated.
+         */
+        private void refresh(int ordinal) {
+            boolean nowConsistent = this.isConsistent(ordinal);
+            if (nowConsistent != this.consistent[ordinal]) {
+                this.consistent[ordinal] = nowConsistent;
+                consistencyChanged(ordinal, nowConsistent);
+            }
         }
 
         //endregion
@@ -186,9 +237,10 @@ public class Discriminator {
         @Override
         public String toString() {
             String me = "";
-            for (Map.Entry<String, Consistency> entry : this.consistencyMapping.entrySet())
+            for (int i = 0; i < this.consistencies.length; i++)
             {
-                me += "sensor(" + entry.getKey() + ") has variance(" + entry.getValue().calculate() + ") ";
+                if (this.consistencies[i] != null)
+                    me += "sensor(" + sensors[i] + ") has variance(" + this.consistencies[i].calculate() + ") ";
             }
             return me;
         }
@@ -29,6 +29,22 @@ public class EpisodeUtils {
         return Arrays.stream(episodes).map(ep -> ep.getAction()).collect(Collectors.toList()).toArray(new Action[0]);
     }
 
+    /**
+     * Extracts the array of {@link Action} from an {@link EpisodeWindow} without first copying its episodes.
+     *
+     * @param window the {@link EpisodeWindow} from which {@link Action} should be extracted.
+     * @return the array of {@link Action} from the window.
+     */
+    public static Action[] selectMoves(EpisodeWindow<? extends Episode> window) {
+        if (window == null)
+            throw new IllegalArgumentException("window cannot be null.");
+        Action[] moves = new Action[window.length()];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = window.getAction(i);
+        }
+        return moves;
+    }
+
     /** overload of above for arraylist */
     public static Action[] selectMoves(ArrayList<Episode> episodes) {
         return selectMoves(episodes.toArray(new Episode[0]));
@@ -0,0 +1,124 @@
+package utils;
+
+import framework.Action;
+import framework.Episode;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only view over a contiguous range of an {@link EpisodicMemory}.
+ *
+ * No episodes are copied when a window is created; each access reads through to the backing memory.  As such
+ * the window is only valid for as long as the episodes it covers are retained by that memory.
+ *
+ * @author Zachary Paul Faltersack
+ * @version 0.95
+ */
+public class EpisodeWindow<TEpisode extends Episode> implements Iterable<TEpisode> {
+
+    //region Class Variables
+
+    private final EpisodicMemory<TEpisode> memory;
+    private final int startIndex;
+    private final int endIndex;
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Creates an {@link EpisodeWindow}.  Callers are expected to have validated the range.
+     *
+     * @param memory the {@link EpisodicMemory} to view.
+     * @param startIndex the index of the first episode in the window (inclusive).
+     * @param endIndex the index just past the last episode in the window (exclusive).
+     */
+    EpisodeWindow(EpisodicMemory<TEpisode> memory, int startIndex, int endIndex) {
+        this.memory = memory;
+        this.startIndex = startIndex;
+        this.endIndex = endIndex;
+    }
+
+    //endregion
+
+    //region Public Methods
+
+    /**
+     * @return the number of episodes in this window.
+     */
+    public int length() {
+        return this.endIndex - this.startIndex;
+    }
+
+    /**
+     * @return the index in the backing memory of the first episode in this window.
+     */
+    public int getStartIndex() {
+        return this.startIndex;
+    }
+
+    /**
+     * @param i the position within this window.
+     * @return the {@link Episode} at that position.
+     */
+    public TEpisode get(int i) {
+        return this.memory.get(this.toIndex(i));
+    }
+
+    /**
+     * @param i the position within this window.
+     * @return the {@link Action} of the episode at that position.
+     */
+    public Action getAction(int i) {
+        return this.memory.getActionByOrdinal(this.memory.getActionOrdinal(this.toIndex(i)));
+    }
+
+    /**
+     * Copies the episodes in this window into a new array.
+     *
+     * @return the array of episodes.
+     */
+    public Episode[] toArray() {
+        Episode[] result = new Episode[this.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = this.get(i);
+        }
+        return result;
+    }
+
+    //endregion
+
+    //region Iterable<TEpisode> Members
+
+    @Override
+    public Iterator<TEpisode> iterator() {
+        return new Iterator<TEpisode>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < EpisodeWindow.this.length();
+            }
+
+            @Override
+            public TEpisode next() {
+                if (!this.hasNext())
+                    throw new NoSuchElementException();
+                return EpisodeWindow.this.get(this.next++);
+            }
+        };
+    }
+
+    //endregion
+
+    //region Private Methods
+
+    private int toIndex(int i) {
+        if (i < 0 || i >= this.length())
+            throw new IllegalArgumentException("index out of range.");
+        return this.startIndex + i;
+    }
+
+    //endregion
+}
@@ -1,20 +1,99 @@
 package utils;
 
+import framework.Action;
 import framework.Episode;
+import framework.SensorData;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
  * Represents a sequential set of episodes and provides helpful operations for working against them.
  *
+ * Alongside the {@link Episode} objects the memory keeps a columnar copy of each episode: the ordinal of its
+ * {@link Action} in an int[] and its boolean sensors packed into long words (one word of presence bits and one
+ * word of values).  Agents that scan the whole memory every step can compare these columns instead of walking
+ * {@link SensorData} maps.
+ *
+ * The indices of goal episodes are kept in a {@link PositionIndex} as episodes are added so that goal lookups
+ * are binary searches rather than backward scans.  Any other sensor can be indexed the same way via
+ * {@link #trackSensor(String)}.
+ *
+ * The memory may optionally be given a capacity in which case it behaves as a ring buffer: once full, each new
+ * episode evicts the oldest one.  Episode indices are absolute and never shift, so an index handed out
+ * before an eviction still refers to the same episode afterward (or is rejected if that episode is gone).
+ *
  * @author Zachary Paul Faltersack
  * @version 0.95
  */
 public class EpisodicMemory<TEpisode extends Episode> {
 
+    //region Static Variables
+
+    /** the maximum number of distinct boolean sensors that can be packed into a sensor word. */
+    public static final int MAX_PACKED_SENSORS = Long.SIZE;
+
+    /** capacity value indicating that the memory should never evict episodes. */
+    public static final int UNBOUNDED = 0;
+
+    private static final int INITIAL_SLOTS = 64;
+
+    //endregion
+
     //region Class Variables
 
-    protected ArrayList<TEpisode> episodicMemory = new ArrayList<>();
+    /** the maximum number of episodes retained or {@link #UNBOUNDED}. */
+    private final int capacity;
+
+    // ring storage; slot (head + i) % slots.length holds the episode at absolute index heapStart + i
+    private Object[] episodes;
+    private int[] actionOrdinals;
+    private long[] sensorMasks;
+    private long[] sensorWords;
+    private int head = 0;
+    private int count = 0;
+    private int heapStart = 0;
+
+    // dictionaries for the columnar encoding
+    private final ArrayList<Action> actions = new ArrayList<>();
+    private final HashMap<Action, Integer> actionLookup = new HashMap<>();
+    private final ArrayList<String> sensorNames = new ArrayList<>();
+    private final HashMap<String, Integer> sensorLookup = new HashMap<>();
+
+    /** false once an episode with a non-boolean sensor (or too many sensors) has been seen. */
+    private boolean packed = true;
+
+    // the positions at which each tracked sensor was on
+    private final HashMap<String, PositionIndex> sensorIndices = new HashMap<>();
+    private final PositionIndex goalIndices = new PositionIndex();
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Creates an unbounded {@link EpisodicMemory}.
+     */
+    public EpisodicMemory() {
+        this(UNBOUNDED);
+    }
+
+    /**
+     * Creates an {@link EpisodicMemory} that retains at most the given number of episodes.
+     *
+     * @param capacity the number of episodes to retain or {@link #UNBOUNDED}.
+     */
+    public EpisodicMemory(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity cannot be less than 0");
+        this.capacity = capacity;
+        int slots = (capacity == UNBOUNDED) ? INITIAL_SLOTS : capacity;
+        this.episodes = new Object[slots];
+        this.actionOrdinals = new int[slots];
+        this.sensorMasks = new long[slots];
+        this.sensorWords = new long[slots];
+        this.sensorIndices.put(SensorData.goalSensor, this.goalIndices);
+    }
 
     //endregion
 
@@ -26,14 +105,21 @@ public class EpisodicMemory<TEpisode extends Episode> {
      * @return true if an episode exists; otherwise false.
      */
     public boolean any() {
-        return this.episodicMemory.size() > 0;
+        return this.count > 0;
     }
 
     /**
      * @return the index of the most recent episode.
      */
     public int currentIndex() {
-        return this.episodicMemory.size() - 1;
+        return this.heapStart + this.count - 1;
+    }
+
+    /**
+     * @return the index of the oldest episode that can still be retrieved.
+     */
+    public int firstIndex() {
+        return this.heapStart;
     }
 
     /**
@@ -41,15 +127,30 @@ public class EpisodicMemory<TEpisode extends Episode> {
      */
     public TEpisode current() {
         if (this.any())
-            return this.episodicMemory.get(this.currentIndex());
+            return this.get(this.currentIndex());
         return null;
     }
 
     /**
-     * @return the number of episodes in this {@link EpisodicMemory}.
+     * @return the number of episodes in this {@link EpisodicMemory}.  For a bounded memory this includes
+     * episodes that have since been evicted so that it is always {@link #currentIndex()} + 1.
      */
     public int length() {
-        return this.episodicMemory.size();
+        return this.heapStart + this.count;
+    }
+
+    /**
+     * @return the number of episodes currently retained by this {@link EpisodicMemory}.
+     */
+    public int size() {
+        return this.length() - this.firstIndex();
+    }
+
+    /**
+     * @return the maximum number of episodes retained or {@link #UNBOUNDED}.
+     */
+    public int capacity() {
+        return this.capacity;
     }
 
     /**
@@ -60,7 +161,21 @@ public class EpisodicMemory<TEpisode extends Episode> {
     public void add(TEpisode episode) {
         if (episode == null)
             throw new IllegalArgumentException("episode cannot be null.");
-        this.episodicMemory.add(episode);
+        if (this.count == this.episodes.length) {
+            if (this.capacity == UNBOUNDED)
+                this.grow();
+            else
+                this.evictOldest();
+        }
+        int slot = this.slotOf(this.count);
+        this.episodes[slot] = episode;
+        this.actionOrdinals[slot] = this.actionOrdinal(episode.getAction());
+        this.packSensors(episode.getSensorData(), slot);
+        this.count++;
+        for (HashMap.Entry<String, PositionIndex> entry : this.sensorIndices.entrySet()) {
+            if (isOn(episode, entry.getKey()))
+                entry.getValue().add(this.currentIndex());
+        }
     }
 
     /**
@@ -69,11 +184,12 @@ public class EpisodicMemory<TEpisode extends Episode> {
      * @param index the index of the episode to retrieve.
      * @return the {@link Episode} at the given index.
      */
+    @SuppressWarnings("unchecked")
     public TEpisode get(int index) {
         // TODO -- update this so that negative is an offset index from the end and get rid of getFromOffset
-        if (index < 0 || index >= this.episodicMemory.size())
-            throw new IllegalArgumentException("index out of range.");
-        return this.episodicMemory.get(index);
+        if (this.isEvicted(index))
+            return this.getEvicted(index);
+        return (TEpisode) this.episodes[this.slotFor(index)];
     }
 
     /**
@@ -86,7 +202,7 @@ public class EpisodicMemory<TEpisode extends Episode> {
         // TODO -- This used to be "this.episodicMemory.size() - offset" but was updated to allow for 0-based offset
         // in particular, ensure that NSMAgent hasn't been negatively affected and that Semsode still functions
         // MaRzLearner should be ok.
-        if (offset < 0 || offset >= this.episodicMemory.size())
+        if (offset < 0 || offset >= this.size())
             throw new IllegalArgumentException("index out of range.");
         return this.get(this.currentIndex() - offset);
     }
@@ -95,13 +211,22 @@ public class EpisodicMemory<TEpisode extends Episode> {
      * Remove the most recent N episodes.
      *
      * @param count the number of episodes to remove from memory.
+     * @throws IllegalArgumentException if count is negative, greater than {@link #size()} or reaches
+     *                                  episodes that have been evicted from the ring
      */
     public void trim(int count) {
         if (count < 0)
             throw new IllegalArgumentException("count cannot be less than 0");
-        for (int i = count; i > 0; i--)
-        {
-            episodicMemory.remove(episodicMemory.size() - 1);
+        if (count > this.size())
+            throw new IllegalArgumentException("count cannot be greater than the number of episodes");
+        if (count > this.count)
+            throw new IllegalArgumentException("cannot trim episodes that have been evicted from the ring");
+        for (int i = count; i > 0; i--) {
+            this.count--;
+            this.episodes[this.slotOf(this.count)] = null;
+        }
+        for (PositionIndex index : this.sensorIndices.values()) {
+            index.truncate(this.length());
         }
     }
 
@@ -112,24 +237,50 @@ public class EpisodicMemory<TEpisode extends Episode> {
      * @return an array of the episodes from startIndex forward.
      */
     public Episode[] subset(int startIndex) {
-        return this.subset(startIndex, this.episodicMemory.size());
+        return this.subset(startIndex, this.length());
     }
 
     /**
      * Gets a range of episodes based on the given indices.
      *
+     * Prefer {@link #window(int, int)} when the episodes are only going to be read since it does not copy.
+     *
      * @param startIndex the start index of the range (inclusive).
      * @param endIndex the end index of the rnage (exclusive).
      * @return the range of episodes between the given indices.
      */
     public Episode[] subset(int startIndex, int endIndex) {
+        return this.window(startIndex, endIndex).toArray();
+    }
+
+    /**
+     * Get a view of all episodes from the given index to current.
+     *
+     * @param startIndex the index from which all subsequent episodes should be taken (inclusive).
+     * @return an {@link EpisodeWindow} over the episodes from startIndex forward.
+     */
+    public EpisodeWindow<TEpisode> window(int startIndex) {
+        return this.window(startIndex, this.length());
+    }
+
+    /**
+     * Gets a view of a range of episodes based on the given indices.  No episodes are copied; the window reads
+     * through to this memory.
+     *
+     * @param startIndex the start index of the range (inclusive).
+     * @param endIndex the end index of the range (exclusive).
+     * @return an {@link EpisodeWindow} over the range of episodes between the given indices.
+     */
+    public EpisodeWindow<TEpisode> window(int startIndex, int endIndex) {
         if (startIndex < 0)
             throw new IllegalArgumentException("startIndex cannot be less than 0.");
-        if (endIndex > this.episodicMemory.size())
+        if (endIndex > this.length())
             throw new IllegalArgumentException("endIndex cannot be greater than the size of memory.");
         if (endIndex < startIndex)
             throw new IllegalArgumentException("endIndex cannot be less than startIndex");
-        return this.episodicMemory.subList(startIndex, endIndex).toArray(new Episode[0]);
+        if (startIndex < this.firstIndex() && startIndex != endIndex)
+            throw new IllegalArgumentException("startIndex refers to an episode that is no longer retained.");
+        return new EpisodeWindow<>(this, startIndex, endIndex);
     }
 
     /**
@@ -143,14 +294,68 @@ public class EpisodicMemory<TEpisode extends Episode> {
     public int lastGoalIndex(int startIndex) {
         if (startIndex < 0)
             throw new IllegalArgumentException("startIndex cannot be less than 0");
-        // It's tempting to think we can cache goal indices on Add but beware!
-        // When episodes get added they do not yet have sensorData. This is added after the action has been taken
-        // and there's something to introduce.
-        for(int i = startIndex; i >= 0; i--) {
-            if(this.episodicMemory.get(i).hitGoal())
-                return i;
+        // Goal indices can be cached on add because an Episode cannot be constructed without its sensorData.
+        return this.goalIndices.previous(startIndex);
+    }
+
+    /**
+     * find the index of the first goal-episode at or after a given start index.
+     *
+     * @param startIndex the index to start the search.
+     * @return the index of the episode with a goal or -1 if no goal is found.
+     */
+    public int nextGoalIndex(int startIndex) {
+        if (startIndex < 0)
+            throw new IllegalArgumentException("startIndex cannot be less than 0");
+        return this.goalIndices.next(startIndex);
+    }
+
+    /**
+     * @param k the rank of the goal to find (0 is the earliest retained goal).
+     * @return the index of the kth goal-episode.
+     */
+    public int getGoalIndex(int k) {
+        return this.goalIndices.get(k);
+    }
+
+    /**
+     * @return the number of retained goal-episodes.
+     */
+    public int goalCount() {
+        return this.goalIndices.size();
+    }
+
+    /**
+     * Determines whether a range of episodes contains a goal.
+     *
+     * @param startIndex the start index of the range (inclusive).
+     * @param endIndex the end index of the range (exclusive).
+     * @return true if any episode in the range hit the goal; otherwise false.
+     */
+    public boolean containsGoal(int startIndex, int endIndex) {
+        return this.goalIndices.containsAny(startIndex, endIndex);
+    }
+
+    /**
+     * Starts maintaining a {@link PositionIndex} of the episodes in which the given sensor is on.  Episodes
+     * already in memory are indexed immediately.
+     *
+     * @param sensorName the name of the sensor to track.
+     * @return the index for the given sensor.
+     */
+    public PositionIndex trackSensor(String sensorName) {
+        if (sensorName == null)
+            throw new IllegalArgumentException("sensorName cannot be null");
+        PositionIndex index = this.sensorIndices.get(sensorName);
+        if (index == null) {
+            index = new PositionIndex();
+            for (int i = this.firstIndex(); i <= this.currentIndex(); i++) {
+                if (isOn(this.get(i), sensorName))
+                    index.add(i);
+            }
+            this.sensorIndices.put(sensorName, index);
         }
-        return -1;
+        return index;
     }
 
     /**
@@ -160,12 +365,21 @@ public class EpisodicMemory<TEpisode extends Episode> {
      * @return The last count episodes.
      */
     public Episode[] last(int count) {
+        return this.lastWindow(count).toArray();
+    }
+
+    /**
+     * Returns a view of the last n number of episodes in the memory.
+     *
+     * @param count The number of episodes to include.
+     * @return an {@link EpisodeWindow} over the last count episodes.
+     */
+    public EpisodeWindow<TEpisode> lastWindow(int count) {
         if (count <= 0)
-            return new Episode[0];
-        int epMemSize = this.episodicMemory.size();
-        if (count > epMemSize)
-            count = epMemSize;
-        return this.subset(epMemSize - count);
+            return new EpisodeWindow<>(this, this.length(), this.length());
+        if (count > this.size())
+            count = this.size();
+        return this.window(this.length() - count);
     }
 
     /**
@@ -176,7 +390,7 @@ public class EpisodicMemory<TEpisode extends Episode> {
      */
     public String toString(int count) {
         StringBuilder value = new StringBuilder();
-        for (Episode episode : this.last(count)){
+        for (Episode episode : this.lastWindow(count)){
             value.append(episode.toString());
         }
         return value.toString();
@@ -184,13 +398,271 @@ public class EpisodicMemory<TEpisode extends Episode> {
 
     //endregion
 
+    //region Columnar Access
+
+    /**
+     * @return true if every episode's sensors have been packed into sensor words.  When false the packed
+     * accessors are meaningless and callers must fall back to {@link SensorData} comparisons.
+     */
+    public boolean isPacked() {
+        return this.packed;
+    }
+
+    /**
+     * @param index the index of the episode.
+     * @return the ordinal of the episode's {@link Action} (see {@link #getActionByOrdinal(int)}).
+     */
+    public int getActionOrdinal(int index) {
+        if (this.isEvicted(index))
+            return this.getEvictedActionOrdinal(index);
+        return this.actionOrdinals[this.slotFor(index)];
+    }
+
+    /**
+     * @param ordinal an action ordinal previously returned by this memory.
+     * @return the {@link Action} with that ordinal.
+     */
+    public Action getActionByOrdinal(int ordinal) {
+        return this.actions.get(ordinal);
+    }
+
+    /**
+     * @param action the action to look up.
+     * @return the ordinal assigned to the given action or -1 if it has never been stored.
+     */
+    public int findActionOrdinal(Action action) {
+        Integer ordinal = this.actionLookup.get(action);
+        return (ordinal == null) ? -1 : ordinal;
+    }
+
+    /**
+     * @param sensorName the sensor to look up.
+     * @return the bit position of the given sensor within a sensor word or -1 if it has never been stored.
+     */
+    public int findSensorOrdinal(String sensorName) {
+        Integer ordinal = this.sensorLookup.get(sensorName);
+        return (ordinal == null) ? -1 : ordinal;
+    }
+
+    /**
+     * @return the number of distinct sensors seen so far.
+     */
+    public int sensorCount() {
+        return this.sensorNames.size();
+    }
+
+    /**
+     * @param index the index of the episode.
+     * @return a word with a bit set for each boolean sensor that is true in the episode.
+     */
+    public long getSensorWord(int index) {
+        if (this.isEvicted(index))
+            return this.getEvictedSensorWord(index);
+        return this.sensorWords[this.slotFor(index)];
+    }
+
+    /**
+     * @param index the index of the episode.
+     * @return a word with a bit set for each sensor that is present in the episode.
+     */
+    public long getSensorMask(int index) {
+        if (this.isEvicted(index))
+            return this.getEvictedSensorMask(index);
+        return this.sensorMasks[this.slotFor(index)];
+    }
+
+    /**
+     * Compares two stored episodes for equality without touching their {@link SensorData}, provided the memory
+     * is packed.
+     *
+     * @param index1 the index of the first episode.
+     * @param index2 the index of the second episode.
+     * @return true if the episodes have the same action and sensors; otherwise false.
+     */
+    public boolean episodesEqual(int index1, int index2) {
+        if (!this.packed || this.isEvicted(index1) || this.isEvicted(index2)) {
+            if (!this.packed)
+                return this.get(index1).equals(this.get(index2));
+            return this.getActionOrdinal(index1) == this.getActionOrdinal(index2)
+                    && this.getSensorMask(index1) == this.getSensorMask(index2)
+                    && this.getSensorWord(index1) == this.getSensorWord(index2);
+        }
+        int slot1 = this.slotFor(index1);
+        int slot2 = this.slotFor(index2);
+        return this.actionOrdinals[slot1] == this.actionOrdinals[slot2]
+                && this.sensorMasks[slot1] == this.sensorMasks[slot2]
+                && this.sensorWords[slot1] == this.sensorWords[slot2];
+    }
+
+    /**
+     * @param ordinal a sensor ordinal (see {@link #findSensorOrdinal(String)}).
+     * @return the name of the sensor with that ordinal.
+     */
+    public String getSensorName(int ordinal) {
+        return this.sensorNames.get(ordinal);
+    }
+
+    //endregion
+
+    //region Eviction
+
+    /**
+     * Called just before the oldest episode is dropped from the ring so that a subclass can keep it elsewhere.
+     * The packed columns are passed along so they need not be recomputed.
+     *
+     * @param index the index of the episode being evicted.
+     * @param episode the episode being evicted.
+     * @param actionOrdinal the episode's action ordinal.
+     * @param sensorMask the episode's sensor presence word.
+     * @param sensorWord the episode's sensor value word.
+     */
+    protected void onEvict(int index, TEpisode episode, int actionOrdinal, long sensorMask, long sensorWord) {
+        // evicted episodes are simply forgotten
+    }
+
+    /**
+     * Retrieves an episode that is no longer held in the ring.  Subclasses that keep evicted episodes must also
+     * override {@link #firstIndex()} so that callers know those episodes are still available.
+     *
+     * @param index the index of the evicted episode.
+     * @return the {@link Episode} at the given index.
+     */
+    protected TEpisode getEvicted(int index) {
+        throw new IllegalArgumentException("index out of range.");
+    }
+
+    /** @see #getEvicted(int) */
+    protected int getEvictedActionOrdinal(int index) {
+        throw new IllegalArgumentException("index out of range.");
+    }
+
+    /** @see #getEvicted(int) */
+    protected long getEvictedSensorMask(int index) {
+        throw new IllegalArgumentException("index out of range.");
+    }
+
+    /** @see #getEvicted(int) */
+    protected long getEvictedSensorWord(int index) {
+        throw new IllegalArgumentException("index out of range.");
+    }
+
+    /**
+     * Rebuilds the {@link SensorData} of an episode from its packed sensor words.
+     *
+     * @param sensorMask the episode's sensor presence word.
+     * @param sensorWord the episode's sensor value word.
+     * @return the episode's sensors.
+     */
+    protected SensorData unpackSensors(long sensorMask, long sensorWord) {
+        SensorData sensorData = SensorData.createEmpty();
+        for (long bits = sensorMask; bits != 0; bits &= bits - 1) {
+            int ordinal = Long.numberOfTrailingZeros(bits);
+            sensorData.setSensor(this.getSensorName(ordinal), (sensorWord & (1L << ordinal)) != 0);
+        }
+        return sensorData;
+    }
+
+    //endregion
+
+    //region Private Methods
+
+    /** converts an offset from the oldest retained episode into a ring slot */
+    private int slotOf(int offset) {
+        int slot = this.head + offset;
+        return (slot >= this.episodes.length) ? slot - this.episodes.length : slot;
+    }
+
+    /** converts an absolute episode index into a ring slot, validating it along the way */
+    private int slotFor(int index) {
+        if (index < this.heapStart || index >= this.heapStart + this.count)
+            throw new IllegalArgumentException("index out of range.");
+        return this.slotOf(index - this.heapStart);
+    }
+
+    /** true if the given index refers to an episode that has been pushed out of the ring */
+    private boolean isEvicted(int index) {
+        return index >= 0 && index < this.heapStart;
+    }
+
+    private void grow() {
+        int newSize = this.episodes.length * 2;
+        Object[] newEpisodes = new Object[newSize];
+        int[] newActions = new int[newSize];
+        long[] newMasks = new long[newSize];
+        long[] newWords = new long[newSize];
+        for (int i = 0; i < this.count; i++) {
+            int slot = this.slotOf(i);
+            newEpisodes[i] = this.episodes[slot];
+            newActions[i] = this.actionOrdinals[slot];
+            newMasks[i] = this.sensorMasks[slot];
+            newWords[i] = this.sensorWords[slot];
+        }
+        this.episodes = newEpisodes;
+        this.actionOrdinals = newActions;
+        this.sensorMasks = newMasks;
+        this.sensorWords = newWords;
+        this.head = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void evictOldest() {
+        this.onEvict(this.heapStart, (TEpisode) this.episodes[this.head], this.actionOrdinals[this.head],
+                this.sensorMasks[this.head], this.sensorWords[this.head]);
+        this.episodes[this.head] = null;
+        this.head = this.slotOf(1);
+        this.heapStart++;
+        this.count--;
+        for (PositionIndex index : this.sensorIndices.values()) {
+            index.dropBefore(this.firstIndex());
+        }
+    }
+
+    private static boolean isOn(Episode episode, String sensorName) {
+        return Boolean.TRUE.equals(episode.getSensorData().getSensor(sensorName));
+    }
+
+    private int actionOrdinal(Action action) {
+        Integer ordinal = this.actionLookup.get(action);
+        if (ordinal == null) {
+            ordinal = this.actions.size();
+            this.actions.add(action);
+            this.actionLookup.put(action, ordinal);
+        }
+        return ordinal;
+    }
+
+    private void packSensors(SensorData sensorData, int slot) {
+        long mask = 0;
+        long word = 0;
+        for (String name : sensorData.getSensorNames()) {
+            Integer ordinal = this.sensorLookup.get(name);
+            if (ordinal == null) {
+                ordinal = this.sensorNames.size();
+                this.sensorNames.add(name);
+                this.sensorLookup.put(name, ordinal);
+            }
+            Object value = sensorData.getSensor(name);
+            if (ordinal >= MAX_PACKED_SENSORS || !(value instanceof Boolean)) {
+                this.packed = false;
+                continue;
+            }
+            mask |= 1L << ordinal;
+            if ((Boolean) value)
+                word |= 1L << ordinal;
+        }
+        this.sensorMasks[slot] = mask;
+        this.sensorWords[slot] = word;
+    }
+
+    //endregion
+
     //region Object Overrides
 
     @Override
     public String toString(){
         StringBuilder value = new StringBuilder();
-        for (TEpisode episode : episodicMemory){
-            value.append(episode.toString());
+        for (int i = this.firstIndex(); i <= this.currentIndex(); i++){
+            value.append(this.get(i).toString());
         }
         return value.toString();
     }
@@ -0,0 +1,134 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * A sorted set of episode indices, such as every index at which the goal sensor was on.
+ *
+ * Positions must be added in ascending order which is always the case for an index that is maintained as
+ * episodes are appended to an {@link EpisodicMemory}.  Lookups are binary searches over a primitive array.
+ *
+ * @author Zachary Paul Faltersack
+ * @version 0.95
+ */
+public class PositionIndex {
+
+    //region Class Variables
+
+    private int[] positions = new int[16];
+
+    /** positions before this offset have been dropped from the index */
+    private int start = 0;
+    private int end = 0;
+
+    //endregion
+
+    //region Public Methods
+
+    /**
+     * Appends a position to this index.
+     *
+     * @param position the position to add; must be greater than every position already in the index.
+     */
+    public void add(int position) {
+        if (this.end > this.start && position <= this.positions[this.end - 1])
+            throw new IllegalArgumentException("positions must be added in ascending order");
+        if (this.end == this.positions.length) {
+            if (this.start > this.positions.length / 2) {
+                // plenty of dropped room at the front so compact rather than grow
+                System.arraycopy(this.positions, this.start, this.positions, 0, this.end - this.start);
+                this.end -= this.start;
+                this.start = 0;
+            }
+            else {
+                this.positions = Arrays.copyOf(this.positions, this.positions.length * 2);
+            }
+        }
+        this.positions[this.end++] = position;
+    }
+
+    /**
+     * @return the number of positions in this index.
+     */
+    public int size() {
+        return this.end - this.start;
+    }
+
+    /**
+     * @param k the rank of the position to retrieve (0 is the earliest).
+     * @return the kth position in this index.
+     */
+    public int get(int k) {
+        if (k < 0 || k >= this.size())
+            throw new IllegalArgumentException("k out of range.");
+        return this.positions[this.start + k];
+    }
+
+    /**
+     * @return the most recent position or -1 if the index is empty.
+     */
+    public int last() {
+        return (this.size() == 0) ? -1 : this.positions[this.end - 1];
+    }
+
+    /**
+     * @param index the index to search backward from (inclusive).
+     * @return the greatest position that is less than or equal to index or -1 if there is none.
+     */
+    public int previous(int index) {
+        int k = this.rank(index + 1) - 1;
+        return (k < 0) ? -1 : this.positions[this.start + k];
+    }
+
+    /**
+     * @param index the index to search forward from (inclusive).
+     * @return the least position that is greater than or equal to index or -1 if there is none.
+     */
+    public int next(int index) {
+        int k = this.rank(index);
+        return (k >= this.size()) ? -1 : this.positions[this.start + k];
+    }
+
+    /**
+     * @param index an index.
+     * @return the number of positions that are strictly less than the given index.
+     */
+    public int rank(int index) {
+        int found = Arrays.binarySearch(this.positions, this.start, this.end, index);
+        return ((found >= 0) ? found : -(found + 1)) - this.start;
+    }
+
+    /**
+     * Determines whether any position falls within the given range.
+     *
+     * @param startIndex the start of the range (inclusive).
+     * @param endIndex the end of the range (exclusive).
+     * @return true if the range contains a position; otherwise false.
+     */
+    public boolean containsAny(int startIndex, int endIndex) {
+        if (endIndex <= startIndex)
+            return false;
+        int next = this.next(startIndex);
+        return next >= 0 && next < endIndex;
+    }
+
+    /**
+     * Removes every position at or after the given index.
+     *
+     * @param index the first index to remove.
+     */
+    public void truncate(int index) {
+        this.end = this.start + this.rank(index);
+    }
+
+    /**
+     * Removes every position before the given index.
+     *
+     * @param index the first index to keep.
+     */
+    public void dropBefore(int index) {
+        this.start += this.rank(index);
+    }
+
+    //endregion
+}
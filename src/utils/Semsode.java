@@ -55,14 +55,17 @@ public class Semsode {
     public boolean matches(EpisodicMemory<Episode> episodicMemory, Discriminator discriminator) {
         // Due to the definition of a Semsode we first check for just the sensor data in the first episode of the
         // semsode and then we enumerate the rest of the episodes looking for full matches on sensor and move.
-
+        // The moves are cheap to compare so rule out a mismatch on those before consulting the discriminator.
+        for (int i = 1; i < this.episodes.length; i++)
+        {
+            if (!episodicMemory.getFromOffset(this.episodes.length - i).getAction().equals(this.episodes[i].getAction()))
+                return false;
+        }
         if (!discriminator.match(episodes[0].getSensorData(), episodicMemory.getFromOffset(this.episodes.length).getSensorData()))
             return false;
         for (int i = 1; i < this.episodes.length; i++)
         {
             Episode episode = episodicMemory.getFromOffset(this.episodes.length - i);
-            if (!episode.getAction().equals(this.episodes[i].getAction()))
-                return false;
             if (!discriminator.match(episode.getSensorData(), this.episodes[i].getSensorData()))
                 return false;
         }
@@ -0,0 +1,109 @@
+package utils;
+
+import framework.Action;
+import framework.Sequence;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * SequenceEnumerator
+ * Walks the canonical ordering of a {@link SequenceGenerator} one permutation at a time.
+ *
+ * The current permutation is kept as an odometer of action indices that is incremented in place, so stepping to
+ * the next permutation costs amortized O(1) and the only allocation per step is the {@link Sequence} handed out.
+ *
+ * @author Zachary Paul Faltersack
+ * @version 0.95
+ */
+public class SequenceEnumerator implements Iterator<Sequence> {
+
+    //region Class Variables
+
+    private final Action[] actions;
+
+    /** the action index at each position of the next permutation */
+    private int[] digits;
+    private int length;
+
+    private long nextIndex;
+    private boolean exhausted = false;
+
+    //endregion
+
+    //region Constructors
+
+    SequenceEnumerator(Action[] actions, Sequence first, HashMap<Action, Integer> moveIndex, long firstIndex) {
+        this.actions = actions;
+        this.length = first.getLength();
+        this.digits = new int[Math.max(this.length, 1) * 2];
+        Action[] firstActions = first.getActions();
+        for (int i = 0; i < this.length; i++) {
+            this.digits[i] = moveIndex.get(firstActions[i]);
+        }
+        this.nextIndex = firstIndex;
+    }
+
+    //endregion
+
+    //region Public Methods
+
+    /**
+     * @return the canonical index of the permutation that the next call to {@link #next()} will return.
+     */
+    public long getNextIndex() {
+        return this.nextIndex;
+    }
+
+    //endregion
+
+    //region Iterator<Sequence> Members
+
+    /**
+     * @return false once the canonical index has reached {@link Long#MAX_VALUE}; otherwise true.
+     */
+    @Override
+    public boolean hasNext() {
+        return !this.exhausted;
+    }
+
+    @Override
+    public Sequence next() {
+        if (this.exhausted)
+            throw new NoSuchElementException("the permutation index has overflowed.");
+        if (this.actions.length == 0)
+            return Sequence.EMPTY;
+
+        Action[] sequence = new Action[this.length];
+        for (int i = 0; i < this.length; i++) {
+            sequence[i] = this.actions[this.digits[i]];
+        }
+
+        if (this.nextIndex == Long.MAX_VALUE)
+            this.exhausted = true;
+        else
+            this.advance();
+        return new Sequence(sequence);
+    }
+
+    //endregion
+
+    //region Private Methods
+
+    private void advance() {
+        this.nextIndex++;
+        for (int i = this.length - 1; i >= 0; i--) {
+            if (++this.digits[i] < this.actions.length)
+                return;
+            this.digits[i] = 0;
+        }
+        // every position rolled over so move on to the first permutation of the next length
+        if (this.length == this.digits.length)
+            this.digits = Arrays.copyOf(this.digits, this.length * 2);
+        this.digits[this.length++] = 0;
+    }
+
+    //endregion
+}
@@ -3,7 +3,7 @@ package utils;
 import framework.Action;
 import framework.Sequence;
 
-import java.util.*;
+import java.util.HashMap;
 
 /**
  * SequenceGenerator
@@ -45,6 +45,9 @@ public class SequenceGenerator {
     /**
      * Gets the permutation at the given index.
      *
+     * Permutations are numbered in bijective base N (N being the number of actions) so index 1 through N are the
+     * sequences of length one, the next N^2 indices are the sequences of length two, and so on.
+     *
      * @param index The index to retrieve the permutation for.
      * @return The Sequence that contains the move permutation.
      */
@@ -56,20 +59,14 @@ public class SequenceGenerator {
         if (this.actions.length == 0)
             return Sequence.EMPTY;
 
-        List<Action> nextSequence = new ArrayList<>();
-        if (index <= this.actions.length) {
-            nextSequence.add(this.actions[(int)index - 1]);
-        }// if
-        else {
-            while (index > 0) {
-                index--;
-                long movesIndex= index % this.actions.length;
-                nextSequence.add(0, this.actions[(int)movesIndex]);
-                index /= this.actions.length;
-            }// while
-        }
+        Action[] nextSequence = new Action[this.getPermutationLength(index)];
+        for (int i = nextSequence.length - 1; i >= 0; i--) {
+            index--;
+            nextSequence[i] = this.actions[(int)(index % this.actions.length)];
+            index /= this.actions.length;
+        }// for
 
-        return new Sequence(nextSequence.toArray(new Action[0]));
+        return new Sequence(nextSequence);
     }// nextPermutation
 
     /**
@@ -77,19 +74,61 @@ public class SequenceGenerator {
      *
      * @param sequence The sequence to get an ordering for.
      * @return The sequence index.
+     * @throws ArithmeticException if the index of the sequence does not fit in a long.
      */
     public long getCanonicalIndex(Sequence sequence) {
         if (sequence == null)
             throw new IllegalArgumentException("sequence cannot be null");
-        ArrayList<Action> actions = new ArrayList<>(Arrays.asList(sequence.getActions()));
-        Collections.reverse(actions);
-        double total = 0;
-        for (int i = 0; i < actions.size(); i++)
-        {
-            int index = this.moveIndex.get(actions.get(i)) + 1;
-            total += Math.pow(this.actions.length, i) * index;
+        long total = 0;
+        for (Action action : sequence.getActions()) {
+            int index = this.moveIndex.get(action) + 1;
+            total = Math.addExact(Math.multiplyExact(total, (long)this.actions.length), index);
+        }
+        return total;
+    }
+
+    /**
+     * Calculates the distance between the index of a permutation and the index of the next permutation that ends
+     * with the same suffix of the given length (i.e., N^length).
+     *
+     * @param suffixLength the length of the suffix to keep.
+     * @return the index stride.
+     * @throws ArithmeticException if the stride does not fit in a long.
+     */
+    public long getSuffixStride(int suffixLength) {
+        if (suffixLength < 0)
+            throw new IllegalArgumentException("suffixLength cannot be less than 0");
+        long stride = 1;
+        for (int i = 0; i < suffixLength; i++) {
+            stride = Math.multiplyExact(stride, (long)this.actions.length);
+        }
+        return stride;
+    }
+
+    /**
+     * Enumerates the permutations in canonical order starting from the given index.  Successive permutations are
+     * produced by incrementing an odometer in place rather than by recomputing them from their index.
+     *
+     * @param startIndex the index of the first permutation to enumerate.
+     * @return a {@link SequenceEnumerator} positioned at the given index.
+     */
+    public SequenceEnumerator enumerate(long startIndex) {
+        if (startIndex <= 0)
+            throw new IndexOutOfBoundsException("startIndex must be a positive number.");
+        return new SequenceEnumerator(this.actions, this.nextPermutation(startIndex), this.moveIndex, startIndex);
+    }
+
+    //endregion
+
+    //region Private Methods
+
+    private int getPermutationLength(long index) {
+        int length = 0;
+        while (index > 0) {
+            index = (index - 1) / this.actions.length;
+            length++;
         }
-        return (long)total;
+        return length;
     }
 
     //endregion
@@ -0,0 +1,240 @@
+package utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * An append-only file of fixed size records that is memory-mapped in segments.  Used by the spilling episodic
+ * memories to keep episodes that no longer fit on the heap.
+ *
+ * Records are addressed by their index and fields by their byte offset within the record.  Records may be
+ * rewritten in place after they are appended.
+ *
+ * {@link #close()} unmaps every segment right away (rather than whenever the buffers are collected) and
+ * deletes the file if it was a temporary one.
+ *
+ * @author Zachary Paul Faltersack
+ * @version 0.95
+ */
+public class SpillFile implements Closeable {
+
+    //region Static Variables
+
+    /** the file is mapped in segments of this many records */
+    private static final int RECORDS_PER_SEGMENT = 1 << 20;
+
+    /** releases a mapped buffer immediately or null if this JVM does not allow it */
+    private static final MethodHandle UNMAPPER = findUnmapper();
+
+    //endregion
+
+    //region Class Variables
+
+    private final int recordSize;
+    private final File spillFile;
+    private final boolean temporary;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ArrayList<MappedByteBuffer> segments = new ArrayList<>();
+    private int count = 0;
+    private boolean closed = false;
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Creates a {@link SpillFile} backed by a temporary file that is deleted when it is closed (or on exit).
+     *
+     * @param recordSize the number of bytes in each record.
+     */
+    public SpillFile(int recordSize) {
+        this(recordSize, createTempFile(), true);
+    }
+
+    /**
+     * Creates a {@link SpillFile} backed by the given file.  Any existing content is discarded.
+     *
+     * @param recordSize the number of bytes in each record.
+     * @param spillFile the file to write records to.
+     */
+    public SpillFile(int recordSize, File spillFile) {
+        this(recordSize, spillFile, false);
+    }
+
+    private SpillFile(int recordSize, File spillFile, boolean temporary) {
+        if (recordSize < 1)
+            throw new IllegalArgumentException("recordSize must be greater than 0");
+        if (spillFile == null)
+            throw new IllegalArgumentException("spillFile cannot be null");
+        this.recordSize = recordSize;
+        this.spillFile = spillFile;
+        this.temporary = temporary;
+        try {
+            this.file = new RandomAccessFile(spillFile, "rw");
+            this.file.setLength(0);
+            this.channel = this.file.getChannel();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("unable to open spill file " + spillFile, ex);
+        }
+    }
+
+    //endregion
+
+    //region Public Methods
+
+    /**
+     * @return the number of records appended so far.
+     */
+    public int count() {
+        return this.count;
+    }
+
+    /**
+     * @return true once the file has been closed.
+     */
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Adds a record of zeroes to the end of the file.
+     *
+     * @return the index of the new record.
+     */
+    public int append() {
+        int index = this.count;
+        int segmentIndex = index / RECORDS_PER_SEGMENT;
+        if (segmentIndex == this.segments.size()) {
+            this.ensureOpen();
+            try {
+                long position = (long) segmentIndex * RECORDS_PER_SEGMENT * this.recordSize;
+                this.segments.add(this.channel.map(FileChannel.MapMode.READ_WRITE, position,
+                        (long) RECORDS_PER_SEGMENT * this.recordSize));
+            } catch (IOException ex) {
+                throw new UncheckedIOException("unable to extend spill file", ex);
+            }
+        }
+        this.count++;
+        return index;
+    }
+
+    public int getInt(int index, int fieldOffset) {
+        return this.segmentFor(index).getInt(this.offsetOf(index, fieldOffset, Integer.BYTES));
+    }
+
+    public void putInt(int index, int fieldOffset, int value) {
+        this.segmentFor(index).putInt(this.offsetOf(index, fieldOffset, Integer.BYTES), value);
+    }
+
+    public long getLong(int index, int fieldOffset) {
+        return this.segmentFor(index).getLong(this.offsetOf(index, fieldOffset, Long.BYTES));
+    }
+
+    public void putLong(int index, int fieldOffset, long value) {
+        this.segmentFor(index).putLong(this.offsetOf(index, fieldOffset, Long.BYTES), value);
+    }
+
+    public double getDouble(int index, int fieldOffset) {
+        return this.segmentFor(index).getDouble(this.offsetOf(index, fieldOffset, Double.BYTES));
+    }
+
+    public void putDouble(int index, int fieldOffset, double value) {
+        this.segmentFor(index).putDouble(this.offsetOf(index, fieldOffset, Double.BYTES), value);
+    }
+
+    //endregion
+
+    //region Closeable Members
+
+    /**
+     * Unmaps the file and releases it.  Temporary files are also deleted.  Any further access throws an
+     * {@link IllegalStateException}; closing again does nothing.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed)
+            return;
+        this.closed = true;
+        for (MappedByteBuffer segment : this.segments) {
+            unmap(segment);
+        }
+        this.segments.clear();
+        try {
+            this.channel.close();
+            this.file.close();
+        } finally {
+            if (this.temporary && !this.spillFile.delete() && this.spillFile.exists())
+                throw new IOException("unable to delete spill file " + this.spillFile);
+        }
+    }
+
+    //endregion
+
+    //region Private Methods
+
+    private void ensureOpen() {
+        if (this.closed)
+            throw new IllegalStateException("spill file has been closed");
+    }
+
+    private MappedByteBuffer segmentFor(int index) {
+        this.ensureOpen();
+        if (index < 0 || index >= this.count)
+            throw new IllegalArgumentException("index out of range.");
+        return this.segments.get(index / RECORDS_PER_SEGMENT);
+    }
+
+    private int offsetOf(int index, int fieldOffset, int fieldSize) {
+        if (fieldOffset < 0 || fieldOffset + fieldSize > this.recordSize)
+            throw new IllegalArgumentException("field lies outside the record");
+        return (index % RECORDS_PER_SEGMENT) * this.recordSize + fieldOffset;
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        // without an unmapper the mapping is released once the buffer is collected
+        if (UNMAPPER == null)
+            return;
+        try {
+            UNMAPPER.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable ex) {
+            // fall back to letting the collector release it
+        }
+    }
+
+    private static MethodHandle findUnmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    private static File createTempFile() {
+        try {
+            File spillFile = File.createTempFile("epmem", ".spill");
+            spillFile.deleteOnExit();
+            return spillFile;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("unable to create spill file", ex);
+        }
+    }
+
+    //endregion
+}
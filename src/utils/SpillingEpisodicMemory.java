@@ -0,0 +1,144 @@
+package utils;
+
+import framework.Episode;
+import framework.SensorData;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * An {@link EpisodicMemory} for very long runs that keeps only a hot tail of episodes on the heap.
+ *
+ * Once the hot tail is full, the oldest episode is written to an append-only, memory-mapped {@link SpillFile}
+ * as a fixed size record (its action ordinal followed by its packed sensor presence and value words).  Spilled
+ * episodes remain available through every accessor: the packed columns are read straight from the file and
+ * {@link #get(int)} rebuilds an {@link Episode} from them.  The heap cost of a run is therefore bounded by the
+ * hot tail size rather than by the number of steps taken.
+ *
+ * Caveats:
+ *  - the encoding only covers boolean sensors so every episode must be packable
+ *    (see {@link EpisodicMemory#isPacked()});
+ *  - episodes rebuilt from disk are new objects on every call so they must not be mutated or compared by
+ *    identity.  Agents that update episodes in place (e.g., NSM's q-values) need a memory that writes those
+ *    updates back to disk instead (see agents.nsm.SpillingQEpisodicMemory);
+ *  - the memory holds a mapped file so it should be closed once the run is over.
+ *
+ * @author Zachary Paul Faltersack
+ * @version 0.95
+ */
+public class SpillingEpisodicMemory extends EpisodicMemory<Episode> implements Closeable {
+
+    //region Static Variables
+
+    // each spilled episode is an int action ordinal then the long mask and long word
+    private static final int ACTION_OFFSET = 0;
+    private static final int MASK_OFFSET = ACTION_OFFSET + Integer.BYTES;
+    private static final int WORD_OFFSET = MASK_OFFSET + Long.BYTES;
+    private static final int RECORD_SIZE = WORD_OFFSET + Long.BYTES;
+
+    //endregion
+
+    //region Class Variables
+
+    private final SpillFile spillFile;
+
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Creates a {@link SpillingEpisodicMemory} backed by a temporary file that is deleted when it is closed.
+     *
+     * @param hotCapacity the number of recent episodes to keep on the heap.
+     */
+    public SpillingEpisodicMemory(int hotCapacity) {
+        super(hotCapacity);
+        if (hotCapacity < 1)
+            throw new IllegalArgumentException("hotCapacity must be greater than 0");
+        this.spillFile = new SpillFile(RECORD_SIZE);
+    }
+
+    /**
+     * Creates a {@link SpillingEpisodicMemory} backed by the given file.  Any existing content is discarded.
+     *
+     * @param hotCapacity the number of recent episodes to keep on the heap.
+     * @param spillFile the file to spill older episodes into.
+     */
+    public SpillingEpisodicMemory(int hotCapacity, File spillFile) {
+        super(hotCapacity);
+        if (hotCapacity < 1)
+            throw new IllegalArgumentException("hotCapacity must be greater than 0");
+        this.spillFile = new SpillFile(RECORD_SIZE, spillFile);
+    }
+
+    //endregion
+
+    //region Public Methods
+
+    /**
+     * @return the number of episodes that currently live on disk rather than the heap.
+     */
+    public int spilledCount() {
+        return this.spillFile.count();
+    }
+
+    //endregion
+
+    //region EpisodicMemory Overrides
+
+    /**
+     * Every episode ever added remains available so the first index never moves.
+     */
+    @Override
+    public int firstIndex() {
+        return 0;
+    }
+
+    @Override
+    protected void onEvict(int index, Episode episode, int actionOrdinal, long sensorMask, long sensorWord) {
+        if (!this.isPacked())
+            throw new IllegalStateException("only episodes with boolean sensors can be spilled to disk");
+        if (index != this.spillFile.count())
+            throw new IllegalStateException("episodes must be spilled in order");
+        this.spillFile.append();
+        this.spillFile.putInt(index, ACTION_OFFSET, actionOrdinal);
+        this.spillFile.putLong(index, MASK_OFFSET, sensorMask);
+        this.spillFile.putLong(index, WORD_OFFSET, sensorWord);
+    }
+
+    @Override
+    protected Episode getEvicted(int index) {
+        SensorData sensorData = this.unpackSensors(this.getEvictedSensorMask(index), this.getEvictedSensorWord(index));
+        return new Episode(sensorData, this.getActionByOrdinal(this.getEvictedActionOrdinal(index)));
+    }
+
+    @Override
+    protected int getEvictedActionOrdinal(int index) {
+        return this.spillFile.getInt(index, ACTION_OFFSET);
+    }
+
+    @Override
+    protected long getEvictedSensorMask(int index) {
+        return this.spillFile.getLong(index, MASK_OFFSET);
+    }
+
+    @Override
+    protected long getEvictedSensorWord(int index) {
+        return this.spillFile.getLong(index, WORD_OFFSET);
+    }
+
+    //endregion
+
+    //region Closeable Members
+
+    /**
+     * Unmaps and releases the spill file.  Spilled episodes can no longer be read afterward.
+     */
+    @Override
+    public void close() throws IOException {
+        this.spillFile.close();
+    }
+
+    //endregion
+}